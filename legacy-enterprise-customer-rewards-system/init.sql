@@ -17,8 +17,13 @@ CREATE TABLE IF NOT EXISTS customers (
     total_lifetime_points INT DEFAULT 0,
     current_available_points INT DEFAULT 0,
     account_status ENUM('ACTIVE', 'INACTIVE', 'SUSPENDED') DEFAULT 'ACTIVE',
+    -- Set while a member is below their tier's threshold: the downgrade takes effect then
+    tier_downgrade_after DATETIME DEFAULT NULL,
+    -- Idempotency-Key of the request that created the customer, if it sent one
+    idempotency_key VARCHAR(100) DEFAULT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    UNIQUE KEY uk_customer_idempotency_key (idempotency_key),
     INDEX idx_customer_id (customer_id),
     INDEX idx_email (email_address),
     INDEX idx_loyalty_tier (loyalty_tier),
@@ -35,14 +40,33 @@ CREATE TABLE IF NOT EXISTS points_transactions (
     transaction_date DATETIME DEFAULT CURRENT_TIMESTAMP,
     description TEXT,
     reference_order_id VARCHAR(100),
+    -- Idempotency-Key of the request that created the transaction, if it sent one
+    idempotency_key VARCHAR(100) DEFAULT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (customer_id) REFERENCES customers(customer_id) ON DELETE CASCADE,
+    UNIQUE KEY uk_transaction_idempotency_key (idempotency_key),
     INDEX idx_transaction_id (transaction_id),
     INDEX idx_customer_id (customer_id),
     INDEX idx_transaction_type (transaction_type),
     INDEX idx_transaction_date (transaction_date)
 );
 
+-- Create points_lots table: the unused part of each earning, consumed oldest-expiring first by
+-- redemptions and written off as EXPIRE transactions once past expiration_date.
+-- Lots are deleted when used up or expired; points_transactions keeps the history.
+CREATE TABLE IF NOT EXISTS points_lots (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    customer_id VARCHAR(50) NOT NULL,
+    transaction_id VARCHAR(50),
+    points_earned INT NOT NULL,
+    points_remaining INT NOT NULL,
+    earned_date DATETIME NOT NULL,
+    expiration_date DATETIME NOT NULL,
+    FOREIGN KEY (customer_id) REFERENCES customers(customer_id) ON DELETE CASCADE,
+    INDEX idx_lot_customer_expiration (customer_id, expiration_date),
+    INDEX idx_lot_expiration (expiration_date, customer_id)
+);
+
 -- Create rewards table
 CREATE TABLE IF NOT EXISTS rewards (
     id INT AUTO_INCREMENT PRIMARY KEY,
@@ -53,6 +77,10 @@ CREATE TABLE IF NOT EXISTS rewards (
     category ENUM('MERCHANDISE', 'DISCOUNT', 'EXPERIENCE', 'GIFT_CARD') DEFAULT 'MERCHANDISE',
     is_active BOOLEAN DEFAULT TRUE,
     stock_quantity INT DEFAULT NULL,
+    reward_type VARCHAR(50),
+    reward_value VARCHAR(100),
+    availability_count INT DEFAULT 0,
+    expiration_date DATETIME DEFAULT NULL,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
     INDEX idx_reward_id (reward_id),
@@ -61,6 +89,76 @@ CREATE TABLE IF NOT EXISTS rewards (
     INDEX idx_is_active (is_active)
 );
 
+-- Upgrade existing databases: a schema created by an earlier version of this script is brought up
+-- to date by re-running the whole script. Every statement here is a no-op on a current schema.
+-- New tables (points_lots) come from the CREATE TABLE IF NOT EXISTS statements above. MySQL 8.0 has
+-- no ADD COLUMN IF NOT EXISTS, so new columns and keys are added below only after checking
+-- information_schema.
+
+-- customers.tier_downgrade_after (loyalty tiers, tiers.enabled)
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+               WHERE table_schema = DATABASE() AND table_name = 'customers' AND column_name = 'tier_downgrade_after') = 0,
+              'ALTER TABLE customers ADD COLUMN tier_downgrade_after DATETIME DEFAULT NULL AFTER account_status',
+              'DO 0');
+PREPARE ddl_stmt FROM @ddl;
+EXECUTE ddl_stmt;
+DEALLOCATE PREPARE ddl_stmt;
+
+-- customers.idempotency_key and points_transactions.idempotency_key (Idempotency-Key header)
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+               WHERE table_schema = DATABASE() AND table_name = 'customers' AND column_name = 'idempotency_key') = 0,
+              'ALTER TABLE customers ADD COLUMN idempotency_key VARCHAR(100) DEFAULT NULL AFTER tier_downgrade_after, ADD UNIQUE KEY uk_customer_idempotency_key (idempotency_key)',
+              'DO 0');
+PREPARE ddl_stmt FROM @ddl;
+EXECUTE ddl_stmt;
+DEALLOCATE PREPARE ddl_stmt;
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+               WHERE table_schema = DATABASE() AND table_name = 'points_transactions' AND column_name = 'idempotency_key') = 0,
+              'ALTER TABLE points_transactions ADD COLUMN idempotency_key VARCHAR(100) DEFAULT NULL AFTER reference_order_id, ADD UNIQUE KEY uk_transaction_idempotency_key (idempotency_key)',
+              'DO 0');
+PREPARE ddl_stmt FROM @ddl;
+EXECUTE ddl_stmt;
+DEALLOCATE PREPARE ddl_stmt;
+
+-- rewards.reward_type, reward_value, availability_count and expiration_date (reward catalog, redemption)
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+               WHERE table_schema = DATABASE() AND table_name = 'rewards' AND column_name = 'reward_type') = 0,
+              'ALTER TABLE rewards ADD COLUMN reward_type VARCHAR(50) AFTER stock_quantity',
+              'DO 0');
+PREPARE ddl_stmt FROM @ddl;
+EXECUTE ddl_stmt;
+DEALLOCATE PREPARE ddl_stmt;
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+               WHERE table_schema = DATABASE() AND table_name = 'rewards' AND column_name = 'reward_value') = 0,
+              'ALTER TABLE rewards ADD COLUMN reward_value VARCHAR(100) AFTER reward_type',
+              'DO 0');
+PREPARE ddl_stmt FROM @ddl;
+EXECUTE ddl_stmt;
+DEALLOCATE PREPARE ddl_stmt;
+
+-- Rewards that predate availability_count keep what they could be redeemed for: their stock, or
+-- 1000 redemptions (as seeded for REW302) when they have no separate inventory
+SET @add_availability = (SELECT COUNT(*) FROM information_schema.columns
+                         WHERE table_schema = DATABASE() AND table_name = 'rewards' AND column_name = 'availability_count') = 0;
+SET @ddl = IF(@add_availability, 'ALTER TABLE rewards ADD COLUMN availability_count INT DEFAULT 0 AFTER reward_value', 'DO 0');
+PREPARE ddl_stmt FROM @ddl;
+EXECUTE ddl_stmt;
+DEALLOCATE PREPARE ddl_stmt;
+SET @ddl = IF(@add_availability, 'UPDATE rewards SET availability_count = COALESCE(stock_quantity, 1000)', 'DO 0');
+PREPARE ddl_stmt FROM @ddl;
+EXECUTE ddl_stmt;
+DEALLOCATE PREPARE ddl_stmt;
+
+SET @ddl = IF((SELECT COUNT(*) FROM information_schema.columns
+               WHERE table_schema = DATABASE() AND table_name = 'rewards' AND column_name = 'expiration_date') = 0,
+              'ALTER TABLE rewards ADD COLUMN expiration_date DATETIME DEFAULT NULL AFTER availability_count',
+              'DO 0');
+PREPARE ddl_stmt FROM @ddl;
+EXECUTE ddl_stmt;
+DEALLOCATE PREPARE ddl_stmt;
+
 -- Insert sample data
 INSERT INTO customers (customer_id, first_name, last_name, email_address, phone_number, loyalty_tier, total_lifetime_points, current_available_points)
 VALUES
@@ -79,13 +177,35 @@ VALUES
 ON DUPLICATE KEY UPDATE
     description = VALUES(description);
 
--- Insert sample rewards
-INSERT INTO rewards (reward_id, reward_name, description, points_required, category, stock_quantity)
+-- Insert sample rewards. availability_count caps redemptions of every reward, including those
+-- without separate inventory (stock_quantity NULL): it must be positive for any to succeed.
+INSERT INTO rewards (reward_id, reward_name, description, points_required, category, stock_quantity, reward_type, reward_value, availability_count)
 VALUES
-    ('REW301', 'Customer Loyalty Premium Jacket', 'High-quality waterproof jacket', 500, 'MERCHANDISE', 50),
-    ('REW302', '$10 Store Credit', 'Discount voucher for next purchase', 100, 'DISCOUNT', NULL),
-    ('REW303', 'VIP Customer Event', 'Exclusive access to seasonal preview', 1000, 'EXPERIENCE', 25)
+    ('REW301', 'Customer Loyalty Premium Jacket', 'High-quality waterproof jacket', 500, 'MERCHANDISE', 50, 'PRODUCT', 'Jacket', 50),
+    ('REW302', '$10 Store Credit', 'Discount voucher for next purchase', 100, 'DISCOUNT', NULL, 'DISCOUNT', '10.00', 1000),
+    ('REW303', 'VIP Customer Event', 'Exclusive access to seasonal preview', 1000, 'EXPERIENCE', 25, 'EXPERIENCE', 'Event pass', 25)
 ON DUPLICATE KEY UPDATE
     reward_name = VALUES(reward_name),
     description = VALUES(description),
     points_required = VALUES(points_required);
+
+-- Backfill the materialized points balances on customers from the transaction history.
+-- createTransaction keeps these columns up to date from here on.
+UPDATE customers c
+LEFT JOIN (
+    SELECT customer_id,
+           SUM(CASE WHEN transaction_type IN ('EARN', 'EARNED', 'ADJUST', 'SOCIAL_MEDIA_BONUS') THEN points_amount ELSE 0 END) AS earned,
+           SUM(CASE WHEN transaction_type IN ('REDEEM', 'REDEEMED', 'EXPIRE') THEN points_amount ELSE 0 END) AS deducted
+    FROM points_transactions
+    GROUP BY customer_id
+) t ON t.customer_id = c.customer_id
+SET c.total_lifetime_points = COALESCE(t.earned, 0),
+    c.current_available_points = COALESCE(t.earned, 0) - COALESCE(t.deducted, 0);
+
+-- Opening lots: available points that predate lot tracking get one lot per customer,
+-- expiring 720 days from now (the expiration period of new earnings).
+INSERT INTO points_lots (customer_id, transaction_id, points_earned, points_remaining, earned_date, expiration_date)
+SELECT c.customer_id, NULL, c.current_available_points, c.current_available_points, NOW(), TIMESTAMPADD(DAY, 720, NOW())
+FROM customers c
+WHERE c.current_available_points > 0
+  AND NOT EXISTS (SELECT 1 FROM points_lots l WHERE l.customer_id = c.customer_id);
@@ -0,0 +1,64 @@
+package com.enterprise.rewards.cache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BoundedCache lookups and writes with all available cores using one cache at once, as the
+ * request threads do with the customer cache. Use -t 1 for the uncontended cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class BoundedCacheBenchmark {
+
+    @Param({"10000"})
+    public int keys;
+
+    private BoundedCache<String, String> cache;
+    private String[] keyNames;
+
+    @Setup
+    public void setUp() {
+        cache = new BoundedCache<>("benchmark", 2 * keys, 0, 600000, (key, value) -> 64);
+        keyNames = new String[keys];
+        for (int i = 0; i < keys; i++) {
+            keyNames[i] = "CUST" + i;
+            cache.put(keyNames[i], "value" + i);
+        }
+    }
+
+    @Benchmark
+    public String get() {
+        return cache.get(keyNames[ThreadLocalRandom.current().nextInt(keys)]);
+    }
+
+    // One put for every nine gets
+    @Benchmark
+    public String getAndPut() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String key = keyNames[random.nextInt(keys)];
+        if (random.nextInt(10) == 0) {
+            cache.put(key, key);
+            return key;
+        }
+        return cache.get(key);
+    }
+}
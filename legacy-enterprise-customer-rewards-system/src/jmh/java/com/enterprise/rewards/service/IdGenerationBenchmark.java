@@ -0,0 +1,35 @@
+package com.enterprise.rewards.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Customer and transaction id generation with all available cores generating at once,
+ * which exposes contention on the generator's shared sequence. Use -t 1 for the uncontended cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class IdGenerationBenchmark {
+
+    @Benchmark
+    public String generateCustomerId() {
+        return EntityIds.newCustomerId();
+    }
+
+    @Benchmark
+    public String generateTransactionId() {
+        return EntityIds.newTransactionId();
+    }
+}
@@ -0,0 +1,89 @@
+package com.enterprise.rewards.service;
+
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.enterprise.rewards.model.Customer;
+import com.enterprise.rewards.model.PointsTransaction;
+
+/**
+ * DatabaseDataService row mapping against an in-memory ResultSet, so only the mapping
+ * itself is measured, not the driver.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    private final ResultSet customerRow = row(new Object[][] {
+            {"customer_id", "CUST001234"},
+            {"first_name", "Sarah"},
+            {"last_name", "Johnson"},
+            {"email_address", "sarah.johnson@email.com"},
+            {"phone_number", "555-0123"},
+            {"registration_date", new Timestamp(1753443405000L)},
+            {"loyalty_tier", "GOLD"},
+            {"account_status", "ACTIVE"},
+            {"total_lifetime_points", 2900},
+            {"current_available_points", 600}});
+
+    private final ResultSet transactionRow = row(new Object[][] {
+            {"transaction_id", "TXN-4F1C2A9B7D3E"},
+            {"customer_id", "CUST001234"},
+            {"transaction_type", "EARN"},
+            {"points_amount", 150},
+            {"description", "Purchase reward points"},
+            {"transaction_date", new Timestamp(1753443405000L)}});
+
+    @Benchmark
+    public Customer mapRowToCustomer() throws SQLException {
+        return DatabaseDataService.mapRowToCustomer(customerRow);
+    }
+
+    @Benchmark
+    public PointsTransaction mapRowToPointsTransaction() throws SQLException {
+        return DatabaseDataService.mapRowToPointsTransaction(transactionRow);
+    }
+
+    // A ResultSet positioned on one row; only the by-label getters the mappers use are answered
+    private static ResultSet row(Object[][] columns) {
+        final Map<String, Object> values = new HashMap<>();
+        for (Object[] column : columns) {
+            values.put((String) column[0], column[1]);
+        }
+        return (ResultSet) Proxy.newProxyInstance(RowMappingBenchmark.class.getClassLoader(),
+                new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                    Object value = args != null && args.length == 1 && args[0] instanceof String ? values.get(args[0]) : null;
+                    switch (method.getName()) {
+                        case "getString":
+                            return value != null ? value.toString() : null;
+                        case "getInt":
+                            return value != null ? ((Number) value).intValue() : 0;
+                        case "getTimestamp":
+                            return value;
+                        case "wasNull":
+                            return false;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,66 @@
+package com.enterprise.rewards.servlet;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.enterprise.rewards.model.Customer;
+
+/**
+ * XML serialization of customers as done by CustomerServiceServlet for single and list responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CustomerXmlBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int customers;
+
+    private final CustomerServiceServlet servlet = new CustomerServiceServlet();
+    private List<Customer> list;
+
+    @Setup
+    public void setUp() {
+        list = new ArrayList<>(customers);
+        for (int i = 0; i < customers; i++) {
+            list.add(customer(i));
+        }
+    }
+
+    @Benchmark
+    public String singleCustomer() {
+        return servlet.generateCustomerXml(list.get(0));
+    }
+
+    @Benchmark
+    public String customerList() {
+        return servlet.generateCustomersListXml(list, "Q1VTVDAwMTIzNQ");
+    }
+
+    static Customer customer(int i) {
+        Customer c = new Customer(String.format("CUST%06d", i), "Sarah", "Johnson",
+                "sarah.johnson" + i + "@email.com", "555-0123");
+        c.setRegistrationDate(new Date(1753443405000L));
+        c.setLoyaltyTier("GOLD");
+        c.setTotalLifetimePoints(2900);
+        c.setCurrentAvailablePoints(600);
+        return c;
+    }
+}
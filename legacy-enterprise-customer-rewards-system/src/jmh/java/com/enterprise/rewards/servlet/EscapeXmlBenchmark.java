@@ -0,0 +1,37 @@
+package com.enterprise.rewards.servlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * RewardServiceServlet.escapeXml on text without and with characters that need escaping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapeXmlBenchmark {
+
+    @Param({"Free coffee at any participating store",
+            "Dinner for two <Chef's table> & \"dessert\""})
+    public String text;
+
+    private final RewardServiceServlet servlet = new RewardServiceServlet();
+
+    @Benchmark
+    public String escapeXml() {
+        return servlet.escapeXml(text);
+    }
+}
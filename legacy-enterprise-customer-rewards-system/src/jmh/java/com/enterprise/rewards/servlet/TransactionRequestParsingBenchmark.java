@@ -0,0 +1,57 @@
+package com.enterprise.rewards.servlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing of a POST /service/transactions body as done by TransactionServiceServlet,
+ * for both accepted content types.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionRequestParsingBenchmark {
+
+    // Same elements TransactionServiceServlet reads
+    private static final String[] FIELDS = {"customerId", "transactionType", "pointsAmount", "amount", "description"};
+
+    private final byte[] xml = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<transaction>\n"
+            + "  <customerId>CUST001234</customerId>\n"
+            + "  <transactionDate>2025-07-26 12:00:00.0</transactionDate>\n"
+            + "  <transactionType>ADJUST</transactionType>\n"
+            + "  <pointsAmount>200</pointsAmount>\n"
+            + "  <description>Manual adjustment</description>\n"
+            + "</transaction>").getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] json = ("{\"customerId\":\"CUST001234\",\"transactionDate\":\"2025-07-26T12:00:00Z\","
+            + "\"transactionType\":\"ADJUST\",\"pointsAmount\":200,\"description\":\"Manual adjustment\"}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public Map<String, String> xml() throws IOException {
+        return XmlRequestDecoder.readFields(FakeRequests.withBody(xml, "application/xml"),
+                XmlRequestDecoder.DEFAULT_MAX_BYTES, FIELDS);
+    }
+
+    @Benchmark
+    public Map<String, String> json() throws IOException {
+        return JsonRequestDecoder.readFields(FakeRequests.withBody(json, JsonSupport.CONTENT_TYPE),
+                XmlRequestDecoder.DEFAULT_MAX_BYTES, FIELDS);
+    }
+}
@@ -0,0 +1,145 @@
+package com.enterprise.rewards.loadtest;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import com.enterprise.rewards.jdbc.StatementProfiler;
+import com.enterprise.rewards.jdbc.StatementStatistics;
+import com.enterprise.rewards.service.DatabaseDataService;
+
+/**
+ * Regression test for the customer list round trips. Listing all customers used to run one
+ * query per customer on top of the list query. The test fills one H2 database (MySQL mode)
+ * with N customers and another with 10N. It lists both through DatabaseDataService, with the
+ * StatementProfiler counting every executed statement, and requires the same statement count
+ * for both sizes. getAllCustomers and streamAllCustomers are both checked. Exits with status 1
+ * if any check fails.
+ *
+ * Run with:
+ *   mvn -P loadtest test-compile exec:exec -Dloadtest.main=com.enterprise.rewards.loadtest.CustomerListStatementCountTest
+ *
+ * Options are name=value arguments (-Dloadtest.args="..."):
+ *   customers  customers in the smaller database, N (200)
+ *   history    transactions per customer (3)
+ */
+public class CustomerListStatementCountTest {
+
+    private static final String DB_URL_FORMAT = "jdbc:h2:mem:%s;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String DB_USER = "loadtest";
+    private static final String DB_PASSWORD = "loadtest";
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int customers = intOption(options, "customers", 200);
+        int history = intOption(options, "history", 3);
+
+        List<String> failures = new ArrayList<>();
+        long[] small = countStatements("loyalty_system_small", customers, history, failures);
+        long[] large = countStatements("loyalty_system_large", 10 * customers, history, failures);
+        String[] calls = {"getAllCustomers", "streamAllCustomers"};
+        for (int i = 0; i < calls.length; i++) {
+            System.out.println("[INFO] " + calls[i] + ": " + small[i] + " statements for " + customers + " customers, "
+                    + large[i] + " for " + 10 * customers);
+            if (small[i] != large[i]) {
+                failures.add(calls[i] + " ran " + small[i] + " statements for " + customers + " customers but "
+                        + large[i] + " for " + 10 * customers + ": its round trips grow with the number of customers");
+            }
+        }
+
+        if (failures.isEmpty()) {
+            System.out.println("[INFO] Customer lists take a fixed number of statements: all checks passed");
+        } else {
+            for (String failure : failures) {
+                System.err.println("[ERROR] " + failure);
+            }
+            System.exit(1);
+        }
+    }
+
+    // Statements executed by one getAllCustomers and one streamAllCustomers call on a fresh database
+    private static long[] countStatements(String database, int customers, int history, List<String> failures)
+            throws Exception {
+        String url = String.format(DB_URL_FORMAT, database);
+        Map<String, String> params = new HashMap<>();
+        params.put("db.url", url);
+        params.put("db.user", DB_USER);
+        params.put("db.password", DB_PASSWORD);
+        params.put("db.profile.enabled", "true");
+        Map<String, Object> attributes = new HashMap<>();
+        // Kept open so the in-memory database outlives the data service's pool
+        try (Connection seedConnection = DatabaseSeeder.connect(url, DB_USER, DB_PASSWORD)) {
+            DatabaseSeeder.runScript(seedConnection, new File("init.sql"));
+            DatabaseSeeder.addCustomers(seedConnection, customers, history);
+            // init.sql adds two sample customers
+            int expected = customers + 2;
+            try (DatabaseDataService dataService = new DatabaseDataService(servletContext(params, attributes))) {
+                StatementProfiler profiler = (StatementProfiler) attributes.get(StatementProfiler.CONTEXT_ATTRIBUTE);
+                if (profiler == null) {
+                    throw new IllegalStateException("Statement profiler is not enabled");
+                }
+                long before = executions(profiler);
+                int listed = dataService.getAllCustomers().size();
+                long afterList = executions(profiler);
+                int streamed = dataService.streamAllCustomers(customer -> { });
+                long afterStream = executions(profiler);
+                if (listed != expected) {
+                    failures.add("getAllCustomers returned " + listed + " customers instead of " + expected);
+                }
+                if (streamed != expected) {
+                    failures.add("streamAllCustomers returned " + streamed + " customers instead of " + expected);
+                }
+                return new long[] {afterList - before, afterStream - afterList};
+            }
+        }
+    }
+
+    private static long executions(StatementProfiler profiler) {
+        long total = 0;
+        for (StatementStatistics statement : profiler.getTopStatements(Integer.MAX_VALUE)) {
+            total += statement.getExecutions();
+        }
+        return total;
+    }
+
+    // Just enough of a ServletContext for DatabaseDataService: init parameters and attributes
+    private static ServletContext servletContext(Map<String, String> params, Map<String, Object> attributes) {
+        return (ServletContext) Proxy.newProxyInstance(ServletContext.class.getClassLoader(),
+                new Class<?>[] {ServletContext.class}, (proxy, method, methodArgs) -> {
+                    switch (method.getName()) {
+                        case "getInitParameter":
+                            return params.get((String) methodArgs[0]);
+                        case "getAttribute":
+                            return attributes.get((String) methodArgs[0]);
+                        case "setAttribute":
+                            attributes.put((String) methodArgs[0], methodArgs[1]);
+                            return null;
+                        case "removeAttribute":
+                            attributes.remove((String) methodArgs[0]);
+                            return null;
+                        case "toString":
+                            return "CustomerListStatementCountTest context";
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+}
@@ -0,0 +1,134 @@
+package com.enterprise.rewards.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Creates the schema in the embedded database from init.sql and adds generated customers
+ * with some transaction history, so the load test runs against realistic table sizes.
+ */
+final class DatabaseSeeder {
+
+    private static final Pattern CREATE_TABLE = Pattern.compile("^CREATE TABLE (?:IF NOT EXISTS )?(\\w+)", Pattern.CASE_INSENSITIVE);
+    // A named inline index or key: INDEX idx_x (, UNIQUE KEY uk_x (
+    private static final Pattern INDEX_NAME = Pattern.compile("\\b(INDEX|KEY) (\\w+) \\(", Pattern.CASE_INSENSITIVE);
+
+    private DatabaseSeeder() {}
+
+    /**
+     * Runs init.sql statement by statement. USE is skipped (the database is chosen by the URL);
+     * statements the embedded database does not understand are reported and skipped. Index names
+     * in CREATE TABLE are prefixed with the table name: MySQL scopes them to the table, H2 to the
+     * schema, where customers and points_transactions would both have an idx_customer_id.
+     */
+    static void runScript(Connection conn, File script) throws IOException, SQLException {
+        int executed = 0;
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : splitStatements(new String(Files.readAllBytes(script.toPath()), StandardCharsets.UTF_8))) {
+                if (sql.toUpperCase().startsWith("USE ")) {
+                    continue;
+                }
+                try {
+                    stmt.execute(qualifyIndexNames(sql));
+                    executed++;
+                } catch (SQLException e) {
+                    String firstLine = sql.split("\n", 2)[0];
+                    System.out.println("[WARN] Skipped " + script.getName() + " statement '" + firstLine + "': " + e.getMessage());
+                }
+            }
+        }
+        System.out.println("[INFO] Ran " + executed + " statements from " + script);
+    }
+
+    /**
+     * Adds customers LOAD000000..LOADnnnnnn, each with historySize EARN transactions of 100 points.
+     * Returns the generated customer ids.
+     */
+    static List<String> addCustomers(Connection conn, int count, int historySize) throws SQLException {
+        List<String> ids = new ArrayList<>(count);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement customer = conn.prepareStatement(
+                "INSERT INTO customers (customer_id, first_name, last_name, email_address, phone_number, loyalty_tier, "
+                        + "total_lifetime_points, current_available_points) VALUES (?, ?, ?, ?, ?, ?, ?, ?)");
+             PreparedStatement txn = conn.prepareStatement(
+                "INSERT INTO points_transactions (transaction_id, customer_id, transaction_type, points_amount, description) "
+                        + "VALUES (?, ?, 'EARN', 100, 'Seeded purchase')")) {
+            for (int i = 0; i < count; i++) {
+                String id = String.format("LOAD%06d", i);
+                ids.add(id);
+                customer.setString(1, id);
+                customer.setString(2, "Load");
+                customer.setString(3, "Customer" + i);
+                customer.setString(4, "load" + i + "@example.com");
+                customer.setString(5, "555-" + (1000 + i % 9000));
+                customer.setString(6, i % 10 == 0 ? "GOLD" : i % 3 == 0 ? "SILVER" : "BRONZE");
+                customer.setInt(7, 100 * historySize);
+                customer.setInt(8, 100 * historySize);
+                customer.addBatch();
+                for (int t = 0; t < historySize; t++) {
+                    txn.setString(1, "TXN-LOAD-" + i + "-" + t);
+                    txn.setString(2, id);
+                    txn.addBatch();
+                }
+                if (i % 500 == 499) {
+                    customer.executeBatch();
+                    txn.executeBatch();
+                }
+            }
+            customer.executeBatch();
+            txn.executeBatch();
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        System.out.println("[INFO] Seeded " + count + " customers with " + historySize + " transactions each");
+        return ids;
+    }
+
+    static Connection connect(String url, String user, String password) throws SQLException {
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    private static String qualifyIndexNames(String sql) {
+        Matcher table = CREATE_TABLE.matcher(sql);
+        if (!table.find()) {
+            return sql;
+        }
+        return INDEX_NAME.matcher(sql).replaceAll("$1 " + table.group(1) + "_$2 (");
+    }
+
+    // Splits on semicolons at the end of a line, dropping -- comment lines
+    private static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : script.split("\r?\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            if (trimmed.endsWith(";")) {
+                current.append(trimmed, 0, trimmed.length() - 1);
+                statements.add(current.toString().trim());
+                current.setLength(0);
+            } else {
+                current.append(trimmed).append('\n');
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+}
@@ -0,0 +1,71 @@
+package com.enterprise.rewards.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.webresources.DirResourceSet;
+import org.apache.catalina.webresources.StandardRoot;
+import org.apache.tomcat.util.descriptor.web.ApplicationParameter;
+import org.apache.tomcat.util.scan.StandardJarScanner;
+
+/**
+ * The web application running in an embedded Tomcat on a free local port, served straight from
+ * src/main/webapp and target/classes so no WAR has to be built.
+ */
+final class EmbeddedServer implements AutoCloseable {
+
+    static final String CONTEXT_PATH = "/enterprise-customer-rewards-system";
+
+    private final Tomcat tomcat;
+
+    private EmbeddedServer(Tomcat tomcat) {
+        this.tomcat = tomcat;
+    }
+
+    /**
+     * Starts Tomcat with one Basic Auth user in the admin role. contextParams are added to
+     * (and take precedence over) the ones in web.xml.
+     */
+    static EmbeddedServer start(File webappDir, File classesDir, Map<String, String> contextParams,
+                                String user, String password) throws IOException, LifecycleException {
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("rewards-loadtest").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector();
+        tomcat.addUser(user, password);
+        tomcat.addRole(user, "admin");
+
+        Context ctx = tomcat.addWebapp(CONTEXT_PATH, webappDir.getAbsolutePath());
+        WebResourceRoot resources = new StandardRoot(ctx);
+        resources.addPreResources(new DirResourceSet(resources, "/WEB-INF/classes", classesDir.getAbsolutePath(), "/"));
+        ctx.setResources(resources);
+        // Everything the webapp needs is already on the class path; skip TLD and fragment scanning
+        ((StandardJarScanner) ctx.getJarScanner()).setScanClassPath(false);
+        for (Map.Entry<String, String> param : contextParams.entrySet()) {
+            ApplicationParameter parameter = new ApplicationParameter();
+            parameter.setName(param.getKey());
+            parameter.setValue(param.getValue());
+            // Not overridable by a web.xml context-param of the same name
+            parameter.setOverride(false);
+            ctx.addApplicationParameter(parameter);
+        }
+        tomcat.start();
+        return new EmbeddedServer(tomcat);
+    }
+
+    String getBaseUrl() {
+        return "http://localhost:" + tomcat.getConnector().getLocalPort() + CONTEXT_PATH;
+    }
+
+    @Override
+    public void close() throws LifecycleException {
+        tomcat.stop();
+        tomcat.destroy();
+    }
+}
@@ -0,0 +1,277 @@
+package com.enterprise.rewards.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.enterprise.rewards.metrics.LatencyHistogram;
+
+/**
+ * End-to-end load test. Starts the webapp in embedded Tomcat against an in-memory H2 database in
+ * MySQL mode seeded from init.sql, drives a weighted mix of service calls from concurrent clients,
+ * and prints throughput and latency percentiles per endpoint.
+ *
+ * Options are name=value arguments:
+ *   concurrency  client threads (16)
+ *   duration     measured seconds (30), after warmup seconds (5) that are not recorded
+ *   customers    generated customers (1000), each with history transactions (5)
+ *   mix          endpoint weights (customer:50,rewards:20,transaction:20,list:10)
+ *   listLimit    page size of the list calls (50)
+ *   groupSizes   group commit sweep, e.g. 1,16,128: one run per db.groupCommit.maxGroupSize, each on a
+ *                fresh database, followed by a table of transaction throughput and latency per size
+ *   set.NAME     context-param NAME for the webapp, e.g. set.dataService.cache.enabled=false
+ */
+public class LoadTest {
+
+    private static final String DB_URL_FORMAT = "jdbc:h2:mem:%s;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String DB_USER = "loadtest";
+    private static final String DB_PASSWORD = "loadtest";
+    private static final List<String> ENDPOINTS = Arrays.asList("customer", "rewards", "transaction", "list");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        Map<String, String> contextParams = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+            String name = arg.substring(0, eq);
+            if (name.startsWith("set.")) {
+                contextParams.put(name.substring(4), arg.substring(eq + 1));
+            } else {
+                options.put(name, arg.substring(eq + 1));
+            }
+        }
+        String groupSizes = options.get("groupSizes");
+        if (groupSizes == null) {
+            run(options, contextParams, String.format(DB_URL_FORMAT, "loyalty_system"));
+            return;
+        }
+        List<String> summary = new ArrayList<>();
+        for (String size : groupSizes.split(",")) {
+            int groupSize = Integer.parseInt(size.trim());
+            Map<String, String> params = new LinkedHashMap<>(contextParams);
+            params.put("db.groupCommit.enabled", "true");
+            params.put("db.groupCommit.maxGroupSize", String.valueOf(groupSize));
+            System.out.println("[INFO] Group commit with maxGroupSize " + groupSize);
+            for (Endpoint endpoint : run(options, params, String.format(DB_URL_FORMAT, "loyalty_system_group" + groupSize))) {
+                if (endpoint.name.equals("transaction")) {
+                    LatencyHistogram.Snapshot s = endpoint.latency.snapshot();
+                    summary.add(String.format("%-12d %10.1f %8d %10.2f %10.2f %10.2f",
+                            groupSize, (double) s.getCount() / intOption(options, "duration", 30), endpoint.errors.sum(),
+                            millis(s.getPercentileNanos(50)), millis(s.getPercentileNanos(99)), millis(s.getPercentileNanos(99.9))));
+                }
+            }
+        }
+        System.out.println();
+        System.out.println(String.format("%-12s %10s %8s %10s %10s %10s", "group size", "txn/s", "errors", "p50 ms", "p99 ms", "p999 ms"));
+        for (String line : summary) {
+            System.out.println(line);
+        }
+    }
+
+    // One run against a fresh database at dbUrl; returns the endpoints with their recorded latencies
+    private static List<Endpoint> run(Map<String, String> options, Map<String, String> contextParams, String dbUrl)
+            throws Exception {
+        int concurrency = intOption(options, "concurrency", 16);
+        int durationSeconds = intOption(options, "duration", 30);
+        int warmupSeconds = intOption(options, "warmup", 5);
+        int customerCount = intOption(options, "customers", 1000);
+        int historySize = intOption(options, "history", 5);
+        int listLimit = intOption(options, "listLimit", 50);
+        String mix = options.containsKey("mix") ? options.get("mix") : "customer:50,rewards:20,transaction:20,list:10";
+
+        contextParams.put("db.url", dbUrl);
+        contextParams.put("db.user", DB_USER);
+        contextParams.put("db.password", DB_PASSWORD);
+
+        // Kept open for the whole run so the in-memory database outlives the webapp's pool
+        try (Connection seedConnection = DatabaseSeeder.connect(dbUrl, DB_USER, DB_PASSWORD)) {
+            DatabaseSeeder.runScript(seedConnection, new File("init.sql"));
+            final List<String> customerIds = DatabaseSeeder.addCustomers(seedConnection, customerCount, historySize);
+
+            try (EmbeddedServer server = EmbeddedServer.start(new File("src/main/webapp"), new File("target/classes"),
+                    contextParams, DB_USER, DB_PASSWORD)) {
+                String baseUrl = server.getBaseUrl();
+                String authorization = "Basic " + Base64.getEncoder().encodeToString(
+                        (DB_USER + ":" + DB_PASSWORD).getBytes(StandardCharsets.UTF_8));
+                List<Endpoint> endpoints = parseMix(mix);
+                System.out.println("[INFO] " + concurrency + " clients against " + baseUrl + " for "
+                        + warmupSeconds + "s warmup + " + durationSeconds + "s, mix " + mix);
+
+                long start = System.nanoTime();
+                long measureFrom = start + warmupSeconds * 1000000000L;
+                long end = measureFrom + durationSeconds * 1000000000L;
+                List<Thread> clients = new ArrayList<>();
+                for (int i = 0; i < concurrency; i++) {
+                    Thread client = new Thread(() -> runClient(baseUrl, authorization, endpoints, customerIds,
+                            listLimit, measureFrom, end), "loadtest-client-" + i);
+                    client.start();
+                    clients.add(client);
+                }
+                for (Thread client : clients) {
+                    client.join();
+                }
+                report(endpoints, durationSeconds);
+                return endpoints;
+            }
+        }
+    }
+
+    private static void runClient(String baseUrl, String authorization, List<Endpoint> endpoints,
+                                  List<String> customerIds, int listLimit, long measureFrom, long end) {
+        int totalWeight = 0;
+        for (Endpoint endpoint : endpoints) {
+            totalWeight += endpoint.weight;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        byte[] buffer = new byte[8192];
+        long now;
+        while ((now = System.nanoTime()) < end) {
+            int pick = random.nextInt(totalWeight);
+            Endpoint endpoint = endpoints.get(0);
+            for (Endpoint candidate : endpoints) {
+                pick -= candidate.weight;
+                if (pick < 0) {
+                    endpoint = candidate;
+                    break;
+                }
+            }
+            String customerId = customerIds.get(random.nextInt(customerIds.size()));
+            boolean ok;
+            long started = System.nanoTime();
+            try {
+                ok = call(baseUrl, authorization, endpoint.name, customerId, listLimit, buffer);
+            } catch (IOException e) {
+                ok = false;
+            }
+            if (now >= measureFrom) {
+                endpoint.latency.recordSince(started);
+                if (!ok) {
+                    endpoint.errors.increment();
+                }
+            }
+        }
+    }
+
+    // Returns whether the call succeeded with a 2xx status
+    private static boolean call(String baseUrl, String authorization, String endpoint, String customerId,
+                                int listLimit, byte[] buffer) throws IOException {
+        String path;
+        byte[] body = null;
+        switch (endpoint) {
+            case "customer":
+                path = "/service/customers/" + customerId;
+                break;
+            case "rewards":
+                path = "/service/rewards";
+                break;
+            case "list":
+                path = "/service/customers?limit=" + listLimit;
+                break;
+            case "transaction":
+                path = "/service/transactions";
+                body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<transaction><customerId>" + customerId
+                        + "</customerId><transactionType>EARN</transactionType><pointsAmount>10</pointsAmount>"
+                        + "<description>Load test</description></transaction>").getBytes(StandardCharsets.UTF_8);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown endpoint: " + endpoint);
+        }
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        conn.setRequestProperty("Authorization", authorization);
+        if (body != null) {
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/xml");
+            conn.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = conn.getResponseCode();
+        // Drain the body so the keep-alive connection is reused
+        InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+        if (in != null) {
+            try {
+                while (in.read(buffer) >= 0) {
+                    // discard
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return status >= 200 && status < 300;
+    }
+
+    private static void report(List<Endpoint> endpoints, int durationSeconds) {
+        System.out.println();
+        System.out.println(String.format("%-12s %10s %8s %10s %10s %10s %10s %10s",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        long totalRequests = 0;
+        for (Endpoint endpoint : endpoints) {
+            LatencyHistogram.Snapshot s = endpoint.latency.snapshot();
+            totalRequests += s.getCount();
+            System.out.println(String.format("%-12s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f",
+                    endpoint.name, s.getCount(), endpoint.errors.sum(), (double) s.getCount() / durationSeconds,
+                    millis(s.getPercentileNanos(50)), millis(s.getPercentileNanos(99)),
+                    millis(s.getPercentileNanos(99.9)), millis(s.getMaxNanos())));
+        }
+        System.out.println(String.format("%-12s %10d %8s %10.1f", "total", totalRequests, "", (double) totalRequests / durationSeconds));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static List<Endpoint> parseMix(String mix) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] nameWeight = part.trim().split(":");
+            String name = nameWeight[0].trim();
+            if (!ENDPOINTS.contains(name) || nameWeight.length != 2) {
+                throw new IllegalArgumentException("Expected endpoint:weight with endpoint one of " + ENDPOINTS + ", got: " + part);
+            }
+            int weight = Integer.parseInt(nameWeight[1].trim());
+            if (weight > 0) {
+                endpoints.add(new Endpoint(name, weight));
+            }
+        }
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("Empty mix: " + mix);
+        }
+        return endpoints;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private static class Endpoint {
+        final String name;
+        final int weight;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+
+        Endpoint(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+    }
+}
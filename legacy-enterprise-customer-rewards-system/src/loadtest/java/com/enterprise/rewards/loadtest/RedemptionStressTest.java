@@ -0,0 +1,281 @@
+package com.enterprise.rewards.loadtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.enterprise.rewards.metrics.LatencyHistogram;
+
+/**
+ * Flash-drop stress test for POST /service/rewards/redeem. Starts the webapp in embedded Tomcat
+ * against an in-memory H2 database in MySQL mode, adds one hot reward with little stock, releases
+ * all redeemers at once and then checks the database: the reward must be sold exactly down to zero
+ * (never oversold), every 200 response must have one REDEEM transaction, and no customer may be
+ * charged for more than they redeemed or go below zero points. Exits with status 1 if any check fails.
+ *
+ * Run with:
+ *   mvn -P loadtest test-compile exec:exec -Dloadtest.main=com.enterprise.rewards.loadtest.RedemptionStressTest
+ *
+ * Options are name=value arguments (-Dloadtest.args="..."):
+ *   redeemers    concurrent client threads, one redemption each (2000)
+ *   stock        units of the hot reward (250)
+ *   price        points per unit (100)
+ *   perCustomer  redeemers sharing one customer (3); each customer can afford two units
+ *   set.NAME     context-param NAME for the webapp, e.g. set.db.redemption.reservations.enabled=false
+ */
+public class RedemptionStressTest {
+
+    private static final String DB_URL = "jdbc:h2:mem:loyalty_system;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final String DB_USER = "loadtest";
+    private static final String DB_PASSWORD = "loadtest";
+    private static final String REWARD_ID = "RWD-FLASH-DROP";
+    private static final int AFFORDABLE_UNITS = 2;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        Map<String, String> contextParams = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+            String name = arg.substring(0, eq);
+            if (name.startsWith("set.")) {
+                contextParams.put(name.substring(4), arg.substring(eq + 1));
+            } else {
+                options.put(name, arg.substring(eq + 1));
+            }
+        }
+        int redeemers = intOption(options, "redeemers", 2000);
+        int stock = intOption(options, "stock", 250);
+        int price = intOption(options, "price", 100);
+        int perCustomer = Math.max(1, intOption(options, "perCustomer", 3));
+        int customerCount = (redeemers + perCustomer - 1) / perCustomer;
+
+        contextParams.put("db.url", DB_URL);
+        contextParams.put("db.user", DB_USER);
+        contextParams.put("db.password", DB_PASSWORD);
+
+        List<String> failures = new ArrayList<>();
+        // Kept open for the whole run so the in-memory database outlives the webapp's pool
+        try (Connection seedConnection = DatabaseSeeder.connect(DB_URL, DB_USER, DB_PASSWORD)) {
+            DatabaseSeeder.runScript(seedConnection, new File("init.sql"));
+            // Seeded history is in units of 100 points
+            int historySize = (AFFORDABLE_UNITS * price + 99) / 100;
+            List<String> customerIds = DatabaseSeeder.addCustomers(seedConnection, customerCount, historySize);
+            addHotReward(seedConnection, stock, price);
+            Map<String, Integer> balancesBefore = readBalances(seedConnection);
+
+            Map<String, AtomicInteger> redeemedByCustomer = new ConcurrentHashMap<>();
+            Map<Integer, LongAdder> responses = new ConcurrentHashMap<>();
+            LongAdder ioErrors = new LongAdder();
+            LatencyHistogram latency = new LatencyHistogram();
+            long elapsedNanos;
+
+            try (EmbeddedServer server = EmbeddedServer.start(new File("src/main/webapp"), new File("target/classes"),
+                    contextParams, DB_USER, DB_PASSWORD)) {
+                String url = server.getBaseUrl() + "/service/rewards/redeem";
+                String authorization = "Basic " + Base64.getEncoder().encodeToString(
+                        (DB_USER + ":" + DB_PASSWORD).getBytes(StandardCharsets.UTF_8));
+                System.out.println("[INFO] " + redeemers + " redeemers (" + customerCount + " customers) for "
+                        + stock + " units of " + REWARD_ID + " at " + price + " points");
+
+                CountDownLatch ready = new CountDownLatch(redeemers);
+                CountDownLatch go = new CountDownLatch(1);
+                List<Thread> clients = new ArrayList<>();
+                for (int i = 0; i < redeemers; i++) {
+                    String customerId = customerIds.get(i % customerCount);
+                    Thread client = new Thread(() -> {
+                        ready.countDown();
+                        try {
+                            go.await();
+                            long started = System.nanoTime();
+                            int status = redeem(url, authorization, customerId);
+                            latency.recordSince(started);
+                            responses.computeIfAbsent(status, s -> new LongAdder()).increment();
+                            if (status == HttpURLConnection.HTTP_OK) {
+                                redeemedByCustomer.computeIfAbsent(customerId, c -> new AtomicInteger()).incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            ioErrors.increment();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }, "redeemer-" + i);
+                    client.start();
+                    clients.add(client);
+                }
+                ready.await();
+                long start = System.nanoTime();
+                go.countDown();
+                for (Thread client : clients) {
+                    client.join();
+                }
+                elapsedNanos = System.nanoTime() - start;
+            }
+
+            long redeemed = responses.containsKey(HttpURLConnection.HTTP_OK) ? responses.get(HttpURLConnection.HTTP_OK).sum() : 0;
+            LatencyHistogram.Snapshot s = latency.snapshot();
+            System.out.println();
+            System.out.println("responses   " + responses.keySet().stream().sorted()
+                    .map(status -> status + "=" + responses.get(status).sum()).reduce((a, b) -> a + " " + b).orElse("none")
+                    + (ioErrors.sum() > 0 ? " io-errors=" + ioErrors.sum() : ""));
+            System.out.println(String.format("elapsed     %.1f ms, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    elapsedNanos / 1000000.0, millis(s.getPercentileNanos(50)), millis(s.getPercentileNanos(99)),
+                    millis(s.getMaxNanos())));
+
+            verify(seedConnection, stock, price, redeemed, ioErrors.sum(), Math.min(redeemers, customerCount * AFFORDABLE_UNITS),
+                    balancesBefore, redeemedByCustomer, failures);
+        }
+
+        if (failures.isEmpty()) {
+            System.out.println("[INFO] No overselling: all checks passed");
+        } else {
+            for (String failure : failures) {
+                System.err.println("[ERROR] " + failure);
+            }
+            System.exit(1);
+        }
+    }
+
+    private static void verify(Connection conn, int stock, int price, long redeemed, long ioErrors, int affordable,
+                               Map<String, Integer> balancesBefore, Map<String, AtomicInteger> redeemedByCustomer,
+                               List<String> failures) throws SQLException {
+        int availability;
+        int stockQuantity;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT availability_count, stock_quantity FROM rewards WHERE reward_id = ?")) {
+            stmt.setString(1, REWARD_ID);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                availability = rs.getInt(1);
+                stockQuantity = rs.getInt(2);
+            }
+        }
+        System.out.println("remaining   availability_count=" + availability + " stock_quantity=" + stockQuantity);
+        if (redeemed > stock) {
+            failures.add("Oversold: " + redeemed + " redemptions succeeded for " + stock + " units");
+        }
+        if (availability < 0 || stockQuantity < 0) {
+            failures.add("Negative stock: availability_count=" + availability + ", stock_quantity=" + stockQuantity);
+        }
+        if (availability != stock - redeemed || stockQuantity != stock - redeemed) {
+            failures.add("Stock does not match " + redeemed + " redemptions: availability_count=" + availability
+                    + ", stock_quantity=" + stockQuantity);
+        }
+        // Without transport errors every unit the customers can afford must have been sold
+        if (ioErrors == 0 && redeemed < Math.min(stock, affordable)) {
+            failures.add("Undersold: only " + redeemed + " of " + Math.min(stock, affordable) + " units redeemed");
+        }
+
+        long redeemTransactions;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT COUNT(*), COALESCE(SUM(points_amount), 0) FROM points_transactions "
+                        + "WHERE transaction_type = 'REDEEM' AND description LIKE ?")) {
+            stmt.setString(1, "Redeemed reward " + REWARD_ID + ":%");
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                redeemTransactions = rs.getLong(1);
+            }
+        }
+        if (redeemTransactions != redeemed) {
+            failures.add(redeemTransactions + " REDEEM transactions recorded for " + redeemed + " successful responses");
+        }
+
+        Map<String, Integer> balancesAfter = readBalances(conn);
+        int mismatched = 0;
+        for (Map.Entry<String, Integer> before : balancesBefore.entrySet()) {
+            AtomicInteger units = redeemedByCustomer.get(before.getKey());
+            int expected = before.getValue() - (units != null ? units.get() : 0) * price;
+            Integer actual = balancesAfter.get(before.getKey());
+            if (actual == null || actual != expected || actual < 0) {
+                if (mismatched++ < 5) {
+                    failures.add("Customer " + before.getKey() + " has " + actual + " points, expected " + expected);
+                }
+            }
+        }
+        if (mismatched > 5) {
+            failures.add((mismatched - 5) + " more customers with wrong balances");
+        }
+    }
+
+    private static void addHotReward(Connection conn, int stock, int price) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO rewards (reward_id, reward_name, description, points_required, category, is_active, "
+                        + "stock_quantity, availability_count) VALUES (?, 'Flash Drop', 'Stress test reward', ?, 'MERCHANDISE', TRUE, ?, ?)")) {
+            stmt.setString(1, REWARD_ID);
+            stmt.setInt(2, price);
+            stmt.setInt(3, stock);
+            stmt.setInt(4, stock);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static Map<String, Integer> readBalances(Connection conn) throws SQLException {
+        Map<String, Integer> balances = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT customer_id, current_available_points FROM customers WHERE customer_id LIKE 'LOAD%'");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                balances.put(rs.getString(1), rs.getInt(2));
+            }
+        }
+        return balances;
+    }
+
+    // Returns the HTTP status of one form-encoded redemption
+    private static int redeem(String url, String authorization, String customerId) throws IOException {
+        byte[] body = ("customerId=" + URLEncoder.encode(customerId, "UTF-8") + "&rewardId="
+                + URLEncoder.encode(REWARD_ID, "UTF-8")).getBytes(StandardCharsets.UTF_8);
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestProperty("Authorization", authorization);
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+        conn.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body);
+        }
+        int status = conn.getResponseCode();
+        InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) >= 0) {
+                    // discard
+                }
+            } finally {
+                in.close();
+            }
+        }
+        return status;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+}
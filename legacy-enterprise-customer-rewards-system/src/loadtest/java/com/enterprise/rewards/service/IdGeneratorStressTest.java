@@ -0,0 +1,215 @@
+package com.enterprise.rewards.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Multi-threaded uniqueness and throughput test for the id generator. Threads draw ids from
+ * SnowflakeIdGenerators of several simulated nodes at once, then the test checks that every
+ * id is unique, that each thread saw strictly increasing ids, and that node ids and timestamps
+ * decode correctly. A second round does the same through EntityIds and checks the CUST and
+ * TXN- strings, whose string order must follow creation order. That holds only among ids made by
+ * SnowflakeIdGenerator: ids from before EntityIds sort among them in no particular order. Exits
+ * with status 1 if any check fails.
+ *
+ * Run with:
+ *   mvn -P loadtest test-compile exec:exec -Dloadtest.main=com.enterprise.rewards.service.IdGeneratorStressTest
+ *
+ * Options are name=value arguments (-Dloadtest.args="..."):
+ *   threads    generating threads (2 per available processor)
+ *   ids        ids per thread (500000)
+ *   nodes      simulated nodes, each with its own generator (2)
+ *   strings    formatted ids per thread in the EntityIds round (100000)
+ */
+public class IdGeneratorStressTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int threads = intOption(options, "threads", 2 * Runtime.getRuntime().availableProcessors());
+        int perThread = intOption(options, "ids", 500000);
+        int nodes = Math.max(1, intOption(options, "nodes", 2));
+        int stringsPerThread = intOption(options, "strings", 100000);
+
+        List<String> failures = new ArrayList<>();
+        checkNumericIds(threads, perThread, nodes, failures);
+        checkFormattedIds(threads, stringsPerThread, failures);
+
+        if (failures.isEmpty()) {
+            System.out.println("[INFO] All ids unique and ordered: all checks passed");
+        } else {
+            for (String failure : failures) {
+                System.err.println("[ERROR] " + failure);
+            }
+            System.exit(1);
+        }
+    }
+
+    private static void checkNumericIds(int threads, int perThread, int nodes, List<String> failures) throws InterruptedException {
+        SnowflakeIdGenerator[] generators = new SnowflakeIdGenerator[nodes];
+        for (int n = 0; n < nodes; n++) {
+            generators[n] = new SnowflakeIdGenerator(n);
+        }
+        long[][] ids = new long[threads][perThread];
+        int[] outOfOrder = new int[threads];
+        long startMillis = System.currentTimeMillis();
+        long elapsedNanos = runThreads(threads, t -> {
+            SnowflakeIdGenerator generator = generators[t % nodes];
+            long[] mine = ids[t];
+            long previous = 0;
+            for (int i = 0; i < mine.length; i++) {
+                long id = generator.nextId();
+                if (id <= previous) {
+                    outOfOrder[t]++;
+                }
+                mine[i] = id;
+                previous = id;
+            }
+        });
+        long endMillis = System.currentTimeMillis();
+        long total = (long) threads * perThread;
+        System.out.println(String.format("[INFO] %d ids from %d threads on %d nodes in %.1f ms: %.1f million ids/s",
+                total, threads, nodes, elapsedNanos / 1000000.0, total * 1000.0 / elapsedNanos));
+
+        long[] all = new long[(int) total];
+        long maxTimestamp = 0;
+        int wrongNode = 0;
+        int tooEarly = 0;
+        for (int t = 0; t < threads; t++) {
+            if (outOfOrder[t] > 0) {
+                failures.add("Thread " + t + " saw " + outOfOrder[t] + " ids not greater than the one before");
+            }
+            for (long id : ids[t]) {
+                if (id <= 0) {
+                    failures.add("Non-positive id " + id);
+                    return;
+                }
+                if (SnowflakeIdGenerator.nodeIdOf(id) != t % nodes) {
+                    wrongNode++;
+                }
+                long timestamp = SnowflakeIdGenerator.timestampOf(id);
+                if (timestamp < startMillis) {
+                    tooEarly++;
+                }
+                maxTimestamp = Math.max(maxTimestamp, timestamp);
+            }
+            System.arraycopy(ids[t], 0, all, t * perThread, perThread);
+        }
+        if (wrongNode > 0) {
+            failures.add(wrongNode + " ids carry the wrong node id");
+        }
+        if (tooEarly > 0) {
+            failures.add(tooEarly + " ids have a timestamp before the test started");
+        }
+        System.out.println("[INFO] Ids ran up to " + Math.max(0, maxTimestamp - endMillis) + " ms ahead of the clock");
+
+        Arrays.parallelSort(all);
+        int duplicates = 0;
+        for (int i = 1; i < all.length; i++) {
+            if (all[i] == all[i - 1]) {
+                duplicates++;
+            }
+        }
+        if (duplicates > 0) {
+            failures.add(duplicates + " duplicate ids among " + total);
+        }
+    }
+
+    private static void checkFormattedIds(int threads, int perThread, List<String> failures) throws InterruptedException {
+        EntityIds.setGenerator(new SnowflakeIdGenerator(0));
+        String[][] customerIds = new String[threads][perThread];
+        String[][] transactionIds = new String[threads][perThread];
+        long elapsedNanos = runThreads(threads, t -> {
+            for (int i = 0; i < perThread; i++) {
+                customerIds[t][i] = EntityIds.newCustomerId();
+                transactionIds[t][i] = EntityIds.newTransactionId();
+            }
+        });
+        long total = 2L * threads * perThread;
+        System.out.println(String.format("[INFO] %d customer and transaction ids from %d threads in %.1f ms: %.1f million ids/s",
+                total, threads, elapsedNanos / 1000000.0, total * 1000.0 / elapsedNanos));
+        checkStrings("customer", customerIds, "CUST", 23, failures);
+        checkStrings("transaction", transactionIds, "TXN-", 20, failures);
+    }
+
+    private static void checkStrings(String kind, String[][] ids, String prefix, int length, List<String> failures) {
+        Set<String> seen = new HashSet<>();
+        int malformed = 0;
+        int outOfOrder = 0;
+        int duplicates = 0;
+        for (String[] mine : ids) {
+            String previous = null;
+            for (String id : mine) {
+                if (!id.startsWith(prefix) || id.length() != length) {
+                    malformed++;
+                }
+                if (previous != null && id.compareTo(previous) <= 0) {
+                    outOfOrder++;
+                }
+                if (!seen.add(id)) {
+                    duplicates++;
+                }
+                previous = id;
+            }
+        }
+        if (malformed > 0) {
+            failures.add(malformed + " " + kind + " ids are not " + prefix + " followed by " + (length - prefix.length()) + " digits");
+        }
+        if (outOfOrder > 0) {
+            failures.add(outOfOrder + " " + kind + " ids sort before the one created just before them");
+        }
+        if (duplicates > 0) {
+            failures.add(duplicates + " duplicate " + kind + " ids");
+        }
+    }
+
+    // Starts all threads together and returns the nanoseconds until the last one finished
+    private static long runThreads(int threads, Worker worker) throws InterruptedException {
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> started = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            Thread thread = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                worker.run(index);
+            }, "id-generator-" + t);
+            thread.start();
+            started.add(thread);
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread thread : started) {
+            thread.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    private interface Worker {
+        void run(int thread);
+    }
+}
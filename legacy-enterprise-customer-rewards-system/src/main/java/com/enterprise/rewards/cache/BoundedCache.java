@@ -0,0 +1,274 @@
+package com.enterprise.rewards.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+/**
+ * Small LRU cache with a maximum number of entries and a time-to-live.
+ * Entries past their TTL are treated as misses and dropped; when the cache is
+ * full the least recently used entry is evicted. An optional Weigher adds a
+ * memory budget: entries are also evicted while their estimated total size is
+ * over maxWeight.
+ *
+ * Keys are spread by hash over up to 16 segments, each an LRU map with its own
+ * lock and an equal share of maxEntries and maxWeight, so request threads only
+ * contend when they hit the same segment. LRU order is therefore kept per
+ * segment: an eviction removes the least recently used entry of the segment
+ * that overflowed, which approximates global LRU closely once each segment
+ * holds more than a few entries. Small caches get fewer segments for that
+ * reason; a cache of fewer than 32 entries has just one. An entry weighing more
+ * than its segment's share of maxWeight is not cached at all, so it never pushes
+ * the rest of its segment out.
+ */
+public class BoundedCache<K, V> {
+
+    private static final int MAX_SEGMENTS = 16;
+    // Smallest share of maxEntries a segment is given
+    private static final int MIN_SEGMENT_ENTRIES = 16;
+
+    /**
+     * Estimates the memory footprint of an entry, in bytes.
+     */
+    public interface Weigher<K, V> {
+        long weigh(K key, V value);
+    }
+
+    private final String name;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final Weigher<K, V> weigher;
+    private final Segment<K, V>[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param ttlMillis time-to-live per entry; 0 or less means entries never expire
+     */
+    public BoundedCache(String name, int maxEntries, long ttlMillis) {
+        this(name, maxEntries, 0, ttlMillis, null);
+    }
+
+    /**
+     * @param maxWeight memory budget in bytes as estimated by the weigher; 0 means unbounded
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedCache(String name, int maxEntries, long maxWeight, long ttlMillis, Weigher<K, V> weigher) {
+        this.name = name;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.maxWeight = weigher != null ? Math.max(0, maxWeight) : 0;
+        this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1000000L : 0;
+        this.weigher = weigher;
+        int count = 1;
+        while (count < MAX_SEGMENTS && this.maxEntries / (count * 2) >= MIN_SEGMENT_ENTRIES) {
+            count *= 2;
+        }
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            // The first segments take the remainders, so the shares add up to the limits exactly
+            segments[i] = new Segment<>(this.maxEntries / count + (i < this.maxEntries % count ? 1 : 0),
+                    this.maxWeight / count + (i < this.maxWeight % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * Returns the cached value, or null (counted as a miss) if absent or expired.
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.map.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (isExpired(entry, System.nanoTime())) {
+                segment.remove(key);
+                evictions.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value;
+        }
+    }
+
+    /**
+     * Caches value under key, unless it weighs more than a segment's share of maxWeight: then
+     * any older value for the key is dropped instead, and nothing else is evicted.
+     */
+    public void put(K key, V value) {
+        Entry<V> entry = new Entry<>(value, System.nanoTime(), weigh(key, value));
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            if (segment.tooHeavy(entry)) {
+                segment.remove(key);
+                return;
+            }
+            Entry<V> previous = segment.map.put(key, entry);
+            if (previous != null) {
+                segment.weight -= previous.weight;
+            }
+            segment.weight += entry.weight;
+            evictOverflow(segment);
+        }
+    }
+
+    /**
+     * Replaces a live entry with updater(oldValue), keeping its age unchanged, so the
+     * cache can be written through instead of invalidated. Like get, this makes the entry
+     * the most recently used. Absent or expired entries are left alone; an updater
+     * returning null, or a value too heavy to keep (see put), removes the entry.
+     * Returns true if an entry was updated.
+     */
+    public boolean update(K key, UnaryOperator<V> updater) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            Entry<V> entry = segment.map.get(key);
+            if (entry == null || isExpired(entry, System.nanoTime())) {
+                return false;
+            }
+            V value = updater.apply(entry.value);
+            if (value == null) {
+                segment.remove(key);
+                return false;
+            }
+            Entry<V> updated = new Entry<>(value, entry.createdAt, weigh(key, value));
+            if (segment.tooHeavy(updated)) {
+                segment.remove(key);
+                return false;
+            }
+            segment.map.put(key, updated);
+            segment.weight += updated.weight - entry.weight;
+            evictOverflow(segment);
+            return true;
+        }
+    }
+
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.map.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    /**
+     * Sum of the segment sizes, each read under its own lock, so not a snapshot of the
+     * whole cache while it is being written.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records a hit or miss for lookups served outside get(), e.g. from a cached snapshot.
+     */
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public CacheStatistics getStatistics() {
+        int size = 0;
+        long currentWeight = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+                currentWeight += segment.weight;
+            }
+        }
+        return new CacheStatistics(name, hits.sum(), misses.sum(), evictions.sum(), size, maxEntries, currentWeight, maxWeight);
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        // Spread the high bits down, as HashMap does: segments are picked by the low bits
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return ttlNanos > 0 && now - entry.createdAt >= ttlNanos;
+    }
+
+    private long weigh(K key, V value) {
+        return weigher != null ? weigher.weigh(key, value) : 0;
+    }
+
+    // Called holding the segment's lock
+    private void evictOverflow(Segment<K, V> segment) {
+        Iterator<Map.Entry<K, Entry<V>>> it = segment.map.entrySet().iterator();
+        while ((segment.map.size() > segment.maxEntries
+                || (segment.maxWeight > 0 && segment.weight > segment.maxWeight)) && it.hasNext()) {
+            segment.weight -= it.next().getValue().weight;
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * One lock's worth of the cache: an access-ordered map and its share of the limits.
+     * Fields are guarded by the segment's monitor.
+     */
+    private static class Segment<K, V> {
+        final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+        final int maxEntries;
+        final long maxWeight;
+        long weight;
+
+        Segment(int maxEntries, long maxWeight) {
+            this.maxEntries = maxEntries;
+            this.maxWeight = maxWeight;
+        }
+
+        // Would not fit even in an empty segment
+        boolean tooHeavy(Entry<?> entry) {
+            return maxWeight > 0 && entry.weight > maxWeight;
+        }
+
+        void remove(Object key) {
+            Entry<V> removed = map.remove(key);
+            if (removed != null) {
+                weight -= removed.weight;
+            }
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long createdAt;
+        final long weight;
+
+        Entry(V value, long createdAt, long weight) {
+            this.value = value;
+            this.createdAt = createdAt;
+            this.weight = weight;
+        }
+    }
+}
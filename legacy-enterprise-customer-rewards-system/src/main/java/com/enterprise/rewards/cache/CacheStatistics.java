@@ -0,0 +1,81 @@
+package com.enterprise.rewards.cache;
+
+/**
+ * Point-in-time counters for one cache.
+ */
+public class CacheStatistics {
+    private final String name;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int size;
+    private final int maxEntries;
+    private final long estimatedBytes;
+    private final long maxBytes;
+
+    public CacheStatistics(String name, long hits, long misses, long evictions, int size, int maxEntries) {
+        this(name, hits, misses, evictions, size, maxEntries, 0, 0);
+    }
+
+    public CacheStatistics(String name, long hits, long misses, long evictions, int size, int maxEntries,
+                           long estimatedBytes, long maxBytes) {
+        this.name = name;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+        this.maxEntries = maxEntries;
+        this.estimatedBytes = estimatedBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Estimated memory held by the entries; 0 for caches without a memory budget.
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Memory budget in bytes; 0 when the cache is bounded by entry count only.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return name + "{hits=" + hits + ", misses=" + misses + ", evictions=" + evictions
+                + ", size=" + size + "/" + maxEntries
+                + (maxBytes > 0 ? ", bytes=" + estimatedBytes + "/" + maxBytes : "") + "}";
+    }
+}
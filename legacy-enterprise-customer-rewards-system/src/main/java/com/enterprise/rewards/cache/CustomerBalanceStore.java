@@ -0,0 +1,382 @@
+package com.enterprise.rewards.cache;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+import com.enterprise.rewards.model.Customer;
+
+/**
+ * Compact store of customer balances, tier and status, kept off-heap so holding millions of
+ * members adds no objects for the garbage collector to trace.
+ *
+ * Each member is one fixed 40-byte slot in a direct ByteBuffer: the customer id as up to 23
+ * ASCII bytes, lifetime and available points as ints, tier and status as one-byte codes and
+ * the id's hash. Slots form open-addressing tables with linear probing (deletes shift later
+ * entries back, so there are no tombstones). Tables are sized up front for maxEntries at 80%
+ * load, about 50 bytes per member, and split into segments with their own StampedLock so
+ * readers are optimistic and never block each other.
+ *
+ * Ids that are longer or not ASCII, and tiers or statuses outside the known values, cannot be
+ * stored; put returns false and callers keep using the full Customer object for them.
+ */
+public class CustomerBalanceStore {
+
+    static final int SLOT_BYTES = 40;
+    static final int MAX_KEY_LENGTH = 23;
+    private static final int LIFETIME_OFFSET = 24;
+    private static final int AVAILABLE_OFFSET = 28;
+    private static final int TIER_OFFSET = 32;
+    private static final int STATUS_OFFSET = 33;
+    private static final int HASH_OFFSET = 36;
+    private static final double LOAD_FACTOR = 0.8;
+    // Keeps each segment's buffer well under the 2 GB ByteBuffer limit
+    private static final long MAX_SEGMENT_BYTES = 512L * 1024 * 1024;
+    private static final int MIN_SEGMENTS = 16;
+
+    // Stored as the array index; code 0 is null
+    private static final String[] TIERS = {null, "BRONZE", "SILVER", "GOLD", "PLATINUM"};
+    private static final String[] STATUSES = {null, "ACTIVE", "INACTIVE", "SUSPENDED"};
+    private static final int UNKNOWN = -1;
+
+    private final Segment[] segments;
+    private final int segmentBits;
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CustomerBalanceStore(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        long tableBytes = (long) Math.ceil(this.maxEntries / LOAD_FACTOR) * SLOT_BYTES;
+        int count = MIN_SEGMENTS;
+        while (tableBytes / count > MAX_SEGMENT_BYTES) {
+            count <<= 1;
+        }
+        this.segmentBits = Integer.numberOfTrailingZeros(count);
+        this.segments = new Segment[count];
+        int perSegment = (int) Math.ceil((double) this.maxEntries / count);
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Whether put can hold a customer with this id, tier and status.
+     */
+    public static boolean isStorable(String customerId, String tier, String status) {
+        if (customerId == null || customerId.isEmpty() || customerId.length() > MAX_KEY_LENGTH
+                || code(TIERS, tier) == UNKNOWN || code(STATUSES, status) == UNKNOWN) {
+            return false;
+        }
+        for (int i = 0; i < customerId.length(); i++) {
+            if (customerId.charAt(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores or replaces a customer's balances. Returns false if the values cannot be
+     * stored or the store is full.
+     */
+    public boolean put(String customerId, int lifetimePoints, int availablePoints, String tier, String status) {
+        if (!isStorable(customerId, tier, status)) {
+            return false;
+        }
+        int hash = hash(customerId);
+        return segmentFor(hash).put(customerId, hash, lifetimePoints, availablePoints,
+                (byte) code(TIERS, tier), (byte) code(STATUSES, status));
+    }
+
+    /**
+     * Adds the deltas to a stored customer's balances. Returns false if the customer is not stored.
+     */
+    public boolean addPoints(String customerId, int lifetimeDelta, int availableDelta) {
+        if (customerId == null || customerId.length() > MAX_KEY_LENGTH) {
+            return false;
+        }
+        int hash = hash(customerId);
+        return segmentFor(hash).add(customerId, hash, lifetimeDelta, availableDelta);
+    }
+
+    /**
+     * Copies the stored points, tier and status into target. Returns false, leaving target
+     * unchanged, if the customer is not stored.
+     */
+    public boolean read(String customerId, Customer target) {
+        if (customerId == null || customerId.length() > MAX_KEY_LENGTH) {
+            misses.increment();
+            return false;
+        }
+        int hash = hash(customerId);
+        if (!segmentFor(hash).read(customerId, hash, target)) {
+            misses.increment();
+            return false;
+        }
+        hits.increment();
+        return true;
+    }
+
+    /**
+     * Returns whether the customer is stored.
+     */
+    public boolean contains(String customerId) {
+        if (customerId == null || customerId.length() > MAX_KEY_LENGTH) {
+            return false;
+        }
+        int hash = hash(customerId);
+        return segmentFor(hash).read(customerId, hash, null);
+    }
+
+    public boolean remove(String customerId) {
+        if (customerId == null || customerId.length() > MAX_KEY_LENGTH) {
+            return false;
+        }
+        int hash = hash(customerId);
+        return segmentFor(hash).remove(customerId, hash);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * Off-heap bytes allocated for the tables.
+     */
+    public long getAllocatedBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += (long) segment.capacity * SLOT_BYTES;
+        }
+        return bytes;
+    }
+
+    public CacheStatistics getStatistics(String name) {
+        long bytes = getAllocatedBytes();
+        return new CacheStatistics(name, hits.sum(), misses.sum(), 0, size(), maxEntries, bytes, bytes);
+    }
+
+    private static void copyTo(Customer target, int lifetime, int available, int tier, int status) {
+        if (target != null) {
+            target.setTotalLifetimePoints(lifetime);
+            target.setCurrentAvailablePoints(available);
+            target.setLoyaltyTier(tier >= 0 && tier < TIERS.length ? TIERS[tier] : null);
+            target.setAccountStatus(status >= 0 && status < STATUSES.length ? STATUSES[status] : null);
+        }
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> (32 - segmentBits)];
+    }
+
+    // String.hashCode spread with the murmur3 finalizer; the top bits pick the segment
+    static int hash(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int code(String[] values, String value) {
+        if (value == null) {
+            return 0;
+        }
+        for (int i = 1; i < values.length; i++) {
+            if (values[i].equals(value)) {
+                return i;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * One open-addressing table. Writers hold the write lock; readers validate an optimistic stamp
+     * and retry under the read lock if a writer got in between.
+     */
+    private final class Segment {
+        final ByteBuffer slots;
+        final int capacity;
+        final int maxSize;
+        final StampedLock lock = new StampedLock();
+        volatile int size;
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+            this.capacity = (int) Math.ceil(maxSize / LOAD_FACTOR) + 1;
+            this.slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+        }
+
+        boolean put(String key, int hash, int lifetime, int available, byte tier, byte status) {
+            long stamp = lock.writeLock();
+            try {
+                int index = find(key, hash);
+                if (index < 0) {
+                    if (size >= maxSize) {
+                        return false;
+                    }
+                    index = -index - 1;
+                    int offset = index * SLOT_BYTES;
+                    slots.put(offset, (byte) key.length());
+                    for (int i = 0; i < key.length(); i++) {
+                        slots.put(offset + 1 + i, (byte) key.charAt(i));
+                    }
+                    slots.putInt(offset + HASH_OFFSET, hash);
+                    size++;
+                }
+                int offset = index * SLOT_BYTES;
+                slots.putInt(offset + LIFETIME_OFFSET, lifetime);
+                slots.putInt(offset + AVAILABLE_OFFSET, available);
+                slots.put(offset + TIER_OFFSET, tier);
+                slots.put(offset + STATUS_OFFSET, status);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        boolean add(String key, int hash, int lifetimeDelta, int availableDelta) {
+            long stamp = lock.writeLock();
+            try {
+                int index = find(key, hash);
+                if (index < 0) {
+                    return false;
+                }
+                int offset = index * SLOT_BYTES;
+                slots.putInt(offset + LIFETIME_OFFSET, slots.getInt(offset + LIFETIME_OFFSET) + lifetimeDelta);
+                slots.putInt(offset + AVAILABLE_OFFSET, slots.getInt(offset + AVAILABLE_OFFSET) + availableDelta);
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // Copies the slot into target (if not null) only once the optimistic stamp validates
+        boolean read(String key, int hash, Customer target) {
+            long stamp = lock.tryOptimisticRead();
+            int index = find(key, hash);
+            int lifetime = 0;
+            int available = 0;
+            int tier = 0;
+            int status = 0;
+            if (index >= 0) {
+                int offset = index * SLOT_BYTES;
+                lifetime = slots.getInt(offset + LIFETIME_OFFSET);
+                available = slots.getInt(offset + AVAILABLE_OFFSET);
+                tier = slots.get(offset + TIER_OFFSET);
+                status = slots.get(offset + STATUS_OFFSET);
+            }
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    return readLocked(key, hash, target);
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (index < 0) {
+                return false;
+            }
+            copyTo(target, lifetime, available, tier, status);
+            return true;
+        }
+
+        private boolean readLocked(String key, int hash, Customer target) {
+            int index = find(key, hash);
+            if (index < 0) {
+                return false;
+            }
+            int offset = index * SLOT_BYTES;
+            copyTo(target, slots.getInt(offset + LIFETIME_OFFSET), slots.getInt(offset + AVAILABLE_OFFSET),
+                    slots.get(offset + TIER_OFFSET), slots.get(offset + STATUS_OFFSET));
+            return true;
+        }
+
+        boolean remove(String key, int hash) {
+            long stamp = lock.writeLock();
+            try {
+                int index = find(key, hash);
+                if (index < 0) {
+                    return false;
+                }
+                // Backward-shift deletion: move later entries of the probe run into the gap
+                int gap = index;
+                int next = gap;
+                while (true) {
+                    next = next + 1 == capacity ? 0 : next + 1;
+                    int offset = next * SLOT_BYTES;
+                    if (slots.get(offset) == 0) {
+                        break;
+                    }
+                    int home = home(slots.getInt(offset + HASH_OFFSET));
+                    boolean canMove = gap <= next ? (home <= gap || home > next) : (home <= gap && home > next);
+                    if (canMove) {
+                        copySlot(next, gap);
+                        gap = next;
+                    }
+                }
+                clearSlot(gap);
+                size--;
+                return true;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Returns the slot index holding key, or -(free slot index) - 1 if it is absent. The probe
+         * is bounded so an optimistic reader racing a writer cannot loop forever.
+         */
+        int find(String key, int hash) {
+            int index = home(hash);
+            for (int probes = 0; probes < capacity; probes++) {
+                int offset = index * SLOT_BYTES;
+                int length = slots.get(offset);
+                if (length == 0) {
+                    return -index - 1;
+                }
+                if (length == key.length() && slots.getInt(offset + HASH_OFFSET) == hash && keyEquals(offset, key)) {
+                    return index;
+                }
+                index = index + 1 == capacity ? 0 : index + 1;
+            }
+            return -capacity - 1;
+        }
+
+        private boolean keyEquals(int offset, String key) {
+            for (int i = 0; i < key.length(); i++) {
+                if (slots.get(offset + 1 + i) != (byte) key.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Maps the hash bits below the segment bits onto [0, capacity)
+        private int home(int hash) {
+            return (int) (((hash << segmentBits) & 0xffffffffL) * capacity >>> 32);
+        }
+
+        private void copySlot(int from, int to) {
+            int source = from * SLOT_BYTES;
+            int target = to * SLOT_BYTES;
+            for (int i = 0; i < SLOT_BYTES; i += 4) {
+                slots.putInt(target + i, slots.getInt(source + i));
+            }
+        }
+
+        private void clearSlot(int index) {
+            int offset = index * SLOT_BYTES;
+            for (int i = 0; i < SLOT_BYTES; i += 4) {
+                slots.putInt(offset + i, 0);
+            }
+        }
+    }
+}
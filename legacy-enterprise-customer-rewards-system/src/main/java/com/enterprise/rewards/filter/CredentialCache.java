@@ -0,0 +1,158 @@
+package com.enterprise.rewards.filter;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.enterprise.rewards.cache.CacheStatistics;
+
+/**
+ * Remembers Basic Auth credentials that the container realm has already verified,
+ * so repeat service callers skip request.login() and the role lookups.
+ *
+ * Entries are keyed by a salted SHA-256 of the Authorization header (the password is
+ * never kept), hold the user name and resolved role, and expire after a TTL. Reads
+ * are a plain ConcurrentHashMap lookup. Only successful logins are cached. The whole
+ * cache is dropped when the user database file (tomcat-users.xml) changes; it is
+ * checked at most once per checkIntervalMillis.
+ */
+public class CredentialCache {
+
+    /** ServletContext attribute under which the cache is published for monitoring. */
+    public static final String CONTEXT_ATTRIBUTE = "com.enterprise.rewards.credentialCache";
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final File userDatabase;
+    private final long checkIntervalNanos;
+    private final byte[] salt = new byte[16];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile long userDatabaseModified;
+    private volatile long nextCheckAt;
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * @param userDatabase file whose modification invalidates the cache, or null to rely on the TTL only
+     */
+    public CredentialCache(int maxEntries, long ttlMillis, File userDatabase, long checkIntervalMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1000000L;
+        this.userDatabase = userDatabase;
+        this.checkIntervalNanos = checkIntervalMillis * 1000000L;
+        new SecureRandom().nextBytes(salt);
+        this.userDatabaseModified = userDatabase != null ? userDatabase.lastModified() : 0;
+        this.nextCheckAt = System.nanoTime() + checkIntervalNanos;
+    }
+
+    /**
+     * Returns the verified user for this Authorization header, or null on a miss.
+     */
+    public Entry get(String authorizationHeader) {
+        long now = System.nanoTime();
+        checkUserDatabase(now);
+        String key = key(authorizationHeader);
+        Entry entry = entries.get(key);
+        if (entry != null && now - entry.expiresAt < 0) {
+            hits.increment();
+            return entry;
+        }
+        if (entry != null && entries.remove(key, entry)) {
+            evictions.increment();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches a successful login.
+     */
+    public void put(String authorizationHeader, String username, String role) {
+        if (entries.size() >= maxEntries) {
+            removeExpired();
+            if (entries.size() >= maxEntries) {
+                // Still full of live entries: leave this caller uncached until some expire
+                return;
+            }
+        }
+        entries.put(key(authorizationHeader), new Entry(username, role, System.nanoTime() + ttlNanos));
+    }
+
+    public void invalidateAll() {
+        int size = entries.size();
+        entries.clear();
+        evictions.add(size);
+    }
+
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics("credentials", hits.sum(), misses.sum(), evictions.sum(), entries.size(), maxEntries);
+    }
+
+    private void checkUserDatabase(long now) {
+        if (userDatabase == null || now - nextCheckAt < 0) {
+            return;
+        }
+        nextCheckAt = now + checkIntervalNanos;
+        long modified = userDatabase.lastModified();
+        if (modified != userDatabaseModified) {
+            userDatabaseModified = modified;
+            invalidateAll();
+            System.out.println("[INFO] User database changed - credential cache cleared");
+        }
+    }
+
+    private void removeExpired() {
+        long now = System.nanoTime();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (now - it.next().expiresAt >= 0) {
+                it.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private String key(String authorizationHeader) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        digest.update(salt);
+        return Base64.getEncoder().encodeToString(digest.digest(authorizationHeader.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * A verified user and the role resolved for it.
+     */
+    public static class Entry {
+        private final String username;
+        private final String role;
+        private final long expiresAt;
+
+        Entry(String username, String role, long expiresAt) {
+            this.username = username;
+            this.role = role;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public String getRole() {
+            return role;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.enterprise.rewards.filter;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletMapping;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.enterprise.rewards.metrics.OperationMetrics;
+import com.enterprise.rewards.metrics.ServiceMetrics;
+
+/**
+ * Records latency and errors of /service/* requests per servlet mapping and HTTP method.
+ * Requests that go async are recorded when they complete. A request counts as an error
+ * when it throws or ends with a 5xx status.
+ *
+ * Mapped in web.xml ahead of the authentication filter, so rejected logins are measured too.
+ */
+public class RequestMetricsFilter implements Filter {
+
+    private ServiceMetrics metrics;
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+        metrics = ServiceMetrics.get(filterConfig.getServletContext());
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        final HttpServletResponse httpResponse = (HttpServletResponse) response;
+        final long start = System.nanoTime();
+        // The mapping pattern, not the path, so ids in URLs do not create new series
+        HttpServletMapping mapping = httpRequest.getHttpServletMapping();
+        final OperationMetrics endpoint = metrics.endpoint(
+                mapping != null && mapping.getPattern() != null ? mapping.getPattern() : "unmapped", httpRequest.getMethod());
+        boolean thrown = true;
+        try {
+            chain.doFilter(request, response);
+            thrown = false;
+        } finally {
+            if (!thrown && request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    private volatile boolean failed;
+
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        endpoint.record(start, failed || httpResponse.getStatus() >= 500);
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                        failed = true;
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                        // Followed by onComplete
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                endpoint.record(start, thrown || httpResponse.getStatus() >= 500);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
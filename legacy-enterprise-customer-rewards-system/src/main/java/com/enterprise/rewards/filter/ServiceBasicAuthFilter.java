@@ -2,30 +2,66 @@
 package com.enterprise.rewards.filter;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.security.Principal;
 import java.util.Base64;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.annotation.WebFilter;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 
-@WebFilter({"/service/*", "/customers/*"})
+import com.enterprise.rewards.service.ContextParams;
+
+@WebFilter(urlPatterns = {"/service/*", "/customers/*"}, asyncSupported = true)
 public class ServiceBasicAuthFilter implements Filter {
 
+    // Null when auth.cache.enabled is false
+    private CredentialCache credentialCache;
+
     public ServiceBasicAuthFilter() {
     }
 
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
+        ServletContext context = filterConfig.getServletContext();
+        if (ContextParams.getBoolean(context, "auth.cache.enabled", true)) {
+            credentialCache = new CredentialCache(
+                    ContextParams.getInt(context, "auth.cache.maxEntries", 10000),
+                    ContextParams.getLong(context, "auth.cache.ttlSeconds", 300) * 1000L,
+                    userDatabaseFile(context),
+                    ContextParams.getLong(context, "auth.cache.checkIntervalMs", 1000));
+            context.setAttribute(CredentialCache.CONTEXT_ATTRIBUTE, credentialCache);
+        }
         System.out.println("ServiceBasicAuthFilter initialized - protecting /service/* endpoints");
     }
 
+    // The file the container realm reads users from; changes to it clear the credential cache
+    private static File userDatabaseFile(ServletContext context) {
+        String path = ContextParams.getString(context, "auth.cache.userDatabaseFile", null);
+        if (path == null || path.trim().isEmpty()) {
+            String catalinaBase = System.getProperty("catalina.base");
+            if (catalinaBase == null) {
+                return null;
+            }
+            path = catalinaBase + File.separator + "conf" + File.separator + "tomcat-users.xml";
+        }
+        File file = new File(path.trim());
+        if (!file.isFile()) {
+            System.out.println("[WARN] User database " + file + " not found - cached credentials expire by TTL only");
+            return null;
+        }
+        return file;
+    }
+
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
         HttpServletRequest httpRequest = (HttpServletRequest) request;
@@ -40,22 +76,33 @@ public class ServiceBasicAuthFilter implements Filter {
         // Otherwise, require HTTP Basic Auth
         String authHeader = httpRequest.getHeader("Authorization");
         if (authHeader != null && authHeader.startsWith("Basic ")) {
+            CredentialCache.Entry cached = credentialCache != null ? credentialCache.get(authHeader) : null;
+            if (cached != null) {
+                chain.doFilter(new AuthenticatedRequest(httpRequest, cached), response);
+                return;
+            }
+            String username = null;
+            String userRole = null;
             try {
                 String base64Credentials = authHeader.substring("Basic ".length()).trim();
                 String credentials = new String(Base64.getDecoder().decode(base64Credentials), "UTF-8");
                 String[] values = credentials.split(":", 2);
                 if (values.length == 2) {
-                    String username = values[0];
+                    username = values[0];
                     String password = values[1];
-                    String userRole = this.validateCredentials(username, password, httpRequest);
-                    if (userRole != null) {
-                        chain.doFilter(request, response);
-                        return;
-                    }
+                    userRole = this.validateCredentials(username, password, httpRequest);
                 }
             } catch (Exception ex) {
                 System.err.println("Error parsing Basic Auth: " + ex.getMessage());
             }
+            // Outside the try: failures further down the chain are not authentication errors
+            if (userRole != null) {
+                if (credentialCache != null) {
+                    credentialCache.put(authHeader, username, userRole);
+                }
+                chain.doFilter(request, response);
+                return;
+            }
             this.sendAuthenticationChallenge(httpResponse);
         } else {
             this.sendAuthenticationChallenge(httpResponse);
@@ -94,6 +141,40 @@ public class ServiceBasicAuthFilter implements Filter {
         out.flush();
     }
 
+    /**
+     * Presents a cached Basic Auth login to the rest of the chain without calling request.login() again.
+     */
+    private static class AuthenticatedRequest extends HttpServletRequestWrapper {
+        private final CredentialCache.Entry user;
+        private final Principal principal;
+
+        AuthenticatedRequest(HttpServletRequest request, CredentialCache.Entry user) {
+            super(request);
+            this.user = user;
+            this.principal = user::getUsername;
+        }
+
+        @Override
+        public Principal getUserPrincipal() {
+            return principal;
+        }
+
+        @Override
+        public String getRemoteUser() {
+            return user.getUsername();
+        }
+
+        @Override
+        public String getAuthType() {
+            return HttpServletRequest.BASIC_AUTH;
+        }
+
+        @Override
+        public boolean isUserInRole(String role) {
+            return user.getRole().equals(role);
+        }
+    }
+
     @Override
     public void destroy() {
         System.out.println("ServiceBasicAuthFilter destroyed");
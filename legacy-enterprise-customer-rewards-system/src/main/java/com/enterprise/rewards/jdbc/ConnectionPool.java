@@ -0,0 +1,293 @@
+package com.enterprise.rewards.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.enterprise.rewards.metrics.LatencyHistogram;
+
+/**
+ * Bounded JDBC connection pool used by DatabaseDataService.
+ * Replaces the old DriverManager-per-call approach: physical connections are
+ * opened lazily up to maxSize, validated after sitting idle, retired after
+ * maxLifetime and handed out as proxies whose close() returns them to the pool.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    /** ServletContext attribute under which the active pool is published for monitoring. */
+    public static final String CONTEXT_ATTRIBUTE = "com.enterprise.rewards.connectionPool";
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final ConnectionPoolConfig config;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final LatencyHistogram acquireTimes = new LatencyHistogram();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, String user, String password, ConnectionPoolConfig config) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.config = config;
+        this.permits = new Semaphore(config.getMaxSize(), true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rewards-db-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        fillToMinimum();
+        long interval = Math.max(1000, config.getHousekeepingIntervalMs());
+        housekeeper.scheduleWithFixedDelay(this::housekeep, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection, waiting up to acquireTimeoutMs for one to become free.
+     * Closing the returned connection gives it back to the pool.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        waiters.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(config.getAcquireTimeoutMs(), TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTimeoutException("Timed out after " + config.getAcquireTimeoutMs()
+                        + " ms waiting for a database connection (maxSize=" + config.getMaxSize() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waiters.decrementAndGet();
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    break;
+                }
+                destroy(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+            active.incrementAndGet();
+            acquireTimes.recordSince(start);
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public ConnectionPoolConfig getConfig() {
+        return config;
+    }
+
+    public PoolStatistics getStatistics() {
+        return new PoolStatistics(total.get(), active.get(), idle.size(), waiters.get(), config.getMaxSize(),
+                created.get(), destroyed.get(), timeouts.get(), acquireTimes.snapshot());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        total.incrementAndGet();
+        created.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        long now = System.currentTimeMillis();
+        if (pooled.isExpired(now)) {
+            return false;
+        }
+        if (now - pooled.lastReturnedAt >= config.getValidateAfterIdleMs()) {
+            try {
+                return pooled.physical.isValid(config.getValidationTimeoutSeconds());
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void release(PooledConnection pooled) {
+        active.decrementAndGet();
+        try {
+            if (closed || pooled.broken || pooled.isExpired(System.currentTimeMillis()) || !reset(pooled)) {
+                destroy(pooled);
+            } else {
+                pooled.lastReturnedAt = System.currentTimeMillis();
+                // LIFO so the hottest connections stay warm and surplus ones age out
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean reset(PooledConnection pooled) {
+        try {
+            Connection c = pooled.physical;
+            if (!c.getAutoCommit()) {
+                c.rollback();
+                c.setAutoCommit(true);
+            }
+            if (c.isReadOnly()) {
+                c.setReadOnly(false);
+            }
+            c.clearWarnings();
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        total.decrementAndGet();
+        destroyed.incrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException ignore) {
+        }
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.currentTimeMillis();
+            for (PooledConnection pooled : idle) {
+                if (pooled.isExpired(now) && idle.remove(pooled)) {
+                    destroy(pooled);
+                }
+            }
+            fillToMinimum();
+        } catch (RuntimeException e) {
+            System.err.println("[ERROR] Connection pool housekeeping failed: " + e.getMessage());
+        }
+    }
+
+    private void fillToMinimum() {
+        while (!closed && total.get() < config.getMinSize() && permits.tryAcquire()) {
+            try {
+                PooledConnection pooled = open();
+                pooled.lastReturnedAt = System.currentTimeMillis();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                System.err.println("[WARN] Could not pre-open database connection: " + e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * A physical connection owned by the pool.
+     */
+    private class PooledConnection {
+        final Connection physical;
+        final long createdAt = System.currentTimeMillis();
+        volatile long lastReturnedAt;
+        volatile boolean broken;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        boolean isExpired(long now) {
+            return config.getMaxLifetimeMs() > 0 && now - createdAt >= config.getMaxLifetimeMs();
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] {Connection.class}, new LeaseHandler(this));
+        }
+    }
+
+    /**
+     * Handle given to callers. close() returns the connection exactly once;
+     * any use after that fails as it would on a closed physical connection.
+     */
+    private class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned;
+
+        LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (!returned) {
+                    returned = true;
+                    release(pooled);
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return returned || pooled.physical.isClosed();
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "PooledConnection[" + pooled.physical + "]";
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    // SQLState class 08 is a connection exception; do not hand this connection out again
+                    if (state != null && state.startsWith("08")) {
+                        pooled.broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.enterprise.rewards.jdbc;
+
+import java.util.Properties;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Connection pool settings.
+ * Values are read from db.properties and can be overridden per deployment
+ * with web.xml context parameters of the same name (e.g. db.pool.maxSize).
+ */
+public class ConnectionPoolConfig {
+
+    public static final String MIN_SIZE = "db.pool.minSize";
+    public static final String MAX_SIZE = "db.pool.maxSize";
+    public static final String ACQUIRE_TIMEOUT_MS = "db.pool.acquireTimeoutMs";
+    public static final String VALIDATION_TIMEOUT_SECONDS = "db.pool.validationTimeoutSeconds";
+    public static final String VALIDATE_AFTER_IDLE_MS = "db.pool.validateAfterIdleMs";
+    public static final String MAX_LIFETIME_MS = "db.pool.maxLifetimeMs";
+    public static final String HOUSEKEEPING_INTERVAL_MS = "db.pool.housekeepingIntervalMs";
+
+    private int minSize = 2;
+    private int maxSize = 20;
+    private long acquireTimeoutMs = 5000;
+    private int validationTimeoutSeconds = 2;
+    private long validateAfterIdleMs = 30000;
+    private long maxLifetimeMs = 30L * 60L * 1000L;
+    private long housekeepingIntervalMs = 30000;
+
+    public ConnectionPoolConfig() {}
+
+    /**
+     * Builds the configuration from db.properties values, then applies any
+     * matching context parameters from web.xml. Context may be null.
+     */
+    public static ConnectionPoolConfig load(Properties props, ServletContext context) {
+        ConnectionPoolConfig config = new ConnectionPoolConfig();
+        config.minSize = getInt(props, context, MIN_SIZE, config.minSize);
+        config.maxSize = getInt(props, context, MAX_SIZE, config.maxSize);
+        config.acquireTimeoutMs = getLong(props, context, ACQUIRE_TIMEOUT_MS, config.acquireTimeoutMs);
+        config.validationTimeoutSeconds = getInt(props, context, VALIDATION_TIMEOUT_SECONDS, config.validationTimeoutSeconds);
+        config.validateAfterIdleMs = getLong(props, context, VALIDATE_AFTER_IDLE_MS, config.validateAfterIdleMs);
+        config.maxLifetimeMs = getLong(props, context, MAX_LIFETIME_MS, config.maxLifetimeMs);
+        config.housekeepingIntervalMs = getLong(props, context, HOUSEKEEPING_INTERVAL_MS, config.housekeepingIntervalMs);
+        if (config.maxSize < 1) {
+            config.maxSize = 1;
+        }
+        if (config.minSize < 0) {
+            config.minSize = 0;
+        }
+        if (config.minSize > config.maxSize) {
+            config.minSize = config.maxSize;
+        }
+        return config;
+    }
+
+    static String getValue(Properties props, ServletContext context, String name) {
+        String value = null;
+        if (context != null) {
+            value = context.getInitParameter(name);
+        }
+        if ((value == null || value.trim().isEmpty()) && props != null) {
+            value = props.getProperty(name);
+        }
+        return value != null ? value.trim() : null;
+    }
+
+    private static int getInt(Properties props, ServletContext context, String name, int defaultValue) {
+        return (int) getLong(props, context, name, defaultValue);
+    }
+
+    private static long getLong(Properties props, ServletContext context, String name, long defaultValue) {
+        String value = getValue(props, context, name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[WARN] Invalid value for " + name + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public void setMinSize(int minSize) {
+        this.minSize = minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getAcquireTimeoutMs() {
+        return acquireTimeoutMs;
+    }
+
+    public void setAcquireTimeoutMs(long acquireTimeoutMs) {
+        this.acquireTimeoutMs = acquireTimeoutMs;
+    }
+
+    public int getValidationTimeoutSeconds() {
+        return validationTimeoutSeconds;
+    }
+
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+    }
+
+    public long getValidateAfterIdleMs() {
+        return validateAfterIdleMs;
+    }
+
+    public void setValidateAfterIdleMs(long validateAfterIdleMs) {
+        this.validateAfterIdleMs = validateAfterIdleMs;
+    }
+
+    public long getMaxLifetimeMs() {
+        return maxLifetimeMs;
+    }
+
+    public void setMaxLifetimeMs(long maxLifetimeMs) {
+        this.maxLifetimeMs = maxLifetimeMs;
+    }
+
+    public long getHousekeepingIntervalMs() {
+        return housekeepingIntervalMs;
+    }
+
+    public void setHousekeepingIntervalMs(long housekeepingIntervalMs) {
+        this.housekeepingIntervalMs = housekeepingIntervalMs;
+    }
+}
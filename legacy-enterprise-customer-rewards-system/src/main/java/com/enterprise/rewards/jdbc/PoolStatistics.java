@@ -0,0 +1,79 @@
+package com.enterprise.rewards.jdbc;
+
+import com.enterprise.rewards.metrics.LatencyHistogram;
+
+/**
+ * Point-in-time view of connection pool usage for monitoring pages and metrics.
+ */
+public class PoolStatistics {
+    private final int total;
+    private final int active;
+    private final int idle;
+    private final int waiters;
+    private final int maxSize;
+    private final long created;
+    private final long destroyed;
+    private final long timeouts;
+    private final LatencyHistogram.Snapshot acquireTimes;
+
+    public PoolStatistics(int total, int active, int idle, int waiters, int maxSize,
+                          long created, long destroyed, long timeouts, LatencyHistogram.Snapshot acquireTimes) {
+        this.total = total;
+        this.active = active;
+        this.idle = idle;
+        this.waiters = waiters;
+        this.maxSize = maxSize;
+        this.created = created;
+        this.destroyed = destroyed;
+        this.timeouts = timeouts;
+        this.acquireTimes = acquireTimes;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getWaiters() {
+        return waiters;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getDestroyed() {
+        return destroyed;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Histogram of time spent in getConnection(), in nanoseconds.
+     */
+    public LatencyHistogram.Snapshot getAcquireTimes() {
+        return acquireTimes;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStatistics{total=" + total + ", active=" + active + ", idle=" + idle
+                + ", waiters=" + waiters + ", maxSize=" + maxSize + ", created=" + created
+                + ", destroyed=" + destroyed + ", timeouts=" + timeouts
+                + ", acquireP50us=" + acquireTimes.getPercentileNanos(50) / 1000
+                + ", acquireP99us=" + acquireTimes.getPercentileNanos(99) / 1000 + "}";
+    }
+}
@@ -0,0 +1,156 @@
+package com.enterprise.rewards.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * SQL text helpers for the statement profiler.
+ */
+final class SqlText {
+
+    private SqlText() {}
+
+    /**
+     * Collapses whitespace and replaces string and numeric literals with ?, so statements that
+     * differ only in inlined values (or formatting) are profiled together. IN lists and
+     * multi-row VALUES of placeholders are shortened to one element plus "...".
+     */
+    static String normalize(String sql) {
+        StringBuilder out = new StringBuilder(sql.length());
+        int i = 0;
+        int n = sql.length();
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                // Quoted literal; doubled quotes and backslash escapes stay inside it
+                int j = i + 1;
+                while (j < n) {
+                    char d = sql.charAt(j);
+                    if (d == '\\') {
+                        j += 2;
+                        continue;
+                    }
+                    if (d == c) {
+                        if (j + 1 < n && sql.charAt(j + 1) == c) {
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    j++;
+                }
+                out.append('?');
+                i = j + 1;
+            } else if (Character.isWhitespace(c)) {
+                while (i < n && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (out.length() > 0 && i < n) {
+                    out.append(' ');
+                }
+            } else if (Character.isDigit(c) && (out.length() == 0 || !isIdentifierChar(out.charAt(out.length() - 1)))) {
+                while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                out.append('?');
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return collapseLists(out.toString());
+    }
+
+    // "(?, ?, ?)" becomes "(?, ...)" and "(?, ?), (?, ?)" becomes "(?, ?), ..."
+    private static String collapseLists(String sql) {
+        String result = sql.replaceAll("\\(\\?(?:\\s*,\\s*\\?){2,}\\)", "(?, ...)");
+        return result.replaceAll("(\\([?, .]+\\))(?:\\s*,\\s*\\([?, .]+\\))+", "$1, ...");
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '`';
+    }
+
+    /**
+     * Best-effort column name for each ? placeholder (index 0 is parameter 1), lower case,
+     * or null where none can be told. Handles INSERT column lists and "column op ?".
+     */
+    static String[] parameterColumns(String sql) {
+        List<String> columns = new ArrayList<>();
+        String lower = sql.toLowerCase(Locale.ROOT);
+        List<String> insertColumns = insertColumns(lower);
+        int valuesAt = insertColumns != null ? lower.indexOf("values") : -1;
+        int valueIndex = 0;
+        boolean inQuote = false;
+        char quote = 0;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (inQuote) {
+                if (c == quote) {
+                    inQuote = false;
+                }
+                continue;
+            }
+            if (c == '\'' || c == '"') {
+                inQuote = true;
+                quote = c;
+                continue;
+            }
+            if (c != '?') {
+                continue;
+            }
+            if (valuesAt >= 0 && i > valuesAt) {
+                columns.add(insertColumns.get(valueIndex++ % insertColumns.size()));
+            } else {
+                columns.add(columnBefore(lower, i));
+            }
+        }
+        return columns.toArray(new String[0]);
+    }
+
+    // Column list of "insert into t (a, b, c) values", or null
+    private static List<String> insertColumns(String lower) {
+        String trimmed = lower.trim();
+        if (!trimmed.startsWith("insert")) {
+            return null;
+        }
+        int open = lower.indexOf('(');
+        int close = open >= 0 ? lower.indexOf(')', open) : -1;
+        int values = lower.indexOf("values");
+        if (open < 0 || close < 0 || values < close) {
+            return null;
+        }
+        List<String> columns = new ArrayList<>();
+        for (String column : lower.substring(open + 1, close).split(",")) {
+            columns.add(unqualify(column.trim()));
+        }
+        return columns.isEmpty() ? null : columns;
+    }
+
+    // The identifier in front of "= ?", "<= ?", "like ?", "in (?" and similar, or null
+    private static String columnBefore(String lower, int placeholder) {
+        int i = placeholder - 1;
+        while (i >= 0 && (Character.isWhitespace(lower.charAt(i)) || "=<>!(,".indexOf(lower.charAt(i)) >= 0)) {
+            i--;
+        }
+        int end = i + 1;
+        while (i >= 0 && isIdentifierChar(lower.charAt(i))) {
+            i--;
+        }
+        String word = lower.substring(i + 1, end);
+        if (word.equals("like") || word.equals("in")) {
+            return columnBefore(lower, i + 1);
+        }
+        if (i >= 0 && lower.charAt(i) == '.') {
+            // table.column
+            return word;
+        }
+        return word.isEmpty() || Character.isDigit(word.charAt(0)) ? null : word;
+    }
+
+    private static String unqualify(String column) {
+        int dot = column.lastIndexOf('.');
+        return (dot >= 0 ? column.substring(dot + 1) : column).replace("`", "");
+    }
+}
@@ -0,0 +1,543 @@
+package com.enterprise.rewards.jdbc;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.enterprise.rewards.metrics.LatencyHistogram;
+
+/**
+ * Profiles the SQL run through DatabaseDataService. Connections from the pool are wrapped in
+ * proxies that time each execute call and the reading of its result set, count rows and
+ * aggregate both per normalized statement (literals replaced by ?), so the admin page can
+ * show which statements cost the most in total.
+ *
+ * Executions that reach db.profile.slowQueryMs are written to the slow-query log with their
+ * bind parameters, masked for the configured columns. Statements still open when their
+ * connection is closed are reported as leaks and closed.
+ */
+public class StatementProfiler implements AutoCloseable {
+
+    /** ServletContext attribute under which the active profiler is published for monitoring. */
+    public static final String CONTEXT_ATTRIBUTE = "com.enterprise.rewards.statementProfiler";
+
+    private static final String OTHER = "(other)";
+    private static final String REDACTED = "***";
+    private static final int MAX_LOGGED_VALUE_LENGTH = 64;
+
+    private final StatementProfilerConfig config;
+    private final long slowNanos;
+    // Raw SQL to its normalized entry; statements are mostly constants, so this saves re-parsing
+    private final ConcurrentHashMap<String, SqlInfo> byRawSql = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Totals> byStatement = new ConcurrentHashMap<>();
+    private final Totals other = new Totals(OTHER);
+    private final LongAdder statementLeaks = new LongAdder();
+    private final LongAdder resultSetLeaks = new LongAdder();
+    private final LongAdder slowQueries = new LongAdder();
+    private final PrintWriter slowLog;
+
+    public StatementProfiler(StatementProfilerConfig config) {
+        this.config = config;
+        this.slowNanos = config.getSlowQueryMs() > 0 ? config.getSlowQueryMs() * 1000000L : Long.MAX_VALUE;
+        PrintWriter log = null;
+        if (!config.getSlowQueryLog().isEmpty()) {
+            try {
+                log = new PrintWriter(new FileWriter(config.getSlowQueryLog(), true), true);
+            } catch (IOException e) {
+                System.err.println("[ERROR] Cannot open slow query log " + config.getSlowQueryLog()
+                        + ", logging to standard output: " + e.getMessage());
+            }
+        }
+        this.slowLog = log;
+    }
+
+    /**
+     * Returns a connection whose statements are profiled. Closing it closes the given connection.
+     */
+    public Connection wrap(Connection connection) {
+        if (!config.isEnabled()) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(StatementProfiler.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new ConnectionHandler(connection));
+    }
+
+    /**
+     * Returns up to limit statements ordered by total execution plus fetch time, highest first.
+     */
+    public List<StatementStatistics> getTopStatements(int limit) {
+        List<StatementStatistics> all = new ArrayList<>(byStatement.size() + 1);
+        for (Totals totals : byStatement.values()) {
+            all.add(totals.snapshot());
+        }
+        if (other.executions.sum() > 0) {
+            all.add(other.snapshot());
+        }
+        all.sort((a, b) -> Long.compare(b.getTotalNanos(), a.getTotalNanos()));
+        return all.size() > limit ? new ArrayList<>(all.subList(0, limit)) : all;
+    }
+
+    public StatementProfilerConfig getConfig() {
+        return config;
+    }
+
+    /** Statements found open when their connection was closed. */
+    public long getStatementLeaks() {
+        return statementLeaks.sum();
+    }
+
+    /** Result sets found open when their connection was closed. */
+    public long getResultSetLeaks() {
+        return resultSetLeaks.sum();
+    }
+
+    public long getSlowQueries() {
+        return slowQueries.sum();
+    }
+
+    @Override
+    public void close() {
+        if (slowLog != null) {
+            slowLog.close();
+        }
+    }
+
+    private SqlInfo info(String sql) {
+        if (sql == null) {
+            sql = "";
+        }
+        SqlInfo info = byRawSql.get(sql);
+        if (info != null) {
+            return info;
+        }
+        String normalized = SqlText.normalize(sql);
+        Totals totals = byStatement.get(normalized);
+        if (totals == null) {
+            totals = byStatement.size() < config.getMaxStatements()
+                    ? byStatement.computeIfAbsent(normalized, Totals::new) : other;
+        }
+        info = new SqlInfo(totals, SqlText.parameterColumns(sql));
+        if (byRawSql.size() < config.getMaxStatements() * 4) {
+            byRawSql.putIfAbsent(sql, info);
+        }
+        return info;
+    }
+
+    private void logSlow(Execution execution, long totalNanos) {
+        slowQueries.increment();
+        execution.info.totals.slow.increment();
+        StringBuilder line = new StringBuilder(256);
+        line.append("[SLOW SQL] ").append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()))
+                .append(' ').append(totalNanos / 1000000).append(" ms (execute ").append(execution.executeNanos / 1000000)
+                .append(" ms, fetch ").append(execution.fetchNanos / 1000000).append(" ms, rows ").append(execution.rows);
+        if (execution.batchSize > 0) {
+            line.append(", batch ").append(execution.batchSize);
+        }
+        line.append("): ").append(execution.info.totals.sql);
+        if (execution.parameters != null && execution.parameters.length > 0) {
+            line.append(execution.batchSize > 0 ? " -- last parameters [" : " -- parameters [");
+            for (int i = 0; i < execution.parameters.length; i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                String column = i < execution.info.columns.length ? execution.info.columns[i] : null;
+                line.append(i + 1).append('=');
+                if (config.isRedactAllParameters() || (column != null && config.getRedactColumns().contains(column))) {
+                    line.append(REDACTED);
+                } else {
+                    line.append(format(execution.parameters[i]));
+                }
+            }
+            line.append(']');
+        }
+        if (slowLog != null) {
+            synchronized (slowLog) {
+                slowLog.println(line);
+            }
+        } else {
+            System.out.println(line);
+        }
+    }
+
+    private static String format(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof byte[]) {
+            return "<" + ((byte[]) value).length + " bytes>";
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return value.toString();
+        }
+        String text = value.toString();
+        if (text.length() > MAX_LOGGED_VALUE_LENGTH) {
+            text = text.substring(0, MAX_LOGGED_VALUE_LENGTH) + "...";
+        }
+        return "'" + text + "'";
+    }
+
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static long sum(Object counts) {
+        long rows = 0;
+        if (counts instanceof int[]) {
+            for (int count : (int[]) counts) {
+                rows += Math.max(0, count);
+            }
+        } else if (counts instanceof long[]) {
+            for (long count : (long[]) counts) {
+                rows += Math.max(0, count);
+            }
+        }
+        return rows;
+    }
+
+    private static final class Totals {
+        final String sql;
+        final LongAdder executions = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder slow = new LongAdder();
+        final LongAdder executeNanos = new LongAdder();
+        final LongAdder fetchNanos = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Totals(String sql) {
+            this.sql = sql;
+        }
+
+        StatementStatistics snapshot() {
+            return new StatementStatistics(sql, executions.sum(), errors.sum(), rows.sum(), slow.sum(),
+                    executeNanos.sum(), fetchNanos.sum(), latency.snapshot());
+        }
+    }
+
+    private static final class SqlInfo {
+        final Totals totals;
+        // Column bound to each ? (index 0 is parameter 1), used for redaction
+        final String[] columns;
+
+        SqlInfo(Totals totals, String[] columns) {
+            this.totals = totals;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * One execute call and, for queries, the reading of its result set. Recorded when the
+     * result set or statement is closed, or straight away for updates.
+     */
+    private final class Execution {
+        final SqlInfo info;
+        final Object[] parameters;
+        final int batchSize;
+        long executeNanos;
+        long fetchNanos;
+        long rows;
+        ResultSet resultSet;
+        boolean finished;
+
+        Execution(SqlInfo info, Object[] parameters, int batchSize) {
+            this.info = info;
+            this.parameters = parameters;
+            this.batchSize = batchSize;
+        }
+
+        void finish(boolean failed) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            Totals totals = info.totals;
+            long total = executeNanos + fetchNanos;
+            totals.executions.increment();
+            totals.executeNanos.add(executeNanos);
+            totals.fetchNanos.add(fetchNanos);
+            totals.rows.add(rows);
+            totals.latency.record(total);
+            if (failed) {
+                totals.errors.increment();
+            }
+            if (total >= slowNanos) {
+                logSlow(this, total);
+            }
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+        private final List<StatementHandler> openStatements = new ArrayList<>();
+        private Connection proxy;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            this.proxy = (Connection) proxy;
+            String name = method.getName();
+            if ("prepareStatement".equals(name) || "prepareCall".equals(name) || "createStatement".equals(name)) {
+                Statement statement = (Statement) invokeTarget(target, method, args);
+                SqlInfo prepared = "createStatement".equals(name) ? null : info((String) args[0]);
+                StatementHandler handler = new StatementHandler(this, statement, prepared);
+                openStatements.add(handler);
+                return Proxy.newProxyInstance(StatementProfiler.class.getClassLoader(),
+                        new Class<?>[] {method.getReturnType()}, handler);
+            }
+            if ("close".equals(name)) {
+                closeLeakedStatements();
+                return invokeTarget(target, method, args);
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "ProfiledConnection[" + target + "]";
+            }
+            return invokeTarget(target, method, args);
+        }
+
+        private void closeLeakedStatements() {
+            if (openStatements.isEmpty()) {
+                return;
+            }
+            for (StatementHandler statement : new ArrayList<>(openStatements)) {
+                statementLeaks.increment();
+                Execution open = statement.current;
+                if (open != null && open.resultSet != null && !open.finished) {
+                    resultSetLeaks.increment();
+                }
+                String sql = statement.prepared != null ? statement.prepared.totals.sql
+                        : open != null ? open.info.totals.sql : "(no statement executed)";
+                System.err.println("[WARN] Statement not closed before its connection"
+                        + (open != null && open.resultSet != null && !open.finished ? " (result set still open)" : "")
+                        + ": " + sql);
+                if (statement.openedAt != null) {
+                    statement.openedAt.printStackTrace();
+                }
+                try {
+                    statement.closeQuietly();
+                } catch (Exception e) {
+                    System.err.println("[WARN] Failed to close leaked statement: " + e.getMessage());
+                }
+            }
+            openStatements.clear();
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+        private final ConnectionHandler connection;
+        private final Statement target;
+        // Set for prepared and callable statements
+        private final SqlInfo prepared;
+        private final Throwable openedAt;
+        private Object[] parameters = new Object[8];
+        private int parameterCount;
+        private int batchSize;
+        private SqlInfo batchSql;
+        private Execution current;
+        private Statement proxy;
+
+        StatementHandler(ConnectionHandler connection, Statement target, SqlInfo prepared) {
+            this.connection = connection;
+            this.target = target;
+            this.prepared = prepared;
+            this.openedAt = config.isLeakStackTraces() ? new Throwable("Statement opened here") : null;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            this.proxy = (Statement) proxy;
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                // Bind parameter: setString(1, value), setNull(2, Types.INTEGER), ...
+                setParameter((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+                return invokeTarget(target, method, args);
+            }
+            switch (name) {
+                case "clearParameters":
+                    Arrays.fill(parameters, null);
+                    parameterCount = 0;
+                    return invokeTarget(target, method, args);
+                case "addBatch":
+                    batchSize++;
+                    if (args != null && args.length == 1 && batchSql == null) {
+                        batchSql = info((String) args[0]);
+                    }
+                    return invokeTarget(target, method, args);
+                case "clearBatch":
+                    batchSize = 0;
+                    batchSql = null;
+                    return invokeTarget(target, method, args);
+                case "executeQuery":
+                case "executeUpdate":
+                case "executeLargeUpdate":
+                case "execute":
+                case "executeBatch":
+                case "executeLargeBatch":
+                    return execute(method, args, name);
+                case "getResultSet": {
+                    ResultSet resultSet = (ResultSet) invokeTarget(target, method, args);
+                    return resultSet != null && current != null ? wrap(resultSet) : resultSet;
+                }
+                case "getConnection":
+                    return connection.proxy;
+                case "close":
+                    closeQuietly();
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ProfiledStatement[" + target + "]";
+                default:
+                    return invokeTarget(target, method, args);
+            }
+        }
+
+        private Object execute(Method method, Object[] args, String name) throws Throwable {
+            // A new execution closes the previous result set
+            finishCurrent();
+            boolean batch = name.endsWith("Batch");
+            SqlInfo info = batch && batchSql != null ? batchSql
+                    : args != null && args.length > 0 && args[0] instanceof String ? info((String) args[0])
+                    : prepared != null ? prepared : info(null);
+            Object[] bound = slowNanos != Long.MAX_VALUE && parameterCount > 0
+                    ? Arrays.copyOf(parameters, parameterCount) : null;
+            Execution execution = new Execution(info, bound, batch ? batchSize : 0);
+            if (batch) {
+                batchSize = 0;
+                batchSql = null;
+            }
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = invokeTarget(target, method, args);
+            } catch (Throwable t) {
+                execution.executeNanos = System.nanoTime() - start;
+                execution.finish(true);
+                throw t;
+            }
+            execution.executeNanos = System.nanoTime() - start;
+            if ("executeQuery".equals(name)) {
+                current = execution;
+                return wrap((ResultSet) result);
+            }
+            if ("execute".equals(name) && Boolean.TRUE.equals(result)) {
+                // Result set is picked up through getResultSet()
+                current = execution;
+                return result;
+            }
+            if (batch) {
+                execution.rows = sum(result);
+            } else if (result instanceof Number) {
+                execution.rows = Math.max(0, ((Number) result).longValue());
+            } else {
+                execution.rows = Math.max(0, target.getUpdateCount());
+            }
+            execution.finish(false);
+            return result;
+        }
+
+        private ResultSet wrap(ResultSet resultSet) {
+            if (current.resultSet == null) {
+                current.resultSet = (ResultSet) Proxy.newProxyInstance(StatementProfiler.class.getClassLoader(),
+                        new Class<?>[] {ResultSet.class}, new ResultSetHandler(this, resultSet, current));
+            }
+            return current.resultSet;
+        }
+
+        private void setParameter(int index, Object value) {
+            if (index < 1 || index > 1024) {
+                return;
+            }
+            if (index > parameters.length) {
+                parameters = Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+            }
+            parameters[index - 1] = value;
+            parameterCount = Math.max(parameterCount, index);
+        }
+
+        private void finishCurrent() {
+            if (current != null) {
+                current.finish(false);
+                current = null;
+            }
+        }
+
+        void closeQuietly() throws Exception {
+            finishCurrent();
+            connection.openStatements.remove(this);
+            target.close();
+        }
+    }
+
+    private class ResultSetHandler implements InvocationHandler {
+        private final StatementHandler statement;
+        private final ResultSet target;
+        private final Execution execution;
+
+        ResultSetHandler(StatementHandler statement, ResultSet target, Execution execution) {
+            this.statement = statement;
+            this.target = target;
+            this.execution = execution;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "next": {
+                    long start = System.nanoTime();
+                    Object more = invokeTarget(target, method, args);
+                    execution.fetchNanos += System.nanoTime() - start;
+                    if (Boolean.TRUE.equals(more)) {
+                        execution.rows++;
+                    }
+                    return more;
+                }
+                case "close":
+                    try {
+                        return invokeTarget(target, method, args);
+                    } finally {
+                        execution.finish(false);
+                    }
+                case "getStatement":
+                    return statement.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "ProfiledResultSet[" + target + "]";
+                default:
+                    return invokeTarget(target, method, args);
+            }
+        }
+    }
+}
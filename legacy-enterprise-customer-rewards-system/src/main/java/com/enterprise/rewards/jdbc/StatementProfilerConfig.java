@@ -0,0 +1,140 @@
+package com.enterprise.rewards.jdbc;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.servlet.ServletContext;
+
+/**
+ * SQL statement profiler settings.
+ * Values are read from db.properties and can be overridden per deployment
+ * with web.xml context parameters of the same name (e.g. db.profile.slowQueryMs).
+ */
+public class StatementProfilerConfig {
+
+    public static final String ENABLED = "db.profile.enabled";
+    public static final String SLOW_QUERY_MS = "db.profile.slowQueryMs";
+    public static final String SLOW_QUERY_LOG = "db.profile.slowQueryLog";
+    public static final String REDACT_COLUMNS = "db.profile.redactColumns";
+    public static final String REDACT_ALL_PARAMETERS = "db.profile.redactAllParameters";
+    public static final String MAX_STATEMENTS = "db.profile.maxStatements";
+    public static final String LEAK_STACK_TRACES = "db.profile.leakStackTraces";
+
+    private boolean enabled = true;
+    private long slowQueryMs = 500;
+    private String slowQueryLog = "";
+    private Set<String> redactColumns = Collections.emptySet();
+    private boolean redactAllParameters;
+    private int maxStatements = 500;
+    private boolean leakStackTraces;
+
+    public StatementProfilerConfig() {}
+
+    /**
+     * Builds the configuration from db.properties values, then applies any
+     * matching context parameters from web.xml. Context may be null.
+     */
+    public static StatementProfilerConfig load(Properties props, ServletContext context) {
+        StatementProfilerConfig config = new StatementProfilerConfig();
+        config.enabled = getBoolean(props, context, ENABLED, config.enabled);
+        config.slowQueryMs = getLong(props, context, SLOW_QUERY_MS, config.slowQueryMs);
+        String log = ConnectionPoolConfig.getValue(props, context, SLOW_QUERY_LOG);
+        config.slowQueryLog = log != null ? log : "";
+        String columns = ConnectionPoolConfig.getValue(props, context, REDACT_COLUMNS);
+        if (columns != null) {
+            Set<String> names = new LinkedHashSet<>();
+            for (String column : columns.split(",")) {
+                if (!column.trim().isEmpty()) {
+                    names.add(column.trim().toLowerCase(Locale.ROOT));
+                }
+            }
+            config.redactColumns = Collections.unmodifiableSet(names);
+        }
+        config.redactAllParameters = getBoolean(props, context, REDACT_ALL_PARAMETERS, config.redactAllParameters);
+        config.maxStatements = Math.max(1, (int) getLong(props, context, MAX_STATEMENTS, config.maxStatements));
+        config.leakStackTraces = getBoolean(props, context, LEAK_STACK_TRACES, config.leakStackTraces);
+        return config;
+    }
+
+    private static boolean getBoolean(Properties props, ServletContext context, String name, boolean defaultValue) {
+        String value = ConnectionPoolConfig.getValue(props, context, name);
+        return value == null || value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    private static long getLong(Properties props, ServletContext context, String name, long defaultValue) {
+        String value = ConnectionPoolConfig.getValue(props, context, name);
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[WARN] Invalid value for " + name + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Statements taking at least this long (execution plus fetch) are logged; 0 turns the log off. */
+    public long getSlowQueryMs() {
+        return slowQueryMs;
+    }
+
+    public void setSlowQueryMs(long slowQueryMs) {
+        this.slowQueryMs = slowQueryMs;
+    }
+
+    /** File the slow-query log is appended to; empty for standard output. */
+    public String getSlowQueryLog() {
+        return slowQueryLog;
+    }
+
+    public void setSlowQueryLog(String slowQueryLog) {
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    /** Lower-case column names whose bind values are masked in the slow-query log. */
+    public Set<String> getRedactColumns() {
+        return redactColumns;
+    }
+
+    public void setRedactColumns(Set<String> redactColumns) {
+        this.redactColumns = redactColumns;
+    }
+
+    public boolean isRedactAllParameters() {
+        return redactAllParameters;
+    }
+
+    public void setRedactAllParameters(boolean redactAllParameters) {
+        this.redactAllParameters = redactAllParameters;
+    }
+
+    /** Distinct normalized statements tracked; later ones are counted under "(other)". */
+    public int getMaxStatements() {
+        return maxStatements;
+    }
+
+    public void setMaxStatements(int maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+
+    /** Whether leak warnings include the stack trace of the code that opened the statement. */
+    public boolean isLeakStackTraces() {
+        return leakStackTraces;
+    }
+
+    public void setLeakStackTraces(boolean leakStackTraces) {
+        this.leakStackTraces = leakStackTraces;
+    }
+}
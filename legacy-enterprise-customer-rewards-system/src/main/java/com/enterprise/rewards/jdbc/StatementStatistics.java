@@ -0,0 +1,71 @@
+package com.enterprise.rewards.jdbc;
+
+import com.enterprise.rewards.metrics.LatencyHistogram;
+
+/**
+ * Point-in-time totals for one normalized SQL statement, for the admin page's top-N report.
+ */
+public class StatementStatistics {
+    private final String sql;
+    private final long executions;
+    private final long errors;
+    private final long rows;
+    private final long slow;
+    private final long executeNanos;
+    private final long fetchNanos;
+    private final LatencyHistogram.Snapshot latency;
+
+    public StatementStatistics(String sql, long executions, long errors, long rows, long slow,
+                               long executeNanos, long fetchNanos, LatencyHistogram.Snapshot latency) {
+        this.sql = sql;
+        this.executions = executions;
+        this.errors = errors;
+        this.rows = rows;
+        this.slow = slow;
+        this.executeNanos = executeNanos;
+        this.fetchNanos = fetchNanos;
+        this.latency = latency;
+    }
+
+    /** Normalized SQL text (literals replaced by ?). */
+    public String getSql() {
+        return sql;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /** Rows read from result sets plus rows reported by updates. */
+    public long getRows() {
+        return rows;
+    }
+
+    /** Executions that reached the slow-query threshold. */
+    public long getSlow() {
+        return slow;
+    }
+
+    /** Time spent in execute calls. */
+    public long getExecuteNanos() {
+        return executeNanos;
+    }
+
+    /** Time spent reading result set rows. */
+    public long getFetchNanos() {
+        return fetchNanos;
+    }
+
+    public long getTotalNanos() {
+        return executeNanos + fetchNanos;
+    }
+
+    /** Execution plus fetch time per execution. */
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency;
+    }
+}
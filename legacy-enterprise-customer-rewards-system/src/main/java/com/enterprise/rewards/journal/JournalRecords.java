@@ -0,0 +1,168 @@
+package com.enterprise.rewards.journal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import com.enterprise.rewards.model.Customer;
+import com.enterprise.rewards.model.PointsTransaction;
+import com.enterprise.rewards.model.Reward;
+
+/**
+ * Binary encoding of journal and snapshot records. A record is a type byte followed by its
+ * fields: strings as an int byte length (-1 for null) and UTF-8 bytes, dates as epoch millis
+ * (Long.MIN_VALUE for null), numbers big-endian.
+ */
+final class JournalRecords {
+
+    static final byte CUSTOMER = 1;
+    static final byte TRANSACTION = 2;
+    static final byte REWARD = 3;
+    // Last record of a snapshot, holding the number of records before it
+    static final byte SNAPSHOT_END = 4;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private JournalRecords() {}
+
+    /**
+     * Customer profile with its balances.
+     */
+    static byte[] customer(Customer c) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(CUSTOMER);
+        writeString(out, c.getCustomerId());
+        writeString(out, c.getFirstName());
+        writeString(out, c.getLastName());
+        writeString(out, c.getEmailAddress());
+        writeString(out, c.getPhoneNumber());
+        writeDate(out, c.getRegistrationDate());
+        writeString(out, c.getLoyaltyTier());
+        writeString(out, c.getAccountStatus());
+        out.writeInt(c.getTotalLifetimePoints());
+        out.writeInt(c.getCurrentAvailablePoints());
+        return bytes.toByteArray();
+    }
+
+    static byte[] transaction(PointsTransaction t) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(TRANSACTION);
+        writeString(out, t.getTransactionId());
+        writeString(out, t.getCustomerId());
+        writeString(out, t.getTransactionType());
+        out.writeInt(t.getPointsAmount());
+        writeString(out, t.getDescription());
+        writeDate(out, t.getTransactionDate());
+        return bytes.toByteArray();
+    }
+
+    static byte[] reward(Reward r) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(REWARD);
+        writeString(out, r.getRewardId());
+        writeString(out, r.getRewardName());
+        out.writeInt(r.getPointsRequired());
+        writeString(out, r.getRewardType());
+        writeString(out, r.getRewardValue());
+        out.writeInt(r.getAvailabilityCount());
+        writeDate(out, r.getExpirationDate());
+        writeString(out, r.getCategory());
+        writeString(out, r.getDescription());
+        out.writeBoolean(r.isActive());
+        return bytes.toByteArray();
+    }
+
+    static byte[] snapshotEnd(long recordCount) {
+        return ByteBuffer.allocate(9).put(SNAPSHOT_END).putLong(recordCount).array();
+    }
+
+    /**
+     * Decodes the record in payload and passes it to handler. Returns the record type.
+     */
+    static byte decode(ByteBuffer payload, TransactionJournal.Handler handler, boolean fromSnapshot) {
+        byte type = payload.get();
+        switch (type) {
+            case CUSTOMER: {
+                Customer c = new Customer();
+                c.setCustomerId(readString(payload));
+                c.setFirstName(readString(payload));
+                c.setLastName(readString(payload));
+                c.setEmailAddress(readString(payload));
+                c.setPhoneNumber(readString(payload));
+                c.setRegistrationDate(readDate(payload));
+                c.setLoyaltyTier(readString(payload));
+                c.setAccountStatus(readString(payload));
+                c.setTotalLifetimePoints(payload.getInt());
+                c.setCurrentAvailablePoints(payload.getInt());
+                handler.onCustomer(c);
+                break;
+            }
+            case TRANSACTION: {
+                PointsTransaction t = new PointsTransaction();
+                t.setTransactionId(readString(payload));
+                t.setCustomerId(readString(payload));
+                t.setTransactionType(readString(payload));
+                t.setPointsAmount(payload.getInt());
+                t.setDescription(readString(payload));
+                t.setTransactionDate(readDate(payload));
+                handler.onTransaction(t, fromSnapshot);
+                break;
+            }
+            case REWARD: {
+                Reward r = new Reward();
+                r.setRewardId(readString(payload));
+                r.setRewardName(readString(payload));
+                r.setPointsRequired(payload.getInt());
+                r.setRewardType(readString(payload));
+                r.setRewardValue(readString(payload));
+                r.setAvailabilityCount(payload.getInt());
+                r.setExpirationDate(readDate(payload));
+                r.setCategory(readString(payload));
+                r.setDescription(readString(payload));
+                r.setActive(payload.get() != 0);
+                handler.onReward(r);
+                break;
+            }
+            case SNAPSHOT_END:
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+        return type;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeDate(DataOutputStream out, Date value) throws IOException {
+        out.writeLong(value != null ? value.getTime() : NO_DATE);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Date readDate(ByteBuffer in) {
+        long millis = in.getLong();
+        return millis != NO_DATE ? new Date(millis) : null;
+    }
+}
@@ -0,0 +1,561 @@
+package com.enterprise.rewards.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+import com.enterprise.rewards.model.Customer;
+import com.enterprise.rewards.model.PointsTransaction;
+import com.enterprise.rewards.model.Reward;
+
+/**
+ * Append-only journal that makes an in-process data service durable without a database.
+ *
+ * Records (customers, transactions, rewards; see JournalRecords) are appended to fixed-size
+ * segment files mapped into memory, each framed as [int length][int CRC32][payload]. A full
+ * segment is forced to disk and the next one is started. An appended record is in the page
+ * cache as soon as append returns, so it survives a crash of the JVM; surviving a crash of the
+ * machine depends on the fsync policy:
+ *   ALWAYS    append returns after the segment is forced; concurrent appends share one force
+ *   INTERVAL  a background thread forces every fsyncIntervalMillis (up to that much is at risk)
+ *   NEVER     left to the operating system
+ *
+ * On open the latest snapshot is loaded and the segments written after it are replayed. A
+ * record that is cut short or fails its CRC at the end of the last segment is a torn write
+ * and is discarded; anywhere else it means corruption and open fails.
+ *
+ * Every snapshotAfterSegments segments the SnapshotSource writes the full state to a new
+ * snapshot file and the segments it covers are deleted, so startup replays at most that many
+ * segments. Appends continue while a snapshot is written; records that end up both in the
+ * snapshot and in the following segment are replayed twice, so handlers must ignore
+ * customers and transactions they already have.
+ */
+public class TransactionJournal implements AutoCloseable {
+
+    public enum FsyncPolicy { ALWAYS, INTERVAL, NEVER }
+
+    /**
+     * Receives the records of the snapshot and the journal, in the order they were written.
+     */
+    public interface Handler {
+        /** A customer profile with its balances at the time it was written. */
+        void onCustomer(Customer customer);
+
+        /** fromSnapshot is true when the customer's balances written before it already include this transaction. */
+        void onTransaction(PointsTransaction transaction, boolean fromSnapshot);
+
+        void onReward(Reward reward);
+    }
+
+    /**
+     * Writes the complete current state. Each customer's balances must be consistent with
+     * the transactions written for that customer.
+     */
+    public interface SnapshotSource {
+        void writeSnapshot(SnapshotWriter writer) throws IOException;
+    }
+
+    public static final class SnapshotWriter {
+        private final DataOutputStream out;
+        private final CRC32 crc = new CRC32();
+        private long records;
+
+        private SnapshotWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        public void customer(Customer customer) throws IOException {
+            write(JournalRecords.customer(customer));
+        }
+
+        public void transaction(PointsTransaction transaction) throws IOException {
+            write(JournalRecords.transaction(transaction));
+        }
+
+        public void reward(Reward reward) throws IOException {
+            write(JournalRecords.reward(reward));
+        }
+
+        private void write(byte[] payload) throws IOException {
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+            records++;
+        }
+    }
+
+    private static final int SEGMENT_MAGIC = 0x524a4e4c;
+    private static final int SNAPSHOT_MAGIC = 0x52534e50;
+    private static final int FORMAT_VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private final File directory;
+    private final int segmentBytes;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalMillis;
+    private final int snapshotAfterSegments;
+
+    // Guarded by this
+    private MappedByteBuffer segment;
+    private long segmentNumber;
+    private int position;
+    private long appendedRecords;
+    private long snapshotBase;
+    private final CRC32 crc = new CRC32();
+
+    private final Object syncLock = new Object();
+    private volatile long syncedRecords;
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+    private SnapshotSource snapshotSource;
+    private ScheduledExecutorService scheduler;
+
+    public TransactionJournal(File directory, int segmentBytes, FsyncPolicy fsyncPolicy,
+                              long fsyncIntervalMillis, int snapshotAfterSegments) {
+        this.directory = directory;
+        this.segmentBytes = Math.max(64 * 1024, segmentBytes);
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalMillis = Math.max(1, fsyncIntervalMillis);
+        this.snapshotAfterSegments = snapshotAfterSegments;
+    }
+
+    /**
+     * Replays the latest snapshot and the journal into handler, then opens the journal for
+     * appending. Returns the number of records replayed.
+     */
+    public synchronized long open(Handler handler, SnapshotSource source) throws IOException {
+        if (segment != null) {
+            throw new IllegalStateException("Journal already open: " + directory);
+        }
+        Files.createDirectories(directory.toPath());
+        long started = System.nanoTime();
+        List<Long> snapshots = fileNumbers(SNAPSHOT_SUFFIX);
+        List<Long> segments = fileNumbers(SEGMENT_SUFFIX);
+        long base = 1;
+        long records = 0;
+        if (!snapshots.isEmpty()) {
+            base = snapshots.get(snapshots.size() - 1);
+            records += loadSnapshot(file(base, SNAPSHOT_SUFFIX), handler);
+        }
+        List<Long> tail = new ArrayList<>();
+        for (Long number : segments) {
+            if (number >= base) {
+                tail.add(number);
+            } else {
+                // Left over from a snapshot that finished before the segments were deleted
+                delete(file(number, SEGMENT_SUFFIX));
+            }
+        }
+        for (int i = 0; i < tail.size(); i++) {
+            long expected = i == 0 ? base : tail.get(i - 1) + 1;
+            if (tail.get(i) != expected) {
+                throw new IllegalStateException("Journal segment " + file(expected, SEGMENT_SUFFIX) + " is missing");
+            }
+            records += replaySegment(tail.get(i), handler, i == tail.size() - 1);
+        }
+        if (segment == null) {
+            startSegment(base);
+        }
+        snapshotBase = base;
+        snapshotSource = source;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rewards-journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    flush();
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("[ERROR] Journal fsync failed: " + e.getMessage());
+                }
+            }, fsyncIntervalMillis, fsyncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        System.out.println("[INFO] Journal " + directory + ": replayed " + records + " records from "
+                + (snapshots.isEmpty() ? "no snapshot" : "snapshot " + base) + " and " + tail.size() + " segment(s) in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+        return records;
+    }
+
+    public void appendCustomer(Customer customer) throws IOException {
+        append(JournalRecords.customer(customer));
+    }
+
+    public void appendTransaction(PointsTransaction transaction) throws IOException {
+        append(JournalRecords.transaction(transaction));
+    }
+
+    public void appendReward(Reward reward) throws IOException {
+        append(JournalRecords.reward(reward));
+    }
+
+    private void append(byte[] payload) throws IOException {
+        long sequence;
+        boolean snapshotDue = false;
+        synchronized (this) {
+            if (segment == null) {
+                throw new IOException("Journal is closed: " + directory);
+            }
+            int needed = RECORD_HEADER_BYTES + payload.length;
+            if (needed > segmentBytes - FILE_HEADER_BYTES) {
+                throw new IOException("Journal record of " + payload.length + " bytes does not fit in a segment");
+            }
+            if (position + needed > segment.limit()) {
+                rollSegment();
+                snapshotDue = snapshotAfterSegments > 0 && segmentNumber - snapshotBase >= snapshotAfterSegments;
+            }
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            // Length last: until it is written the record reads as the end of the segment
+            segment.position(position + RECORD_HEADER_BYTES);
+            segment.put(payload);
+            segment.putInt(position + 4, (int) crc.getValue());
+            segment.putInt(position, payload.length);
+            position += needed;
+            sequence = ++appendedRecords;
+        }
+        if (snapshotDue) {
+            scheduleSnapshot();
+        }
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            syncTo(sequence);
+        }
+    }
+
+    /**
+     * Forces everything appended so far to disk.
+     */
+    public void flush() throws IOException {
+        long sequence;
+        synchronized (this) {
+            sequence = appendedRecords;
+        }
+        syncTo(sequence);
+    }
+
+    // Group commit: one force covers every record appended before it started
+    private void syncTo(long sequence) throws IOException {
+        synchronized (syncLock) {
+            if (syncedRecords >= sequence) {
+                return;
+            }
+            MappedByteBuffer current;
+            long upTo;
+            synchronized (this) {
+                current = segment;
+                upTo = appendedRecords;
+            }
+            if (current == null) {
+                throw new IOException("Journal is closed: " + directory);
+            }
+            // Earlier segments were forced when they were rolled
+            current.force();
+            syncedRecords = upTo;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the source's state and deletes the segments it covers. Returns false
+     * if another snapshot is already running.
+     */
+    public boolean snapshot() throws IOException {
+        if (!snapshotRunning.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            writeSnapshot();
+            return true;
+        } finally {
+            snapshotRunning.set(false);
+        }
+    }
+
+    // Runs a snapshot on the background thread unless one is already queued or running
+    private void scheduleSnapshot() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+        }
+        if (executor == null || snapshotSource == null || !snapshotRunning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    if (isOpen()) {
+                        writeSnapshot();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("[ERROR] Journal snapshot failed: " + e.getMessage());
+                } finally {
+                    snapshotRunning.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Closed
+            snapshotRunning.set(false);
+        }
+    }
+
+    private synchronized boolean isOpen() {
+        return segment != null;
+    }
+
+    private void writeSnapshot() throws IOException {
+        long started = System.nanoTime();
+        long base;
+        synchronized (this) {
+            if (segment == null) {
+                throw new IOException("Journal is closed: " + directory);
+            }
+            // Everything before the new segment is covered by the snapshot
+            rollSegment();
+            base = segmentNumber;
+        }
+        File target = file(base, SNAPSHOT_SUFFIX);
+        File temp = new File(directory, target.getName() + ".tmp");
+        long records;
+        try (FileOutputStream file = new FileOutputStream(temp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            SnapshotWriter writer = new SnapshotWriter(out);
+            snapshotSource.writeSnapshot(writer);
+            records = writer.records;
+            writer.write(JournalRecords.snapshotEnd(records));
+            out.flush();
+            file.getChannel().force(true);
+        } catch (IOException | RuntimeException e) {
+            delete(temp);
+            throw e;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+        synchronized (this) {
+            snapshotBase = base;
+        }
+        for (Long number : fileNumbers(SEGMENT_SUFFIX)) {
+            if (number < base) {
+                delete(file(number, SEGMENT_SUFFIX));
+            }
+        }
+        for (Long number : fileNumbers(SNAPSHOT_SUFFIX)) {
+            if (number < base) {
+                delete(file(number, SNAPSHOT_SUFFIX));
+            }
+        }
+        System.out.println("[INFO] Journal snapshot " + target.getName() + ": " + records + " records in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+    }
+
+    private long loadSnapshot(File file, Handler handler) throws IOException {
+        long records = 0;
+        CRC32 check = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IllegalStateException("Not a journal snapshot: " + file);
+            }
+            while (true) {
+                int length = in.readInt();
+                int storedCrc = in.readInt();
+                if (length <= 0) {
+                    throw new IllegalStateException("Corrupt journal snapshot " + file + " after " + records + " records");
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                check.reset();
+                check.update(payload, 0, length);
+                if ((int) check.getValue() != storedCrc) {
+                    throw new IllegalStateException("Corrupt journal snapshot " + file + " after " + records + " records");
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(payload);
+                if (JournalRecords.decode(buffer, handler, true) == JournalRecords.SNAPSHOT_END) {
+                    if (buffer.getLong() != records) {
+                        throw new IllegalStateException("Incomplete journal snapshot " + file);
+                    }
+                    return records;
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            throw new IllegalStateException("Truncated journal snapshot " + file + " after " + records + " records");
+        }
+    }
+
+    // Replays one segment; the last one stays mapped for appending after its last good record
+    private long replaySegment(long number, Handler handler, boolean last) throws IOException {
+        File file = file(number, SEGMENT_SUFFIX);
+        MappedByteBuffer buffer = map(file, file.length(), last);
+        if (buffer.limit() < FILE_HEADER_BYTES
+                || buffer.getInt(0) != SEGMENT_MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            if (last && buffer.limit() >= FILE_HEADER_BYTES && buffer.getInt(0) == 0) {
+                // Created just before a crash, header never reached the disk
+                buffer.putInt(0, SEGMENT_MAGIC).putInt(4, FORMAT_VERSION);
+            } else {
+                throw new IllegalStateException("Not a journal segment: " + file);
+            }
+        }
+        CRC32 check = new CRC32();
+        int offset = FILE_HEADER_BYTES;
+        long records = 0;
+        boolean torn = false;
+        while (offset + RECORD_HEADER_BYTES <= buffer.limit()) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            int start = offset + RECORD_HEADER_BYTES;
+            if (length < 0 || length > buffer.limit() - start) {
+                torn = true;
+                break;
+            }
+            ByteBuffer payload = buffer.duplicate();
+            payload.limit(start + length).position(start);
+            check.reset();
+            check.update(payload.duplicate());
+            if ((int) check.getValue() != buffer.getInt(offset + 4)) {
+                torn = true;
+                break;
+            }
+            JournalRecords.decode(payload.slice(), handler, false);
+            records++;
+            offset = start + length;
+        }
+        if (torn && !last) {
+            throw new IllegalStateException("Corrupt journal segment " + file + " at offset " + offset);
+        }
+        if (last) {
+            if (torn) {
+                System.out.println("[WARN] Discarding torn write at the end of journal segment " + file + " (offset " + offset + ")");
+                // Zero the rest so stale bytes are never read as records after new appends
+                for (int i = offset; i < buffer.limit(); i++) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+            segment = buffer;
+            segmentNumber = number;
+            position = offset;
+        }
+        return records;
+    }
+
+    private void rollSegment() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            segment.force();
+        }
+        startSegment(segmentNumber + 1);
+    }
+
+    private void startSegment(long number) throws IOException {
+        MappedByteBuffer buffer = map(file(number, SEGMENT_SUFFIX), segmentBytes, true);
+        buffer.putInt(0, SEGMENT_MAGIC).putInt(4, FORMAT_VERSION);
+        segment = buffer;
+        segmentNumber = number;
+        position = FILE_HEADER_BYTES;
+    }
+
+    private static MappedByteBuffer map(File file, long size, boolean writable) throws IOException {
+        // The mapping stays valid after the file is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r")) {
+            if (writable && raf.length() < size) {
+                raf.setLength(size);
+            }
+            return raf.getChannel().map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    private void forceDirectory() {
+        try (FileChannel dir = FileChannel.open(directory.toPath())) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform; the rename is still atomic
+        }
+    }
+
+    private File file(long number, String suffix) {
+        return new File(directory, String.format("%s-%020d%s", suffix.equals(SEGMENT_SUFFIX) ? "segment" : "snapshot", number, suffix));
+    }
+
+    // Sorted numbers of the segment or snapshot files; leftover temporary files are removed
+    private List<Long> fileNumbers(String suffix) {
+        List<Long> numbers = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return numbers;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(".tmp") && !snapshotRunning.get()) {
+                delete(f);
+            } else if (name.endsWith(suffix) && name.indexOf('-') > 0) {
+                try {
+                    numbers.add(Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // Not ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            System.out.println("[WARN] Could not delete " + file);
+        }
+    }
+
+    /**
+     * Lets a running snapshot finish, forces the journal to disk and stops the background
+     * thread. Appends fail afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = scheduler;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(60, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (segment == null) {
+                return;
+            }
+            segment.force();
+            syncedRecords = appendedRecords;
+            segment = null;
+        }
+    }
+}
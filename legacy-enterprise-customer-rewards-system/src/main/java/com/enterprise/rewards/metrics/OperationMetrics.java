@@ -0,0 +1,31 @@
+package com.enterprise.rewards.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and error count of one operation (a data-service method or an endpoint).
+ * Recording is lock-free and does not allocate.
+ */
+public class OperationMetrics {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * Records one call that started at the given System.nanoTime() reading.
+     */
+    public void record(long startNanos, boolean failed) {
+        latency.recordSince(startNanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+}
@@ -0,0 +1,89 @@
+package com.enterprise.rewards.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Per-method metrics of the data service and per-endpoint metrics of /service/*, shared by
+ * InstrumentedDataService, RequestMetricsFilter and the /service/metrics endpoint.
+ * One instance per web application, created on first use.
+ */
+public class ServiceMetrics {
+
+    /** ServletContext attribute under which the shared instance is published. */
+    public static final String CONTEXT_ATTRIBUTE = "com.enterprise.rewards.serviceMetrics";
+
+    // Sorted so the exported series keep a stable order
+    private final Map<String, OperationMetrics> dataServiceMethods = new ConcurrentSkipListMap<>();
+    private final Map<EndpointKey, OperationMetrics> endpoints = new ConcurrentSkipListMap<>();
+
+    /**
+     * Returns the application's metrics, creating them on first use.
+     */
+    public static ServiceMetrics get(ServletContext context) {
+        synchronized (context) {
+            ServiceMetrics metrics = (ServiceMetrics) context.getAttribute(CONTEXT_ATTRIBUTE);
+            if (metrics == null) {
+                metrics = new ServiceMetrics();
+                context.setAttribute(CONTEXT_ATTRIBUTE, metrics);
+            }
+            return metrics;
+        }
+    }
+
+    public OperationMetrics dataServiceMethod(String method) {
+        return dataServiceMethods.computeIfAbsent(method, m -> new OperationMetrics());
+    }
+
+    /**
+     * Metrics of one servlet mapping pattern (e.g. /service/customers/*) and HTTP method.
+     */
+    public OperationMetrics endpoint(String pattern, String httpMethod) {
+        return endpoints.computeIfAbsent(new EndpointKey(pattern, httpMethod), k -> new OperationMetrics());
+    }
+
+    public Map<String, OperationMetrics> getDataServiceMethods() {
+        return Collections.unmodifiableMap(dataServiceMethods);
+    }
+
+    public Map<EndpointKey, OperationMetrics> getEndpoints() {
+        return Collections.unmodifiableMap(endpoints);
+    }
+
+    public static final class EndpointKey implements Comparable<EndpointKey> {
+        private final String pattern;
+        private final String httpMethod;
+
+        EndpointKey(String pattern, String httpMethod) {
+            this.pattern = pattern;
+            this.httpMethod = httpMethod;
+        }
+
+        public String getPattern() {
+            return pattern;
+        }
+
+        public String getHttpMethod() {
+            return httpMethod;
+        }
+
+        @Override
+        public int compareTo(EndpointKey other) {
+            int c = pattern.compareTo(other.pattern);
+            return c != 0 ? c : httpMethod.compareTo(other.httpMethod);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof EndpointKey && compareTo((EndpointKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return pattern.hashCode() * 31 + httpMethod.hashCode();
+        }
+    }
+}
@@ -43,6 +43,21 @@ public class Customer {
         this.phoneNumber = phoneNumber;
     }
 
+    // Copy constructor
+    public Customer(Customer other) {
+        this.customerId = other.customerId;
+        this.firstName = other.firstName;
+        this.lastName = other.lastName;
+        this.emailAddress = other.emailAddress;
+        this.phoneNumber = other.phoneNumber;
+        this.registrationDate = other.registrationDate;
+        this.loyaltyTier = other.loyaltyTier;
+        this.totalLifetimePoints = other.totalLifetimePoints;
+        this.currentAvailablePoints = other.currentAvailablePoints;
+        this.address = other.address;
+        this.accountStatus = other.accountStatus;
+    }
+
     // Getters and Setters
     public String getCustomerId() {
         return customerId;
@@ -0,0 +1,56 @@
+package com.enterprise.rewards.service;
+
+import com.enterprise.rewards.model.PointsTransaction;
+
+/**
+ * Outcome of one item of a transaction batch.
+ * CREATED items carry the stored transaction; REJECTED items failed validation
+ * and FAILED items belonged to a chunk whose commit failed. Both carry an error.
+ */
+public class BatchItemResult {
+
+    public enum Status { CREATED, REJECTED, FAILED }
+
+    private final int index;
+    private final Status status;
+    private final PointsTransaction transaction;
+    private final String error;
+
+    private BatchItemResult(int index, Status status, PointsTransaction transaction, String error) {
+        this.index = index;
+        this.status = status;
+        this.transaction = transaction;
+        this.error = error;
+    }
+
+    public static BatchItemResult created(int index, PointsTransaction transaction) {
+        return new BatchItemResult(index, Status.CREATED, transaction, null);
+    }
+
+    public static BatchItemResult rejected(int index, String error) {
+        return new BatchItemResult(index, Status.REJECTED, null, error);
+    }
+
+    public static BatchItemResult failed(int index, String error) {
+        return new BatchItemResult(index, Status.FAILED, null, error);
+    }
+
+    /**
+     * Position of the item in the submitted batch, starting at 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public PointsTransaction getTransaction() {
+        return transaction;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,413 @@
+package com.enterprise.rewards.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.servlet.ServletContext;
+
+import com.enterprise.rewards.cache.BoundedCache;
+import com.enterprise.rewards.cache.CacheStatistics;
+import com.enterprise.rewards.cache.CustomerBalanceStore;
+import com.enterprise.rewards.model.Customer;
+import com.enterprise.rewards.model.PointsTransaction;
+import com.enterprise.rewards.model.Reward;
+
+/**
+ * Read-through cache in front of another data service.
+ * Enabled with the context-param dataService.cache.enabled=true.
+ *
+ * The reward catalog is small and read constantly, so it is kept in memory as a
+ * whole (for list, page and stream calls) plus per-id entries for getReward.
+ * Both are bounded (cache.rewards.maxEntries) and expire after
+ * cache.rewards.ttlSeconds. saveReward and redeemReward invalidate the reward and
+ * the catalog.
+ *
+ * Hot customers are re-read after every action, so customer snapshots and their
+ * transaction history are kept in two LRU caches bounded by an estimated memory
+ * budget (cache.customers.maxBytes, cache.history.maxBytes). createTransaction
+ * and redeemReward write through: the cached balance is adjusted and the new transaction is added
+ * to the cached history, so the next read is still a hit.
+ *
+ * With cache.balances.enabled, points, tier and status are also kept in a compact
+ * off-heap CustomerBalanceStore sized for cache.balances.maxEntries members. While a
+ * customer is in the store its balances there are authoritative: getCustomer overlays
+ * them on the cached profile and createTransaction adjusts them in place, so balance
+ * updates no longer copy the cached Customer.
+ *
+ * Cached objects are shared between callers and must be treated as read-only;
+ * write-through replaces them with updated copies rather than changing them.
+ */
+public class CachingDataService extends DelegatingDataService {
+
+    /** ServletContext attribute under which this instance is published for monitoring. */
+    public static final String CONTEXT_ATTRIBUTE = "com.enterprise.rewards.cachingDataService";
+
+    private final BoundedCache<String, Reward> rewardCache;
+    private final int maxRewards;
+    private final long rewardTtlNanos;
+    // Bumped on every reward write so loads that raced with a write are not cached
+    private final AtomicLong rewardGeneration = new AtomicLong();
+    private volatile RewardCatalog catalog;
+
+    private final BoundedCache<String, Customer> customerCache;
+    private final BoundedCache<String, List<PointsTransaction>> historyCache;
+    // Histories longer than this are not cached
+    private final int maxHistoryLength;
+    // Per-stripe write counters: a customer read that overlapped a write to the same
+    // stripe is returned but not cached, so a stale load cannot overwrite write-through data
+    private final AtomicLongArray customerWriteStripes = new AtomicLongArray(1024);
+    // Writes to each stripe that have started but not finished updating the caches
+    private final AtomicIntegerArray customerWritesInFlight = new AtomicIntegerArray(1024);
+    // Null unless cache.balances.enabled
+    private final CustomerBalanceStore balances;
+
+    public CachingDataService(DataServiceInterface delegate, ServletContext context) {
+        super(delegate);
+        this.maxRewards = ContextParams.getInt(context, "cache.rewards.maxEntries", 1000);
+        long ttlSeconds = ContextParams.getLong(context, "cache.rewards.ttlSeconds", 300);
+        this.rewardTtlNanos = ttlSeconds * 1000000000L;
+        this.rewardCache = new BoundedCache<>("rewards", maxRewards, ttlSeconds * 1000L);
+
+        long customerTtlMillis = ContextParams.getLong(context, "cache.customers.ttlSeconds", 600) * 1000L;
+        this.customerCache = new BoundedCache<>("customers",
+                ContextParams.getInt(context, "cache.customers.maxEntries", 100000),
+                ContextParams.getLong(context, "cache.customers.maxBytes", 16L * 1024 * 1024),
+                customerTtlMillis, (id, c) -> estimateBytes(c));
+        this.historyCache = new BoundedCache<>("customerHistory",
+                ContextParams.getInt(context, "cache.history.maxEntries", 100000),
+                ContextParams.getLong(context, "cache.history.maxBytes", 48L * 1024 * 1024),
+                customerTtlMillis, (id, history) -> estimateBytes(history));
+        this.maxHistoryLength = ContextParams.getInt(context, "cache.history.maxTransactions", 500);
+        if (ContextParams.getBoolean(context, "cache.balances.enabled", false)) {
+            int maxMembers = ContextParams.getInt(context, "cache.balances.maxEntries", 1000000);
+            this.balances = new CustomerBalanceStore(maxMembers);
+            System.out.println("[INFO] Customer balance store: " + balances.getAllocatedBytes() / (1024 * 1024)
+                    + " MB off-heap for " + maxMembers + " members");
+        } else {
+            this.balances = null;
+        }
+        if (context != null) {
+            context.setAttribute(CONTEXT_ATTRIBUTE, this);
+        }
+    }
+
+    /**
+     * Hit/miss/eviction counters for each cache.
+     */
+    public List<CacheStatistics> getCacheStatistics() {
+        List<CacheStatistics> statistics = new ArrayList<>(Arrays.asList(
+                rewardCache.getStatistics(), customerCache.getStatistics(), historyCache.getStatistics()));
+        if (balances != null) {
+            statistics.add(balances.getStatistics("customerBalances"));
+        }
+        return statistics;
+    }
+
+    @Override
+    public Customer getCustomer(String customerId) {
+        Customer cached = customerCache.get(customerId);
+        if (cached != null) {
+            if (balances == null) {
+                return cached;
+            }
+            Customer current = new Customer(cached);
+            balances.read(customerId, current);
+            return current;
+        }
+        long version = customerWriteVersion(customerId);
+        Customer customer = delegate.getCustomer(customerId);
+        if (customer != null && isUnchanged(customerId, version)) {
+            customerCache.put(customerId, customer);
+            if (balances != null && balances.put(customerId, customer.getTotalLifetimePoints(),
+                    customer.getCurrentAvailablePoints(), customer.getLoyaltyTier(), customer.getAccountStatus())
+                    && !isUnchanged(customerId, version)) {
+                // A write started while the balances were stored; let the next read reload them
+                balances.remove(customerId);
+                customerCache.invalidate(customerId);
+            }
+        }
+        return customer;
+    }
+
+    @Override
+    public List<PointsTransaction> getTransactionsByCustomer(String customerId) {
+        List<PointsTransaction> cached = historyCache.get(customerId);
+        if (cached != null) {
+            return cached;
+        }
+        long version = customerWriteVersion(customerId);
+        List<PointsTransaction> history = delegate.getTransactionsByCustomer(customerId);
+        if (history.size() <= maxHistoryLength && isUnchanged(customerId, version)) {
+            historyCache.put(customerId, Collections.unmodifiableList(new ArrayList<>(history)));
+        }
+        return history;
+    }
+
+    @Override
+    public Customer createCustomer(String firstName, String lastName, String emailAddress, String phoneNumber, String idempotencyKey) {
+        Customer customer = delegate.createCustomer(firstName, lastName, emailAddress, phoneNumber, idempotencyKey);
+        if (customer != null && idempotencyKey != null) {
+            // May be an earlier customer returned again, whose history is not known here
+            invalidateCustomers(Collections.singletonList(customer.getCustomerId()));
+        } else if (customer != null) {
+            customerCache.put(customer.getCustomerId(), customer);
+            if (balances != null) {
+                balances.put(customer.getCustomerId(), customer.getTotalLifetimePoints(),
+                        customer.getCurrentAvailablePoints(), customer.getLoyaltyTier(), customer.getAccountStatus());
+            }
+            historyCache.put(customer.getCustomerId(), Collections.<PointsTransaction>emptyList());
+        }
+        return customer;
+    }
+
+    @Override
+    public PointsTransaction createTransaction(String customerId, String transactionType, int pointsAmount, String description, String idempotencyKey) {
+        beginCustomerWrite(customerId);
+        try {
+            PointsTransaction txn = delegate.createTransaction(customerId, transactionType, pointsAmount, description, idempotencyKey);
+            if (idempotencyKey != null) {
+                // May be an earlier transaction returned again, already counted in the cached balance
+                invalidateCustomers(Collections.singletonList(customerId));
+            } else {
+                writeThrough(customerId, txn);
+            }
+            return txn;
+        } finally {
+            endCustomerWrite(customerId);
+        }
+    }
+
+    @Override
+    public RedemptionResult redeemReward(String customerId, String rewardId) {
+        beginCustomerWrite(customerId);
+        try {
+            RedemptionResult result = delegate.redeemReward(customerId, rewardId);
+            if (result.isRedeemed()) {
+                writeThrough(customerId, result.getTransaction());
+            }
+            // Availability changed, or turned out to be exhausted: the catalog holds it too
+            if (result.isRedeemed() || result.getStatus() == RedemptionResult.Status.OUT_OF_STOCK) {
+                rewardGeneration.incrementAndGet();
+                catalog = null;
+                rewardCache.invalidate(rewardId);
+            }
+            return result;
+        } finally {
+            endCustomerWrite(customerId);
+        }
+    }
+
+    // Applies a stored transaction to the cached balance and history; caller holds the customer write
+    private void writeThrough(String customerId, final PointsTransaction txn) {
+        final int lifetimeDelta = TransactionTypes.lifetimeDelta(txn.getTransactionType(), txn.getPointsAmount());
+        final int availableDelta = TransactionTypes.availableDelta(txn.getTransactionType(), txn.getPointsAmount());
+        if ((lifetimeDelta != 0 || availableDelta != 0)
+                && (balances == null || !balances.addPoints(customerId, lifetimeDelta, availableDelta))) {
+            customerCache.update(customerId, cached -> {
+                Customer updated = new Customer(cached);
+                updated.setTotalLifetimePoints(cached.getTotalLifetimePoints() + lifetimeDelta);
+                updated.setCurrentAvailablePoints(cached.getCurrentAvailablePoints() + availableDelta);
+                return updated;
+            });
+        }
+        // History is ordered newest first, like the database query
+        historyCache.update(customerId, cached -> {
+            if (cached.size() >= maxHistoryLength) {
+                return null;
+            }
+            List<PointsTransaction> updated = new ArrayList<>(cached.size() + 1);
+            updated.add(txn);
+            updated.addAll(cached);
+            return Collections.unmodifiableList(updated);
+        });
+    }
+
+    @Override
+    public List<BatchItemResult> createTransactions(List<TransactionRequest> requests) {
+        for (TransactionRequest request : requests) {
+            if (request.getCustomerId() != null) {
+                beginCustomerWrite(request.getCustomerId());
+            }
+        }
+        try {
+            return delegate.createTransactions(requests);
+        } finally {
+            // A batch can touch thousands of customers once; drop them rather than patch each entry
+            for (TransactionRequest request : requests) {
+                if (request.getCustomerId() != null) {
+                    customerCache.invalidate(request.getCustomerId());
+                    historyCache.invalidate(request.getCustomerId());
+                    if (balances != null) {
+                        balances.remove(request.getCustomerId());
+                    }
+                    endCustomerWrite(request.getCustomerId());
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops cached data of customers changed behind this cache, e.g. by the points expiration engine.
+     * Call after the change has been committed.
+     */
+    public void invalidateCustomers(Collection<String> customerIds) {
+        for (String customerId : customerIds) {
+            beginCustomerWrite(customerId);
+            try {
+                customerCache.invalidate(customerId);
+                historyCache.invalidate(customerId);
+                if (balances != null) {
+                    balances.remove(customerId);
+                }
+            } finally {
+                endCustomerWrite(customerId);
+            }
+        }
+    }
+
+    private int stripe(String customerId) {
+        return (customerId.hashCode() & 0x7fffffff) % customerWriteStripes.length();
+    }
+
+    private long customerWriteVersion(String customerId) {
+        return customerWriteStripes.get(stripe(customerId));
+    }
+
+    private void beginCustomerWrite(String customerId) {
+        customerWritesInFlight.incrementAndGet(stripe(customerId));
+    }
+
+    private void endCustomerWrite(String customerId) {
+        int stripe = stripe(customerId);
+        customerWriteStripes.incrementAndGet(stripe);
+        customerWritesInFlight.decrementAndGet(stripe);
+    }
+
+    // True if no write to the customer's stripe finished since version was read or is still running
+    private boolean isUnchanged(String customerId, long version) {
+        int stripe = stripe(customerId);
+        return customerWritesInFlight.get(stripe) == 0 && customerWriteStripes.get(stripe) == version;
+    }
+
+    // Rough heap estimates: object headers and fields plus two bytes per string character
+    private static long estimateBytes(Customer c) {
+        return 200 + 2L * (length(c.getCustomerId()) + length(c.getFirstName()) + length(c.getLastName())
+                + length(c.getEmailAddress()) + length(c.getPhoneNumber()) + length(c.getLoyaltyTier())
+                + length(c.getAccountStatus()));
+    }
+
+    private static long estimateBytes(List<PointsTransaction> history) {
+        long bytes = 64 + 8L * history.size();
+        for (PointsTransaction t : history) {
+            bytes += 160 + 2L * (length(t.getTransactionId()) + length(t.getCustomerId())
+                    + length(t.getTransactionType()) + length(t.getDescription()));
+        }
+        return bytes;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() + 20 : 0;
+    }
+
+    @Override
+    public Reward getReward(String rewardId) {
+        Reward cached = rewardCache.get(rewardId);
+        if (cached != null) {
+            return cached;
+        }
+        long generation = rewardGeneration.get();
+        Reward reward = delegate.getReward(rewardId);
+        if (reward != null && generation == rewardGeneration.get()) {
+            rewardCache.put(rewardId, reward);
+        }
+        return reward;
+    }
+
+    @Override
+    public void saveReward(Reward reward) {
+        try {
+            delegate.saveReward(reward);
+        } finally {
+            rewardGeneration.incrementAndGet();
+            catalog = null;
+            if (reward != null) {
+                rewardCache.invalidate(reward.getRewardId());
+            }
+        }
+    }
+
+    @Override
+    public Collection<Reward> getAllRewards() {
+        return loadCatalog().rewards;
+    }
+
+    @Override
+    public Page<Reward> getRewardsPage(String afterRewardId, int limit) {
+        List<Reward> rewards = loadCatalog().rewards;
+        int start = 0;
+        if (afterRewardId != null) {
+            // Follow the database's ordering rather than re-comparing ids in Java
+            start = -1;
+            for (int i = 0; i < rewards.size(); i++) {
+                if (rewards.get(i).getRewardId().equals(afterRewardId)) {
+                    start = i + 1;
+                    break;
+                }
+            }
+            if (start < 0) {
+                return delegate.getRewardsPage(afterRewardId, limit);
+            }
+        }
+        int end = Math.min(rewards.size(), start + Math.max(1, limit));
+        List<Reward> items = new ArrayList<>(rewards.subList(start, end));
+        String nextKey = end < rewards.size() && !items.isEmpty() ? items.get(items.size() - 1).getRewardId() : null;
+        return new Page<>(items, nextKey);
+    }
+
+    @Override
+    public int streamAllRewards(RowCallback<Reward> callback) throws IOException {
+        List<Reward> rewards = loadCatalog().rewards;
+        for (Reward reward : rewards) {
+            callback.onRow(reward);
+        }
+        return rewards.size();
+    }
+
+    // Returns the cached catalog, loading it from the delegate on a miss
+    private RewardCatalog loadCatalog() {
+        RewardCatalog current = catalog;
+        if (current != null && (rewardTtlNanos <= 0 || System.nanoTime() - current.loadedAt < rewardTtlNanos)) {
+            rewardCache.recordHit();
+            return current;
+        }
+        rewardCache.recordMiss();
+        long generation = rewardGeneration.get();
+        List<Reward> rewards = new ArrayList<>(delegate.getAllRewards());
+        RewardCatalog loaded = new RewardCatalog(Collections.unmodifiableList(rewards), System.nanoTime());
+        // A catalog larger than the cache bound is served for this call only
+        if (rewards.size() <= maxRewards && generation == rewardGeneration.get()) {
+            catalog = loaded;
+            for (Reward reward : rewards) {
+                rewardCache.put(reward.getRewardId(), reward);
+            }
+        }
+        return loaded;
+    }
+
+    private static class RewardCatalog {
+        final List<Reward> rewards;
+        final long loadedAt;
+
+        RewardCatalog(List<Reward> rewards, long loadedAt) {
+            this.rewards = rewards;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
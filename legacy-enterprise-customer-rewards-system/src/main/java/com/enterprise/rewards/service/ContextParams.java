@@ -0,0 +1,39 @@
+package com.enterprise.rewards.service;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Typed access to web.xml context parameters with defaults.
+ * A null context (e.g. outside the container) always yields the default.
+ */
+public final class ContextParams {
+
+    private ContextParams() {}
+
+    public static String getString(ServletContext context, String name, String defaultValue) {
+        String value = context != null ? context.getInitParameter(name) : null;
+        return (value == null || value.trim().isEmpty()) ? defaultValue : value.trim();
+    }
+
+    public static boolean getBoolean(ServletContext context, String name, boolean defaultValue) {
+        String value = getString(context, name, null);
+        return value == null ? defaultValue : "true".equalsIgnoreCase(value);
+    }
+
+    public static int getInt(ServletContext context, String name, int defaultValue) {
+        return (int) getLong(context, name, defaultValue);
+    }
+
+    public static long getLong(ServletContext context, String name, long defaultValue) {
+        String value = getString(context, name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            System.err.println("[WARN] Invalid value for context-param " + name + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.enterprise.rewards.service;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Shuts down the shared data service (and its connection pool) when the
+ * web application is undeployed or Tomcat stops.
+ */
+@WebListener
+public class DataServiceContextListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // Data service is created lazily by the servlets via DataServiceFactory
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        DataServiceFactory.shutdown();
+        System.out.println("DataServiceContextListener - data service shut down");
+    }
+}
@@ -3,6 +3,8 @@ package com.enterprise.rewards.service;
 
 import javax.servlet.ServletContext;
 
+import com.enterprise.rewards.metrics.ServiceMetrics;
+
 /**
  * Factory for creating data service instances
  * Supports configuration via web.xml context parameters
@@ -24,15 +26,52 @@ public class DataServiceFactory {
      * Returns a singleton DataServiceInterface instance based on context-param
      * "dataService.implementation" (DATABASE or IN_MEMORY)
      */
-    public static DataServiceInterface getInstance(ServletContext context) {
+    public static synchronized DataServiceInterface getInstance(ServletContext context) {
         if (instance == null) {
+            EntityIds.configure(context);
             String impl = context.getInitParameter("dataService.implementation");
+            DataServiceInterface service;
             if ("DATABASE".equalsIgnoreCase(impl)) {
-                instance = new DatabaseDataService(context);
+                service = new DatabaseDataService(context);
+            } else if ("IN_MEMORY".equalsIgnoreCase(impl)) {
+                service = new InMemoryDataService(context);
             } else {
-                throw new UnsupportedOperationException("Only DATABASE implementation is supported.");
+                throw new UnsupportedOperationException("Unsupported dataService.implementation: " + impl
+                        + " (expected DATABASE or IN_MEMORY)");
+            }
+            // Optional decorators, configured by context-param
+            if (ContextParams.getBoolean(context, "dataService.cache.enabled", false)) {
+                CachingDataService caching = new CachingDataService(service, context);
+                // Expired points change balances without going through the cache
+                if (service instanceof DatabaseDataService && ((DatabaseDataService) service).getExpirationEngine() != null) {
+                    ((DatabaseDataService) service).getExpirationEngine().addListener(caching::invalidateCustomers);
+                }
+                // Tiers are recomputed in the database, also for customers the cache writes through
+                if (service instanceof DatabaseDataService && ((DatabaseDataService) service).getTierEngine() != null) {
+                    ((DatabaseDataService) service).getTierEngine().addListener(caching::invalidateCustomers);
+                }
+                service = caching;
+            }
+            if (ContextParams.getBoolean(context, "dataService.metrics.enabled", true)) {
+                service = new InstrumentedDataService(service, ServiceMetrics.get(context));
             }
+            instance = service;
         }
         return instance;
     }
+
+    /**
+     * Releases resources held by the current instance (e.g. pooled connections)
+     * and clears the singleton. Called when the web application is stopped.
+     */
+    public static synchronized void shutdown() {
+        if (instance instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) instance).close();
+            } catch (Exception e) {
+                System.err.println("[ERROR] Failed to close data service: " + e.getMessage());
+            }
+        }
+        instance = null;
+    }
 }
@@ -1,5 +1,6 @@
 package com.enterprise.rewards.service;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
 
@@ -20,8 +21,10 @@ public interface DataServiceInterface {
     Collection<Reward> getAllRewards();
     /**
      * Creates a new customer with the given details.
+     * With an idempotencyKey (null for none) the customer is created only once: if one was
+     * already created with this key, that customer is returned and nothing is written.
      */
-    Customer createCustomer(String firstName, String lastName, String emailAddress, String phoneNumber);
+    Customer createCustomer(String firstName, String lastName, String emailAddress, String phoneNumber, String idempotencyKey);
     /**
      * Returns a transaction by transactionId, or null if not found.
      */
@@ -39,8 +42,23 @@ public interface DataServiceInterface {
 
     /**
      * Creates a new transaction.
+     * With an idempotencyKey (null for none) the transaction is created only once: if one was
+     * already created with this key, that transaction is returned and nothing is written.
      */
-    PointsTransaction createTransaction(String customerId, String transactionType, int pointsAmount, String description);
+    PointsTransaction createTransaction(String customerId, String transactionType, int pointsAmount, String description, String idempotencyKey);
+
+    /**
+     * Creates many transactions at once. Returns one result per request, in request order.
+     * Items are validated first; valid items are stored in chunks, each committed on its own.
+     */
+    List<BatchItemResult> createTransactions(List<TransactionRequest> requests);
+
+    /**
+     * Redeems a reward for a customer: checks the balance, takes one unit of the reward's stock
+     * and records the REDEEM transaction, all or nothing. Refusals (out of stock, not enough
+     * points, ...) are returned as results; storage errors are thrown.
+     */
+    RedemptionResult redeemReward(String customerId, String rewardId);
     /**
      * Returns all customers in the system.
      */
@@ -50,4 +68,38 @@ public interface DataServiceInterface {
      * Returns a customer by customerId, or null if not found.
      */
     Customer getCustomer(String customerId);
+
+    // Keyset pagination: pass null as "after" for the first page, then Page.getNextKey()
+
+    /**
+     * Returns up to limit customers ordered by customerId, after the given customerId.
+     */
+    Page<Customer> getCustomersPage(String afterCustomerId, int limit);
+
+    /**
+     * Returns up to limit transactions ordered by transactionId, after the given transactionId.
+     */
+    Page<PointsTransaction> getTransactionsPage(String afterTransactionId, int limit);
+
+    /**
+     * Returns up to limit rewards ordered by rewardId, after the given rewardId.
+     */
+    Page<Reward> getRewardsPage(String afterRewardId, int limit);
+
+    // Streaming: rows are handed to the callback as they are read, without building a list
+
+    /**
+     * Streams all customers ordered by customerId. Returns the number of rows delivered.
+     */
+    int streamAllCustomers(RowCallback<Customer> callback) throws IOException;
+
+    /**
+     * Streams all transactions ordered by transactionId. Returns the number of rows delivered.
+     */
+    int streamAllTransactions(RowCallback<PointsTransaction> callback) throws IOException;
+
+    /**
+     * Streams all rewards ordered by rewardId. Returns the number of rows delivered.
+     */
+    int streamAllRewards(RowCallback<Reward> callback) throws IOException;
 }
@@ -1,6 +1,11 @@
 
 package com.enterprise.rewards.service;
 
+import com.enterprise.rewards.jdbc.ConnectionPool;
+import com.enterprise.rewards.jdbc.ConnectionPoolConfig;
+import com.enterprise.rewards.jdbc.PoolStatistics;
+import com.enterprise.rewards.jdbc.StatementProfiler;
+import com.enterprise.rewards.jdbc.StatementProfilerConfig;
 import com.enterprise.rewards.model.Customer;
 import java.sql.*;
 import java.util.*;
@@ -8,24 +13,214 @@ import java.util.*;
 /**
  * Database implementation of data service for customer loyalty app data
  * Uses MySQL database for production-ready persistence
+ * Connections are borrowed from a bounded ConnectionPool (see db.pool.* settings)
  */
-public class DatabaseDataService implements DataServiceInterface {
+public class DatabaseDataService implements DataServiceInterface, AutoCloseable {
+
+    // Customer profile columns shared by every customer query
+    private static final String CUSTOMER_COLUMNS =
+        "c.customer_id, c.first_name, c.last_name, c.email_address, c.phone_number, c.registration_date, c.loyalty_tier, c.account_status";
+
+    // LEDGER: points come from the balance columns maintained by createTransaction
+    private static final String LEDGER_CUSTOMER_SQL =
+        "SELECT " + CUSTOMER_COLUMNS + ", c.total_lifetime_points, c.current_available_points FROM customers c";
+    private static final String LEDGER_CUSTOMER_BY_ID_SQL = LEDGER_CUSTOMER_SQL + " WHERE c.customer_id = ?";
+
+    // AGGREGATE: points are summed from points_transactions, in one set-based query for lists
+    private static final String AGGREGATE_CUSTOMER_SQL =
+        "SELECT " + CUSTOMER_COLUMNS + ", " +
+        "COALESCE(t.earned, 0) AS total_lifetime_points, COALESCE(t.earned, 0) - COALESCE(t.deducted, 0) AS current_available_points " +
+        "FROM customers c LEFT JOIN (" +
+        "SELECT customer_id, " +
+        "SUM(CASE WHEN transaction_type IN (" + TransactionTypes.EARNING_SQL_LIST + ") THEN points_amount ELSE 0 END) AS earned, " +
+        "SUM(CASE WHEN transaction_type IN (" + TransactionTypes.DEDUCTION_SQL_LIST + ") THEN points_amount ELSE 0 END) AS deducted " +
+        "FROM points_transactions GROUP BY customer_id) t ON t.customer_id = c.customer_id";
+    private static final String AGGREGATE_CUSTOMER_BY_ID_SQL =
+        "SELECT " + CUSTOMER_COLUMNS + ", " +
+        "COALESCE(SUM(CASE WHEN pt.transaction_type IN (" + TransactionTypes.EARNING_SQL_LIST + ") THEN pt.points_amount ELSE 0 END), 0) AS total_lifetime_points, " +
+        "COALESCE(SUM(CASE WHEN pt.transaction_type IN (" + TransactionTypes.EARNING_SQL_LIST + ") THEN pt.points_amount ELSE 0 END), 0) - " +
+        "COALESCE(SUM(CASE WHEN pt.transaction_type IN (" + TransactionTypes.DEDUCTION_SQL_LIST + ") THEN pt.points_amount ELSE 0 END), 0) AS current_available_points " +
+        "FROM customers c LEFT JOIN points_transactions pt ON c.customer_id = pt.customer_id " +
+        "WHERE c.customer_id = ? GROUP BY c.customer_id";
+    // Correlated sums are evaluated only for the rows of the requested page
+    private static final String AGGREGATE_CUSTOMER_PAGE_SQL =
+        "SELECT " + CUSTOMER_COLUMNS + ", " +
+        "(SELECT COALESCE(SUM(pt.points_amount), 0) FROM points_transactions pt WHERE pt.customer_id = c.customer_id " +
+        "AND pt.transaction_type IN (" + TransactionTypes.EARNING_SQL_LIST + ")) AS total_lifetime_points, " +
+        "(SELECT COALESCE(SUM(CASE WHEN pt.transaction_type IN (" + TransactionTypes.DEDUCTION_SQL_LIST + ") THEN -pt.points_amount ELSE pt.points_amount END), 0) " +
+        "FROM points_transactions pt WHERE pt.customer_id = c.customer_id " +
+        "AND pt.transaction_type IN (" + TransactionTypes.EARNING_SQL_LIST + ", " + TransactionTypes.DEDUCTION_SQL_LIST + ")) AS current_available_points " +
+        "FROM customers c WHERE c.customer_id > ? ORDER BY c.customer_id LIMIT ?";
+
+    private final ConnectionPool pool;
+    // Times statements per normalized SQL text (db.profile.*)
+    private final StatementProfiler profiler;
+    // Queries for the configured db.balances.source (LEDGER or AGGREGATE)
+    private final String customerSql;
+    private final String customerByIdSql;
+    private final String customerPageSql;
+    // True with db.balances.source=AGGREGATE, when the balance columns cannot be trusted
+    private final boolean aggregateBalances;
+    // Rows fetched per server-side cursor round-trip by the streaming methods
+    private final int streamFetchSize;
+    // Transactions per commit in createTransactions
+    private final int batchChunkSize;
+    // Set when createTransaction goes through the group-commit queue (db.groupCommit.enabled)
+    private final GroupCommitWriter groupCommitWriter;
+    // Earned points are tracked as lots in points_lots (db.lots.enabled)
+    private final boolean lotsEnabled;
+    private final long lotLifetimeMillis;
+    // Set when expired lots are written off on a schedule (db.expiration.enabled)
+    private final PointsExpirationEngine expirationEngine;
+    // Set when loyalty tiers follow the TierPolicy (tiers.enabled)
+    private final TierPolicy tierPolicy;
+    private final TierEngine tierEngine;
+    // In-memory admission gate for redemptions of hot rewards (db.redemption.reservations.enabled)
+    private final RewardStockReservations reservations;
 
     // Allow instantiation with or without ServletContext for compatibility
-    public DatabaseDataService() {}
+    public DatabaseDataService() {
+        this(null);
+    }
 
     public DatabaseDataService(javax.servlet.ServletContext context) {
-        // Optionally, load config from context if needed in future
+        // db.url replaces the MySQL URL built from db.host/db.port/db.name, e.g. to point at an embedded database
+        String url = getSetting(context, "db.url", "");
+        this.pool = new ConnectionPool(url.isEmpty() ? DB_URL : url, getSetting(context, "db.user", DB_USER),
+                getSetting(context, "db.password", DB_PASSWORD), ConnectionPoolConfig.load(DB_PROPERTIES, context));
+        this.profiler = new StatementProfiler(StatementProfilerConfig.load(DB_PROPERTIES, context));
+        this.streamFetchSize = Integer.parseInt(getSetting(context, "db.streaming.fetchSize", "500"));
+        this.batchChunkSize = Math.max(1, Integer.parseInt(getSetting(context, "db.batch.chunkSize", "1000")));
+        if ("true".equalsIgnoreCase(getSetting(context, "db.groupCommit.enabled", "false"))) {
+            this.groupCommitWriter = new GroupCommitWriter(this,
+                    Integer.parseInt(getSetting(context, "db.groupCommit.queueCapacity", "10000")),
+                    Integer.parseInt(getSetting(context, "db.groupCommit.maxGroupSize", "128")),
+                    Long.parseLong(getSetting(context, "db.groupCommit.waitMs", "30000")));
+        } else {
+            this.groupCommitWriter = null;
+        }
+        this.lotsEnabled = "true".equalsIgnoreCase(getSetting(context, "db.lots.enabled", "false"));
+        this.lotLifetimeMillis = lotLifetimeMillis(context);
+        if (lotsEnabled && "true".equalsIgnoreCase(getSetting(context, "db.expiration.enabled", "false"))) {
+            this.expirationEngine = new PointsExpirationEngine(this,
+                    java.time.LocalTime.parse(getSetting(context, "db.expiration.runAt", "02:00")),
+                    Long.parseLong(getSetting(context, "db.expiration.windowMinutes", "240")) * 60L * 1000L,
+                    Integer.parseInt(getSetting(context, "db.expiration.chunkSize", "500")),
+                    Long.parseLong(getSetting(context, "db.expiration.pauseMs", "50")),
+                    Integer.parseInt(getSetting(context, "db.expiration.dutyCyclePercent", "50")));
+        } else {
+            this.expirationEngine = null;
+        }
+        if (ContextParams.getBoolean(context, "tiers.enabled", false)) {
+            String rescoreAt = ContextParams.getString(context, "tiers.rescoreAt", "03:00");
+            this.tierPolicy = TierPolicy.load(context);
+            this.tierEngine = new TierEngine(this, tierPolicy,
+                    "NONE".equalsIgnoreCase(rescoreAt) ? null : java.time.LocalTime.parse(rescoreAt),
+                    ContextParams.getInt(context, "tiers.rescore.threads", 4),
+                    ContextParams.getInt(context, "tiers.rescore.chunkSize", 1000));
+        } else {
+            this.tierPolicy = null;
+            this.tierEngine = null;
+        }
+        if ("true".equalsIgnoreCase(getSetting(context, "db.redemption.reservations.enabled", "true"))) {
+            this.reservations = new RewardStockReservations(
+                    Integer.parseInt(getSetting(context, "db.redemption.reservations.stripes", "0")),
+                    Long.parseLong(getSetting(context, "db.redemption.reservations.refreshMs", "1000")));
+        } else {
+            this.reservations = null;
+        }
+        // Use AGGREGATE until the balance columns of an upgraded database have been backfilled
+        this.aggregateBalances = "AGGREGATE".equalsIgnoreCase(getSetting(context, "db.balances.source", "LEDGER"));
+        if (aggregateBalances) {
+            this.customerSql = AGGREGATE_CUSTOMER_SQL;
+            this.customerByIdSql = AGGREGATE_CUSTOMER_BY_ID_SQL;
+            this.customerPageSql = AGGREGATE_CUSTOMER_PAGE_SQL;
+        } else {
+            this.customerSql = LEDGER_CUSTOMER_SQL;
+            this.customerByIdSql = LEDGER_CUSTOMER_BY_ID_SQL;
+            this.customerPageSql = LEDGER_CUSTOMER_SQL + " WHERE c.customer_id > ? ORDER BY c.customer_id LIMIT ?";
+        }
+        if (context != null) {
+            context.setAttribute(ConnectionPool.CONTEXT_ATTRIBUTE, pool);
+            if (profiler.getConfig().isEnabled()) {
+                context.setAttribute(StatementProfiler.CONTEXT_ATTRIBUTE, profiler);
+            }
+            if (expirationEngine != null) {
+                context.setAttribute(PointsExpirationEngine.CONTEXT_ATTRIBUTE, expirationEngine);
+            }
+            if (reservations != null) {
+                context.setAttribute(RewardStockReservations.CONTEXT_ATTRIBUTE, reservations);
+            }
+            if (tierEngine != null) {
+                context.setAttribute(TierEngine.CONTEXT_ATTRIBUTE, tierEngine);
+                // Set for one deployment after changing the tier rules
+                if (ContextParams.getBoolean(context, "tiers.rescoreOnStartup", false)) {
+                    tierEngine.startRescore();
+                }
+            }
+            if ("true".equalsIgnoreCase(getSetting(context, "db.balances.rebuildOnStartup", "false"))) {
+                Thread rebuild = new Thread(this::rebuildPointsBalances, "rewards-balance-rebuild");
+                rebuild.setDaemon(true);
+                rebuild.start();
+            }
+        }
+    }
+
+    /**
+     * Returns current connection pool usage for monitoring.
+     */
+    public PoolStatistics getPoolStatistics() {
+        return pool.getStatistics();
+    }
+
+    /**
+     * Returns the group-commit writer, or null when transactions are committed one by one.
+     */
+    public GroupCommitWriter getGroupCommitWriter() {
+        return groupCommitWriter;
+    }
+
+    /**
+     * Returns the points expiration engine, or null when points do not expire.
+     */
+    public PointsExpirationEngine getExpirationEngine() {
+        return expirationEngine;
+    }
+
+    /**
+     * Returns the tier engine, or null when tiers are not maintained.
+     */
+    public TierEngine getTierEngine() {
+        return tierEngine;
+    }
+
+    /**
+     * Closes all pooled connections. Called when the web application stops.
+     */
+    @Override
+    public void close() {
+        if (tierEngine != null) {
+            tierEngine.close();
+        }
+        if (expirationEngine != null) {
+            expirationEngine.close();
+        }
+        if (groupCommitWriter != null) {
+            groupCommitWriter.close();
+        }
+        pool.close();
+        profiler.close();
     }
 
     @Override
     public com.enterprise.rewards.model.Reward getReward(String rewardId) {
-        try (Connection conn = getConnection()) {
-            PreparedStatement stmt = conn.prepareStatement("SELECT * FROM rewards WHERE reward_id = ?");
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM rewards WHERE reward_id = ?")) {
             stmt.setString(1, rewardId);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return mapRowToReward(rs);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRowToReward(rs);
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error getting reward: " + e.getMessage());
@@ -37,58 +232,233 @@ public class DatabaseDataService implements DataServiceInterface {
     public void saveReward(com.enterprise.rewards.model.Reward reward) {
         try (Connection conn = getConnection()) {
             // Try update first
-            PreparedStatement updateStmt = conn.prepareStatement(
-                "UPDATE rewards SET reward_name=?, points_required=?, reward_type=?, reward_value=?, availability_count=?, expiration_date=?, category=?, description=?, is_active=? WHERE reward_id=?");
-            updateStmt.setString(1, reward.getRewardName());
-            updateStmt.setInt(2, reward.getPointsRequired());
-            updateStmt.setString(3, reward.getRewardType());
-            updateStmt.setString(4, reward.getRewardValue());
-            updateStmt.setInt(5, reward.getAvailabilityCount());
-            java.util.Date exp = reward.getExpirationDate();
-            if (exp != null) {
-                updateStmt.setTimestamp(6, new java.sql.Timestamp(exp.getTime()));
-            } else {
-                updateStmt.setNull(6, java.sql.Types.TIMESTAMP);
+            int updated;
+            try (PreparedStatement updateStmt = conn.prepareStatement(
+                "UPDATE rewards SET reward_name=?, points_required=?, reward_type=?, reward_value=?, availability_count=?, expiration_date=?, category=?, description=?, is_active=? WHERE reward_id=?")) {
+                updateStmt.setString(1, reward.getRewardName());
+                updateStmt.setInt(2, reward.getPointsRequired());
+                updateStmt.setString(3, reward.getRewardType());
+                updateStmt.setString(4, reward.getRewardValue());
+                updateStmt.setInt(5, reward.getAvailabilityCount());
+                java.util.Date exp = reward.getExpirationDate();
+                if (exp != null) {
+                    updateStmt.setTimestamp(6, new java.sql.Timestamp(exp.getTime()));
+                } else {
+                    updateStmt.setNull(6, java.sql.Types.TIMESTAMP);
+                }
+                updateStmt.setString(7, reward.getCategory());
+                updateStmt.setString(8, reward.getDescription());
+                updateStmt.setBoolean(9, reward.isActive());
+                updateStmt.setString(10, reward.getRewardId());
+                updated = updateStmt.executeUpdate();
             }
-            updateStmt.setString(7, reward.getCategory());
-            updateStmt.setString(8, reward.getDescription());
-            updateStmt.setBoolean(9, reward.isActive());
-            updateStmt.setString(10, reward.getRewardId());
-            int updated = updateStmt.executeUpdate();
             if (updated == 0) {
                 // Insert if not updated
-                PreparedStatement insertStmt = conn.prepareStatement(
-                    "INSERT INTO rewards (reward_id, reward_name, points_required, reward_type, reward_value, availability_count, expiration_date, category, description, is_active) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
-                insertStmt.setString(1, reward.getRewardId());
-                insertStmt.setString(2, reward.getRewardName());
-                insertStmt.setInt(3, reward.getPointsRequired());
-                insertStmt.setString(4, reward.getRewardType());
-                insertStmt.setString(5, reward.getRewardValue());
-                insertStmt.setInt(6, reward.getAvailabilityCount());
-                java.util.Date exp2 = reward.getExpirationDate();
-                if (exp2 != null) {
-                    insertStmt.setTimestamp(7, new java.sql.Timestamp(exp2.getTime()));
-                } else {
-                    insertStmt.setNull(7, java.sql.Types.TIMESTAMP);
+                try (PreparedStatement insertStmt = conn.prepareStatement(
+                    "INSERT INTO rewards (reward_id, reward_name, points_required, reward_type, reward_value, availability_count, expiration_date, category, description, is_active) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                    insertStmt.setString(1, reward.getRewardId());
+                    insertStmt.setString(2, reward.getRewardName());
+                    insertStmt.setInt(3, reward.getPointsRequired());
+                    insertStmt.setString(4, reward.getRewardType());
+                    insertStmt.setString(5, reward.getRewardValue());
+                    insertStmt.setInt(6, reward.getAvailabilityCount());
+                    java.util.Date exp2 = reward.getExpirationDate();
+                    if (exp2 != null) {
+                        insertStmt.setTimestamp(7, new java.sql.Timestamp(exp2.getTime()));
+                    } else {
+                        insertStmt.setNull(7, java.sql.Types.TIMESTAMP);
+                    }
+                    insertStmt.setString(8, reward.getCategory());
+                    insertStmt.setString(9, reward.getDescription());
+                    insertStmt.setBoolean(10, reward.isActive());
+                    insertStmt.executeUpdate();
                 }
-                insertStmt.setString(8, reward.getCategory());
-                insertStmt.setString(9, reward.getDescription());
-                insertStmt.setBoolean(10, reward.isActive());
-                insertStmt.executeUpdate();
-                insertStmt.close();
             }
-            updateStmt.close();
+            if (reservations != null) {
+                // The stock may have changed
+                reservations.invalidate(reward.getRewardId());
+            }
         } catch (SQLException e) {
             System.err.println("Error saving reward: " + e.getMessage());
         }
     }
 
+    /**
+     * Redeems in one short DB transaction. The reward is first read without locks, so unknown,
+     * unavailable and sold-out rewards are refused without touching any row, and the
+     * reservations gate lets at most the remaining stock through. The balance is then taken
+     * with a conditional update, which locks the customer row first as every other write does;
+     * the REDEEM transaction is recorded and lots consumed; and the unit of stock is taken last
+     * with a conditional update, so a hot reward's row stays locked only until the commit.
+     */
+    @Override
+    public RedemptionResult redeemReward(String customerId, String rewardId) {
+        java.util.Date now = new java.util.Date();
+        try (Connection conn = getConnection()) {
+            RewardStock reward = readRewardStock(conn, rewardId);
+            RedemptionResult refusal = checkRedeemable(reward, rewardId, now);
+            if (refusal != null) {
+                return refusal;
+            }
+            RewardStockReservations.Reservation reservation = null;
+            if (reservations != null) {
+                reservation = reservations.reserve(rewardId, reward.stock);
+                if (reservation == null) {
+                    return RedemptionResult.rejected(RedemptionResult.Status.OUT_OF_STOCK, "Reward is out of stock: " + rewardId);
+                }
+            }
+            boolean unitUsed = false;
+            conn.setAutoCommit(false);
+            try {
+                RedemptionResult result = redeemLocked(conn, customerId, reward.reward, now);
+                if (result != null) {
+                    if (result.isRedeemed()) {
+                        conn.commit();
+                        unitUsed = true;
+                    } else {
+                        conn.rollback();
+                    }
+                    return result;
+                }
+                // The stock update matched no row: find out why outside this transaction
+                conn.rollback();
+                RewardStock current = readRewardStock(conn, rewardId);
+                refusal = checkRedeemable(current, rewardId, now);
+                if (refusal == null) {
+                    refusal = current.reward.getPointsRequired() != reward.reward.getPointsRequired()
+                            ? RedemptionResult.rejected(RedemptionResult.Status.PRICE_CHANGED, "Reward price changed: " + rewardId)
+                            : RedemptionResult.rejected(RedemptionResult.Status.OUT_OF_STOCK, "Reward is out of stock: " + rewardId);
+                }
+                if (reservation != null && refusal.getStatus() == RedemptionResult.Status.OUT_OF_STOCK) {
+                    reservation.soldOut();
+                    unitUsed = true;
+                }
+                return refusal;
+            } catch (SQLException | RuntimeException e) {
+                try { conn.rollback(); } catch (SQLException ignore) {}
+                throw e;
+            } finally {
+                if (reservation != null && !unitUsed) {
+                    reservation.release();
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error redeeming reward: " + e.getMessage(), e);
+        }
+    }
+
+    // Steps of redeemReward inside its DB transaction. Returns null if the reward's stock
+    // update matched no row (sold out, deactivated or repriced meanwhile).
+    private RedemptionResult redeemLocked(Connection conn, String customerId, com.enterprise.rewards.model.Reward reward,
+                                          java.util.Date now) throws SQLException {
+        int price = reward.getPointsRequired();
+        int updated;
+        // AGGREGATE balances cannot be checked in the update; they are read once the row is locked
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE customers SET current_available_points = current_available_points - ? WHERE customer_id = ?"
+                        + (aggregateBalances ? "" : " AND current_available_points >= ?"))) {
+            stmt.setInt(1, price);
+            stmt.setString(2, customerId);
+            if (!aggregateBalances) {
+                stmt.setInt(3, price);
+            }
+            updated = stmt.executeUpdate();
+        }
+        if (updated == 0 || aggregateBalances) {
+            Customer customer = getCustomer(conn, customerId);
+            if (customer == null) {
+                return RedemptionResult.rejected(RedemptionResult.Status.CUSTOMER_NOT_FOUND, "Customer not found: " + customerId);
+            }
+            if (updated == 0 || customer.getCurrentAvailablePoints() < price) {
+                return RedemptionResult.rejected(RedemptionResult.Status.INSUFFICIENT_POINTS, "Insufficient points: "
+                        + customer.getCurrentAvailablePoints() + " available, " + price + " required");
+            }
+        }
+        com.enterprise.rewards.model.PointsTransaction txn = new com.enterprise.rewards.model.PointsTransaction();
+        txn.setTransactionId(EntityIds.newTransactionId());
+        txn.setCustomerId(customerId);
+        txn.setTransactionType("REDEEM");
+        txn.setPointsAmount(price);
+        txn.setDescription("Redeemed reward " + reward.getRewardId() + ": " + reward.getRewardName());
+        txn.setTransactionDate(now);
+        try (PreparedStatement stmt = conn.prepareStatement(
+            "INSERT INTO points_transactions (transaction_id, customer_id, transaction_type, points_amount, transaction_date, description) VALUES (?, ?, ?, ?, ?, ?)"
+        )) {
+            stmt.setString(1, txn.getTransactionId());
+            stmt.setString(2, customerId);
+            stmt.setString(3, txn.getTransactionType());
+            stmt.setInt(4, price);
+            stmt.setTimestamp(5, new java.sql.Timestamp(now.getTime()));
+            stmt.setString(6, txn.getDescription());
+            stmt.executeUpdate();
+        }
+        if (lotsEnabled) {
+            consumeLots(conn, customerId, price);
+        }
+        // stock_quantity is NULL for rewards without separate inventory, and NULL - 1 stays NULL
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE rewards SET availability_count = availability_count - 1, stock_quantity = stock_quantity - 1 "
+                        + "WHERE reward_id = ? AND points_required = ? AND is_active = TRUE "
+                        + "AND (expiration_date IS NULL OR expiration_date > ?) "
+                        + "AND availability_count > 0 AND (stock_quantity IS NULL OR stock_quantity > 0)")) {
+            stmt.setString(1, reward.getRewardId());
+            stmt.setInt(2, price);
+            stmt.setTimestamp(3, new java.sql.Timestamp(now.getTime()));
+            if (stmt.executeUpdate() == 0) {
+                return null;
+            }
+        }
+        System.out.println("Saved transaction: " + txn.getTransactionId());
+        return RedemptionResult.redeemed(txn);
+    }
+
+    // Refusal for a reward that cannot be redeemed now, or null
+    private static RedemptionResult checkRedeemable(RewardStock reward, String rewardId, java.util.Date now) {
+        if (reward == null) {
+            return RedemptionResult.rejected(RedemptionResult.Status.REWARD_NOT_FOUND, "Reward not found: " + rewardId);
+        }
+        java.util.Date expiration = reward.reward.getExpirationDate();
+        if (!reward.reward.isActive() || (expiration != null && !expiration.after(now))) {
+            return RedemptionResult.rejected(RedemptionResult.Status.REWARD_UNAVAILABLE, "Reward is not available: " + rewardId);
+        }
+        if (reward.stock <= 0) {
+            return RedemptionResult.rejected(RedemptionResult.Status.OUT_OF_STOCK, "Reward is out of stock: " + rewardId);
+        }
+        return null;
+    }
+
+    private RewardStock readRewardStock(Connection conn, String rewardId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM rewards WHERE reward_id = ?")) {
+            stmt.setString(1, rewardId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                com.enterprise.rewards.model.Reward reward = mapRowToReward(rs);
+                int quantity = rs.getInt("stock_quantity");
+                return new RewardStock(reward, rs.wasNull() ? reward.getAvailabilityCount()
+                        : Math.min(quantity, reward.getAvailabilityCount()));
+            }
+        }
+    }
+
+    // A reward with the units left to redeem: availability_count, capped by stock_quantity when set
+    private static final class RewardStock {
+        final com.enterprise.rewards.model.Reward reward;
+        final int stock;
+
+        RewardStock(com.enterprise.rewards.model.Reward reward, int stock) {
+            this.reward = reward;
+            this.stock = stock;
+        }
+    }
+
     @Override
     public java.util.Collection<com.enterprise.rewards.model.Reward> getAllRewards() {
         java.util.List<com.enterprise.rewards.model.Reward> rewards = new java.util.ArrayList<>();
-        try (Connection conn = getConnection()) {
-            Statement stmt = conn.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT * FROM rewards ORDER BY reward_id");
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM rewards ORDER BY reward_id")) {
             while (rs.next()) {
                 rewards.add(mapRowToReward(rs));
             }
@@ -115,51 +485,56 @@ public class DatabaseDataService implements DataServiceInterface {
     // ...existing code...
 
     @Override
-    public Customer createCustomer(String firstName, String lastName, String emailAddress, String phoneNumber) {
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        ResultSet rs = null;
-        try {
-            conn = getConnection();
-            // Generate a unique customerId (e.g., CUST + timestamp + random 3 digits)
-            String customerId = generateCustomerId();
-            String sql = "INSERT INTO customers (customer_id, first_name, last_name, email_address, phone_number, registration_date, loyalty_tier, total_lifetime_points, current_available_points, account_status) VALUES (?, ?, ?, ?, ?, NOW(), 'Bronze', 0, 0, 'Active')";
-            stmt = conn.prepareStatement(sql);
-            stmt.setString(1, customerId);
-            stmt.setString(2, firstName);
-            stmt.setString(3, lastName);
-            stmt.setString(4, emailAddress);
-            stmt.setString(5, phoneNumber);
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                throw new SQLException("Creating customer failed, no rows affected.");
-            }
-            // Fetch and return the new customer by customerId
-            return getCustomer(customerId);
+    public Customer createCustomer(String firstName, String lastName, String emailAddress, String phoneNumber, String idempotencyKey) {
+        try (Connection conn = getConnection()) {
+            if (idempotencyKey != null) {
+                Customer existing = findCustomerByIdempotencyKey(conn, idempotencyKey);
+                if (existing != null) {
+                    return existing;
+                }
+            }
+            String customerId = EntityIds.newCustomerId();
+            // The key column is only written when a key is given, so databases without it keep working
+            String sql = idempotencyKey != null
+                    ? "INSERT INTO customers (customer_id, first_name, last_name, email_address, phone_number, registration_date, loyalty_tier, total_lifetime_points, current_available_points, account_status, idempotency_key) VALUES (?, ?, ?, ?, ?, NOW(), ?, 0, 0, 'ACTIVE', ?)"
+                    : "INSERT INTO customers (customer_id, first_name, last_name, email_address, phone_number, registration_date, loyalty_tier, total_lifetime_points, current_available_points, account_status) VALUES (?, ?, ?, ?, ?, NOW(), ?, 0, 0, 'ACTIVE')";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, customerId);
+                stmt.setString(2, firstName);
+                stmt.setString(3, lastName);
+                stmt.setString(4, emailAddress);
+                stmt.setString(5, phoneNumber);
+                stmt.setString(6, tierPolicy != null ? tierPolicy.getLowestTier() : "BRONZE");
+                if (idempotencyKey != null) {
+                    stmt.setString(7, idempotencyKey);
+                }
+                int affectedRows = stmt.executeUpdate();
+                if (affectedRows == 0) {
+                    throw new SQLException("Creating customer failed, no rows affected.");
+                }
+            } catch (SQLException e) {
+                // A concurrent request with the same key committed first
+                Customer existing = idempotencyKey != null && isConstraintViolation(e)
+                        ? findCustomerByIdempotencyKey(conn, idempotencyKey) : null;
+                if (existing != null) {
+                    return existing;
+                }
+                throw e;
+            }
+            // Fetch and return the new customer by customerId, reusing the same connection
+            return getCustomer(conn, customerId);
         } catch (Exception e) {
             throw new RuntimeException("Error creating customer: " + e.getMessage(), e);
-        } finally {
-            if (rs != null) try { rs.close(); } catch (Exception ignore) {}
-            if (stmt != null) try { stmt.close(); } catch (Exception ignore) {}
-            if (conn != null) try { conn.close(); } catch (Exception ignore) {}
         }
     }
 
-    // Helper to generate a unique customerId
-    private String generateCustomerId() {
-        String prefix = "CUST";
-        long timestamp = System.currentTimeMillis() % 1000000000L;
-        int random = (int)(Math.random() * 900) + 100; // 3 random digits
-        return prefix + String.format("%09d", timestamp) + random;
-    }
-
     // Stub implementations for required interface methods (if not already present)
     @Override
     public java.util.List<com.enterprise.rewards.model.PointsTransaction> getAllTransactions() {
         java.util.List<com.enterprise.rewards.model.PointsTransaction> transactions = new java.util.ArrayList<>();
-        try (Connection conn = getConnection()) {
-            Statement stmt = conn.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT * FROM points_transactions ORDER BY transaction_id");
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM points_transactions ORDER BY transaction_id")) {
             while (rs.next()) {
                 transactions.add(mapRowToPointsTransaction(rs));
             }
@@ -169,7 +544,7 @@ public class DatabaseDataService implements DataServiceInterface {
         return transactions;
     }
     // Helper to map a ResultSet row to PointsTransaction
-    private com.enterprise.rewards.model.PointsTransaction mapRowToPointsTransaction(ResultSet rs) throws SQLException {
+    static com.enterprise.rewards.model.PointsTransaction mapRowToPointsTransaction(ResultSet rs) throws SQLException {
         com.enterprise.rewards.model.PointsTransaction tx = new com.enterprise.rewards.model.PointsTransaction();
         tx.setTransactionId(rs.getString("transaction_id"));
         tx.setCustomerId(rs.getString("customer_id"));
@@ -182,12 +557,13 @@ public class DatabaseDataService implements DataServiceInterface {
 
     @Override
     public com.enterprise.rewards.model.PointsTransaction getTransaction(String transactionId) {
-        try (Connection conn = getConnection()) {
-            PreparedStatement stmt = conn.prepareStatement("SELECT * FROM points_transactions WHERE transaction_id = ?");
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM points_transactions WHERE transaction_id = ?")) {
             stmt.setString(1, transactionId);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return mapRowToPointsTransaction(rs);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRowToPointsTransaction(rs);
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error getting transaction: " + e.getMessage());
@@ -198,12 +574,13 @@ public class DatabaseDataService implements DataServiceInterface {
     @Override
     public java.util.List<com.enterprise.rewards.model.PointsTransaction> getTransactionsByCustomer(String customerId) {
         java.util.List<com.enterprise.rewards.model.PointsTransaction> transactions = new java.util.ArrayList<>();
-        try (Connection conn = getConnection()) {
-            PreparedStatement stmt = conn.prepareStatement("SELECT * FROM points_transactions WHERE customer_id = ? ORDER BY transaction_date DESC");
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM points_transactions WHERE customer_id = ? ORDER BY transaction_date DESC")) {
             stmt.setString(1, customerId);
-            ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                transactions.add(mapRowToPointsTransaction(rs));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    transactions.add(mapRowToPointsTransaction(rs));
+                }
             }
         } catch (SQLException e) {
             System.err.println("Error getting customer transactions: " + e.getMessage());
@@ -212,8 +589,12 @@ public class DatabaseDataService implements DataServiceInterface {
     }
 
     @Override
-    public com.enterprise.rewards.model.PointsTransaction createTransaction(String customerId, String transactionType, int pointsAmount, String description) {
-        String txnId = generateTransactionId();
+    public com.enterprise.rewards.model.PointsTransaction createTransaction(String customerId, String transactionType, int pointsAmount, String description, String idempotencyKey) {
+        // Keyed transactions are stored one by one: a duplicate key must not fail a whole group
+        if (groupCommitWriter != null && idempotencyKey == null) {
+            return groupCommitWriter.submit(new TransactionRequest(customerId, transactionType, pointsAmount, description));
+        }
+        String txnId = EntityIds.newTransactionId();
         java.util.Date now = new java.util.Date();
         com.enterprise.rewards.model.PointsTransaction txn = new com.enterprise.rewards.model.PointsTransaction();
         txn.setTransactionId(txnId);
@@ -222,83 +603,790 @@ public class DatabaseDataService implements DataServiceInterface {
         txn.setPointsAmount(pointsAmount);
         txn.setDescription(description);
         txn.setTransactionDate(now);
-        if ("EARNED".equalsIgnoreCase(transactionType) || "EARN".equalsIgnoreCase(transactionType)) {
-            long twoYearsInMillis = 62208000000L;
-            txn.setExpirationDate(new java.util.Date(System.currentTimeMillis() + twoYearsInMillis));
+        int availableDelta = TransactionTypes.availableDelta(transactionType, pointsAmount);
+        int lifetimeDelta = TransactionTypes.lifetimeDelta(transactionType, pointsAmount);
+        if (availableDelta > 0) {
+            txn.setExpirationDate(new java.util.Date(now.getTime() + lotLifetimeMillis));
         }
-        Connection conn = null;
-        try {
-            conn = getConnection();
+        List<String> tierChanges = Collections.emptyList();
+        try (Connection conn = getConnection()) {
+            if (idempotencyKey != null) {
+                com.enterprise.rewards.model.PointsTransaction existing = findTransactionByIdempotencyKey(conn, idempotencyKey);
+                if (existing != null) {
+                    return existing;
+                }
+            }
             conn.setAutoCommit(false);
-            PreparedStatement stmt = conn.prepareStatement(
-                "INSERT INTO points_transactions (transaction_id, customer_id, transaction_type, points_amount, transaction_date, description) VALUES (?, ?, ?, ?, ?, ?)"
-            );
-            stmt.setString(1, txnId);
-            stmt.setString(2, customerId);
-            stmt.setString(3, transactionType);
-            stmt.setInt(4, pointsAmount);
-            stmt.setTimestamp(5, new java.sql.Timestamp(now.getTime()));
-            stmt.setString(6, description);
-            stmt.executeUpdate();
-            stmt.close();
-            conn.commit();
-            System.out.println("Saved transaction: " + txnId);
-        } catch (Exception e) {
-            if (conn != null) {
+            try {
+                // Update the running balance first: this locks the customer row, so concurrent
+                // transactions for the same customer apply their deltas one after another
+                try (PreparedStatement balanceStmt = conn.prepareStatement(
+                    "UPDATE customers SET total_lifetime_points = total_lifetime_points + ?, current_available_points = current_available_points + ? WHERE customer_id = ?"
+                )) {
+                    balanceStmt.setInt(1, lifetimeDelta);
+                    balanceStmt.setInt(2, availableDelta);
+                    balanceStmt.setString(3, customerId);
+                    if (balanceStmt.executeUpdate() == 0) {
+                        throw new SQLException("Customer not found: " + customerId);
+                    }
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(idempotencyKey != null
+                    ? "INSERT INTO points_transactions (transaction_id, customer_id, transaction_type, points_amount, transaction_date, description, idempotency_key) VALUES (?, ?, ?, ?, ?, ?, ?)"
+                    : "INSERT INTO points_transactions (transaction_id, customer_id, transaction_type, points_amount, transaction_date, description) VALUES (?, ?, ?, ?, ?, ?)"
+                )) {
+                    stmt.setString(1, txnId);
+                    stmt.setString(2, customerId);
+                    stmt.setString(3, transactionType);
+                    stmt.setInt(4, pointsAmount);
+                    stmt.setTimestamp(5, new java.sql.Timestamp(now.getTime()));
+                    stmt.setString(6, description);
+                    if (idempotencyKey != null) {
+                        stmt.setString(7, idempotencyKey);
+                    }
+                    stmt.executeUpdate();
+                }
+                if (lotsEnabled && availableDelta > 0) {
+                    try (PreparedStatement lotStmt = conn.prepareStatement(INSERT_LOT_SQL)) {
+                        addLot(lotStmt, txn);
+                        lotStmt.executeUpdate();
+                    }
+                } else if (lotsEnabled && availableDelta < 0) {
+                    consumeLots(conn, customerId, -availableDelta);
+                }
+                // Only earnings can move a customer up; everything else leaves the tier alone
+                if (tierPolicy != null && lifetimeDelta != 0) {
+                    tierChanges = applyTierPolicy(conn, Collections.singletonList(customerId), now);
+                }
+                conn.commit();
+            } catch (Exception e) {
                 try { conn.rollback(); } catch (Exception ignore) {}
+                // A concurrent request with the same key committed first; it held the customer row until then
+                com.enterprise.rewards.model.PointsTransaction existing = idempotencyKey != null && isConstraintViolation(e)
+                        ? findTransactionByIdempotencyKey(conn, idempotencyKey) : null;
+                if (existing != null) {
+                    return existing;
+                }
+                throw e;
             }
-            throw new RuntimeException("Error creating transaction: " + e.getMessage(), e);
-        } finally {
-            if (conn != null) {
-                try { conn.setAutoCommit(true); conn.close(); } catch (Exception ignore) {}
+            System.out.println("Saved transaction: " + txnId);
+            if (!tierChanges.isEmpty()) {
+                tierEngine.tiersChanged(tierChanges);
             }
+        } catch (Exception e) {
+            throw new RuntimeException("Error creating transaction: " + e.getMessage(), e);
         }
         return txn;
     }
-    // Helper to generate a transaction ID
-    private String generateTransactionId() {
-        return "TXN-" + java.util.UUID.randomUUID().toString().replace("-", "").substring(0, 12).toUpperCase();
-    }
-
     @Override
-    public Customer getCustomer(String customerId) {
-        long startTime = System.currentTimeMillis();
+    public List<BatchItemResult> createTransactions(List<TransactionRequest> requests) {
+        long start = System.currentTimeMillis();
+        BatchItemResult[] results = new BatchItemResult[requests.size()];
+        List<Integer> valid = new ArrayList<>();
+        Set<String> knownCustomers;
         try {
-            Connection conn = getConnection();
+            knownCustomers = findExistingCustomerIds(requests);
+        } catch (SQLException e) {
+            System.err.println("Error validating transaction batch: " + e.getMessage());
+            for (int i = 0; i < results.length; i++) {
+                results[i] = BatchItemResult.failed(i, "Could not validate customers: " + e.getMessage());
+            }
+            return Arrays.asList(results);
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            TransactionRequest request = requests.get(i);
+            if (request.getCustomerId() == null || request.getCustomerId().trim().isEmpty()
+                    || request.getTransactionType() == null || request.getTransactionType().trim().isEmpty()) {
+                results[i] = BatchItemResult.rejected(i, "Missing required fields: customerId, transactionType, pointsAmount");
+            } else if (!TransactionTypes.isStored(request.getTransactionType())) {
+                results[i] = unsupportedType(i, request);
+            } else if (!knownCustomers.contains(request.getCustomerId())) {
+                results[i] = BatchItemResult.rejected(i, "Customer not found: " + request.getCustomerId());
+            } else {
+                valid.add(i);
+            }
+        }
+        int created = 0;
+        List<String> tierChanges = new ArrayList<>();
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            for (int from = 0; from < valid.size(); from += batchChunkSize) {
+                List<Integer> chunk = valid.subList(from, Math.min(valid.size(), from + batchChunkSize));
+                tierChanges.clear();
+                try {
+                    created += insertTransactionChunk(conn, requests, chunk, results, tierChanges);
+                    conn.commit();
+                    if (!tierChanges.isEmpty()) {
+                        tierEngine.tiersChanged(tierChanges);
+                    }
+                } catch (SQLException e) {
+                    try { conn.rollback(); } catch (SQLException ignore) {}
+                    System.err.println("Error storing transaction batch chunk: " + e.getMessage());
+                    for (int i : chunk) {
+                        results[i] = BatchItemResult.failed(i, e.getMessage());
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error storing transaction batch: " + e.getMessage());
+            for (int i : valid) {
+                if (results[i] == null) {
+                    results[i] = BatchItemResult.failed(i, e.getMessage());
+                }
+            }
+        }
+        System.out.println("Saved " + created + " of " + requests.size() + " batched transactions in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return Arrays.asList(results);
+    }
+
+    // Returns the ids among the requests' customers that exist, using one IN query per chunk
+    private Set<String> findExistingCustomerIds(List<TransactionRequest> requests) throws SQLException {
+        Set<String> wanted = new HashSet<>();
+        for (TransactionRequest request : requests) {
+            if (request.getCustomerId() != null) {
+                wanted.add(request.getCustomerId());
+            }
+        }
+        Set<String> found = new HashSet<>();
+        List<String> ids = new ArrayList<>(wanted);
+        try (Connection conn = getConnection()) {
+            for (int from = 0; from < ids.size(); from += batchChunkSize) {
+                List<String> chunk = ids.subList(from, Math.min(ids.size(), from + batchChunkSize));
+                StringBuilder sql = new StringBuilder("SELECT customer_id FROM customers WHERE customer_id IN (");
+                for (int i = 0; i < chunk.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(")");
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setString(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            found.add(rs.getString(1));
+                        }
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Stores a group of transactions in one DB transaction with a single commit.
+     * Used by the GroupCommitWriter; results are in group order.
+     */
+    List<BatchItemResult> storeTransactionGroup(List<TransactionRequest> group) {
+        BatchItemResult[] results = new BatchItemResult[group.size()];
+        List<Integer> valid = new ArrayList<>(group.size());
+        for (int i = 0; i < group.size(); i++) {
+            // One bad type must not fail the insert for the whole group
+            if (TransactionTypes.isStored(group.get(i).getTransactionType())) {
+                valid.add(i);
+            } else {
+                results[i] = unsupportedType(i, group.get(i));
+            }
+        }
+        if (valid.isEmpty()) {
+            return Arrays.asList(results);
+        }
+        List<String> tierChanges = new ArrayList<>();
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
             try {
-                PreparedStatement stmt = conn.prepareStatement(
-                    "SELECT c.*, " +
-                    "COALESCE(SUM(CASE WHEN pt.transaction_type IN ('EARN', 'EARNED', 'ADJUST', 'SOCIAL_MEDIA_BONUS') THEN pt.points_amount ELSE 0 END), 0) AS earned, " +
-                    "COALESCE(SUM(CASE WHEN pt.transaction_type IN ('REDEEM', 'REDEEMED') THEN pt.points_amount ELSE 0 END), 0) AS redeemed " +
-                    "FROM customers c " +
-                    "LEFT JOIN points_transactions pt ON c.customer_id = pt.customer_id " +
-                    "WHERE c.customer_id = ? " +
-                    "GROUP BY c.customer_id"
-                );
+                insertTransactionChunk(conn, group, valid, results, tierChanges);
+                conn.commit();
+            } catch (SQLException e) {
+                try { conn.rollback(); } catch (SQLException ignore) {}
+                throw e;
+            }
+            if (!tierChanges.isEmpty()) {
+                tierEngine.tiersChanged(tierChanges);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error committing transaction group: " + e.getMessage());
+            for (int i : valid) {
+                results[i] = BatchItemResult.failed(i, e.getMessage());
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private static BatchItemResult unsupportedType(int index, TransactionRequest request) {
+        return BatchItemResult.rejected(index, TransactionTypes.unsupportedMessage(request.getTransactionType()));
+    }
+
+    // Applies one chunk inside the caller's DB transaction: one balance update per customer
+    // (in customer_id order, so concurrent batches lock rows in the same order), then one batched insert.
+    // Items whose customer no longer exists are rejected. Customers whose tier the chunk changes are
+    // added to tierChanges. Returns the number of transactions inserted.
+    private int insertTransactionChunk(Connection conn, List<TransactionRequest> requests, List<Integer> chunk,
+                                       BatchItemResult[] results, List<String> tierChanges) throws SQLException {
+        Map<String, int[]> deltas = new TreeMap<>();
+        Set<String> missing = new HashSet<>();
+        for (int i : chunk) {
+            TransactionRequest request = requests.get(i);
+            int[] delta = deltas.get(request.getCustomerId());
+            if (delta == null) {
+                delta = new int[2];
+                deltas.put(request.getCustomerId(), delta);
+            }
+            delta[0] += TransactionTypes.lifetimeDelta(request.getTransactionType(), request.getPointsAmount());
+            delta[1] += TransactionTypes.availableDelta(request.getTransactionType(), request.getPointsAmount());
+        }
+        try (PreparedStatement balanceStmt = conn.prepareStatement(
+                "UPDATE customers SET total_lifetime_points = total_lifetime_points + ?, current_available_points = current_available_points + ? WHERE customer_id = ?")) {
+            for (Map.Entry<String, int[]> entry : deltas.entrySet()) {
+                balanceStmt.setInt(1, entry.getValue()[0]);
+                balanceStmt.setInt(2, entry.getValue()[1]);
+                balanceStmt.setString(3, entry.getKey());
+                balanceStmt.addBatch();
+            }
+            int[] counts = balanceStmt.executeBatch();
+            int n = 0;
+            for (Map.Entry<String, int[]> entry : deltas.entrySet()) {
+                if (counts[n++] == 0) {
+                    missing.add(entry.getKey());
+                }
+            }
+        }
+        java.util.Date now = new java.util.Date();
+        List<Integer> inserted = new ArrayList<>(chunk.size());
+        List<com.enterprise.rewards.model.PointsTransaction> txns = new ArrayList<>(chunk.size());
+        try (PreparedStatement stmt = conn.prepareStatement(
+            "INSERT INTO points_transactions (transaction_id, customer_id, transaction_type, points_amount, transaction_date, description) VALUES (?, ?, ?, ?, ?, ?)"
+        )) {
+            for (int i : chunk) {
+                TransactionRequest request = requests.get(i);
+                if (missing.contains(request.getCustomerId())) {
+                    results[i] = BatchItemResult.rejected(i, "Customer not found: " + request.getCustomerId());
+                    continue;
+                }
+                com.enterprise.rewards.model.PointsTransaction txn = new com.enterprise.rewards.model.PointsTransaction();
+                txn.setTransactionId(EntityIds.newTransactionId());
+                txn.setCustomerId(request.getCustomerId());
+                txn.setTransactionType(request.getTransactionType());
+                txn.setPointsAmount(request.getPointsAmount());
+                txn.setDescription(request.getDescription());
+                txn.setTransactionDate(now);
+                if (TransactionTypes.availableDelta(request.getTransactionType(), request.getPointsAmount()) > 0) {
+                    txn.setExpirationDate(new java.util.Date(now.getTime() + lotLifetimeMillis));
+                }
+                stmt.setString(1, txn.getTransactionId());
+                stmt.setString(2, txn.getCustomerId());
+                stmt.setString(3, txn.getTransactionType());
+                stmt.setInt(4, txn.getPointsAmount());
+                stmt.setTimestamp(5, new java.sql.Timestamp(now.getTime()));
+                stmt.setString(6, txn.getDescription());
+                stmt.addBatch();
+                inserted.add(i);
+                txns.add(txn);
+            }
+            if (!txns.isEmpty()) {
+                // Sent as multi-row INSERTs thanks to rewriteBatchedStatements
+                stmt.executeBatch();
+            }
+        }
+        if (lotsEnabled && !txns.isEmpty()) {
+            updateLots(conn, txns, deltas);
+        }
+        if (tierPolicy != null) {
+            List<String> earners = new ArrayList<>();
+            for (Map.Entry<String, int[]> entry : deltas.entrySet()) {
+                if (entry.getValue()[0] != 0 && !missing.contains(entry.getKey())) {
+                    earners.add(entry.getKey());
+                }
+            }
+            if (!earners.isEmpty()) {
+                tierChanges.addAll(applyTierPolicy(conn, earners, now));
+            }
+        }
+        for (int n = 0; n < inserted.size(); n++) {
+            results[inserted.get(n)] = BatchItemResult.created(inserted.get(n), txns.get(n));
+        }
+        return txns.size();
+    }
+
+    private static final String INSERT_LOT_SQL =
+        "INSERT INTO points_lots (customer_id, transaction_id, points_earned, points_remaining, earned_date, expiration_date) VALUES (?, ?, ?, ?, ?, ?)";
+
+    // Lots read per round-trip while consuming a customer's lots
+    private static final int LOT_PAGE_SIZE = 100;
+
+    private static void addLot(PreparedStatement lotStmt, com.enterprise.rewards.model.PointsTransaction txn) throws SQLException {
+        int points = TransactionTypes.availableDelta(txn.getTransactionType(), txn.getPointsAmount());
+        lotStmt.setString(1, txn.getCustomerId());
+        lotStmt.setString(2, txn.getTransactionId());
+        lotStmt.setInt(3, points);
+        lotStmt.setInt(4, points);
+        lotStmt.setTimestamp(5, new java.sql.Timestamp(txn.getTransactionDate().getTime()));
+        lotStmt.setTimestamp(6, new java.sql.Timestamp(txn.getExpirationDate().getTime()));
+        lotStmt.addBatch();
+    }
+
+    // Adds a lot per earning of the chunk, then takes each customer's net deduction from their lots.
+    // The customer rows are already locked by the balance update.
+    private void updateLots(Connection conn, List<com.enterprise.rewards.model.PointsTransaction> txns,
+                            Map<String, int[]> deltas) throws SQLException {
+        Map<String, Integer> deductions = new TreeMap<>();
+        try (PreparedStatement lotStmt = conn.prepareStatement(INSERT_LOT_SQL)) {
+            int lots = 0;
+            for (com.enterprise.rewards.model.PointsTransaction txn : txns) {
+                int points = TransactionTypes.availableDelta(txn.getTransactionType(), txn.getPointsAmount());
+                if (points > 0) {
+                    addLot(lotStmt, txn);
+                    lots++;
+                } else if (points < 0) {
+                    deductions.merge(txn.getCustomerId(), -points, Integer::sum);
+                }
+            }
+            if (lots > 0) {
+                lotStmt.executeBatch();
+            }
+        }
+        for (Map.Entry<String, Integer> deduction : deductions.entrySet()) {
+            if (deltas.containsKey(deduction.getKey())) {
+                consumeLots(conn, deduction.getKey(), deduction.getValue());
+            }
+        }
+    }
+
+    /**
+     * Takes points from a customer's lots, earliest expiration first: used-up lots are deleted and
+     * the last one touched keeps its remainder. Points not covered by lots (balances from before
+     * lot tracking, or negative adjustments) only reduce the balance. The caller must hold the
+     * customer row lock, which serializes all changes to that customer's lots.
+     * Returns the points taken from lots.
+     */
+    private int consumeLots(Connection conn, String customerId, int points) throws SQLException {
+        int consumed = 0;
+        while (consumed < points) {
+            List<Long> usedUp = new ArrayList<>();
+            long partialId = -1;
+            int partialRemaining = 0;
+            int read = 0;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT id, points_remaining FROM points_lots WHERE customer_id = ? ORDER BY expiration_date, id LIMIT ?")) {
                 stmt.setString(1, customerId);
-                ResultSet rs = stmt.executeQuery();
-                if (rs.next()) {
-                    Customer customer = mapRowToCustomer(rs);
-                    int earned = rs.getInt("earned");
-                    int redeemed = rs.getInt("redeemed");
-                    int available = earned - redeemed;
-                    customer.setCurrentAvailablePoints(available);
-                    customer.setTotalLifetimePoints(earned);
-                    long endTime = System.currentTimeMillis();
-                    System.out.println("[PERF] SQL getCustomer query took " + (endTime - startTime) + " ms");
-                    return customer;
-                }
-                long endTime = System.currentTimeMillis();
-                System.out.println("[PERF] SQL getCustomer query took " + (endTime - startTime) + " ms");
-                return null;
-            } finally {
-                conn.close();
+                stmt.setInt(2, LOT_PAGE_SIZE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next() && consumed < points) {
+                        read++;
+                        long id = rs.getLong(1);
+                        int remaining = rs.getInt(2);
+                        int take = Math.min(remaining, points - consumed);
+                        consumed += take;
+                        if (take == remaining) {
+                            usedUp.add(id);
+                        } else {
+                            partialId = id;
+                            partialRemaining = remaining - take;
+                        }
+                    }
+                }
+            }
+            if (!usedUp.isEmpty()) {
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM points_lots WHERE id = ?")) {
+                    for (long id : usedUp) {
+                        stmt.setLong(1, id);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            }
+            if (partialId >= 0) {
+                try (PreparedStatement stmt = conn.prepareStatement("UPDATE points_lots SET points_remaining = ? WHERE id = ?")) {
+                    stmt.setInt(1, partialRemaining);
+                    stmt.setLong(2, partialId);
+                    stmt.executeUpdate();
+                }
+            }
+            if (read < LOT_PAGE_SIZE || partialId >= 0) {
+                break;
+            }
+        }
+        return consumed;
+    }
+
+    /**
+     * Writes off up to limit lots that expired at or before cutoff, in one short DB transaction.
+     * The candidates are found through idx_lot_expiration without locking; the affected
+     * customer rows are then locked in customer_id order (the order batches use), the lots by
+     * primary key, and each customer gets one EXPIRE transaction for the points that were
+     * still available. Expired lots are deleted, so the next chunk starts at the index head.
+     * Used by PointsExpirationEngine.
+     */
+    PointsExpirationEngine.ChunkResult expireLots(java.util.Date cutoff, int limit) throws SQLException {
+        java.sql.Timestamp cutoffTime = new java.sql.Timestamp(cutoff.getTime());
+        List<Long> candidates = new ArrayList<>(limit);
+        Set<String> customerIds = new TreeSet<>();
+        try (Connection conn = getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT id, customer_id FROM points_lots WHERE expiration_date <= ? ORDER BY expiration_date LIMIT ?")) {
+                stmt.setTimestamp(1, cutoffTime);
+                stmt.setInt(2, limit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        candidates.add(rs.getLong(1));
+                        customerIds.add(rs.getString(2));
+                    }
+                }
+            }
+            if (candidates.isEmpty()) {
+                return new PointsExpirationEngine.ChunkResult(0, 0, 0, Collections.<String>emptyList());
+            }
+            conn.setAutoCommit(false);
+            try {
+                Map<String, Integer> available = new HashMap<>();
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT customer_id, current_available_points FROM customers WHERE customer_id IN ("
+                                + placeholders(customerIds.size()) + ") ORDER BY customer_id FOR UPDATE")) {
+                    int n = 1;
+                    for (String id : customerIds) {
+                        stmt.setString(n++, id);
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            available.put(rs.getString(1), rs.getInt(2));
+                        }
+                    }
+                }
+                // Re-read under lock: a redemption may have used some of the lots meanwhile
+                Map<String, int[]> expired = new TreeMap<>();
+                List<Long> lotIds = new ArrayList<>(candidates.size());
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT id, customer_id, points_remaining FROM points_lots WHERE id IN ("
+                                + placeholders(candidates.size()) + ") AND expiration_date <= ? FOR UPDATE")) {
+                    int n = 1;
+                    for (long id : candidates) {
+                        stmt.setLong(n++, id);
+                    }
+                    stmt.setTimestamp(n, cutoffTime);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            lotIds.add(rs.getLong(1));
+                            int[] total = expired.computeIfAbsent(rs.getString(2), k -> new int[2]);
+                            total[0] += rs.getInt(3);
+                            total[1]++;
+                        }
+                    }
+                }
+                if (!lotIds.isEmpty()) {
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "DELETE FROM points_lots WHERE id IN (" + placeholders(lotIds.size()) + ")")) {
+                        int n = 1;
+                        for (long id : lotIds) {
+                            stmt.setLong(n++, id);
+                        }
+                        stmt.executeUpdate();
+                    }
+                }
+                int points = 0;
+                List<String> changed = new ArrayList<>();
+                java.sql.Timestamp now = new java.sql.Timestamp(System.currentTimeMillis());
+                try (PreparedStatement balanceStmt = conn.prepareStatement(
+                        "UPDATE customers SET current_available_points = current_available_points - ? WHERE customer_id = ?");
+                     PreparedStatement txnStmt = conn.prepareStatement(
+                        "INSERT INTO points_transactions (transaction_id, customer_id, transaction_type, points_amount, transaction_date, description) VALUES (?, ?, ?, ?, ?, ?)")) {
+                    for (Map.Entry<String, int[]> entry : expired.entrySet()) {
+                        // Never expire more than is available (balances may have gone below their lots)
+                        Integer balance = available.get(entry.getKey());
+                        int amount = Math.min(entry.getValue()[0], Math.max(0, balance != null ? balance : 0));
+                        if (amount == 0) {
+                            continue;
+                        }
+                        balanceStmt.setInt(1, amount);
+                        balanceStmt.setString(2, entry.getKey());
+                        balanceStmt.addBatch();
+                        txnStmt.setString(1, EntityIds.newTransactionId());
+                        txnStmt.setString(2, entry.getKey());
+                        txnStmt.setString(3, TransactionTypes.EXPIRE);
+                        txnStmt.setInt(4, amount);
+                        txnStmt.setTimestamp(5, now);
+                        txnStmt.setString(6, "Points expired (" + entry.getValue()[1] + (entry.getValue()[1] == 1 ? " lot)" : " lots)"));
+                        txnStmt.addBatch();
+                        points += amount;
+                        changed.add(entry.getKey());
+                    }
+                    if (!changed.isEmpty()) {
+                        balanceStmt.executeBatch();
+                        txnStmt.executeBatch();
+                    }
+                }
+                conn.commit();
+                return new PointsExpirationEngine.ChunkResult(candidates.size(), lotIds.size(), points, changed);
+            } catch (SQLException | RuntimeException e) {
+                try { conn.rollback(); } catch (SQLException ignore) {}
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * True while the pool is under request load (threads waiting, or more than half the
+     * connections in use); background work backs off then.
+     */
+    boolean isPoolBusy() {
+        PoolStatistics stats = pool.getStatistics();
+        return stats.getWaiters() > 0 || stats.getActive() * 2 > stats.getMaxSize();
+    }
+
+    /**
+     * Re-evaluates the tiers of the given customers inside the caller's DB transaction and
+     * stores the changed ones. The customer rows are locked in customer_id order (on the
+     * request path they are already locked by the balance update). Points are the lifetime
+     * balance column, or with an evaluation window (or AGGREGATE balances) the earnings summed
+     * from points_transactions for just these customers. Returns the customers whose tier changed.
+     */
+    private List<String> applyTierPolicy(Connection conn, Collection<String> customerIds, java.util.Date now) throws SQLException {
+        Set<String> ids = new TreeSet<>(customerIds);
+        Map<String, String> tiers = new HashMap<>();
+        Map<String, java.util.Date> downgradeAfter = new HashMap<>();
+        Map<String, Integer> points = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT customer_id, loyalty_tier, tier_downgrade_after, total_lifetime_points FROM customers WHERE customer_id IN ("
+                        + placeholders(ids.size()) + ") ORDER BY customer_id FOR UPDATE")) {
+            int n = 1;
+            for (String id : ids) {
+                stmt.setString(n++, id);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    tiers.put(rs.getString(1), rs.getString(2));
+                    downgradeAfter.put(rs.getString(1), rs.getTimestamp(3));
+                    points.put(rs.getString(1), rs.getInt(4));
+                }
+            }
+        }
+        if (tiers.isEmpty()) {
+            return Collections.emptyList();
+        }
+        java.util.Date windowStart = tierPolicy.windowStart(now);
+        if (windowStart != null || aggregateBalances) {
+            points.replaceAll((id, p) -> 0);
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT customer_id, SUM(points_amount) FROM points_transactions WHERE customer_id IN ("
+                            + placeholders(tiers.size()) + ") AND transaction_type IN (" + TransactionTypes.EARNING_SQL_LIST + ")"
+                            + (windowStart != null ? " AND transaction_date >= ?" : "") + " GROUP BY customer_id")) {
+                int n = 1;
+                for (String id : tiers.keySet()) {
+                    stmt.setString(n++, id);
+                }
+                if (windowStart != null) {
+                    stmt.setTimestamp(n, new java.sql.Timestamp(windowStart.getTime()));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        points.put(rs.getString(1), rs.getInt(2));
+                    }
+                }
+            }
+        }
+        List<String> changed = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE customers SET loyalty_tier = ?, tier_downgrade_after = ? WHERE customer_id = ?")) {
+            int updates = 0;
+            for (String id : ids) {
+                if (!tiers.containsKey(id)) {
+                    continue;
+                }
+                TierPolicy.Evaluation evaluation = tierPolicy.evaluate(tiers.get(id), downgradeAfter.get(id), points.get(id), now);
+                boolean tierChanged = !evaluation.getTier().equalsIgnoreCase(tiers.get(id));
+                if (!tierChanged && Objects.equals(evaluation.getDowngradeAfter(), downgradeAfter.get(id))) {
+                    continue;
+                }
+                stmt.setString(1, evaluation.getTier());
+                stmt.setTimestamp(2, evaluation.getDowngradeAfter() != null
+                        ? new java.sql.Timestamp(evaluation.getDowngradeAfter().getTime()) : null);
+                stmt.setString(3, id);
+                stmt.addBatch();
+                updates++;
+                if (tierChanged) {
+                    changed.add(id);
+                }
+            }
+            if (updates > 0) {
+                stmt.executeBatch();
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Re-evaluates the tiers of a chunk of customers in one short DB transaction.
+     * Used by TierEngine; returns the customers whose tier changed.
+     */
+    List<String> rescoreTiers(List<String> customerIds, java.util.Date now) throws SQLException {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                List<String> changed = applyTierPolicy(conn, customerIds, now);
+                conn.commit();
+                return changed;
+            } catch (SQLException | RuntimeException e) {
+                try { conn.rollback(); } catch (SQLException ignore) {}
+                throw e;
             }
+        }
+    }
+
+    /**
+     * Next page of customer ids in key order, without locking. With downgradeDue only customers
+     * whose downgrade grace ended by then. Used by TierEngine.
+     */
+    List<String> customerIdsAfter(String afterCustomerId, int limit, java.util.Date downgradeDue) throws SQLException {
+        List<String> ids = new ArrayList<>(limit);
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT customer_id FROM customers WHERE customer_id > ?"
+                     + (downgradeDue != null ? " AND tier_downgrade_after <= ?" : "") + " ORDER BY customer_id LIMIT ?")) {
+            int n = 1;
+            stmt.setString(n++, afterCustomerId);
+            if (downgradeDue != null) {
+                stmt.setTimestamp(n++, new java.sql.Timestamp(downgradeDue.getTime()));
+            }
+            stmt.setInt(n, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getString(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder(count * 3);
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.toString();
+    }
+
+    @Override
+    public Customer getCustomer(String customerId) {
+        try (Connection conn = getConnection()) {
+            return getCustomer(conn, customerId);
         } catch (SQLException e) {
             System.err.println("Error getting customer: " + e.getMessage());
             return null;
         }
     }
+
+    // The customer created with an idempotency key, or null
+    private Customer findCustomerByIdempotencyKey(Connection conn, String idempotencyKey) throws SQLException {
+        String customerId = null;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT customer_id FROM customers WHERE idempotency_key = ?")) {
+            stmt.setString(1, idempotencyKey);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    customerId = rs.getString(1);
+                }
+            }
+        }
+        return customerId != null ? getCustomer(conn, customerId) : null;
+    }
+
+    // The transaction created with an idempotency key, or null
+    private com.enterprise.rewards.model.PointsTransaction findTransactionByIdempotencyKey(Connection conn, String idempotencyKey)
+            throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM points_transactions WHERE idempotency_key = ?")) {
+            stmt.setString(1, idempotencyKey);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapRowToPointsTransaction(rs) : null;
+            }
+        }
+    }
+
+    // SQLSTATE class 23: a unique key (or other integrity constraint) was violated
+    private static boolean isConstraintViolation(Exception e) {
+        return e instanceof SQLException && ((SQLException) e).getSQLState() != null
+                && ((SQLException) e).getSQLState().startsWith("23");
+    }
+
+    private Customer getCustomer(Connection conn, String customerId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(customerByIdSql)) {
+            stmt.setString(1, customerId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return mapRowToCustomer(rs);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * One-off backfill of the materialized balance columns (total_lifetime_points,
+     * current_available_points) from the full points_transactions history.
+     * Works through customers in customer_id order, one short DB transaction per
+     * chunk, locking only the customers in that chunk while it recomputes them.
+     * Returns the number of customers updated.
+     */
+    public int rebuildPointsBalances() {
+        final int chunkSize = 500;
+        long start = System.currentTimeMillis();
+        int updated = 0;
+        String lastCustomerId = "";
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            while (true) {
+                List<String> ids = new ArrayList<>();
+                try (PreparedStatement lockStmt = conn.prepareStatement(
+                        "SELECT customer_id FROM customers WHERE customer_id > ? ORDER BY customer_id LIMIT ? FOR UPDATE")) {
+                    lockStmt.setString(1, lastCustomerId);
+                    lockStmt.setInt(2, chunkSize);
+                    try (ResultSet rs = lockStmt.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(rs.getString(1));
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    conn.commit();
+                    break;
+                }
+                String firstId = ids.get(0);
+                String lastId = ids.get(ids.size() - 1);
+                Map<String, int[]> totals = new HashMap<>();
+                try (PreparedStatement sumStmt = conn.prepareStatement(
+                        "SELECT customer_id, " +
+                        "COALESCE(SUM(CASE WHEN transaction_type IN (" + TransactionTypes.EARNING_SQL_LIST + ") THEN points_amount ELSE 0 END), 0) AS earned, " +
+                        "COALESCE(SUM(CASE WHEN transaction_type IN (" + TransactionTypes.DEDUCTION_SQL_LIST + ") THEN points_amount ELSE 0 END), 0) AS deducted " +
+                        "FROM points_transactions WHERE customer_id BETWEEN ? AND ? GROUP BY customer_id LOCK IN SHARE MODE")) {
+                    sumStmt.setString(1, firstId);
+                    sumStmt.setString(2, lastId);
+                    try (ResultSet rs = sumStmt.executeQuery()) {
+                        while (rs.next()) {
+                            totals.put(rs.getString("customer_id"), new int[] {rs.getInt("earned"), rs.getInt("deducted")});
+                        }
+                    }
+                }
+                try (PreparedStatement updateStmt = conn.prepareStatement(
+                        "UPDATE customers SET total_lifetime_points = ?, current_available_points = ? WHERE customer_id = ?")) {
+                    for (String id : ids) {
+                        int[] t = totals.get(id);
+                        int earned = t != null ? t[0] : 0;
+                        int deducted = t != null ? t[1] : 0;
+                        updateStmt.setInt(1, earned);
+                        updateStmt.setInt(2, earned - deducted);
+                        updateStmt.setString(3, id);
+                        updateStmt.addBatch();
+                    }
+                    updateStmt.executeBatch();
+                }
+                conn.commit();
+                updated += ids.size();
+                lastCustomerId = lastId;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error rebuilding points balances after " + updated + " customers: " + e.getMessage());
+            return updated;
+        }
+        System.out.println("Rebuilt points balances for " + updated + " customers in "
+                + (System.currentTimeMillis() - start) + " ms");
+        return updated;
+    }
+
     // DB credentials loaded from db.properties on the classpath
     private static String DB_HOST = "localhost";
     private static String DB_PORT = "3306";
@@ -306,62 +1394,70 @@ public class DatabaseDataService implements DataServiceInterface {
     private static String DB_USER = "loyalty_user";
     private static String DB_PASSWORD = "password123";
     private static String DB_URL;
+    // Raw db.properties, also the source of the db.pool.* settings
+    private static final Properties DB_PROPERTIES = new Properties();
 
     static {
         try {
-            Properties props = new Properties();
             java.io.InputStream in = DatabaseDataService.class.getClassLoader().getResourceAsStream("db.properties");
             if (in != null) {
-                props.load(in);
+                DB_PROPERTIES.load(in);
                 in.close();
-                DB_HOST = props.getProperty("db.host", DB_HOST);
-                DB_PORT = props.getProperty("db.port", DB_PORT);
-                DB_NAME = props.getProperty("db.name", DB_NAME);
-                DB_USER = props.getProperty("db.user", DB_USER);
-                DB_PASSWORD = props.getProperty("db.password", DB_PASSWORD);
+                DB_HOST = DB_PROPERTIES.getProperty("db.host", DB_HOST);
+                DB_PORT = DB_PROPERTIES.getProperty("db.port", DB_PORT);
+                DB_NAME = DB_PROPERTIES.getProperty("db.name", DB_NAME);
+                DB_USER = DB_PROPERTIES.getProperty("db.user", DB_USER);
+                DB_PASSWORD = DB_PROPERTIES.getProperty("db.password", DB_PASSWORD);
             }
         } catch (Exception e) {
             System.err.println("[ERROR] Failed to load db.properties: " + e.getMessage());
         }
-        DB_URL = "jdbc:mysql://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME + "?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC";
-    }
-
-    private Connection getConnection() throws SQLException {
+        // Prepared statement caching pays off now that connections are long-lived;
+        // useCursorFetch lets statements with a fetch size read through a server-side cursor;
+        // rewriteBatchedStatements turns batched INSERTs into multi-row INSERTs
+        DB_URL = "jdbc:mysql://" + DB_HOST + ":" + DB_PORT + "/" + DB_NAME + "?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC"
+                + "&cachePrepStmts=true&prepStmtCacheSize=250&prepStmtCacheSqlLimit=2048&useCursorFetch=true"
+                + "&rewriteBatchedStatements=true";
         try {
             Class.forName("com.mysql.cj.jdbc.Driver");
         } catch (ClassNotFoundException e) {
-            throw new SQLException("MySQL Database driver not found", e);
+            System.err.println("[ERROR] MySQL Database driver not found: " + e.getMessage());
         }
-        return DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
     }
 
+    private Connection getConnection() throws SQLException {
+        return profiler.wrap(pool.getConnection());
+    }
+
+    /**
+     * How long earned points last (db.lots.expirationDays), also used by InMemoryDataService
+     * for the expiration date of new earnings.
+     */
+    static long lotLifetimeMillis(javax.servlet.ServletContext context) {
+        return Long.parseLong(getSetting(context, "db.lots.expirationDays", "720")) * 24L * 60L * 60L * 1000L;
+    }
+
+    // Reads a setting from web.xml context params, falling back to db.properties
+    private static String getSetting(javax.servlet.ServletContext context, String name, String defaultValue) {
+        String value = context != null ? context.getInitParameter(name) : null;
+        if (value == null || value.trim().isEmpty()) {
+            value = DB_PROPERTIES.getProperty(name, defaultValue);
+        }
+        return value.trim();
+    }
+
+    /**
+     * Returns all customers with their points in a single query (one round-trip
+     * regardless of the number of customers).
+     */
     @Override
     public Collection<Customer> getAllCustomers() {
         List<Customer> customers = new ArrayList<>();
-        try (Connection conn = getConnection()) {
-            Statement stmt = conn.createStatement();
-            ResultSet rs = stmt.executeQuery("SELECT * FROM customers ORDER BY customer_id");
+        try (Connection conn = getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(customerSql + " ORDER BY c.customer_id")) {
             while (rs.next()) {
-                Customer customer = mapRowToCustomer(rs);
-                // Calculate points from transactions
-                PreparedStatement sumStmt = conn.prepareStatement(
-                    "SELECT SUM(CASE WHEN transaction_type IN ('EARN', 'EARNED', 'ADJUST', 'SOCIAL_MEDIA_BONUS') THEN points_amount ELSE 0 END) AS earned, " +
-                    "SUM(CASE WHEN transaction_type IN ('REDEEM', 'REDEEMED') THEN points_amount ELSE 0 END) AS redeemed " +
-                    "FROM points_transactions WHERE customer_id = ?");
-                sumStmt.setString(1, customer.getCustomerId());
-                ResultSet sumRs = sumStmt.executeQuery();
-                int earned = 0;
-                int redeemed = 0;
-                if (sumRs.next()) {
-                    earned = sumRs.getInt("earned");
-                    redeemed = sumRs.getInt("redeemed");
-                }
-                int available = earned - redeemed;
-                customer.setCurrentAvailablePoints(available);
-                customer.setTotalLifetimePoints(earned);
-                sumRs.close();
-                sumStmt.close();
-                customers.add(customer);
+                customers.add(mapRowToCustomer(rs));
             }
         } catch (SQLException e) {
             System.err.println("Error getting all customers: " + e.getMessage());
@@ -369,7 +1465,91 @@ public class DatabaseDataService implements DataServiceInterface {
         return customers;
     }
 
-    private Customer mapRowToCustomer(ResultSet rs) throws SQLException {
+    @Override
+    public Page<Customer> getCustomersPage(String afterCustomerId, int limit) {
+        return queryPage(customerPageSql, afterCustomerId, limit,
+            DatabaseDataService::mapRowToCustomer, Customer::getCustomerId, "customers");
+    }
+
+    @Override
+    public Page<com.enterprise.rewards.model.PointsTransaction> getTransactionsPage(String afterTransactionId, int limit) {
+        return queryPage("SELECT * FROM points_transactions WHERE transaction_id > ? ORDER BY transaction_id LIMIT ?",
+            afterTransactionId, limit, DatabaseDataService::mapRowToPointsTransaction,
+            com.enterprise.rewards.model.PointsTransaction::getTransactionId, "transactions");
+    }
+
+    @Override
+    public Page<com.enterprise.rewards.model.Reward> getRewardsPage(String afterRewardId, int limit) {
+        return queryPage("SELECT * FROM rewards WHERE reward_id > ? ORDER BY reward_id LIMIT ?",
+            afterRewardId, limit, this::mapRowToReward,
+            com.enterprise.rewards.model.Reward::getRewardId, "rewards");
+    }
+
+    // Reads limit + 1 rows after the given key: the extra row only tells us whether another page exists
+    private <T> Page<T> queryPage(String sql, String afterKey, int limit, RowMapper<T> mapper,
+                                  java.util.function.Function<T, String> keyOf, String what) {
+        limit = Math.max(1, limit);
+        List<T> items = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, afterKey != null ? afterKey : "");
+            stmt.setInt(2, limit + 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    items.add(mapper.map(rs));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error getting page of " + what + ": " + e.getMessage());
+        }
+        String nextKey = null;
+        if (items.size() > limit) {
+            items.remove(items.size() - 1);
+            nextKey = keyOf.apply(items.get(items.size() - 1));
+        }
+        return new Page<>(items, nextKey);
+    }
+
+    @Override
+    public int streamAllCustomers(RowCallback<Customer> callback) throws java.io.IOException {
+        return streamQuery(customerSql + " ORDER BY c.customer_id", DatabaseDataService::mapRowToCustomer, callback, "customers");
+    }
+
+    @Override
+    public int streamAllTransactions(RowCallback<com.enterprise.rewards.model.PointsTransaction> callback) throws java.io.IOException {
+        return streamQuery("SELECT * FROM points_transactions ORDER BY transaction_id", DatabaseDataService::mapRowToPointsTransaction, callback, "transactions");
+    }
+
+    @Override
+    public int streamAllRewards(RowCallback<com.enterprise.rewards.model.Reward> callback) throws java.io.IOException {
+        return streamQuery("SELECT * FROM rewards ORDER BY reward_id", this::mapRowToReward, callback, "rewards");
+    }
+
+    // Forward-only, read-only statement with a fetch size: with useCursorFetch the driver pulls
+    // streamFetchSize rows per round-trip instead of buffering the whole result in the heap
+    private <T> int streamQuery(String sql, RowMapper<T> mapper, RowCallback<T> callback, String what) throws java.io.IOException {
+        int count = 0;
+        try (Connection conn = getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(streamFetchSize);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    callback.onRow(mapper.map(rs));
+                    count++;
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Error streaming " + what + " after " + count + " rows: " + e.getMessage(), e);
+        }
+        return count;
+    }
+
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    // Row mappers are package-private static so src/jmh benchmarks can call them
+    static Customer mapRowToCustomer(ResultSet rs) throws SQLException {
         Customer customer = new Customer(
             rs.getString("customer_id"),
             rs.getString("first_name"),
@@ -380,7 +1560,8 @@ public class DatabaseDataService implements DataServiceInterface {
         customer.setRegistrationDate(rs.getTimestamp("registration_date"));
         customer.setLoyaltyTier(rs.getString("loyalty_tier"));
         customer.setAccountStatus(rs.getString("account_status"));
-        // Points fields are set in getAllCustomers
+        customer.setTotalLifetimePoints(rs.getInt("total_lifetime_points"));
+        customer.setCurrentAvailablePoints(rs.getInt("current_available_points"));
         return customer;
     }
 }
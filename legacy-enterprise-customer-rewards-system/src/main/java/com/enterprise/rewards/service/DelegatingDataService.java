@@ -0,0 +1,124 @@
+package com.enterprise.rewards.service;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import com.enterprise.rewards.model.Customer;
+import com.enterprise.rewards.model.PointsTransaction;
+import com.enterprise.rewards.model.Reward;
+
+/**
+ * Base class for decorators around another DataServiceInterface.
+ * Every call is forwarded to the wrapped service; subclasses override only
+ * the operations they change. close() is forwarded too.
+ */
+public abstract class DelegatingDataService implements DataServiceInterface, AutoCloseable {
+
+    protected final DataServiceInterface delegate;
+
+    protected DelegatingDataService(DataServiceInterface delegate) {
+        this.delegate = delegate;
+    }
+
+    public DataServiceInterface getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Reward getReward(String rewardId) {
+        return delegate.getReward(rewardId);
+    }
+
+    @Override
+    public void saveReward(Reward reward) {
+        delegate.saveReward(reward);
+    }
+
+    @Override
+    public Collection<Reward> getAllRewards() {
+        return delegate.getAllRewards();
+    }
+
+    @Override
+    public Customer createCustomer(String firstName, String lastName, String emailAddress, String phoneNumber, String idempotencyKey) {
+        return delegate.createCustomer(firstName, lastName, emailAddress, phoneNumber, idempotencyKey);
+    }
+
+    @Override
+    public PointsTransaction getTransaction(String transactionId) {
+        return delegate.getTransaction(transactionId);
+    }
+
+    @Override
+    public List<PointsTransaction> getAllTransactions() {
+        return delegate.getAllTransactions();
+    }
+
+    @Override
+    public List<PointsTransaction> getTransactionsByCustomer(String customerId) {
+        return delegate.getTransactionsByCustomer(customerId);
+    }
+
+    @Override
+    public PointsTransaction createTransaction(String customerId, String transactionType, int pointsAmount, String description, String idempotencyKey) {
+        return delegate.createTransaction(customerId, transactionType, pointsAmount, description, idempotencyKey);
+    }
+
+    @Override
+    public List<BatchItemResult> createTransactions(List<TransactionRequest> requests) {
+        return delegate.createTransactions(requests);
+    }
+
+    @Override
+    public RedemptionResult redeemReward(String customerId, String rewardId) {
+        return delegate.redeemReward(customerId, rewardId);
+    }
+
+    @Override
+    public Collection<Customer> getAllCustomers() {
+        return delegate.getAllCustomers();
+    }
+
+    @Override
+    public Customer getCustomer(String customerId) {
+        return delegate.getCustomer(customerId);
+    }
+
+    @Override
+    public Page<Customer> getCustomersPage(String afterCustomerId, int limit) {
+        return delegate.getCustomersPage(afterCustomerId, limit);
+    }
+
+    @Override
+    public Page<PointsTransaction> getTransactionsPage(String afterTransactionId, int limit) {
+        return delegate.getTransactionsPage(afterTransactionId, limit);
+    }
+
+    @Override
+    public Page<Reward> getRewardsPage(String afterRewardId, int limit) {
+        return delegate.getRewardsPage(afterRewardId, limit);
+    }
+
+    @Override
+    public int streamAllCustomers(RowCallback<Customer> callback) throws IOException {
+        return delegate.streamAllCustomers(callback);
+    }
+
+    @Override
+    public int streamAllTransactions(RowCallback<PointsTransaction> callback) throws IOException {
+        return delegate.streamAllTransactions(callback);
+    }
+
+    @Override
+    public int streamAllRewards(RowCallback<Reward> callback) throws IOException {
+        return delegate.streamAllRewards(callback);
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable) {
+            ((AutoCloseable) delegate).close();
+        }
+    }
+}
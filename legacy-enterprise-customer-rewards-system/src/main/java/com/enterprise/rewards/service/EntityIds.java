@@ -0,0 +1,79 @@
+package com.enterprise.rewards.service;
+
+import java.lang.management.ManagementFactory;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Id formats for new customers and transactions, shared by the data service implementations.
+ *
+ * The numbers come from an IdGenerator, by default a SnowflakeIdGenerator for node ids.nodeId,
+ * so ids are unique across nodes and increase over time: new rows are appended to the primary
+ * key indexes instead of landing on random pages. Both formats are fixed width and keep the CUST
+ * and TXN- prefixes of the older ids. The older ids were not ordered: CUST ids were the epoch
+ * millis modulo 10^9 (a counter that wraps every 11.6 days) plus 3 random digits, TXN- ids 12
+ * random hex digits. They sort among the new ids in no particular order, so id order means
+ * creation order only for ids made by SnowflakeIdGenerator.
+ */
+final class EntityIds {
+
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final String CUSTOMER_PREFIX = "CUST";
+    private static final String TRANSACTION_PREFIX = "TXN-";
+
+    private static volatile IdGenerator generator = new SnowflakeIdGenerator(defaultNodeId());
+
+    private EntityIds() {}
+
+    /**
+     * Uses the node id from the ids.nodeId context-param; without it, one derived from the host
+     * name and process id, which is only unlikely, not guaranteed, to differ between nodes.
+     */
+    static void configure(ServletContext context) {
+        String configured = ContextParams.getString(context, "ids.nodeId", null);
+        int nodeId;
+        if (configured != null && !configured.trim().isEmpty()) {
+            try {
+                nodeId = Integer.parseInt(configured.trim());
+            } catch (NumberFormatException e) {
+                throw new RuntimeException("Invalid ids.nodeId (expected 0 to " + SnowflakeIdGenerator.MAX_NODE_ID + "): " + configured, e);
+            }
+        } else {
+            nodeId = defaultNodeId();
+            System.out.println("[INFO] ids.nodeId not set, using node id " + nodeId
+                    + " derived from host and process; set a distinct ids.nodeId on every node");
+        }
+        setGenerator(new SnowflakeIdGenerator(nodeId));
+    }
+
+    static void setGenerator(IdGenerator idGenerator) {
+        generator = idGenerator;
+    }
+
+    // CUST + 19 decimal digits
+    static String newCustomerId() {
+        return format(CUSTOMER_PREFIX, generator.nextId(), 10, 19);
+    }
+
+    // TXN- + 16 hex digits
+    static String newTransactionId() {
+        return format(TRANSACTION_PREFIX, generator.nextId(), 16, 16);
+    }
+
+    // Zero-padded to width digits; ids are positive
+    private static String format(String prefix, long id, int radix, int width) {
+        char[] chars = new char[prefix.length() + width];
+        prefix.getChars(0, prefix.length(), chars, 0);
+        for (int i = chars.length - 1; i >= prefix.length(); i--) {
+            chars[i] = DIGITS[(int) (id % radix)];
+            id /= radix;
+        }
+        return new String(chars);
+    }
+
+    private static int defaultNodeId() {
+        // "pid@hostname"
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        return (name.hashCode() & 0x7fffffff) % (SnowflakeIdGenerator.MAX_NODE_ID + 1);
+    }
+}
@@ -0,0 +1,167 @@
+package com.enterprise.rewards.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.enterprise.rewards.model.PointsTransaction;
+
+/**
+ * Group commit for createTransaction (db.groupCommit.enabled=true).
+ * Callers put their transaction on a bounded queue and wait; a single writer
+ * thread drains up to maxGroupSize queued transactions and stores them with one
+ * batched insert and one commit. Each caller is released only after the commit
+ * of its group, so a returned transaction is as durable as before.
+ * When the queue is full, submit fails immediately with TransactionQueueFullException.
+ * A caller waits at most waitMillis: if its transaction is still queued by then it is
+ * withdrawn (TransactionQueueFullException again), otherwise the group holding it is being
+ * committed and the caller gets an error saying the transaction may still be stored.
+ */
+public class GroupCommitWriter implements AutoCloseable {
+
+    private final DatabaseDataService store;
+    private final BlockingQueue<Pending> queue;
+    private final int maxGroupSize;
+    private final long waitMillis;
+    private final Thread writer;
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong committed = new AtomicLong();
+    private volatile boolean closed;
+
+    public GroupCommitWriter(DatabaseDataService store, int queueCapacity, int maxGroupSize, long waitMillis) {
+        this.store = store;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxGroupSize = Math.max(1, maxGroupSize);
+        this.waitMillis = waitMillis;
+        this.writer = new Thread(this::run, "rewards-group-commit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a transaction and waits until the group containing it has been committed.
+     */
+    public PointsTransaction submit(TransactionRequest request) {
+        if (closed) {
+            throw new IllegalStateException("Group commit writer is closed");
+        }
+        Pending pending = new Pending(request);
+        if (!queue.offer(pending)) {
+            throw new TransactionQueueFullException("Transaction queue is full (" + queue.size() + " waiting)");
+        }
+        // close() may have drained the queue and stopped the writer between the check above and the offer
+        if (closed && queue.remove(pending)) {
+            throw new IllegalStateException("Group commit writer is closed");
+        }
+        try {
+            return pending.result.get(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (queue.remove(pending)) {
+                throw new TransactionQueueFullException("Transaction not stored: still queued after " + waitMillis + " ms");
+            }
+            throw new RuntimeException("Timed out after " + waitMillis + " ms waiting for the group commit;"
+                    + " the transaction may still be stored", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for transaction commit", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getGroupsCommitted() {
+        return groups.get();
+    }
+
+    public long getTransactionsCommitted() {
+        return committed.get();
+    }
+
+    public int getMaxGroupSize() {
+        return maxGroupSize;
+    }
+
+    /**
+     * Stops the writer after the group in progress; transactions still queued are failed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.completeExceptionally(new RuntimeException("Error creating transaction: service is shutting down"));
+        }
+    }
+
+    private void run() {
+        List<Pending> group = new ArrayList<>(maxGroupSize);
+        List<TransactionRequest> requests = new ArrayList<>(maxGroupSize);
+        while (!closed) {
+            try {
+                Pending first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                // No waiting for stragglers: whatever queued up during the previous commit forms the next group
+                queue.drainTo(group, maxGroupSize - 1);
+                for (Pending pending : group) {
+                    requests.add(pending.request);
+                }
+                commit(group, requests);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                System.err.println("[ERROR] Group commit failed: " + e.getMessage());
+                for (Pending pending : group) {
+                    pending.result.completeExceptionally(e);
+                }
+            } finally {
+                group.clear();
+                requests.clear();
+            }
+        }
+    }
+
+    private void commit(List<Pending> group, List<TransactionRequest> requests) {
+        List<BatchItemResult> results = store.storeTransactionGroup(requests);
+        groups.incrementAndGet();
+        for (int i = 0; i < group.size(); i++) {
+            BatchItemResult result = results.get(i);
+            if (result.getStatus() == BatchItemResult.Status.CREATED) {
+                committed.incrementAndGet();
+                group.get(i).result.complete(result.getTransaction());
+            } else {
+                group.get(i).result.completeExceptionally(
+                        new RuntimeException("Error creating transaction: " + result.getError()));
+            }
+        }
+    }
+
+    private static class Pending {
+        final TransactionRequest request;
+        final CompletableFuture<PointsTransaction> result = new CompletableFuture<>();
+
+        Pending(TransactionRequest request) {
+            this.request = request;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.enterprise.rewards.service;
+
+/**
+ * Source of the numeric part of new customer and transaction ids (see EntityIds).
+ * Implementations must be thread-safe and never return the same id twice.
+ */
+public interface IdGenerator {
+
+    /**
+     * Returns a new positive id.
+     */
+    long nextId();
+}
@@ -0,0 +1,652 @@
+package com.enterprise.rewards.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.servlet.ServletContext;
+
+import com.enterprise.rewards.journal.TransactionJournal;
+import com.enterprise.rewards.model.Customer;
+import com.enterprise.rewards.model.PointsTransaction;
+import com.enterprise.rewards.model.Reward;
+
+/**
+ * Data service that keeps everything in the JVM, for edge and demo nodes and as a fast
+ * backend for tests. Selected with dataService.implementation=IN_MEMORY.
+ *
+ * Customers, transactions and rewards live in sorted concurrent maps, so lists, pages and
+ * streams come out in id order like the database queries. Each customer record holds its
+ * balances as int fields and its own transaction list (the customer-to-transactions index).
+ * Writes for a customer are serialized on one of a fixed set of lock stripes and update the
+ * balances incrementally with the same TransactionTypes rules as DatabaseDataService.
+ *
+ * Only the columns the database stores are kept, and every read returns fresh objects,
+ * so callers see the same values and may modify them as with DatabaseDataService.
+ *
+ * Nothing is persisted unless journal.enabled is set: then every write is appended to a
+ * TransactionJournal in journal.directory before it becomes visible, and the state is rebuilt
+ * from the journal's snapshot and segments on startup. Idempotency keys are not journaled and
+ * only deduplicate requests until a restart.
+ */
+public class InMemoryDataService implements DataServiceInterface, AutoCloseable {
+
+    private static final int LOCK_STRIPES = 256;
+
+    private final ConcurrentSkipListMap<String, CustomerRecord> customers = new ConcurrentSkipListMap<>();
+    // Lower-cased email to customerId, like the unique email index
+    private final ConcurrentHashMap<String, String> customerIdsByEmail = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, PointsTransaction> transactions = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Reward> rewards = new ConcurrentSkipListMap<>();
+    // Idempotency key to the id created with it, like the unique idempotency_key indexes;
+    // incomplete while the write is in progress (see createOnce)
+    private final ConcurrentHashMap<String, CompletableFuture<String>> customerIdsByIdempotencyKey = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<String>> transactionIdsByIdempotencyKey = new ConcurrentHashMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    // Null unless journal.enabled; customer writes are appended under the customer's lock stripe
+    private final TransactionJournal journal;
+    // db.lots.expirationDays, as in DatabaseDataService
+    private final long earningLifetimeMillis;
+
+    public InMemoryDataService(ServletContext context) {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        this.earningLifetimeMillis = DatabaseDataService.lotLifetimeMillis(context);
+        this.journal = ContextParams.getBoolean(context, "journal.enabled", false) ? openJournal(context) : null;
+        if (customers.isEmpty() && ContextParams.getBoolean(context, "dataService.inMemory.sampleData", true)) {
+            loadSampleData();
+        }
+    }
+
+    private TransactionJournal openJournal(ServletContext context) {
+        String directory = ContextParams.getString(context, "journal.directory", null);
+        File dir;
+        if (directory != null && !directory.trim().isEmpty()) {
+            dir = new File(directory.trim());
+        } else if (System.getProperty("catalina.base") != null) {
+            dir = new File(System.getProperty("catalina.base"), "data/rewards-journal");
+        } else {
+            dir = new File(System.getProperty("java.io.tmpdir"), "rewards-journal");
+            System.out.println("[WARN] journal.directory not set and catalina.base unknown; using " + dir);
+        }
+        TransactionJournal.FsyncPolicy fsync;
+        try {
+            fsync = TransactionJournal.FsyncPolicy.valueOf(
+                    ContextParams.getString(context, "journal.fsync", "INTERVAL").trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new RuntimeException("Invalid journal.fsync (expected ALWAYS, INTERVAL or NEVER)", e);
+        }
+        TransactionJournal opened = new TransactionJournal(dir,
+                ContextParams.getInt(context, "journal.segmentBytes", 64 * 1024 * 1024), fsync,
+                ContextParams.getLong(context, "journal.fsyncIntervalMs", 1000),
+                ContextParams.getInt(context, "journal.snapshotAfterSegments", 4));
+        try {
+            opened.open(new TransactionJournal.Handler() {
+                @Override
+                public void onCustomer(Customer customer) {
+                    restoreCustomer(customer);
+                }
+
+                @Override
+                public void onTransaction(PointsTransaction transaction, boolean fromSnapshot) {
+                    restoreTransaction(transaction, fromSnapshot);
+                }
+
+                @Override
+                public void onReward(Reward reward) {
+                    rewards.put(reward.getRewardId(), reward);
+                }
+            }, this::writeSnapshot);
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening transaction journal " + dir + ": " + e.getMessage(), e);
+        }
+        return opened;
+    }
+
+    /**
+     * Flushes and closes the journal, if any.
+     */
+    @Override
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Override
+    public Customer createCustomer(String firstName, String lastName, String emailAddress, String phoneNumber, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return createOnce(customerIdsByIdempotencyKey, idempotencyKey,
+                    () -> createCustomer(firstName, lastName, emailAddress, phoneNumber, null),
+                    Customer::getCustomerId, this::getCustomer);
+        }
+        if (firstName == null || lastName == null || emailAddress == null) {
+            throw new RuntimeException("Error creating customer: firstName, lastName and emailAddress are required");
+        }
+        Customer profile = new Customer(null, firstName, lastName, emailAddress, phoneNumber);
+        profile.setRegistrationDate(new Date());
+        profile.setLoyaltyTier("BRONZE");
+        profile.setAccountStatus("ACTIVE");
+        return toCustomer(insertCustomer(profile));
+    }
+
+    @Override
+    public Customer getCustomer(String customerId) {
+        CustomerRecord record = customerId != null ? customers.get(customerId) : null;
+        return record != null ? toCustomer(record) : null;
+    }
+
+    @Override
+    public Collection<Customer> getAllCustomers() {
+        List<Customer> result = new ArrayList<>(customers.size());
+        for (CustomerRecord record : customers.values()) {
+            result.add(toCustomer(record));
+        }
+        return result;
+    }
+
+    @Override
+    public Page<Customer> getCustomersPage(String afterCustomerId, int limit) {
+        return page(customers, afterCustomerId, limit, this::toCustomer, Customer::getCustomerId);
+    }
+
+    @Override
+    public int streamAllCustomers(RowCallback<Customer> callback) throws IOException {
+        int count = 0;
+        for (CustomerRecord record : customers.values()) {
+            callback.onRow(toCustomer(record));
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public PointsTransaction createTransaction(String customerId, String transactionType, int pointsAmount, String description, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            return createOnce(transactionIdsByIdempotencyKey, idempotencyKey,
+                    () -> createTransaction(customerId, transactionType, pointsAmount, description, null),
+                    PointsTransaction::getTransactionId, this::getTransaction);
+        }
+        if (transactionType == null || transactionType.trim().isEmpty()) {
+            throw new RuntimeException("Error creating transaction: transactionType is required");
+        }
+        // Only the types the points_transactions ENUM column accepts, as with DatabaseDataService
+        if (!TransactionTypes.isStored(transactionType)) {
+            throw new RuntimeException("Error creating transaction: " + TransactionTypes.unsupportedMessage(transactionType));
+        }
+        CustomerRecord record = customerId != null ? customers.get(customerId) : null;
+        if (record == null) {
+            throw new RuntimeException("Error creating transaction: Customer not found: " + customerId);
+        }
+        Date now = new Date();
+        PointsTransaction txn = newTransaction(customerId, transactionType, pointsAmount, description, now);
+        try {
+            apply(record, txn);
+        } catch (IOException e) {
+            throw new RuntimeException("Error creating transaction: " + e.getMessage(), e);
+        }
+        return txn;
+    }
+
+    @Override
+    public List<BatchItemResult> createTransactions(List<TransactionRequest> requests) {
+        List<BatchItemResult> results = new ArrayList<>(requests.size());
+        Date now = new Date();
+        for (int i = 0; i < requests.size(); i++) {
+            TransactionRequest request = requests.get(i);
+            if (request.getCustomerId() == null || request.getCustomerId().trim().isEmpty()
+                    || request.getTransactionType() == null || request.getTransactionType().trim().isEmpty()) {
+                results.add(BatchItemResult.rejected(i, "Missing required fields: customerId, transactionType, pointsAmount"));
+                continue;
+            }
+            if (!TransactionTypes.isStored(request.getTransactionType())) {
+                results.add(BatchItemResult.rejected(i, TransactionTypes.unsupportedMessage(request.getTransactionType())));
+                continue;
+            }
+            CustomerRecord record = customers.get(request.getCustomerId());
+            if (record == null) {
+                results.add(BatchItemResult.rejected(i, "Customer not found: " + request.getCustomerId()));
+                continue;
+            }
+            PointsTransaction txn = newTransaction(request.getCustomerId(), request.getTransactionType(),
+                    request.getPointsAmount(), request.getDescription(), now);
+            try {
+                apply(record, txn);
+            } catch (IOException e) {
+                results.add(BatchItemResult.failed(i, "Error creating transaction: " + e.getMessage()));
+                continue;
+            }
+            results.add(BatchItemResult.created(i, txn));
+        }
+        return results;
+    }
+
+    @Override
+    public PointsTransaction getTransaction(String transactionId) {
+        PointsTransaction stored = transactionId != null ? transactions.get(transactionId) : null;
+        return stored != null ? copy(stored) : null;
+    }
+
+    @Override
+    public List<PointsTransaction> getAllTransactions() {
+        List<PointsTransaction> result = new ArrayList<>(transactions.size());
+        for (PointsTransaction stored : transactions.values()) {
+            result.add(copy(stored));
+        }
+        return result;
+    }
+
+    /**
+     * Newest first, like the database query (ORDER BY transaction_date DESC).
+     */
+    @Override
+    public List<PointsTransaction> getTransactionsByCustomer(String customerId) {
+        CustomerRecord record = customerId != null ? customers.get(customerId) : null;
+        if (record == null) {
+            return new ArrayList<>();
+        }
+        synchronized (lockFor(customerId)) {
+            List<PointsTransaction> result = new ArrayList<>(record.history.size());
+            for (int i = record.history.size() - 1; i >= 0; i--) {
+                result.add(copy(record.history.get(i)));
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public Page<PointsTransaction> getTransactionsPage(String afterTransactionId, int limit) {
+        return page(transactions, afterTransactionId, limit, InMemoryDataService::copy, PointsTransaction::getTransactionId);
+    }
+
+    @Override
+    public int streamAllTransactions(RowCallback<PointsTransaction> callback) throws IOException {
+        int count = 0;
+        for (PointsTransaction stored : transactions.values()) {
+            callback.onRow(copy(stored));
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public Reward getReward(String rewardId) {
+        Reward stored = rewardId != null ? rewards.get(rewardId) : null;
+        return stored != null ? copy(stored) : null;
+    }
+
+    @Override
+    public void saveReward(Reward reward) {
+        Reward stored = copy(reward);
+        // Keeps the journal in the same order as the map for saves of the same reward
+        synchronized (rewards) {
+            if (journal != null) {
+                try {
+                    journal.appendReward(stored);
+                } catch (IOException e) {
+                    throw new RuntimeException("Error saving reward: " + e.getMessage(), e);
+                }
+            }
+            rewards.put(stored.getRewardId(), stored);
+        }
+    }
+
+    /**
+     * Checks the balance and takes the unit of stock while holding the customer's lock stripe
+     * and then the catalog lock; saveReward takes only the catalog lock, so the order is fixed.
+     */
+    @Override
+    public RedemptionResult redeemReward(String customerId, String rewardId) {
+        CustomerRecord record = customerId != null ? customers.get(customerId) : null;
+        if (record == null) {
+            return RedemptionResult.rejected(RedemptionResult.Status.CUSTOMER_NOT_FOUND, "Customer not found: " + customerId);
+        }
+        Date now = new Date();
+        synchronized (lockFor(customerId)) {
+            Reward reward;
+            synchronized (rewards) {
+                reward = rewardId != null ? rewards.get(rewardId) : null;
+                if (reward == null) {
+                    return RedemptionResult.rejected(RedemptionResult.Status.REWARD_NOT_FOUND, "Reward not found: " + rewardId);
+                }
+                if (!reward.isActive() || (reward.getExpirationDate() != null && !reward.getExpirationDate().after(now))) {
+                    return RedemptionResult.rejected(RedemptionResult.Status.REWARD_UNAVAILABLE, "Reward is not available: " + rewardId);
+                }
+                if (reward.getAvailabilityCount() <= 0) {
+                    return RedemptionResult.rejected(RedemptionResult.Status.OUT_OF_STOCK, "Reward is out of stock: " + rewardId);
+                }
+                if (record.availablePoints < reward.getPointsRequired()) {
+                    return RedemptionResult.rejected(RedemptionResult.Status.INSUFFICIENT_POINTS, "Insufficient points: "
+                            + record.availablePoints + " available, " + reward.getPointsRequired() + " required");
+                }
+                Reward updated = copy(reward);
+                updated.setAvailabilityCount(reward.getAvailabilityCount() - 1);
+                try {
+                    if (journal != null) {
+                        journal.appendReward(updated);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException("Error redeeming reward: " + e.getMessage(), e);
+                }
+                rewards.put(updated.getRewardId(), updated);
+            }
+            PointsTransaction txn = newTransaction(customerId, "REDEEM", reward.getPointsRequired(),
+                    "Redeemed reward " + rewardId + ": " + reward.getRewardName(), now);
+            try {
+                apply(record, txn);
+            } catch (IOException e) {
+                throw new RuntimeException("Error redeeming reward: " + e.getMessage(), e);
+            }
+            return RedemptionResult.redeemed(txn);
+        }
+    }
+
+    @Override
+    public Collection<Reward> getAllRewards() {
+        List<Reward> result = new ArrayList<>(rewards.size());
+        for (Reward stored : rewards.values()) {
+            result.add(copy(stored));
+        }
+        return result;
+    }
+
+    @Override
+    public Page<Reward> getRewardsPage(String afterRewardId, int limit) {
+        return page(rewards, afterRewardId, limit, InMemoryDataService::copy, Reward::getRewardId);
+    }
+
+    @Override
+    public int streamAllRewards(RowCallback<Reward> callback) throws IOException {
+        int count = 0;
+        for (Reward stored : rewards.values()) {
+            callback.onRow(copy(stored));
+            count++;
+        }
+        return count;
+    }
+
+    // Stores a new customer under a freshly generated id, enforcing unique email addresses
+    private CustomerRecord insertCustomer(Customer profile) {
+        String emailKey = profile.getEmailAddress().toLowerCase(Locale.ROOT);
+        while (true) {
+            String customerId = profile.getCustomerId() != null ? profile.getCustomerId() : EntityIds.newCustomerId();
+            if (customerIdsByEmail.putIfAbsent(emailKey, customerId) != null) {
+                throw new RuntimeException("Error creating customer: Duplicate email address " + profile.getEmailAddress());
+            }
+            Customer stored = new Customer(profile);
+            stored.setCustomerId(customerId);
+            CustomerRecord record = new CustomerRecord(stored);
+            // Journaled under the customer's stripe so it precedes the customer's transactions
+            synchronized (lockFor(customerId)) {
+                if (customers.putIfAbsent(customerId, record) == null) {
+                    if (journal != null) {
+                        try {
+                            journal.appendCustomer(stored);
+                        } catch (IOException e) {
+                            customers.remove(customerId, record);
+                            customerIdsByEmail.remove(emailKey, customerId);
+                            throw new RuntimeException("Error creating customer: " + e.getMessage(), e);
+                        }
+                    }
+                    return record;
+                }
+            }
+            customerIdsByEmail.remove(emailKey, customerId);
+            if (profile.getCustomerId() != null) {
+                throw new RuntimeException("Error creating customer: Duplicate customer id " + customerId);
+            }
+            // Generated id collided; try another
+        }
+    }
+
+    // Journals the transaction, then adds it to the customer's balance and history and to the transaction index
+    private void apply(CustomerRecord record, PointsTransaction txn) throws IOException {
+        PointsTransaction stored = copy(txn);
+        synchronized (lockFor(txn.getCustomerId())) {
+            if (journal != null) {
+                journal.appendTransaction(stored);
+            }
+            addTransaction(record, stored, true);
+        }
+    }
+
+    // Caller holds the customer's lock stripe
+    private void addTransaction(CustomerRecord record, PointsTransaction stored, boolean updateBalances) {
+        if (updateBalances) {
+            record.lifetimePoints += TransactionTypes.lifetimeDelta(stored.getTransactionType(), stored.getPointsAmount());
+            record.availablePoints += TransactionTypes.availableDelta(stored.getTransactionType(), stored.getPointsAmount());
+        }
+        record.history.add(stored);
+        transactions.put(stored.getTransactionId(), stored);
+    }
+
+    // Journal replay: records already restored from the snapshot are skipped
+    private void restoreCustomer(Customer customer) {
+        if (customers.containsKey(customer.getCustomerId())) {
+            return;
+        }
+        CustomerRecord record = new CustomerRecord(profileOf(customer));
+        record.lifetimePoints = customer.getTotalLifetimePoints();
+        record.availablePoints = customer.getCurrentAvailablePoints();
+        customers.put(customer.getCustomerId(), record);
+        if (customer.getEmailAddress() != null) {
+            customerIdsByEmail.put(customer.getEmailAddress().toLowerCase(Locale.ROOT), customer.getCustomerId());
+        }
+    }
+
+    private void restoreTransaction(PointsTransaction txn, boolean fromSnapshot) {
+        if (transactions.containsKey(txn.getTransactionId())) {
+            return;
+        }
+        CustomerRecord record = customers.get(txn.getCustomerId());
+        if (record == null) {
+            System.out.println("[WARN] Journal transaction " + txn.getTransactionId() + " for unknown customer "
+                    + txn.getCustomerId() + " skipped");
+            return;
+        }
+        addTransaction(record, txn, !fromSnapshot);
+    }
+
+    // Each customer is written with the balances and history read under its lock stripe
+    private void writeSnapshot(TransactionJournal.SnapshotWriter writer) throws IOException {
+        for (CustomerRecord record : customers.values()) {
+            Customer customer;
+            List<PointsTransaction> history;
+            synchronized (lockFor(record.profile.getCustomerId())) {
+                customer = new Customer(record.profile);
+                customer.setTotalLifetimePoints(record.lifetimePoints);
+                customer.setCurrentAvailablePoints(record.availablePoints);
+                history = new ArrayList<>(record.history);
+            }
+            writer.customer(customer);
+            for (PointsTransaction txn : history) {
+                writer.transaction(txn);
+            }
+        }
+        List<Reward> catalog;
+        synchronized (rewards) {
+            catalog = new ArrayList<>(rewards.values());
+        }
+        for (Reward reward : catalog) {
+            writer.reward(reward);
+        }
+    }
+
+    // Keeps only the profile columns of customers
+    private static Customer profileOf(Customer source) {
+        Customer profile = new Customer(source.getCustomerId(), source.getFirstName(), source.getLastName(),
+                source.getEmailAddress(), source.getPhoneNumber());
+        profile.setRegistrationDate(source.getRegistrationDate());
+        profile.setLoyaltyTier(source.getLoyaltyTier());
+        profile.setAccountStatus(source.getAccountStatus());
+        return profile;
+    }
+
+    private Customer toCustomer(CustomerRecord record) {
+        Customer customer = new Customer(record.profile);
+        synchronized (lockFor(record.profile.getCustomerId())) {
+            customer.setTotalLifetimePoints(record.lifetimePoints);
+            customer.setCurrentAvailablePoints(record.availablePoints);
+        }
+        return customer;
+    }
+
+    /**
+     * Runs create at most once per idempotency key. The key is reserved with an incomplete future
+     * before the write and completed with the new id after it, so no map lock is held across the
+     * write or its journal append. A concurrent duplicate waits for the future and reads the row
+     * back; if the write fails the reservation is removed, and waiters and retries run it again.
+     */
+    private static <T> T createOnce(ConcurrentHashMap<String, CompletableFuture<String>> idsByKey, String key,
+                                    Supplier<T> create, Function<T, String> idOf, Function<String, T> lookup) {
+        while (true) {
+            CompletableFuture<String> reservation = new CompletableFuture<>();
+            CompletableFuture<String> existing = idsByKey.putIfAbsent(key, reservation);
+            if (existing == null) {
+                T created;
+                try {
+                    created = create.get();
+                } catch (RuntimeException | Error e) {
+                    idsByKey.remove(key, reservation);
+                    reservation.completeExceptionally(e);
+                    throw e;
+                }
+                reservation.complete(idOf.apply(created));
+                return created;
+            }
+            try {
+                return lookup.apply(existing.join());
+            } catch (CompletionException e) {
+                // The first request failed and released the key
+            }
+        }
+    }
+
+    private Object lockFor(String customerId) {
+        return locks[(customerId.hashCode() & 0x7fffffff) % locks.length];
+    }
+
+    // Same fields and expiration rule as DatabaseDataService.createTransaction
+    private PointsTransaction newTransaction(String customerId, String transactionType, int pointsAmount,
+                                             String description, Date now) {
+        PointsTransaction txn = new PointsTransaction();
+        txn.setTransactionId(EntityIds.newTransactionId());
+        txn.setCustomerId(customerId);
+        txn.setTransactionType(transactionType);
+        txn.setPointsAmount(pointsAmount);
+        txn.setDescription(description);
+        txn.setTransactionDate(now);
+        if (TransactionTypes.availableDelta(transactionType, pointsAmount) > 0) {
+            txn.setExpirationDate(new Date(now.getTime() + earningLifetimeMillis));
+        }
+        return txn;
+    }
+
+    // Keeps only the columns of points_transactions
+    private static PointsTransaction copy(PointsTransaction source) {
+        PointsTransaction txn = new PointsTransaction();
+        txn.setTransactionId(source.getTransactionId());
+        txn.setCustomerId(source.getCustomerId());
+        txn.setTransactionType(source.getTransactionType());
+        txn.setPointsAmount(source.getPointsAmount());
+        txn.setDescription(source.getDescription());
+        txn.setTransactionDate(source.getTransactionDate());
+        return txn;
+    }
+
+    private static Reward copy(Reward source) {
+        Reward reward = new Reward();
+        reward.setRewardId(source.getRewardId());
+        reward.setRewardName(source.getRewardName());
+        reward.setPointsRequired(source.getPointsRequired());
+        reward.setRewardType(source.getRewardType());
+        reward.setRewardValue(source.getRewardValue());
+        reward.setAvailabilityCount(source.getAvailabilityCount());
+        reward.setExpirationDate(source.getExpirationDate());
+        reward.setCategory(source.getCategory());
+        reward.setDescription(source.getDescription());
+        reward.setActive(source.isActive());
+        return reward;
+    }
+
+    // Same contract as DatabaseDataService.queryPage: ids strictly after afterKey, nextKey set when more remain
+    private static <V, T> Page<T> page(ConcurrentSkipListMap<String, V> map, String afterKey, int limit,
+                                       Function<V, T> mapper, Function<T, String> keyOf) {
+        limit = Math.max(1, limit);
+        ConcurrentNavigableMap<String, V> tail = afterKey != null ? map.tailMap(afterKey, false) : map;
+        List<T> items = new ArrayList<>(Math.min(limit, 1024));
+        Iterator<V> it = tail.values().iterator();
+        while (it.hasNext() && items.size() < limit) {
+            items.add(mapper.apply(it.next()));
+        }
+        String nextKey = it.hasNext() && !items.isEmpty() ? keyOf.apply(items.get(items.size() - 1)) : null;
+        return new Page<>(items, nextKey);
+    }
+
+    // The sample rows of init.sql, with balances derived from the sample transactions
+    private void loadSampleData() {
+        try {
+            loadSampleRows();
+        } catch (IOException e) {
+            throw new RuntimeException("Error loading sample data: " + e.getMessage(), e);
+        }
+    }
+
+    private void loadSampleRows() throws IOException {
+        CustomerRecord sarah = insertCustomer(sampleCustomer("CUST001234", "Sarah", "Johnson", "sarah.johnson@email.com", "555-0123", "GOLD"));
+        CustomerRecord mike = insertCustomer(sampleCustomer("CUST001235", "Mike", "Davis", "mike.davis@email.com", "555-0124", "SILVER"));
+        Date now = new Date();
+        PointsTransaction first = newTransaction("CUST001234", "EARN", 150, "Purchase reward points", now);
+        first.setTransactionId("TXN789012");
+        apply(sarah, first);
+        PointsTransaction second = newTransaction("CUST001235", "EARN", 75, "Purchase reward points", now);
+        second.setTransactionId("TXN789013");
+        apply(mike, second);
+        saveReward(sampleReward("REW301", "Customer Loyalty Premium Jacket", "High-quality waterproof jacket", 500, "MERCHANDISE", "PRODUCT", "Jacket", 50));
+        saveReward(sampleReward("REW302", "$10 Store Credit", "Discount voucher for next purchase", 100, "DISCOUNT", "DISCOUNT", "10.00", 1000));
+        saveReward(sampleReward("REW303", "VIP Customer Event", "Exclusive access to seasonal preview", 1000, "EXPERIENCE", "EXPERIENCE", "Event pass", 25));
+    }
+
+    private static Customer sampleCustomer(String id, String firstName, String lastName, String email, String phone, String tier) {
+        Customer customer = new Customer(id, firstName, lastName, email, phone);
+        customer.setLoyaltyTier(tier);
+        customer.setAccountStatus("ACTIVE");
+        return customer;
+    }
+
+    private static Reward sampleReward(String id, String name, String description, int points, String category,
+                                       String type, String value, int availability) {
+        Reward reward = new Reward(id, name, points, type, value);
+        reward.setDescription(description);
+        reward.setCategory(category);
+        reward.setAvailabilityCount(availability);
+        return reward;
+    }
+
+    private static class CustomerRecord {
+        // Profile columns only; never handed out or modified
+        final Customer profile;
+        // Balances and history are guarded by the customer's lock stripe
+        int lifetimePoints;
+        int availablePoints;
+        // Oldest first
+        final List<PointsTransaction> history = new ArrayList<>();
+
+        CustomerRecord(Customer profile) {
+            this.profile = profile;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.enterprise.rewards.service;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+import com.enterprise.rewards.metrics.OperationMetrics;
+import com.enterprise.rewards.metrics.ServiceMetrics;
+import com.enterprise.rewards.model.Customer;
+import com.enterprise.rewards.model.PointsTransaction;
+import com.enterprise.rewards.model.Reward;
+
+/**
+ * Records the latency and failures of every DataServiceInterface call in ServiceMetrics,
+ * exported at /service/metrics. Installed outermost, so cache hits are measured too.
+ * Enabled unless the context-param dataService.metrics.enabled is false.
+ *
+ * A call counts as failed when it throws. The stream methods include the time spent
+ * writing rows to the client.
+ */
+public class InstrumentedDataService extends DelegatingDataService {
+    private final OperationMetrics getRewardCalls;
+    private final OperationMetrics saveRewardCalls;
+    private final OperationMetrics getAllRewardsCalls;
+    private final OperationMetrics createCustomerCalls;
+    private final OperationMetrics getTransactionCalls;
+    private final OperationMetrics getAllTransactionsCalls;
+    private final OperationMetrics getTransactionsByCustomerCalls;
+    private final OperationMetrics createTransactionCalls;
+    private final OperationMetrics createTransactionsCalls;
+    private final OperationMetrics redeemRewardCalls;
+    private final OperationMetrics getAllCustomersCalls;
+    private final OperationMetrics getCustomerCalls;
+    private final OperationMetrics getCustomersPageCalls;
+    private final OperationMetrics getTransactionsPageCalls;
+    private final OperationMetrics getRewardsPageCalls;
+    private final OperationMetrics streamAllCustomersCalls;
+    private final OperationMetrics streamAllTransactionsCalls;
+    private final OperationMetrics streamAllRewardsCalls;
+
+    public InstrumentedDataService(DataServiceInterface delegate, ServiceMetrics metrics) {
+        super(delegate);
+        this.getRewardCalls = metrics.dataServiceMethod("getReward");
+        this.saveRewardCalls = metrics.dataServiceMethod("saveReward");
+        this.getAllRewardsCalls = metrics.dataServiceMethod("getAllRewards");
+        this.createCustomerCalls = metrics.dataServiceMethod("createCustomer");
+        this.getTransactionCalls = metrics.dataServiceMethod("getTransaction");
+        this.getAllTransactionsCalls = metrics.dataServiceMethod("getAllTransactions");
+        this.getTransactionsByCustomerCalls = metrics.dataServiceMethod("getTransactionsByCustomer");
+        this.createTransactionCalls = metrics.dataServiceMethod("createTransaction");
+        this.createTransactionsCalls = metrics.dataServiceMethod("createTransactions");
+        this.redeemRewardCalls = metrics.dataServiceMethod("redeemReward");
+        this.getAllCustomersCalls = metrics.dataServiceMethod("getAllCustomers");
+        this.getCustomerCalls = metrics.dataServiceMethod("getCustomer");
+        this.getCustomersPageCalls = metrics.dataServiceMethod("getCustomersPage");
+        this.getTransactionsPageCalls = metrics.dataServiceMethod("getTransactionsPage");
+        this.getRewardsPageCalls = metrics.dataServiceMethod("getRewardsPage");
+        this.streamAllCustomersCalls = metrics.dataServiceMethod("streamAllCustomers");
+        this.streamAllTransactionsCalls = metrics.dataServiceMethod("streamAllTransactions");
+        this.streamAllRewardsCalls = metrics.dataServiceMethod("streamAllRewards");
+    }
+
+    @Override
+    public Reward getReward(String rewardId) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Reward result = delegate.getReward(rewardId);
+            failed = false;
+            return result;
+        } finally {
+            getRewardCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public void saveReward(Reward reward) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            delegate.saveReward(reward);
+            failed = false;
+        } finally {
+            saveRewardCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public Collection<Reward> getAllRewards() {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Collection<Reward> result = delegate.getAllRewards();
+            failed = false;
+            return result;
+        } finally {
+            getAllRewardsCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public Customer createCustomer(String firstName, String lastName, String emailAddress, String phoneNumber, String idempotencyKey) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Customer result = delegate.createCustomer(firstName, lastName, emailAddress, phoneNumber, idempotencyKey);
+            failed = false;
+            return result;
+        } finally {
+            createCustomerCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public PointsTransaction getTransaction(String transactionId) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            PointsTransaction result = delegate.getTransaction(transactionId);
+            failed = false;
+            return result;
+        } finally {
+            getTransactionCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public List<PointsTransaction> getAllTransactions() {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<PointsTransaction> result = delegate.getAllTransactions();
+            failed = false;
+            return result;
+        } finally {
+            getAllTransactionsCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public List<PointsTransaction> getTransactionsByCustomer(String customerId) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<PointsTransaction> result = delegate.getTransactionsByCustomer(customerId);
+            failed = false;
+            return result;
+        } finally {
+            getTransactionsByCustomerCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public PointsTransaction createTransaction(String customerId, String transactionType, int pointsAmount, String description, String idempotencyKey) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            PointsTransaction result = delegate.createTransaction(customerId, transactionType, pointsAmount, description, idempotencyKey);
+            failed = false;
+            return result;
+        } finally {
+            createTransactionCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public List<BatchItemResult> createTransactions(List<TransactionRequest> requests) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            List<BatchItemResult> result = delegate.createTransactions(requests);
+            failed = false;
+            return result;
+        } finally {
+            createTransactionsCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public RedemptionResult redeemReward(String customerId, String rewardId) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            RedemptionResult result = delegate.redeemReward(customerId, rewardId);
+            failed = false;
+            return result;
+        } finally {
+            redeemRewardCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public Collection<Customer> getAllCustomers() {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Collection<Customer> result = delegate.getAllCustomers();
+            failed = false;
+            return result;
+        } finally {
+            getAllCustomersCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public Customer getCustomer(String customerId) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Customer result = delegate.getCustomer(customerId);
+            failed = false;
+            return result;
+        } finally {
+            getCustomerCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public Page<Customer> getCustomersPage(String afterCustomerId, int limit) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Page<Customer> result = delegate.getCustomersPage(afterCustomerId, limit);
+            failed = false;
+            return result;
+        } finally {
+            getCustomersPageCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public Page<PointsTransaction> getTransactionsPage(String afterTransactionId, int limit) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Page<PointsTransaction> result = delegate.getTransactionsPage(afterTransactionId, limit);
+            failed = false;
+            return result;
+        } finally {
+            getTransactionsPageCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public Page<Reward> getRewardsPage(String afterRewardId, int limit) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Page<Reward> result = delegate.getRewardsPage(afterRewardId, limit);
+            failed = false;
+            return result;
+        } finally {
+            getRewardsPageCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public int streamAllCustomers(RowCallback<Customer> callback) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int result = delegate.streamAllCustomers(callback);
+            failed = false;
+            return result;
+        } finally {
+            streamAllCustomersCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public int streamAllTransactions(RowCallback<PointsTransaction> callback) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int result = delegate.streamAllTransactions(callback);
+            failed = false;
+            return result;
+        } finally {
+            streamAllTransactionsCalls.record(start, failed);
+        }
+    }
+
+    @Override
+    public int streamAllRewards(RowCallback<Reward> callback) throws IOException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            int result = delegate.streamAllRewards(callback);
+            failed = false;
+            return result;
+        } finally {
+            streamAllRewardsCalls.record(start, failed);
+        }
+    }
+}
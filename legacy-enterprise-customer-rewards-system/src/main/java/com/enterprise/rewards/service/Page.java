@@ -0,0 +1,30 @@
+package com.enterprise.rewards.service;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated list.
+ * nextKey is the id of the last item on this page, to be passed as the
+ * "after" argument for the next page, or null when this is the last page.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String nextKey;
+
+    public Page(List<T> items, String nextKey) {
+        this.items = items;
+        this.nextKey = nextKey;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextKey() {
+        return nextKey;
+    }
+
+    public boolean hasMore() {
+        return nextKey != null;
+    }
+}
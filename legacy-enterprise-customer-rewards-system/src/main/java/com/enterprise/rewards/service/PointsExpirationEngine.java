@@ -0,0 +1,281 @@
+package com.enterprise.rewards.service;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Writes off expired points lots once a day (db.expiration.enabled).
+ * A run starts at db.expiration.runAt and works through the lots that expired before its
+ * start in chunks of db.expiration.chunkSize, each in its own short DB transaction (see
+ * DatabaseDataService.expireLots). Between chunks it pauses for at least
+ * db.expiration.pauseMs, and long enough that chunks take no more than
+ * db.expiration.dutyCyclePercent of the run's time. While the connection pool is busy with
+ * requests it waits instead, and it stops db.expiration.windowMinutes after the start;
+ * the next run picks up the remaining lots.
+ */
+public class PointsExpirationEngine implements AutoCloseable {
+
+    /** ServletContext attribute under which the engine is published for monitoring. */
+    public static final String CONTEXT_ATTRIBUTE = "com.enterprise.rewards.pointsExpiration";
+
+    // Wait while the pool is busy before trying the next chunk
+    private static final long BUSY_BACKOFF_MS = 1000;
+
+    private final DatabaseDataService store;
+    private final LocalTime runAt;
+    private final long windowMillis;
+    private final int chunkSize;
+    private final long pauseMs;
+    private final int dutyCyclePercent;
+    private final ScheduledExecutorService scheduler;
+    private final List<Consumer<Collection<String>>> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong lotsExpired = new AtomicLong();
+    private final AtomicLong pointsExpired = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong busyWaits = new AtomicLong();
+    private volatile Date lastRunStart;
+    private volatile long lastRunMillis;
+    private volatile String lastRunOutcome;
+    private volatile boolean closed;
+
+    public PointsExpirationEngine(DatabaseDataService store, LocalTime runAt, long windowMillis,
+                                  int chunkSize, long pauseMs, int dutyCyclePercent) {
+        this.store = store;
+        this.runAt = runAt;
+        this.windowMillis = Math.max(60000L, windowMillis);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.pauseMs = Math.max(0, pauseMs);
+        this.dutyCyclePercent = Math.min(100, Math.max(1, dutyCyclePercent));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rewards-points-expiration");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduleNextRun();
+    }
+
+    /**
+     * Registers a callback that receives the ids of customers whose balances a chunk changed,
+     * after the chunk has committed (e.g. to invalidate cached customers).
+     */
+    public void addListener(Consumer<Collection<String>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts a run in the background unless one is in progress. Returns false if not started.
+     */
+    public boolean runNow() {
+        if (closed || running.get()) {
+            return false;
+        }
+        try {
+            scheduler.execute(this::run);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public LocalTime getRunAt() {
+        return runAt;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public long getRuns() {
+        return runs.get();
+    }
+
+    public long getLotsExpired() {
+        return lotsExpired.get();
+    }
+
+    public long getPointsExpired() {
+        return pointsExpired.get();
+    }
+
+    public long getChunks() {
+        return chunks.get();
+    }
+
+    /** Times a run waited because the connection pool was busy. */
+    public long getBusyWaits() {
+        return busyWaits.get();
+    }
+
+    /** Start of the last finished run, or null. */
+    public Date getLastRunStart() {
+        return lastRunStart;
+    }
+
+    public long getLastRunMillis() {
+        return lastRunMillis;
+    }
+
+    /** How the last run ended (completed, window ended, failed: ...), or null. */
+    public String getLastRunOutcome() {
+        return lastRunOutcome;
+    }
+
+    /**
+     * Stops scheduling and interrupts a run between chunks; a chunk in progress is finished.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        try {
+            if (!scheduler.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.err.println("[WARN] Points expiration did not stop within 30 s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scheduleNextRun() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(runAt);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        long delay = next.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() - System.currentTimeMillis();
+        try {
+            scheduler.schedule(() -> {
+                try {
+                    run();
+                } finally {
+                    if (!closed) {
+                        scheduleNextRun();
+                    }
+                }
+            }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed meanwhile
+        }
+    }
+
+    private void run() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Date cutoff = new Date(start);
+        long deadline = start + windowMillis;
+        long runLots = 0;
+        long runPoints = 0;
+        int runChunks = 0;
+        String outcome = "completed";
+        System.out.println("[INFO] Points expiration started for lots expired before " + cutoff);
+        try {
+            while (true) {
+                if (closed) {
+                    outcome = "stopped";
+                    break;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    outcome = "window ended";
+                    break;
+                }
+                if (store.isPoolBusy()) {
+                    busyWaits.incrementAndGet();
+                    Thread.sleep(BUSY_BACKOFF_MS);
+                    continue;
+                }
+                long chunkStart = System.nanoTime();
+                ChunkResult result = store.expireLots(cutoff, chunkSize);
+                long chunkMillis = (System.nanoTime() - chunkStart) / 1000000L;
+                if (result.getCandidates() == 0) {
+                    break;
+                }
+                runChunks++;
+                runLots += result.getLots();
+                runPoints += result.getPoints();
+                chunks.incrementAndGet();
+                lotsExpired.addAndGet(result.getLots());
+                pointsExpired.addAndGet(result.getPoints());
+                if (!result.getCustomerIds().isEmpty()) {
+                    for (Consumer<Collection<String>> listener : listeners) {
+                        listener.accept(result.getCustomerIds());
+                    }
+                }
+                if (result.getCandidates() < chunkSize) {
+                    break;
+                }
+                Thread.sleep(Math.max(pauseMs, chunkMillis * (100 - dutyCyclePercent) / dutyCyclePercent));
+            }
+        } catch (InterruptedException e) {
+            outcome = "stopped";
+            Thread.currentThread().interrupt();
+        } catch (SQLException | RuntimeException e) {
+            outcome = "failed: " + e.getMessage();
+            System.err.println("[ERROR] Points expiration failed: " + e.getMessage());
+        } finally {
+            runs.incrementAndGet();
+            lastRunStart = cutoff;
+            lastRunMillis = System.currentTimeMillis() - start;
+            lastRunOutcome = outcome;
+            running.set(false);
+        }
+        System.out.println("[INFO] Points expiration " + outcome + ": " + runPoints + " points from " + runLots
+                + " lots in " + runChunks + " chunks, " + lastRunMillis + " ms");
+    }
+
+    /**
+     * Outcome of one expiration chunk.
+     */
+    static final class ChunkResult {
+        private final int candidates;
+        private final int lots;
+        private final int points;
+        private final List<String> customerIds;
+
+        ChunkResult(int candidates, int lots, int points, List<String> customerIds) {
+            this.candidates = candidates;
+            this.lots = lots;
+            this.points = points;
+            this.customerIds = customerIds;
+        }
+
+        /** Expired lots found by the index scan. */
+        int getCandidates() {
+            return candidates;
+        }
+
+        /** Lots written off (candidates not used up by a redemption meanwhile). */
+        int getLots() {
+            return lots;
+        }
+
+        int getPoints() {
+            return points;
+        }
+
+        /** Customers that received an EXPIRE transaction. */
+        List<String> getCustomerIds() {
+            return customerIds;
+        }
+    }
+}
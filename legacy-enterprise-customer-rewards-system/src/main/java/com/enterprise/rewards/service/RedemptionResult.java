@@ -0,0 +1,57 @@
+package com.enterprise.rewards.service;
+
+import com.enterprise.rewards.model.PointsTransaction;
+
+/**
+ * Outcome of a reward redemption.
+ * REDEEMED results carry the REDEEM transaction; every other status means nothing was
+ * changed and carries an error.
+ */
+public class RedemptionResult {
+
+    public enum Status {
+        REDEEMED,
+        CUSTOMER_NOT_FOUND,
+        REWARD_NOT_FOUND,
+        /** Inactive or past its expiration date. */
+        REWARD_UNAVAILABLE,
+        OUT_OF_STOCK,
+        INSUFFICIENT_POINTS,
+        /** The reward's price changed while the redemption was in progress. */
+        PRICE_CHANGED
+    }
+
+    private final Status status;
+    private final PointsTransaction transaction;
+    private final String error;
+
+    private RedemptionResult(Status status, PointsTransaction transaction, String error) {
+        this.status = status;
+        this.transaction = transaction;
+        this.error = error;
+    }
+
+    public static RedemptionResult redeemed(PointsTransaction transaction) {
+        return new RedemptionResult(Status.REDEEMED, transaction, null);
+    }
+
+    public static RedemptionResult rejected(Status status, String error) {
+        return new RedemptionResult(status, null, error);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isRedeemed() {
+        return status == Status.REDEEMED;
+    }
+
+    public PointsTransaction getTransaction() {
+        return transaction;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,165 @@
+package com.enterprise.rewards.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory admission gate in front of the conditional stock update of reward redemptions
+ * (db.redemption.reservations.enabled). Each reward's remaining stock, as last read from the
+ * database, is split over striped counters; a redemption must take one unit before it locks
+ * any rows. When a hot reward sells out, the losers are turned away here instead of queueing
+ * on the reward row, and while stock lasts at most that many redemptions wait for the row.
+ *
+ * The database stays authoritative: units are only a hint, refreshed when a reward is saved,
+ * when the database refuses an admitted redemption, and when a reward that looks sold out was
+ * loaded more than db.redemption.reservations.refreshMs ago (e.g. restocked by another node).
+ */
+public class RewardStockReservations {
+
+    /** ServletContext attribute under which the reservations are published for monitoring. */
+    public static final String CONTEXT_ATTRIBUTE = "com.enterprise.rewards.rewardReservations";
+
+    // Ints per stripe, so neighbouring stripes sit on different cache lines
+    private static final int PAD = 16;
+
+    private final int stripes;
+    private final long refreshMillis;
+    private final ConcurrentHashMap<String, Stock> stocks = new ConcurrentHashMap<>();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder soldOut = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    /**
+     * stripes is rounded up to a power of two; 0 uses one per available processor.
+     */
+    public RewardStockReservations(int stripes, long refreshMillis) {
+        int wanted = stripes > 0 ? stripes : Runtime.getRuntime().availableProcessors();
+        int rounded = 1;
+        while (rounded < wanted) {
+            rounded <<= 1;
+        }
+        this.stripes = rounded;
+        this.refreshMillis = Math.max(0, refreshMillis);
+    }
+
+    /**
+     * Takes one unit of the reward's stock. observedStock is the stock just read from the
+     * database, used when the reward has no counters yet or they need refreshing.
+     * Returns null if the reward is sold out as far as this gate knows.
+     */
+    Reservation reserve(String rewardId, int observedStock) {
+        Stock stock = stocks.get(rewardId);
+        if (stock == null) {
+            Stock loaded = new Stock(observedStock);
+            stock = stocks.putIfAbsent(rewardId, loaded);
+            if (stock == null) {
+                stock = loaded;
+            }
+        }
+        if (!stock.tryTake()) {
+            if (observedStock <= 0 || System.currentTimeMillis() - stock.loadedAt < refreshMillis) {
+                soldOut.increment();
+                return null;
+            }
+            // Counters ran out but the database still has stock: reload them once
+            Stock current = stock;
+            stock = stocks.compute(rewardId, (id, s) -> s == current ? new Stock(observedStock) : s);
+            if (stock == null || !stock.tryTake()) {
+                soldOut.increment();
+                return null;
+            }
+        }
+        admitted.increment();
+        return new Reservation(rewardId, stock);
+    }
+
+    /** Drops the reward's counters, e.g. after its stock was changed. */
+    public void invalidate(String rewardId) {
+        stocks.remove(rewardId);
+    }
+
+    public int getStripes() {
+        return stripes;
+    }
+
+    /** Rewards with counters. */
+    public int getTrackedRewards() {
+        return stocks.size();
+    }
+
+    /** Redemptions let through to the database. */
+    public long getAdmitted() {
+        return admitted.sum();
+    }
+
+    /** Redemptions turned away without touching the reward row. */
+    public long getSoldOut() {
+        return soldOut.sum();
+    }
+
+    /** Admitted redemptions the database then found out of stock. */
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    private int stripeOfCurrentThread() {
+        return (int) Thread.currentThread().getId() & (stripes - 1);
+    }
+
+    /**
+     * Remaining units of one reward, spread evenly over the stripes.
+     */
+    private final class Stock {
+        private final AtomicIntegerArray units = new AtomicIntegerArray(stripes * PAD);
+        private final long loadedAt = System.currentTimeMillis();
+
+        Stock(int total) {
+            for (int i = 0; i < stripes; i++) {
+                units.set(i * PAD, Math.max(0, total) / stripes + (i < Math.max(0, total) % stripes ? 1 : 0));
+            }
+        }
+
+        // Own stripe first, then the others, so threads rarely contend on one counter
+        boolean tryTake() {
+            int first = stripeOfCurrentThread();
+            for (int n = 0; n < stripes; n++) {
+                int index = ((first + n) & (stripes - 1)) * PAD;
+                int left;
+                while ((left = units.get(index)) > 0) {
+                    if (units.compareAndSet(index, left, left - 1)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void giveBack() {
+            units.incrementAndGet(stripeOfCurrentThread() * PAD);
+        }
+    }
+
+    /**
+     * One unit taken by a redemption in progress. Call release() if the redemption failed for
+     * any reason but stock, or soldOut() if the database had no stock left.
+     */
+    final class Reservation {
+        private final String rewardId;
+        private final Stock stock;
+
+        Reservation(String rewardId, Stock stock) {
+            this.rewardId = rewardId;
+            this.stock = stock;
+        }
+
+        void release() {
+            stock.giveBack();
+        }
+
+        void soldOut() {
+            conflicts.increment();
+            stocks.remove(rewardId, stock);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.enterprise.rewards.service;
+
+import java.io.IOException;
+
+/**
+ * Receives rows one at a time from the streaming list methods of DataServiceInterface.
+ * Rows are delivered while the underlying cursor is still open, so implementations
+ * should write them out rather than keep them.
+ */
+public interface RowCallback<T> {
+    void onRow(T row) throws IOException;
+}
@@ -0,0 +1,63 @@
+package com.enterprise.rewards.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time-ordered 64-bit ids: 41 bits of milliseconds since 2020-01-01 UTC (good until 2089),
+ * a 10-bit node id and a 12-bit sequence within the millisecond. Ids from one generator are
+ * strictly increasing, and ids from generators with different node ids never collide, so
+ * every node of a deployment needs its own node id (ids.nodeId).
+ *
+ * The last issued timestamp and sequence are packed into one AtomicLong and advanced with
+ * compareAndSet, so callers never block. When more than 4096 ids are taken within one
+ * millisecond, or the clock steps back, the sequence carries into the next millisecond:
+ * ids run slightly ahead of the clock until it catches up, instead of waiting for it.
+ */
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    /** 2020-01-01T00:00:00Z */
+    static final long EPOCH_MILLIS = 1577836800000L;
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private final int nodeId;
+    private final long nodeField;
+    // (milliseconds since EPOCH_MILLIS << SEQUENCE_BITS) | sequence of the last id issued
+    private final AtomicLong last = new AtomicLong();
+
+    public SnowflakeIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeId = nodeId;
+        this.nodeField = (long) nodeId << SEQUENCE_BITS;
+    }
+
+    @Override
+    public long nextId() {
+        while (true) {
+            long previous = last.get();
+            long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+            long next = now > previous ? now : previous + 1;
+            if (last.compareAndSet(previous, next)) {
+                long millis = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return millis << (NODE_BITS + SEQUENCE_BITS) | nodeField | sequence;
+            }
+        }
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    /** Milliseconds since the epoch at which an id of this format was issued. */
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    public static int nodeIdOf(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_NODE_ID;
+    }
+}
@@ -0,0 +1,308 @@
+package com.enterprise.rewards.service;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Keeps loyalty tiers in line with the TierPolicy (tiers.enabled).
+ * Customers are re-evaluated one by one inside the DB transaction that changes their lifetime
+ * points (see DatabaseDataService.applyTierPolicy); this engine counts those changes and runs
+ * the background passes that no transaction triggers:
+ * <ul>
+ * <li>a daily pass at tiers.rescoreAt (NONE to disable) that applies downgrades whose grace
+ * period has ended, and with an evaluation window rescores everybody, since points age out
+ * of the window without any transaction</li>
+ * <li>a full rescore of the member base after a rule change (tiers.rescoreOnStartup, or
+ * startRescore()): customer ids are paged by key in chunks of tiers.rescore.chunkSize and
+ * scored by tiers.rescore.threads workers, each chunk in its own short DB transaction</li>
+ * </ul>
+ * Passes wait while the connection pool is busy with requests.
+ */
+public class TierEngine implements AutoCloseable {
+
+    /** ServletContext attribute under which the engine is published for monitoring. */
+    public static final String CONTEXT_ATTRIBUTE = "com.enterprise.rewards.tierEngine";
+
+    // Wait while the pool is busy before paging the next chunk
+    private static final long BUSY_BACKOFF_MS = 1000;
+
+    private final DatabaseDataService store;
+    private final TierPolicy policy;
+    private final LocalTime rescoreAt;
+    private final int threads;
+    private final int chunkSize;
+    private final ScheduledExecutorService scheduler;
+    private final List<Consumer<Collection<String>>> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong incrementalChanges = new AtomicLong();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong customersScored = new AtomicLong();
+    private final AtomicLong rescoreChanges = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong failedChunks = new AtomicLong();
+    private final AtomicLong busyWaits = new AtomicLong();
+    private volatile Date lastRunStart;
+    private volatile long lastRunMillis;
+    private volatile String lastRunOutcome;
+    private volatile boolean closed;
+
+    public TierEngine(DatabaseDataService store, TierPolicy policy, LocalTime rescoreAt, int threads, int chunkSize) {
+        this.store = store;
+        this.policy = policy;
+        this.rescoreAt = rescoreAt;
+        this.threads = Math.max(1, threads);
+        this.chunkSize = Math.max(1, chunkSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rewards-tier-rescore");
+            t.setDaemon(true);
+            return t;
+        });
+        if (rescoreAt != null) {
+            scheduleNextRun();
+        }
+    }
+
+    /**
+     * Registers a callback that receives the ids of customers whose tier changed, after the
+     * change has been committed (e.g. to invalidate cached customers).
+     */
+    public void addListener(Consumer<Collection<String>> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Starts a full rescore in the background unless a pass is in progress.
+     * Returns false if not started.
+     */
+    public boolean startRescore() {
+        if (closed || running.get()) {
+            return false;
+        }
+        try {
+            scheduler.execute(() -> run(true));
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    public TierPolicy getPolicy() {
+        return policy;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /** Time of the daily pass, or null if disabled. */
+    public LocalTime getRescoreAt() {
+        return rescoreAt;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /** Tier changes made by transactions. */
+    public long getIncrementalChanges() {
+        return incrementalChanges.get();
+    }
+
+    public long getRuns() {
+        return runs.get();
+    }
+
+    public long getCustomersScored() {
+        return customersScored.get();
+    }
+
+    /** Tier changes made by background passes. */
+    public long getRescoreChanges() {
+        return rescoreChanges.get();
+    }
+
+    public long getChunks() {
+        return chunks.get();
+    }
+
+    public long getFailedChunks() {
+        return failedChunks.get();
+    }
+
+    /** Times a pass waited because the connection pool was busy. */
+    public long getBusyWaits() {
+        return busyWaits.get();
+    }
+
+    /** Start of the last finished pass, or null. */
+    public Date getLastRunStart() {
+        return lastRunStart;
+    }
+
+    public long getLastRunMillis() {
+        return lastRunMillis;
+    }
+
+    /** How the last pass ended (completed, failed: ...), or null. */
+    public String getLastRunOutcome() {
+        return lastRunOutcome;
+    }
+
+    /**
+     * Stops scheduling and interrupts a pass between chunks; chunks in progress are finished.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        try {
+            if (!scheduler.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.err.println("[WARN] Tier rescore did not stop within 30 s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Called by the store after committing tier changes made by transactions
+    void tiersChanged(Collection<String> customerIds) {
+        if (!customerIds.isEmpty()) {
+            incrementalChanges.addAndGet(customerIds.size());
+            notifyListeners(customerIds);
+        }
+    }
+
+    private void notifyListeners(Collection<String> customerIds) {
+        for (Consumer<Collection<String>> listener : listeners) {
+            listener.accept(customerIds);
+        }
+    }
+
+    private void scheduleNextRun() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(rescoreAt);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        long delay = next.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() - System.currentTimeMillis();
+        try {
+            scheduler.schedule(() -> {
+                try {
+                    // Lifetime points never drop, so only due downgrades can change a tier
+                    run(policy.getEvaluationWindowDays() > 0);
+                } finally {
+                    if (!closed) {
+                        scheduleNextRun();
+                    }
+                }
+            }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed meanwhile
+        }
+    }
+
+    private void run(boolean full) {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Date now = new Date(start);
+        String pass = full ? "Tier rescore" : "Tier downgrade pass";
+        AtomicInteger runScored = new AtomicInteger();
+        AtomicInteger runChanged = new AtomicInteger();
+        AtomicReference<String> failure = new AtomicReference<>();
+        String outcome = "completed";
+        AtomicInteger workerNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "rewards-tier-worker-" + workerNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // One chunk per worker plus one queued, so paging stays just ahead of scoring
+        Semaphore slots = new Semaphore(threads + 1);
+        System.out.println("[INFO] " + pass + " started (" + policy + ")");
+        try {
+            String after = "";
+            while (true) {
+                if (closed) {
+                    outcome = "stopped";
+                    break;
+                }
+                if (store.isPoolBusy()) {
+                    busyWaits.incrementAndGet();
+                    Thread.sleep(BUSY_BACKOFF_MS);
+                    continue;
+                }
+                List<String> ids = store.customerIdsAfter(after, chunkSize, full ? null : now);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                after = ids.get(ids.size() - 1);
+                slots.acquire();
+                workers.execute(() -> {
+                    try {
+                        List<String> changed = store.rescoreTiers(ids, now);
+                        chunks.incrementAndGet();
+                        customersScored.addAndGet(ids.size());
+                        rescoreChanges.addAndGet(changed.size());
+                        runScored.addAndGet(ids.size());
+                        runChanged.addAndGet(changed.size());
+                        if (!changed.isEmpty()) {
+                            notifyListeners(changed);
+                        }
+                    } catch (SQLException | RuntimeException e) {
+                        failedChunks.incrementAndGet();
+                        failure.compareAndSet(null, e.getMessage());
+                        System.err.println("[ERROR] Tier rescore chunk after " + ids.get(0) + " failed: " + e.getMessage());
+                    } finally {
+                        slots.release();
+                    }
+                });
+                if (ids.size() < chunkSize) {
+                    break;
+                }
+            }
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            outcome = "stopped";
+            Thread.currentThread().interrupt();
+        } catch (SQLException | RuntimeException e) {
+            outcome = "failed: " + e.getMessage();
+            System.err.println("[ERROR] " + pass + " failed: " + e.getMessage());
+        } finally {
+            workers.shutdown();
+            if (failure.get() != null && "completed".equals(outcome)) {
+                outcome = "failed: " + failure.get();
+            }
+            runs.incrementAndGet();
+            lastRunStart = now;
+            lastRunMillis = System.currentTimeMillis() - start;
+            lastRunOutcome = outcome;
+            running.set(false);
+        }
+        System.out.println("[INFO] " + pass + " " + outcome + ": " + runChanged.get() + " of " + runScored.get()
+                + " customers changed tier, " + lastRunMillis + " ms");
+    }
+}
@@ -0,0 +1,164 @@
+package com.enterprise.rewards.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import javax.servlet.ServletContext;
+
+/**
+ * Loyalty tier rules, configured by context-param:
+ * <ul>
+ * <li>tiers.thresholds: tiers from lowest to highest with the points needed to qualify,
+ * e.g. "BRONZE:0,SILVER:1000,GOLD:2500,PLATINUM:5000"</li>
+ * <li>tiers.evaluationWindowDays: points earned in this many days before the evaluation
+ * count towards the tier; 0 counts lifetime points</li>
+ * <li>tiers.downgradeGraceDays: a member who drops below their tier keeps it for this many
+ * days before moving down; upgrades apply at once</li>
+ * </ul>
+ */
+public class TierPolicy {
+
+    private static final String DEFAULT_THRESHOLDS = "BRONZE:0,SILVER:1000,GOLD:2500,PLATINUM:5000";
+    private static final long DAY_MILLIS = 24L * 60L * 60L * 1000L;
+
+    private final List<String> tiers;
+    private final int[] thresholds;
+    private final int evaluationWindowDays;
+    private final int downgradeGraceDays;
+
+    public TierPolicy(String thresholds, int evaluationWindowDays, int downgradeGraceDays) {
+        List<String> names = new ArrayList<>();
+        List<Integer> points = new ArrayList<>();
+        for (String entry : thresholds.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            int colon = entry.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Invalid tier threshold '" + entry.trim() + "' (expected TIER:points)");
+            }
+            int required = Integer.parseInt(entry.substring(colon + 1).trim());
+            if (!points.isEmpty() && required <= points.get(points.size() - 1)) {
+                throw new IllegalArgumentException("Tier thresholds must increase: " + thresholds);
+            }
+            names.add(entry.substring(0, colon).trim().toUpperCase(Locale.ROOT));
+            points.add(required);
+        }
+        if (names.isEmpty()) {
+            throw new IllegalArgumentException("No tiers configured");
+        }
+        this.tiers = Collections.unmodifiableList(names);
+        this.thresholds = new int[points.size()];
+        for (int i = 0; i < this.thresholds.length; i++) {
+            this.thresholds[i] = points.get(i);
+        }
+        this.evaluationWindowDays = Math.max(0, evaluationWindowDays);
+        this.downgradeGraceDays = Math.max(0, downgradeGraceDays);
+    }
+
+    public static TierPolicy load(ServletContext context) {
+        return new TierPolicy(ContextParams.getString(context, "tiers.thresholds", DEFAULT_THRESHOLDS),
+                ContextParams.getInt(context, "tiers.evaluationWindowDays", 0),
+                ContextParams.getInt(context, "tiers.downgradeGraceDays", 90));
+    }
+
+    /** Tier names from lowest to highest. */
+    public List<String> getTiers() {
+        return tiers;
+    }
+
+    public int getThreshold(String tier) {
+        int rank = rank(tier);
+        return rank >= 0 ? thresholds[rank] : -1;
+    }
+
+    /** Tier of new members. */
+    public String getLowestTier() {
+        return tiers.get(0);
+    }
+
+    public int getEvaluationWindowDays() {
+        return evaluationWindowDays;
+    }
+
+    public int getDowngradeGraceDays() {
+        return downgradeGraceDays;
+    }
+
+    /**
+     * Earliest transaction date that counts towards the tier at now, or null for lifetime points.
+     */
+    public Date windowStart(Date now) {
+        return evaluationWindowDays > 0 ? new Date(now.getTime() - evaluationWindowDays * DAY_MILLIS) : null;
+    }
+
+    /** Highest tier whose threshold the points reach. */
+    public String qualifyingTier(int points) {
+        int rank = 0;
+        while (rank + 1 < thresholds.length && points >= thresholds[rank + 1]) {
+            rank++;
+        }
+        return tiers.get(rank);
+    }
+
+    /**
+     * Applies the rules to a member's current state. downgradeAfter is when a pending downgrade
+     * takes effect (null if none is pending).
+     */
+    public Evaluation evaluate(String currentTier, Date downgradeAfter, int points, Date now) {
+        String qualified = qualifyingTier(points);
+        int currentRank = rank(currentTier);
+        if (rank(qualified) >= currentRank) {
+            // Upgrade, unknown current tier, or still qualifying: any pending downgrade is cancelled
+            return new Evaluation(qualified, null);
+        }
+        if (downgradeGraceDays == 0 || (downgradeAfter != null && !now.before(downgradeAfter))) {
+            return new Evaluation(qualified, null);
+        }
+        return new Evaluation(tiers.get(currentRank),
+                downgradeAfter != null ? downgradeAfter : new Date(now.getTime() + downgradeGraceDays * DAY_MILLIS));
+    }
+
+    private int rank(String tier) {
+        for (int i = 0; i < tiers.size(); i++) {
+            if (tiers.get(i).equalsIgnoreCase(tier)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tiers.size(); i++) {
+            text.append(i == 0 ? "" : ", ").append(tiers.get(i)).append(' ').append(thresholds[i]);
+        }
+        text.append(evaluationWindowDays > 0 ? " points in " + evaluationWindowDays + " days" : " lifetime points");
+        return text.append(", ").append(downgradeGraceDays).append(" days downgrade grace").toString();
+    }
+
+    /**
+     * Outcome of an evaluation: the tier to hold and when a pending downgrade takes effect.
+     */
+    public static final class Evaluation {
+        private final String tier;
+        private final Date downgradeAfter;
+
+        Evaluation(String tier, Date downgradeAfter) {
+            this.tier = tier;
+            this.downgradeAfter = downgradeAfter;
+        }
+
+        public String getTier() {
+            return tier;
+        }
+
+        public Date getDowngradeAfter() {
+            return downgradeAfter;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.enterprise.rewards.service;
+
+/**
+ * Thrown when the group-commit queue is full and a transaction cannot be accepted.
+ * The servlets answer it with 503 and a Retry-After header so clients back off.
+ */
+public class TransactionQueueFullException extends RuntimeException {
+
+    public TransactionQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,34 @@
+package com.enterprise.rewards.service;
+
+/**
+ * Input for one transaction of a batch submitted through createTransactions.
+ */
+public class TransactionRequest {
+    private final String customerId;
+    private final String transactionType;
+    private final int pointsAmount;
+    private final String description;
+
+    public TransactionRequest(String customerId, String transactionType, int pointsAmount, String description) {
+        this.customerId = customerId;
+        this.transactionType = transactionType;
+        this.pointsAmount = pointsAmount;
+        this.description = description;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+
+    public String getTransactionType() {
+        return transactionType;
+    }
+
+    public int getPointsAmount() {
+        return pointsAmount;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
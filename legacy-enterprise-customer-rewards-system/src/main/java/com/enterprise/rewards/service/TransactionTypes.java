@@ -0,0 +1,80 @@
+package com.enterprise.rewards.service;
+
+/**
+ * Points balance rules per transaction type.
+ * EARN, EARNED, ADJUST and SOCIAL_MEDIA_BONUS add to both lifetime and available
+ * points; REDEEM, REDEEMED and EXPIRE subtract from available points only. Any other
+ * type leaves the balance unchanged.
+ */
+public final class TransactionTypes {
+
+    /** SQL IN-list of the types that count as earned points. */
+    public static final String EARNING_SQL_LIST = "'EARN', 'EARNED', 'ADJUST', 'SOCIAL_MEDIA_BONUS'";
+
+    /** SQL IN-list of the types that count as redeemed points. */
+    public static final String REDEMPTION_SQL_LIST = "'REDEEM', 'REDEEMED'";
+
+    /** SQL IN-list of the types that take points off the available balance: redemptions and expirations. */
+    public static final String DEDUCTION_SQL_LIST = REDEMPTION_SQL_LIST + ", 'EXPIRE'";
+
+    /** Written by the points expiration engine for points left unused past their expiration date. */
+    public static final String EXPIRE = "EXPIRE";
+
+    /** Values of the points_transactions.transaction_type column, for error messages. */
+    public static final String STORED_TYPES = "EARN, REDEEM, EXPIRE, ADJUST";
+
+    private TransactionTypes() {}
+
+    /**
+     * True if points_transactions can store the type (its ENUM('EARN', 'REDEEM', 'EXPIRE', 'ADJUST')).
+     */
+    public static boolean isStored(String transactionType) {
+        return "EARN".equalsIgnoreCase(transactionType)
+                || "REDEEM".equalsIgnoreCase(transactionType)
+                || EXPIRE.equalsIgnoreCase(transactionType)
+                || "ADJUST".equalsIgnoreCase(transactionType);
+    }
+
+    /**
+     * Rejection message for a type isStored refuses, shared by the data service implementations.
+     */
+    public static String unsupportedMessage(String transactionType) {
+        return "Unsupported transactionType: " + transactionType + " (expected one of " + STORED_TYPES + ")";
+    }
+
+    public static boolean isEarning(String transactionType) {
+        return "EARN".equalsIgnoreCase(transactionType)
+                || "EARNED".equalsIgnoreCase(transactionType)
+                || "ADJUST".equalsIgnoreCase(transactionType)
+                || "SOCIAL_MEDIA_BONUS".equalsIgnoreCase(transactionType);
+    }
+
+    public static boolean isRedemption(String transactionType) {
+        return "REDEEM".equalsIgnoreCase(transactionType)
+                || "REDEEMED".equalsIgnoreCase(transactionType);
+    }
+
+    public static boolean isExpiration(String transactionType) {
+        return EXPIRE.equalsIgnoreCase(transactionType);
+    }
+
+    /**
+     * Change to total lifetime points caused by a transaction.
+     */
+    public static int lifetimeDelta(String transactionType, int pointsAmount) {
+        return isEarning(transactionType) ? pointsAmount : 0;
+    }
+
+    /**
+     * Change to currently available points caused by a transaction.
+     */
+    public static int availableDelta(String transactionType, int pointsAmount) {
+        if (isEarning(transactionType)) {
+            return pointsAmount;
+        }
+        if (isRedemption(transactionType) || isExpiration(transactionType)) {
+            return -pointsAmount;
+        }
+        return 0;
+    }
+}
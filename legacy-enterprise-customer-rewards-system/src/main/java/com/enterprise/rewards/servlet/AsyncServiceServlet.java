@@ -0,0 +1,223 @@
+package com.enterprise.rewards.servlet;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.enterprise.rewards.service.ContextParams;
+
+/**
+ * Base class of the /service/* servlets. GET and POST are handled on the shared
+ * ServiceExecutor in async mode, so a slow database ties up worker threads instead
+ * of Tomcat's connector threads (which also serve the JSPs and the login form).
+ *
+ * Settings (web.xml context-params): service.async.enabled (default true),
+ * service.async.timeoutMs (default 30000), service.executor.threads and
+ * service.executor.queueSize. A full executor queue is answered with 503 and
+ * Retry-After. A request still unfinished after the timeout has its worker's remaining
+ * output discarded: a GET gets 503 and Retry-After, a POST gets 504 without it, because
+ * its write may still commit. Streamed full lists (isStreamedList) have no timeout, as
+ * they run for as long as the client takes to read them.
+ *
+ * A streamed list that fails once output has started ends with StreamAbortedException
+ * (see resetFailedStream). On a worker it is handed back to a container thread with
+ * AsyncContext.dispatch and rethrown there, so in both modes the container closes the
+ * connection instead of ending the truncated response normally.
+ */
+public abstract class AsyncServiceServlet extends HttpServlet {
+
+    // Request attribute carrying a worker's StreamAbortedException into the async dispatch
+    private static final String ABORTED_ATTRIBUTE = AsyncServiceServlet.class.getName() + ".aborted";
+
+    private boolean asyncEnabled;
+    private long timeoutMs;
+    private ServiceExecutor executor;
+
+    @Override
+    public void init() throws ServletException {
+        asyncEnabled = ContextParams.getBoolean(getServletContext(), "service.async.enabled", true);
+        timeoutMs = ContextParams.getLong(getServletContext(), "service.async.timeoutMs", 30000);
+        if (asyncEnabled) {
+            executor = ServiceExecutor.get(getServletContext());
+        }
+    }
+
+    protected abstract void handleGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException;
+
+    protected abstract void handlePost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException;
+
+    @Override
+    protected final void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        dispatch(request, response, this::handleGet, isStreamedList(request) ? 0 : timeoutMs);
+    }
+
+    @Override
+    protected final void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        dispatch(request, response, this::handlePost, timeoutMs);
+    }
+
+    /**
+     * True for a GET that streams a full list from a database cursor (service.streamLists).
+     */
+    protected boolean isStreamedList(HttpServletRequest request) {
+        return false;
+    }
+
+    /**
+     * True unless the request names a single entity (idParameter or a path segment) or asks for a page.
+     */
+    protected static boolean isFullListRequest(HttpServletRequest request, String idParameter) {
+        String id = request.getParameter(idParameter);
+        String pathInfo = request.getPathInfo();
+        return (id == null || id.trim().isEmpty())
+                && (pathInfo == null || pathInfo.length() <= 1)
+                && !PageParameters.isPaged(request);
+    }
+
+    private interface Handler {
+        void handle(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException;
+    }
+
+    /**
+     * Called when a streamed list fails. If nothing has been sent yet, the response is reset to
+     * an empty one in the requested format, ready for an ordinary error document. Otherwise no
+     * error can be appended to the partial list: StreamAbortedException is thrown, and the
+     * servlet must let it propagate.
+     */
+    protected static void resetFailedStream(HttpServletResponse response, boolean json, Exception cause)
+            throws StreamAbortedException {
+        if (response.isCommitted()) {
+            throw new StreamAbortedException("Streamed list failed after output started: " + cause.getMessage(), cause);
+        }
+        response.reset();
+        response.setContentType(json ? JsonSupport.CONTENT_TYPE : "application/xml");
+        response.setCharacterEncoding("UTF-8");
+    }
+
+    // timeout 0 means none
+    private void dispatch(HttpServletRequest request, HttpServletResponse response, final Handler handler,
+            final long timeout) throws ServletException, IOException {
+        Object failedStream = request.getAttribute(ABORTED_ATTRIBUTE);
+        if (failedStream != null && request.getDispatcherType() == DispatcherType.ASYNC) {
+            // Back from a worker whose streamed list failed: fail on the container thread
+            request.removeAttribute(ABORTED_ATTRIBUTE);
+            throw (StreamAbortedException) failedStream;
+        }
+        if (!asyncEnabled || !request.isAsyncSupported()) {
+            handler.handle(request, response);
+            return;
+        }
+        final AsyncContext async = request.startAsync(request, response);
+        async.setTimeout(timeout);
+        final HttpServletRequest asyncRequest = (HttpServletRequest) async.getRequest();
+        final DetachableResponse asyncResponse = new DetachableResponse((HttpServletResponse) async.getResponse());
+        async.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                executor.recordTimeout();
+                // Only answer if the worker has not finished in the meantime. The response must be
+                // completed before this returns, so a write the worker has in progress is waited for.
+                if (asyncResponse.detachAndAwaitIdle()) {
+                    writeTimedOut(asyncRequest, (HttpServletResponse) async.getResponse(), timeout);
+                    async.complete();
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                asyncResponse.detach();
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        try {
+            executor.execute(() -> {
+                StreamAbortedException aborted = null;
+                try {
+                    if (asyncResponse.isAttached()) {
+                        handler.handle(asyncRequest, asyncResponse);
+                    }
+                } catch (StreamAbortedException e) {
+                    System.err.println("[ERROR] " + getServletName() + " closing the connection: " + e.getMessage());
+                    aborted = e;
+                } catch (Exception e) {
+                    System.err.println("[ERROR] " + getServletName() + " async request failed: " + e.getMessage());
+                    if (asyncResponse.isAttached() && !asyncResponse.isCommitted()) {
+                        asyncResponse.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    }
+                } finally {
+                    if (asyncResponse.detach()) {
+                        if (aborted != null) {
+                            asyncRequest.setAttribute(ABORTED_ATTRIBUTE, aborted);
+                            async.dispatch();
+                        } else {
+                            async.complete();
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (asyncResponse.detach()) {
+                writeUnavailable(request, response, "Server is busy, retry later");
+                async.complete();
+            }
+        }
+    }
+
+    // A GET can simply be retried. A POST may still commit after its response is gone, so it
+    // is not answered with a retryable 503: the client must check, or retry with the same Idempotency-Key.
+    private static void writeTimedOut(HttpServletRequest request, HttpServletResponse response, long timeout)
+            throws IOException {
+        if ("GET".equals(request.getMethod())) {
+            writeUnavailable(request, response, "Request timed out after " + timeout + " ms");
+        } else if (!response.isCommitted()) {
+            response.reset();
+            writeError(request, response, HttpServletResponse.SC_GATEWAY_TIMEOUT,
+                    "Request timed out after " + timeout + " ms and may still complete");
+        }
+    }
+
+    // 503 with Retry-After in the format the client asked for, unless output has already started
+    private static void writeUnavailable(HttpServletRequest request, HttpServletResponse response, String message)
+            throws IOException {
+        if (response.isCommitted()) {
+            return;
+        }
+        response.reset();
+        response.setHeader("Retry-After", "1");
+        writeError(request, response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, message);
+    }
+
+    // Error document in the format the client asked for, on a response that has just been reset
+    private static void writeError(HttpServletRequest request, HttpServletResponse response, int status, String message)
+            throws IOException {
+        response.setStatus(status);
+        response.setCharacterEncoding("UTF-8");
+        if (JsonSupport.wantsJson(request)) {
+            response.setContentType(JsonSupport.CONTENT_TYPE);
+            JsonSupport.writeError(response.getWriter(), message);
+        } else {
+            response.setContentType("application/xml");
+            response.getWriter().println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            response.getWriter().println("<error>" + message + "</error>");
+        }
+    }
+}
@@ -1,34 +1,55 @@
 package com.enterprise.rewards.servlet;
 
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.enterprise.rewards.model.Customer;
+import com.enterprise.rewards.service.ContextParams;
 import com.enterprise.rewards.service.DataServiceFactory;
 import com.enterprise.rewards.service.DataServiceInterface;
+import com.enterprise.rewards.service.Page;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * Customer management servlet for XML service endpoints
  * Modernized implementation - simplified for in-container compilation
  */
-public class CustomerServiceServlet extends HttpServlet {
+public class CustomerServiceServlet extends AsyncServiceServlet {
+    // Fields read from a POSTed customer (XML elements or JSON properties)
+    private static final String[] CUSTOMER_FIELDS = {"firstName", "lastName", "emailAddress", "phoneNumber"};
     private DataServiceInterface dataService;
+    // Write full lists row by row as they are read (context-param service.streamLists)
+    private boolean streamLists;
+    // Largest accepted POST body (context-param service.request.maxBytes)
+    private int maxRequestBytes;
+    // Responses of POSTs with an Idempotency-Key, shared with the other service servlets
+    private IdempotencyCache idempotency;
 
     @Override
     public void init() throws ServletException {
+        super.init();
         dataService = DataServiceFactory.getInstance(getServletContext());
+        streamLists = "true".equalsIgnoreCase(getServletContext().getInitParameter("service.streamLists"));
+        maxRequestBytes = ContextParams.getInt(getServletContext(), "service.request.maxBytes", XmlRequestDecoder.DEFAULT_MAX_BYTES);
+        idempotency = IdempotencyCache.get(getServletContext());
     }
 
     @Override
-    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+    protected boolean isStreamedList(HttpServletRequest request) {
+        return streamLists && isFullListRequest(request, "customerId");
+    }
+
+    @Override
+    protected void handleGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        response.setContentType("application/xml");
+        boolean json = JsonSupport.wantsJson(request);
+        response.setContentType(json ? JsonSupport.CONTENT_TYPE : "application/xml");
         response.setCharacterEncoding("UTF-8");
         PrintWriter out = response.getWriter();
         try {
@@ -43,61 +64,120 @@ public class CustomerServiceServlet extends HttpServlet {
             if (customerId != null && !customerId.trim().isEmpty()) {
                 Customer customer = dataService.getCustomer(customerId);
                 if (customer != null) {
-                    out.println(generateCustomerXml(customer));
+                    writeCustomer(out, json, customer);
                 } else {
                     response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-                    out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                    out.println("<error>Customer not found: " + customerId + "</error>");
+                    writeError(out, json, "Customer not found: " + customerId);
+                }
+            } else if (PageParameters.isPaged(request)) {
+                String after = PageParameters.after(request);
+                Page<Customer> page = dataService.getCustomersPage(after, PageParameters.limit(request));
+                writeCustomerList(out, json, page.getItems(), PageParameters.encodeCursor(page.getNextKey()));
+            } else if (streamLists) {
+                try {
+                    if (json) {
+                        JsonSupport.streamList(out, "customers", dataService::streamAllCustomers, JsonSupport::writeCustomer);
+                    } else {
+                        streamCustomersListXml(out);
+                    }
+                } catch (RuntimeException e) {
+                    // Reset for the error document below, or abort if rows have already been sent
+                    resetFailedStream(response, json, e);
+                    throw e;
                 }
             } else {
                 Collection<Customer> customers = dataService.getAllCustomers();
-                out.println(generateCustomersListXml(customers));
+                writeCustomerList(out, json, customers, null);
             }
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            writeError(out, json, e.getMessage());
+        } catch (StreamAbortedException e) {
+            throw e;
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            out.println("<error>Internal server error: " + e.getMessage() + "</error>");
+            writeError(out, json, "Internal server error: " + e.getMessage());
         }
     }
 
     @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+    protected void handlePost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        response.setContentType("application/xml");
+        boolean json = JsonSupport.wantsJson(request);
+        response.setContentType(json ? JsonSupport.CONTENT_TYPE : "application/xml");
         response.setCharacterEncoding("UTF-8");
         PrintWriter out = response.getWriter();
         try {
             String contentType = request.getContentType();
-            if (contentType == null || !contentType.toLowerCase().contains("application/xml")) {
+            boolean jsonInput = JsonSupport.isJson(contentType);
+            if (!jsonInput && (contentType == null || !contentType.toLowerCase().contains("application/xml"))) {
                 response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
-                writeXmlError(out, "Only application/xml input is supported");
+                writeError(out, json, "Only application/xml or application/json input is supported");
                 return;
             }
-            // Parse XML input
-            javax.xml.parsers.DocumentBuilderFactory dbFactory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
-            javax.xml.parsers.DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            org.w3c.dom.Document doc = dBuilder.parse(request.getInputStream());
-            doc.getDocumentElement().normalize();
-            org.w3c.dom.Element root = doc.getDocumentElement();
-            String firstName = getXmlTagValue(root, "firstName");
-            String lastName = getXmlTagValue(root, "lastName");
-            String emailAddress = getXmlTagValue(root, "emailAddress");
-            String phone = getXmlTagValue(root, "phoneNumber");
+            Map<String, String> fields = jsonInput
+                    ? JsonRequestDecoder.readFields(request, maxRequestBytes, CUSTOMER_FIELDS)
+                    : XmlRequestDecoder.readFields(request, maxRequestBytes, CUSTOMER_FIELDS);
+            String firstName = fields.get("firstName");
+            String lastName = fields.get("lastName");
+            String emailAddress = fields.get("emailAddress");
+            String phone = fields.get("phoneNumber");
             if (firstName == null || lastName == null || emailAddress == null) {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                writeXmlError(out, "Missing required fields: firstName, lastName, emailAddress");
+                writeError(out, json, "Missing required fields: firstName, lastName, emailAddress");
+                return;
+            }
+            String idempotencyKey = IdempotencyCache.keyOf(request);
+            if (idempotencyKey == null) {
+                Customer newCustomer = dataService.createCustomer(firstName, lastName, emailAddress, phone, null);
+                writeCustomer(out, json, newCustomer);
                 return;
             }
-            Customer newCustomer = dataService.createCustomer(firstName, lastName, emailAddress, phone);
-            out.println(generateCustomerXml(newCustomer));
+            String fingerprint = firstName + '\n' + lastName + '\n' + emailAddress + '\n' + phone;
+            idempotency.execute("customers", idempotencyKey, fingerprint, () -> {
+                Customer newCustomer = dataService.createCustomer(firstName, lastName, emailAddress, phone, idempotencyKey);
+                // Possibly created by an earlier request this node's cache has not seen
+                if (!emailAddress.equalsIgnoreCase(newCustomer.getEmailAddress())) {
+                    throw new IdempotencyConflictException(IdempotencyCache.HEADER + " was already used for a different customer");
+                }
+                StringWriter body = new StringWriter();
+                writeCustomer(new PrintWriter(body), json, newCustomer);
+                return new IdempotencyCache.StoredResponse(HttpServletResponse.SC_OK, response.getContentType(), body.toString());
+            }).writeTo(response, out);
+        } catch (IdempotencyConflictException e) {
+            response.setStatus(HttpServletResponse.SC_CONFLICT);
+            writeError(out, json, e.getMessage());
+        } catch (RequestTooLargeException e) {
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            writeError(out, json, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            writeError(out, json, e.getMessage());
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            writeXmlError(out, "Error creating customer: " + e.getMessage());
+            writeError(out, json, "Error creating customer: " + e.getMessage());
         }
     }
 
-    // XML serialization for a single Customer
-    private String generateCustomerXml(Customer c) {
+    private void writeCustomer(PrintWriter out, boolean json, Customer c) throws IOException {
+        if (json) {
+            JsonSupport.writeObject(out, c, JsonSupport::writeCustomer);
+        } else {
+            out.println(generateCustomerXml(c));
+        }
+    }
+
+    private void writeCustomerList(PrintWriter out, boolean json, Collection<Customer> customers, String nextCursor)
+            throws IOException {
+        if (json) {
+            JsonSupport.writeList(out, "customers", customers, nextCursor, JsonSupport::writeCustomer);
+        } else {
+            out.println(generateCustomersListXml(customers, nextCursor));
+        }
+    }
+
+    // XML serialization for a single Customer (package-private for the src/jmh benchmarks)
+    String generateCustomerXml(Customer c) {
         StringBuilder xml = new StringBuilder();
         xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
         xml.append("<customer>\n");
@@ -115,45 +195,70 @@ public class CustomerServiceServlet extends HttpServlet {
         return xml.toString();
     }
 
-    // XML serialization for a list of Customers
-    private String generateCustomersListXml(Collection<Customer> customers) {
+    // XML serialization for a list of Customers; nextCursor is only written when another page exists
+    String generateCustomersListXml(Collection<Customer> customers, String nextCursor) {
         StringBuilder xml = new StringBuilder();
         xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
         xml.append("<customers>\n");
         xml.append("  <count>").append(customers.size()).append("</count>\n");
         for (Customer c : customers) {
-            xml.append("  <customer>\n");
-            xml.append("    <customerId>").append(c.getCustomerId()).append("</customerId>\n");
-            xml.append("    <firstName>").append(c.getFirstName()).append("</firstName>\n");
-            xml.append("    <lastName>").append(c.getLastName()).append("</lastName>\n");
-            xml.append("    <emailAddress>").append(c.getEmailAddress()).append("</emailAddress>\n");
-            xml.append("    <phoneNumber>").append(c.getPhoneNumber() != null ? c.getPhoneNumber() : "").append("</phoneNumber>\n");
-            xml.append("    <registrationDate>").append(c.getRegistrationDate()).append("</registrationDate>\n");
-            xml.append("    <loyaltyTier>").append(c.getLoyaltyTier()).append("</loyaltyTier>\n");
-            xml.append("    <totalLifetimePoints>").append(c.getTotalLifetimePoints()).append("</totalLifetimePoints>\n");
-            xml.append("    <currentAvailablePoints>").append(c.getCurrentAvailablePoints()).append("</currentAvailablePoints>\n");
-            xml.append("    <accountStatus>").append(c.getAccountStatus()).append("</accountStatus>\n");
-            xml.append("  </customer>\n");
+            appendCustomerElement(xml, c);
+        }
+        if (nextCursor != null) {
+            xml.append("  <nextCursor>").append(nextCursor).append("</nextCursor>\n");
         }
         xml.append("</customers>");
         return xml.toString();
     }
 
-    // Helper to extract XML tag value
-    private String getXmlTagValue(org.w3c.dom.Element element, String tagName) {
-        org.w3c.dom.NodeList nodeList = element.getElementsByTagName(tagName);
-        if (nodeList != null && nodeList.getLength() > 0) {
-            org.w3c.dom.Node node = nodeList.item(0);
-            if (node != null && node.getTextContent() != null) {
-                return node.getTextContent();
-            }
-        }
-        return null;
+    // Streams the full list straight from the data service cursor to the response writer.
+    // The row count is only known at the end, so <count> follows the customer elements.
+    private void streamCustomersListXml(final PrintWriter out) throws IOException {
+        out.print("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.print("<customers>\n");
+        final StringBuilder xml = new StringBuilder(512);
+        int count = dataService.streamAllCustomers(c -> {
+            xml.setLength(0);
+            appendCustomerElement(xml, c);
+            out.append(xml);
+        });
+        out.print("  <count>" + count + "</count>\n");
+        out.println("</customers>");
     }
 
-    // Helper to write XML error
-    private void writeXmlError(PrintWriter out, String message) {
+    // XML element for one Customer inside a list document
+    private void appendCustomerElement(StringBuilder xml, Customer c) {
+        xml.append("  <customer>\n");
+        xml.append("    <customerId>").append(c.getCustomerId()).append("</customerId>\n");
+        xml.append("    <firstName>").append(c.getFirstName()).append("</firstName>\n");
+        xml.append("    <lastName>").append(c.getLastName()).append("</lastName>\n");
+        xml.append("    <emailAddress>").append(c.getEmailAddress()).append("</emailAddress>\n");
+        xml.append("    <phoneNumber>").append(c.getPhoneNumber() != null ? c.getPhoneNumber() : "").append("</phoneNumber>\n");
+        xml.append("    <registrationDate>").append(c.getRegistrationDate()).append("</registrationDate>\n");
+        xml.append("    <loyaltyTier>").append(c.getLoyaltyTier()).append("</loyaltyTier>\n");
+        xml.append("    <totalLifetimePoints>").append(c.getTotalLifetimePoints()).append("</totalLifetimePoints>\n");
+        xml.append("    <currentAvailablePoints>").append(c.getCurrentAvailablePoints()).append("</currentAvailablePoints>\n");
+        xml.append("    <accountStatus>").append(c.getAccountStatus()).append("</accountStatus>\n");
+        xml.append("  </customer>\n");
+    }
+
+    // Helper to write an error in the response format
+    private void writeError(PrintWriter out, boolean json, String message) throws IOException {
+        if (json) {
+            JsonSupport.writeError(out, message);
+            return;
+        }
         out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-        out.println("<error>" + message + "</error>");
+        out.println("<error>" + escapeXml(message) + "</error>");
+    }
+
+    // Escape XML special characters
+    private String escapeXml(String input) {
+        if (input == null) return "";
+        return input.replace("&", "&amp;")
+                    .replace("<", "&lt;")
+                    .replace(">", "&gt;")
+                    .replace("\"", "&quot;")
+                    .replace("'", "&apos;");
     }
 }
@@ -0,0 +1,353 @@
+package com.enterprise.rewards.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response handed to an async worker. When the request times out, detach() cuts the
+ * worker off: from then on its status, header and body writes are dropped instead of
+ * reaching a response the container has already completed and recycled.
+ *
+ * The lock only guards the attached flag and the count of calls in progress; the calls
+ * themselves (socket writes and flushes to a slow client) run outside it. A timeout
+ * detaches at once and then waits, without the lock, for a call already in progress to
+ * return before it answers on the same response.
+ */
+class DetachableResponse extends HttpServletResponseWrapper {
+
+    private final Object lock = new Object();
+    private boolean attached = true;
+    // Calls passed on to the wrapped response that have not returned yet
+    private int inProgress;
+    private volatile PrintWriter writer;
+    private volatile ServletOutputStream outputStream;
+
+    DetachableResponse(HttpServletResponse response) {
+        super(response);
+    }
+
+    /**
+     * Stops all further output. Returns true if the response was still attached.
+     * Only for the thread that makes the calls, once it has made its last one.
+     */
+    boolean detach() {
+        synchronized (lock) {
+            boolean was = attached;
+            attached = false;
+            return was;
+        }
+    }
+
+    /**
+     * Stops all further output, then waits until no call is in progress, so the caller can
+     * answer on the wrapped response itself. Returns true if the response was still attached.
+     * A write blocked on the client is bounded by the connector's own write timeout.
+     */
+    boolean detachAndAwaitIdle() {
+        synchronized (lock) {
+            boolean was = attached;
+            attached = false;
+            try {
+                while (inProgress > 0) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return was;
+        }
+    }
+
+    boolean isAttached() {
+        synchronized (lock) {
+            return attached;
+        }
+    }
+
+    // Registers a call on the wrapped response; false once detached
+    private boolean enter() {
+        synchronized (lock) {
+            if (!attached) {
+                return false;
+            }
+            inProgress++;
+            return true;
+        }
+    }
+
+    private void enterOrFail() throws IOException {
+        if (!enter()) {
+            throw new IOException("Request has timed out");
+        }
+    }
+
+    private void exit() {
+        synchronized (lock) {
+            if (--inProgress == 0 && !attached) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        if (enter()) {
+            try {
+                super.setStatus(sc);
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        if (enter()) {
+            try {
+                super.sendError(sc);
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        if (enter()) {
+            try {
+                super.sendError(sc, msg);
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (enter()) {
+            try {
+                super.setHeader(name, value);
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (enter()) {
+            try {
+                super.addHeader(name, value);
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (enter()) {
+            try {
+                super.setIntHeader(name, value);
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    @Override
+    public void setContentType(String type) {
+        if (enter()) {
+            try {
+                super.setContentType(type);
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+        if (enter()) {
+            try {
+                super.setCharacterEncoding(charset);
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (enter()) {
+            try {
+                super.flushBuffer();
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        if (enter()) {
+            try {
+                super.resetBuffer();
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (enter()) {
+            try {
+                super.reset();
+            } finally {
+                exit();
+            }
+        }
+    }
+
+    // The worker is the only caller, so the lazy initialization below does not race
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            enterOrFail();
+            try {
+                writer = new PrintWriter(new GuardedWriter(super.getWriter()));
+            } finally {
+                exit();
+            }
+        }
+        return writer;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            enterOrFail();
+            try {
+                outputStream = new GuardedOutputStream(super.getOutputStream());
+            } finally {
+                exit();
+            }
+        }
+        return outputStream;
+    }
+
+    private class GuardedWriter extends Writer {
+        private final Writer target;
+
+        GuardedWriter(Writer target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(char[] buf, int off, int len) throws IOException {
+            enterOrFail();
+            try {
+                target.write(buf, off, len);
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            enterOrFail();
+            try {
+                target.write(str, off, len);
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            enterOrFail();
+            try {
+                target.flush();
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (enter()) {
+                try {
+                    target.close();
+                } finally {
+                    exit();
+                }
+            }
+        }
+    }
+
+    private class GuardedOutputStream extends ServletOutputStream {
+        private final ServletOutputStream target;
+
+        GuardedOutputStream(ServletOutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            enterOrFail();
+            try {
+                target.write(b);
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            enterOrFail();
+            try {
+                target.write(b, off, len);
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            enterOrFail();
+            try {
+                target.flush();
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (enter()) {
+                try {
+                    target.close();
+                } finally {
+                    exit();
+                }
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return target.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            target.setWriteListener(listener);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.enterprise.rewards.servlet;
+
+import java.io.PrintWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.enterprise.rewards.cache.BoundedCache;
+import com.enterprise.rewards.cache.CacheStatistics;
+import com.enterprise.rewards.service.ContextParams;
+
+/**
+ * Replays the responses of POSTs sent with an Idempotency-Key header, so a client that retries
+ * after a timeout gets the original response instead of a second customer or points award.
+ *
+ * Responses are kept per endpoint and key in a BoundedCache (service.idempotency.maxEntries,
+ * service.idempotency.ttlSeconds), with a fingerprint of the request fields; reusing a key for a
+ * different request is refused. While the first request with a key is running, duplicates wait
+ * for it in an in-flight map (at most service.idempotency.waitMs) and then replay its response.
+ * Only successful responses are kept, so after an error the next request with the key runs again.
+ *
+ * This cache only spares the write path. The key is also stored with the customer or transaction
+ * it created (see DataServiceInterface), which covers evicted entries, restarts and other nodes.
+ * One instance per web application, created on first use.
+ */
+public class IdempotencyCache {
+
+    /** ServletContext attribute under which the cache is published for monitoring. */
+    public static final String CONTEXT_ATTRIBUTE = "com.enterprise.rewards.idempotencyCache";
+
+    static final String HEADER = "Idempotency-Key";
+    // Size of the idempotency_key columns
+    static final int MAX_KEY_LENGTH = 100;
+
+    /**
+     * Produces the response of the first request with a key.
+     */
+    interface Action {
+        StoredResponse run() throws Exception;
+    }
+
+    private final BoundedCache<String, Entry> responses;
+    private final ConcurrentHashMap<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+    private final long waitMillis;
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+
+    IdempotencyCache(int maxEntries, long ttlMillis, long waitMillis) {
+        this.responses = new BoundedCache<>("idempotency", maxEntries, ttlMillis);
+        this.waitMillis = waitMillis;
+    }
+
+    /**
+     * Returns the application's cache, creating it on first use.
+     */
+    static IdempotencyCache get(ServletContext context) {
+        synchronized (context) {
+            IdempotencyCache cache = (IdempotencyCache) context.getAttribute(CONTEXT_ATTRIBUTE);
+            if (cache == null) {
+                cache = new IdempotencyCache(
+                        ContextParams.getInt(context, "service.idempotency.maxEntries", 10000),
+                        ContextParams.getLong(context, "service.idempotency.ttlSeconds", 86400) * 1000,
+                        ContextParams.getLong(context, "service.idempotency.waitMs", 10000));
+                context.setAttribute(CONTEXT_ATTRIBUTE, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the request's Idempotency-Key, or null if it has none.
+     * Throws IllegalArgumentException if the key is empty or too long.
+     */
+    static String keyOf(HttpServletRequest request) {
+        String key = request.getHeader(HEADER);
+        if (key == null) {
+            return null;
+        }
+        key = key.trim();
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        return key;
+    }
+
+    /**
+     * Runs action for the first request with this endpoint and key, and returns its response or
+     * the response stored for an earlier request. Throws IdempotencyConflictException if the key
+     * was used for a request with another fingerprint, or its first request is still running
+     * after the wait; exceptions of the action are passed on and nothing is stored.
+     */
+    StoredResponse execute(String endpoint, String key, String fingerprint, Action action) throws Exception {
+        String cacheKey = endpoint + '\n' + key;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        while (true) {
+            Entry stored = responses.get(cacheKey);
+            if (stored != null) {
+                return replay(stored, fingerprint);
+            }
+            CompletableFuture<Entry> running = new CompletableFuture<>();
+            CompletableFuture<Entry> first = inFlight.putIfAbsent(cacheKey, running);
+            if (first == null) {
+                Entry entry = null;
+                try {
+                    StoredResponse response = action.run();
+                    if (response.isSuccess()) {
+                        entry = new Entry(fingerprint, response);
+                        // Stored before leaving the in-flight map, so a later duplicate finds one or the other
+                        responses.put(cacheKey, entry);
+                    }
+                    return response;
+                } finally {
+                    inFlight.remove(cacheKey, running);
+                    running.complete(entry);
+                }
+            }
+            waits.increment();
+            Entry result;
+            try {
+                result = first.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                conflicts.increment();
+                throw new IdempotencyConflictException("A request with this " + HEADER + " is still in progress");
+            } catch (ExecutionException e) {
+                // Never completed exceptionally; treated like a failed first request
+                result = null;
+            }
+            if (result != null) {
+                return replay(result, fingerprint);
+            }
+            // The first request failed: try again, possibly as the one that runs
+        }
+    }
+
+    public CacheStatistics getStatistics() {
+        return responses.getStatistics();
+    }
+
+    /** Requests answered with a stored response. */
+    public long getReplays() {
+        return replays.sum();
+    }
+
+    /** Requests that waited for an in-flight request with the same key. */
+    public long getWaits() {
+        return waits.sum();
+    }
+
+    /** Requests refused because their key was reused or still in progress. */
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    private StoredResponse replay(Entry entry, String fingerprint) {
+        if (!entry.fingerprint.equals(fingerprint)) {
+            conflicts.increment();
+            throw new IdempotencyConflictException(HEADER + " was already used for a different request");
+        }
+        replays.increment();
+        return entry.response;
+    }
+
+    /**
+     * A complete response as first sent: status, content type and body.
+     */
+    static final class StoredResponse {
+        private final int status;
+        private final String contentType;
+        private final String body;
+
+        StoredResponse(int status, String contentType, String body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        boolean isSuccess() {
+            return status >= 200 && status < 300;
+        }
+
+        void writeTo(HttpServletResponse response, PrintWriter out) {
+            response.setStatus(status);
+            response.setContentType(contentType);
+            out.print(body);
+        }
+    }
+
+    private static final class Entry {
+        final String fingerprint;
+        final StoredResponse response;
+
+        Entry(String fingerprint, StoredResponse response) {
+            this.fingerprint = fingerprint;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.enterprise.rewards.servlet;
+
+/**
+ * Thrown when an Idempotency-Key is reused for a different request, or its first request is
+ * still running after the wait. The servlets answer it with 409.
+ */
+public class IdempotencyConflictException extends RuntimeException {
+
+    public IdempotencyConflictException(String message) {
+        super(message);
+    }
+}
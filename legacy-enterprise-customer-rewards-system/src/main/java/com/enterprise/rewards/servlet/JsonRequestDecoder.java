@@ -0,0 +1,120 @@
+package com.enterprise.rewards.servlet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * JSON counterpart of XmlRequestDecoder, built on Jackson's streaming JsonParser.
+ * Request objects are flat: the wanted fields are read as text (numbers and booleans
+ * included), null means absent, and nested objects or arrays are skipped.
+ */
+final class JsonRequestDecoder {
+
+    private JsonRequestDecoder() {}
+
+    /**
+     * Reads the given fields from a single JSON object.
+     */
+    static Map<String, String> readFields(HttpServletRequest request, int maxBytes, String... fieldNames)
+            throws IOException {
+        Set<String> names = new HashSet<>(Arrays.asList(fieldNames));
+        LimitedInputStream in = open(request, maxBytes);
+        try (JsonParser parser = JsonSupport.FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected a JSON object");
+            }
+            return readObject(parser, names);
+        } catch (JsonParseException e) {
+            throw malformed(in, maxBytes, e);
+        } catch (IOException e) {
+            if (in.isExceeded()) {
+                throw new RequestTooLargeException("Request body exceeds " + maxBytes + " bytes");
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Hands each object of the arrayField array to the handler as soon as it has been read.
+     * The body is either {"arrayField": [...]} or the bare array. Returns the number of records read.
+     */
+    static int readRecords(HttpServletRequest request, int maxBytes, String arrayField, int maxRecords,
+                           RecordHandler handler, String... fieldNames) throws IOException {
+        Set<String> names = new HashSet<>(Arrays.asList(fieldNames));
+        LimitedInputStream in = open(request, maxBytes);
+        try (JsonParser parser = JsonSupport.FACTORY.createParser(in)) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.START_OBJECT) {
+                // Skip to the array field of the wrapper object
+                while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+                    parser.nextToken();
+                    if (arrayField.equals(parser.getCurrentName()) && parser.currentToken() == JsonToken.START_ARRAY) {
+                        break;
+                    }
+                    parser.skipChildren();
+                }
+                token = parser.currentToken();
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected a \"" + arrayField + "\" array");
+            }
+            int records = 0;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Expected an object in \"" + arrayField + "\"");
+                }
+                if (records >= maxRecords) {
+                    throw new RequestTooLargeException("Request has more than " + maxRecords + " " + arrayField);
+                }
+                handler.onRecord(records++, readObject(parser, names));
+            }
+            return records;
+        } catch (JsonParseException e) {
+            throw malformed(in, maxBytes, e);
+        } catch (IOException e) {
+            if (in.isExceeded()) {
+                throw new RequestTooLargeException("Request body exceeds " + maxBytes + " bytes");
+            }
+            throw e;
+        }
+    }
+
+    private static LimitedInputStream open(HttpServletRequest request, int maxBytes) throws IOException {
+        if (request.getContentLengthLong() > maxBytes) {
+            throw new RequestTooLargeException("Request body exceeds " + maxBytes + " bytes");
+        }
+        return new LimitedInputStream(request.getInputStream(), maxBytes);
+    }
+
+    // Reads the rest of an object whose START_OBJECT has just been consumed
+    private static Map<String, String> readObject(JsonParser parser, Set<String> names) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+                parser.skipChildren();
+            } else if (value != JsonToken.VALUE_NULL && names.contains(name)) {
+                fields.put(name, parser.getText());
+            }
+        }
+        return fields;
+    }
+
+    private static IllegalArgumentException malformed(LimitedInputStream in, int maxBytes, JsonParseException e) {
+        if (in.isExceeded()) {
+            return new RequestTooLargeException("Request body exceeds " + maxBytes + " bytes");
+        }
+        return new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage());
+    }
+}
@@ -0,0 +1,170 @@
+package com.enterprise.rewards.servlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Date;
+
+import javax.servlet.http.HttpServletRequest;
+
+import com.enterprise.rewards.model.Customer;
+import com.enterprise.rewards.model.PointsTransaction;
+import com.enterprise.rewards.model.Reward;
+import com.enterprise.rewards.service.RowCallback;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * JSON responses for the /service/* servlets, written with Jackson's streaming JsonGenerator.
+ * XML stays the default; JSON is used when the client asks for it (see wantsJson).
+ * Field names match the XML element names; dates are ISO-8601 UTC strings.
+ */
+final class JsonSupport {
+
+    static final String CONTENT_TYPE = "application/json";
+
+    // Thread-safe once configured; the generators never close the servlet's writer
+    static final JsonFactory FACTORY = new JsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private JsonSupport() {}
+
+    /**
+     * Writes one element of a list.
+     */
+    interface ElementWriter<T> {
+        void write(JsonGenerator json, T item) throws IOException;
+    }
+
+    /**
+     * Source of a streamed list, e.g. DataServiceInterface::streamAllCustomers.
+     */
+    interface RowSource<T> {
+        int stream(RowCallback<T> callback) throws IOException;
+    }
+
+    static boolean isJson(String contentType) {
+        return contentType != null && contentType.toLowerCase().contains("application/json");
+    }
+
+    /**
+     * True when the response should be JSON: the Accept header names application/json, or it
+     * leaves the format open and the request body itself is JSON.
+     */
+    static boolean wantsJson(HttpServletRequest request) {
+        String accept = request.getHeader("Accept");
+        if (accept != null && accept.toLowerCase().contains("application/json")) {
+            return true;
+        }
+        return (accept == null || accept.contains("*/*")) && isJson(request.getContentType());
+    }
+
+    static JsonGenerator createGenerator(Writer out) throws IOException {
+        return FACTORY.createGenerator(out);
+    }
+
+    static void writeError(Writer out, String message) throws IOException {
+        try (JsonGenerator json = createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("error", message);
+            json.writeEndObject();
+        }
+    }
+
+    static <T> void writeObject(Writer out, T item, ElementWriter<T> writer) throws IOException {
+        try (JsonGenerator json = createGenerator(out)) {
+            writer.write(json, item);
+        }
+    }
+
+    /**
+     * {"count": n, "<field>": [...], "nextCursor": "..."}; nextCursor only when another page exists.
+     */
+    static <T> void writeList(Writer out, String field, Collection<T> items, String nextCursor,
+                              ElementWriter<T> writer) throws IOException {
+        try (JsonGenerator json = createGenerator(out)) {
+            json.writeStartObject();
+            json.writeNumberField("count", items.size());
+            json.writeArrayFieldStart(field);
+            for (T item : items) {
+                writer.write(json, item);
+            }
+            json.writeEndArray();
+            if (nextCursor != null) {
+                json.writeStringField("nextCursor", nextCursor);
+            }
+            json.writeEndObject();
+        }
+    }
+
+    /**
+     * Like writeList, but rows are written as the source delivers them and count comes last.
+     */
+    static <T> void streamList(Writer out, String field, RowSource<T> source, final ElementWriter<T> writer)
+            throws IOException {
+        // Not closed if the source fails: closing would end the array and object, and make a
+        // truncated list look complete
+        final JsonGenerator json = createGenerator(out);
+        json.writeStartObject();
+        json.writeArrayFieldStart(field);
+        int count = source.stream(item -> writer.write(json, item));
+        json.writeEndArray();
+        json.writeNumberField("count", count);
+        json.writeEndObject();
+        json.close();
+    }
+
+    static void writeCustomer(JsonGenerator json, Customer c) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("customerId", c.getCustomerId());
+        json.writeStringField("firstName", c.getFirstName());
+        json.writeStringField("lastName", c.getLastName());
+        json.writeStringField("emailAddress", c.getEmailAddress());
+        json.writeStringField("phoneNumber", c.getPhoneNumber());
+        json.writeStringField("registrationDate", format(c.getRegistrationDate()));
+        json.writeStringField("loyaltyTier", c.getLoyaltyTier());
+        json.writeNumberField("totalLifetimePoints", c.getTotalLifetimePoints());
+        json.writeNumberField("currentAvailablePoints", c.getCurrentAvailablePoints());
+        json.writeStringField("accountStatus", c.getAccountStatus());
+        json.writeEndObject();
+    }
+
+    static void writeTransaction(JsonGenerator json, PointsTransaction t) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("transactionId", t.getTransactionId());
+        json.writeStringField("customerId", t.getCustomerId());
+        json.writeStringField("transactionType", t.getTransactionType());
+        json.writeNumberField("pointsAmount", t.getPointsAmount());
+        json.writeStringField("transactionDate", format(t.getTransactionDate()));
+        json.writeStringField("expirationDate", format(t.getExpirationDate()));
+        json.writeStringField("relatedOrderId", t.getRelatedOrderId());
+        json.writeStringField("description", t.getDescription());
+        json.writeStringField("createdBy", t.getCreatedBy());
+        json.writeStringField("status", t.getStatus());
+        json.writeEndObject();
+    }
+
+    static void writeReward(JsonGenerator json, Reward r) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("rewardId", r.getRewardId());
+        json.writeStringField("rewardName", r.getRewardName());
+        json.writeNumberField("pointsRequired", r.getPointsRequired());
+        json.writeStringField("rewardType", r.getRewardType());
+        json.writeStringField("rewardValue", r.getRewardValue());
+        json.writeNumberField("availabilityCount", r.getAvailabilityCount());
+        json.writeStringField("category", r.getCategory());
+        json.writeStringField("description", r.getDescription());
+        json.writeBooleanField("isActive", r.isActive());
+        json.writeEndObject();
+    }
+
+    private static String format(Date date) {
+        if (date == null) {
+            return null;
+        }
+        // getTime() rather than toInstant(): java.sql.Date does not support the latter
+        return DateTimeFormatter.ISO_INSTANT.format(Instant.ofEpochMilli(date.getTime()));
+    }
+}
@@ -0,0 +1,50 @@
+package com.enterprise.rewards.servlet;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Fails the read once more than maxBytes have been consumed, whatever Content-Length said.
+ * Parsers wrap the IOException in their own exception, so callers check isExceeded().
+ */
+class LimitedInputStream extends FilterInputStream {
+    private final long maxBytes;
+    private long count;
+    private boolean exceeded;
+
+    LimitedInputStream(InputStream in, long maxBytes) {
+        super(in);
+        this.maxBytes = maxBytes;
+    }
+
+    boolean isExceeded() {
+        return exceeded;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    private void count(int n) throws IOException {
+        count += n;
+        if (count > maxBytes) {
+            exceeded = true;
+            throw new IOException("Request body exceeds " + maxBytes + " bytes");
+        }
+    }
+}
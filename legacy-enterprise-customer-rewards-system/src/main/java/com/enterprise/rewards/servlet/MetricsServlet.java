@@ -0,0 +1,263 @@
+package com.enterprise.rewards.servlet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.enterprise.rewards.cache.CacheStatistics;
+import com.enterprise.rewards.filter.CredentialCache;
+import com.enterprise.rewards.jdbc.ConnectionPool;
+import com.enterprise.rewards.jdbc.PoolStatistics;
+import com.enterprise.rewards.jdbc.StatementProfiler;
+import com.enterprise.rewards.metrics.LatencyHistogram;
+import com.enterprise.rewards.metrics.OperationMetrics;
+import com.enterprise.rewards.metrics.ServiceMetrics;
+import com.enterprise.rewards.service.CachingDataService;
+import com.enterprise.rewards.service.PointsExpirationEngine;
+import com.enterprise.rewards.service.RewardStockReservations;
+import com.enterprise.rewards.service.TierEngine;
+
+/**
+ * Serves /service/metrics in the Prometheus text format: latency histograms and error
+ * counts per data-service method and per endpoint, plus the connection pool, SQL profiler,
+ * points expiration, tier engine, redemption gate, idempotency cache, service executor and cache statistics shown on the admin page.
+ *
+ * Besides the cumulative buckets, each histogram is exported as p50/p99/p999 gauges
+ * computed from the full-resolution histogram.
+ */
+public class MetricsServlet extends HttpServlet {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    // Bucket bounds in nanoseconds and as written in the le label
+    private static final long[] BUCKET_NANOS = {
+            50000L, 100000L, 250000L, 500000L, 1000000L, 2500000L, 5000000L, 10000000L, 25000000L,
+            50000000L, 100000000L, 250000000L, 500000000L, 1000000000L, 2500000000L, 5000000000L, 10000000000L};
+    private static final String[] BUCKET_LABELS = {
+            "0.00005", "0.0001", "0.00025", "0.0005", "0.001", "0.0025", "0.005", "0.01", "0.025",
+            "0.05", "0.1", "0.25", "0.5", "1", "2.5", "5", "10"};
+    private static final double[] QUANTILES = {50, 99, 99.9};
+    private static final String[] QUANTILE_LABELS = {"0.5", "0.99", "0.999"};
+
+    private ServiceMetrics metrics;
+
+    @Override
+    public void init() throws ServletException {
+        metrics = ServiceMetrics.get(getServletContext());
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        writeDataServiceMetrics(out);
+        writeEndpointMetrics(out);
+        ServletContext context = getServletContext();
+        ConnectionPool pool = (ConnectionPool) context.getAttribute(ConnectionPool.CONTEXT_ATTRIBUTE);
+        if (pool != null) {
+            writePoolMetrics(out, pool.getStatistics());
+        }
+        StatementProfiler profiler = (StatementProfiler) context.getAttribute(StatementProfiler.CONTEXT_ATTRIBUTE);
+        if (profiler != null) {
+            writeCounter(out, "rewards_db_slow_queries_total", "Statements that reached db.profile.slowQueryMs.", profiler.getSlowQueries());
+            writeCounter(out, "rewards_db_statement_leaks_total", "Statements left open until their connection closed.", profiler.getStatementLeaks());
+            writeCounter(out, "rewards_db_result_set_leaks_total", "Result sets left open until their connection closed.", profiler.getResultSetLeaks());
+        }
+        PointsExpirationEngine expiration = (PointsExpirationEngine) context.getAttribute(PointsExpirationEngine.CONTEXT_ATTRIBUTE);
+        if (expiration != null) {
+            writeCounter(out, "rewards_points_expired_total", "Points written off by the expiration engine.", expiration.getPointsExpired());
+            writeCounter(out, "rewards_points_expired_lots_total", "Points lots written off by the expiration engine.", expiration.getLotsExpired());
+        }
+        TierEngine tiers = (TierEngine) context.getAttribute(TierEngine.CONTEXT_ATTRIBUTE);
+        if (tiers != null) {
+            writeCounter(out, "rewards_tier_changes_total", "Tier changes made by transactions.", tiers.getIncrementalChanges());
+            writeCounter(out, "rewards_tier_rescore_changes_total", "Tier changes made by background rescore passes.", tiers.getRescoreChanges());
+            writeCounter(out, "rewards_tier_rescore_customers_total", "Customers scored by background rescore passes.", tiers.getCustomersScored());
+            writeCounter(out, "rewards_tier_rescore_failed_chunks_total", "Rescore chunks that failed.", tiers.getFailedChunks());
+        }
+        RewardStockReservations reservations = (RewardStockReservations) context.getAttribute(RewardStockReservations.CONTEXT_ATTRIBUTE);
+        if (reservations != null) {
+            writeCounter(out, "rewards_redemption_admitted_total", "Redemptions admitted to the database by the stock counters.", reservations.getAdmitted());
+            writeCounter(out, "rewards_redemption_sold_out_total", "Redemptions turned away by the stock counters as sold out.", reservations.getSoldOut());
+            writeCounter(out, "rewards_redemption_stock_conflicts_total", "Admitted redemptions the database found out of stock.", reservations.getConflicts());
+        }
+        IdempotencyCache idempotency = (IdempotencyCache) context.getAttribute(IdempotencyCache.CONTEXT_ATTRIBUTE);
+        if (idempotency != null) {
+            writeCounter(out, "rewards_idempotency_replays_total", "Requests answered with the stored response of their Idempotency-Key.", idempotency.getReplays());
+            writeCounter(out, "rewards_idempotency_waits_total", "Requests that waited for an in-flight request with the same Idempotency-Key.", idempotency.getWaits());
+            writeCounter(out, "rewards_idempotency_conflicts_total", "Requests refused because their Idempotency-Key was reused or still in progress.", idempotency.getConflicts());
+        }
+        ServiceExecutor executor = (ServiceExecutor) context.getAttribute(ServiceExecutor.CONTEXT_ATTRIBUTE);
+        if (executor != null) {
+            writeExecutorMetrics(out, executor);
+        }
+        List<CacheStatistics> caches = new ArrayList<>();
+        CachingDataService cachingService = (CachingDataService) context.getAttribute(CachingDataService.CONTEXT_ATTRIBUTE);
+        if (cachingService != null) {
+            caches.addAll(cachingService.getCacheStatistics());
+        }
+        CredentialCache credentialCache = (CredentialCache) context.getAttribute(CredentialCache.CONTEXT_ATTRIBUTE);
+        if (credentialCache != null) {
+            caches.add(credentialCache.getStatistics());
+        }
+        if (idempotency != null) {
+            caches.add(idempotency.getStatistics());
+        }
+        if (!caches.isEmpty()) {
+            writeCacheMetrics(out, caches);
+        }
+        response.setContentType(CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-store");
+        response.getWriter().write(out.toString());
+    }
+
+    private void writeDataServiceMetrics(StringBuilder out) {
+        Map<String, OperationMetrics> methods = metrics.getDataServiceMethods();
+        if (methods.isEmpty()) {
+            return;
+        }
+        List<String> labels = new ArrayList<>();
+        List<LatencyHistogram.Snapshot> snapshots = new ArrayList<>();
+        List<Long> errors = new ArrayList<>();
+        for (Map.Entry<String, OperationMetrics> e : methods.entrySet()) {
+            labels.add("method=\"" + escape(e.getKey()) + "\"");
+            snapshots.add(e.getValue().getLatency());
+            errors.add(e.getValue().getErrors());
+        }
+        writeHistograms(out, "rewards_dataservice_duration_seconds", "Latency of data service calls.", labels, snapshots);
+        writeCounters(out, "rewards_dataservice_errors_total", "Data service calls that threw.", labels, errors);
+    }
+
+    private void writeEndpointMetrics(StringBuilder out) {
+        Map<ServiceMetrics.EndpointKey, OperationMetrics> endpoints = metrics.getEndpoints();
+        if (endpoints.isEmpty()) {
+            return;
+        }
+        List<String> labels = new ArrayList<>();
+        List<LatencyHistogram.Snapshot> snapshots = new ArrayList<>();
+        List<Long> errors = new ArrayList<>();
+        for (Map.Entry<ServiceMetrics.EndpointKey, OperationMetrics> e : endpoints.entrySet()) {
+            labels.add("endpoint=\"" + escape(e.getKey().getPattern()) + "\",method=\"" + escape(e.getKey().getHttpMethod()) + "\"");
+            snapshots.add(e.getValue().getLatency());
+            errors.add(e.getValue().getErrors());
+        }
+        writeHistograms(out, "rewards_http_request_duration_seconds", "Latency of /service/* requests.", labels, snapshots);
+        writeCounters(out, "rewards_http_request_errors_total", "/service/* requests that failed with a 5xx status.", labels, errors);
+    }
+
+    private static void writePoolMetrics(StringBuilder out, PoolStatistics stats) {
+        writeGauge(out, "rewards_db_pool_active_connections", "Connections in use.", stats.getActive());
+        writeGauge(out, "rewards_db_pool_idle_connections", "Idle pooled connections.", stats.getIdle());
+        writeGauge(out, "rewards_db_pool_max_connections", "Pool size limit.", stats.getMaxSize());
+        writeGauge(out, "rewards_db_pool_waiting_threads", "Threads waiting for a connection.", stats.getWaiters());
+        writeCounter(out, "rewards_db_pool_connections_created_total", "Physical connections opened.", stats.getCreated());
+        writeCounter(out, "rewards_db_pool_connections_closed_total", "Physical connections closed.", stats.getDestroyed());
+        writeCounter(out, "rewards_db_pool_acquire_timeouts_total", "Connection requests that timed out.", stats.getTimeouts());
+        List<String> labels = new ArrayList<>();
+        labels.add("");
+        List<LatencyHistogram.Snapshot> snapshots = new ArrayList<>();
+        snapshots.add(stats.getAcquireTimes());
+        writeHistograms(out, "rewards_db_pool_acquire_duration_seconds", "Time to obtain a pooled connection.", labels, snapshots);
+    }
+
+    private static void writeExecutorMetrics(StringBuilder out, ServiceExecutor executor) {
+        writeGauge(out, "rewards_service_executor_active_threads", "Worker threads running a request.", executor.getActiveThreads());
+        writeGauge(out, "rewards_service_executor_max_threads", "Worker thread limit.", executor.getMaxThreads());
+        writeGauge(out, "rewards_service_executor_queued_requests", "Requests waiting for a worker.", executor.getQueued());
+        writeGauge(out, "rewards_service_executor_queue_capacity", "Queue size limit.", executor.getQueueSize());
+        writeCounter(out, "rewards_service_executor_completed_total", "Requests processed.", executor.getCompleted());
+        writeCounter(out, "rewards_service_executor_rejected_total", "Requests rejected with a full queue.", executor.getRejected());
+        writeCounter(out, "rewards_service_executor_timeouts_total", "Requests that timed out.", executor.getTimeouts());
+    }
+
+    private static void writeCacheMetrics(StringBuilder out, List<CacheStatistics> caches) {
+        List<String> labels = new ArrayList<>();
+        List<Long> hits = new ArrayList<>();
+        List<Long> misses = new ArrayList<>();
+        List<Long> evictions = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        List<Long> bytes = new ArrayList<>();
+        for (CacheStatistics stats : caches) {
+            labels.add("cache=\"" + escape(stats.getName()) + "\"");
+            hits.add(stats.getHits());
+            misses.add(stats.getMisses());
+            evictions.add(stats.getEvictions());
+            sizes.add((long) stats.getSize());
+            bytes.add(stats.getEstimatedBytes());
+        }
+        writeCounters(out, "rewards_cache_hits_total", "Cache hits.", labels, hits);
+        writeCounters(out, "rewards_cache_misses_total", "Cache misses.", labels, misses);
+        writeCounters(out, "rewards_cache_evictions_total", "Entries evicted to stay within the bounds.", labels, evictions);
+        writeSamples(out, "rewards_cache_entries", "gauge", "Cached entries.", labels, sizes);
+        writeSamples(out, "rewards_cache_estimated_bytes", "gauge", "Estimated memory held by the cache.", labels, bytes);
+    }
+
+    private static void writeHistograms(StringBuilder out, String name, String help, List<String> labels,
+                                        List<LatencyHistogram.Snapshot> snapshots) {
+        header(out, name, "histogram", help);
+        for (int i = 0; i < labels.size(); i++) {
+            String prefix = labels.get(i).isEmpty() ? "" : labels.get(i) + ",";
+            LatencyHistogram.Snapshot s = snapshots.get(i);
+            for (int b = 0; b < BUCKET_NANOS.length; b++) {
+                out.append(name).append("_bucket{").append(prefix).append("le=\"").append(BUCKET_LABELS[b]).append("\"} ")
+                        .append(s.getCountAtOrBelow(BUCKET_NANOS[b])).append('\n');
+            }
+            out.append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ").append(s.getCount()).append('\n');
+            out.append(name).append("_sum").append(braces(labels.get(i))).append(' ').append(seconds(s.getSumNanos())).append('\n');
+            out.append(name).append("_count").append(braces(labels.get(i))).append(' ').append(s.getCount()).append('\n');
+        }
+        String quantiles = name.substring(0, name.length() - "_seconds".length()) + "_quantile_seconds";
+        header(out, quantiles, "gauge", "Percentiles of " + name + " since startup.");
+        for (int i = 0; i < labels.size(); i++) {
+            String prefix = labels.get(i).isEmpty() ? "" : labels.get(i) + ",";
+            for (int q = 0; q < QUANTILES.length; q++) {
+                out.append(quantiles).append('{').append(prefix).append("quantile=\"").append(QUANTILE_LABELS[q]).append("\"} ")
+                        .append(seconds(snapshots.get(i).getPercentileNanos(QUANTILES[q]))).append('\n');
+            }
+        }
+    }
+
+    private static void writeCounters(StringBuilder out, String name, String help, List<String> labels, List<Long> values) {
+        writeSamples(out, name, "counter", help, labels, values);
+    }
+
+    private static void writeSamples(StringBuilder out, String name, String type, String help, List<String> labels, List<Long> values) {
+        header(out, name, type, help);
+        for (int i = 0; i < labels.size(); i++) {
+            out.append(name).append(braces(labels.get(i))).append(' ').append(values.get(i)).append('\n');
+        }
+    }
+
+    private static void writeGauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, "gauge", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void writeCounter(StringBuilder out, String name, String help, long value) {
+        header(out, name, "counter", help);
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
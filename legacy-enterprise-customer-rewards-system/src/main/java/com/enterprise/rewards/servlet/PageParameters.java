@@ -0,0 +1,64 @@
+package com.enterprise.rewards.servlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Parses the "limit" and "after" query parameters used by the paginated list endpoints.
+ * The cursor handed to clients is an opaque, URL-safe encoding of the last id on a page.
+ */
+final class PageParameters {
+
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 1000;
+
+    private PageParameters() {}
+
+    /**
+     * True when the client asked for a page rather than the full list.
+     */
+    static boolean isPaged(HttpServletRequest request) {
+        return request.getParameter("limit") != null || request.getParameter("after") != null;
+    }
+
+    static int limit(HttpServletRequest request) {
+        String value = request.getParameter("limit");
+        if (value == null || value.trim().isEmpty()) {
+            return DEFAULT_LIMIT;
+        }
+        int limit;
+        try {
+            limit = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit parameter");
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT);
+        }
+        return limit;
+    }
+
+    /**
+     * Returns the id encoded in the "after" cursor, or null for the first page.
+     */
+    static String after(HttpServletRequest request) {
+        String cursor = request.getParameter("after");
+        if (cursor == null || cursor.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid after cursor");
+        }
+    }
+
+    static String encodeCursor(String key) {
+        if (key == null) {
+            return null;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,10 @@
+package com.enterprise.rewards.servlet;
+
+import java.util.Map;
+
+/**
+ * Receives each record of a multi-record request body, numbered from 0 in document order.
+ */
+interface RecordHandler {
+    void onRecord(int index, Map<String, String> fields);
+}
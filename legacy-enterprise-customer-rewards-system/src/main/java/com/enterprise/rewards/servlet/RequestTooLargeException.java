@@ -0,0 +1,11 @@
+package com.enterprise.rewards.servlet;
+
+/**
+ * Thrown by the request decoders when a body or its number of records is over the limit.
+ * The servlets answer it with 413.
+ */
+class RequestTooLargeException extends IllegalArgumentException {
+    RequestTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -1,30 +1,54 @@
 package com.enterprise.rewards.servlet;
 
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.enterprise.rewards.model.PointsTransaction;
 import com.enterprise.rewards.model.Reward;
+import com.enterprise.rewards.service.ContextParams;
 import com.enterprise.rewards.service.DataServiceFactory;
 import com.enterprise.rewards.service.DataServiceInterface;
+import com.enterprise.rewards.service.Page;
+import com.enterprise.rewards.service.RedemptionResult;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
 
-public class RewardServiceServlet extends HttpServlet {
+public class RewardServiceServlet extends AsyncServiceServlet {
+    // Fields read from a POSTed reward (XML elements or JSON properties)
+    private static final String[] REWARD_FIELDS = {"rewardId", "rewardName", "pointsRequired", "rewardType", "rewardValue", "category", "description", "isActive", "availabilityCount"};
+    // Fields of a redemption (POST /service/rewards/redeem)
+    private static final String[] REDEEM_FIELDS = {"customerId", "rewardId"};
     private DataServiceInterface dataService;
+    // Write full lists row by row as they are read (context-param service.streamLists)
+    private boolean streamLists;
+    // Largest accepted POST body (context-param service.request.maxBytes)
+    private int maxRequestBytes;
 
     @Override
     public void init() throws ServletException {
+        super.init();
         dataService = DataServiceFactory.getInstance(getServletContext());
+        streamLists = "true".equalsIgnoreCase(getServletContext().getInitParameter("service.streamLists"));
+        maxRequestBytes = ContextParams.getInt(getServletContext(), "service.request.maxBytes", XmlRequestDecoder.DEFAULT_MAX_BYTES);
     }
 
     @Override
-    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+    protected boolean isStreamedList(HttpServletRequest request) {
+        return streamLists && isFullListRequest(request, "rewardId");
+    }
+
+    @Override
+    protected void handleGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        response.setContentType("application/xml");
+        boolean json = JsonSupport.wantsJson(request);
+        response.setContentType(json ? JsonSupport.CONTENT_TYPE : "application/xml");
         response.setCharacterEncoding("UTF-8");
         PrintWriter out = response.getWriter();
         try {
@@ -38,51 +62,76 @@ public class RewardServiceServlet extends HttpServlet {
             if (rewardId != null && !rewardId.trim().isEmpty()) {
                 Reward reward = dataService.getReward(rewardId);
                 if (reward != null) {
-                    out.println(generateRewardXml(reward));
+                    writeReward(out, json, reward);
                 } else {
                     response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-                    writeXmlError(out, "Reward not found: " + rewardId);
+                    writeError(out, json, "Reward not found: " + rewardId);
+                }
+            } else if (PageParameters.isPaged(request)) {
+                String after = PageParameters.after(request);
+                Page<Reward> page = dataService.getRewardsPage(after, PageParameters.limit(request));
+                writeRewardList(out, json, page.getItems(), PageParameters.encodeCursor(page.getNextKey()));
+            } else if (streamLists) {
+                try {
+                    if (json) {
+                        JsonSupport.streamList(out, "rewards", dataService::streamAllRewards, JsonSupport::writeReward);
+                    } else {
+                        streamRewardsListXml(out);
+                    }
+                } catch (RuntimeException e) {
+                    // Reset for the error document below, or abort if rows have already been sent
+                    resetFailedStream(response, json, e);
+                    throw e;
                 }
             } else {
                 Collection<Reward> rewards = dataService.getAllRewards();
-                out.println(generateRewardsListXml(rewards));
+                writeRewardList(out, json, rewards, null);
             }
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            writeError(out, json, e.getMessage());
+        } catch (StreamAbortedException e) {
+            throw e;
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            writeXmlError(out, "Internal server error: " + e.getMessage());
+            writeError(out, json, "Internal server error: " + e.getMessage());
         }
     }
 
     @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+    protected void handlePost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        response.setContentType("application/xml");
+        if ("/redeem".equals(request.getPathInfo())) {
+            handleRedeem(request, response);
+            return;
+        }
+        boolean json = JsonSupport.wantsJson(request);
+        response.setContentType(json ? JsonSupport.CONTENT_TYPE : "application/xml");
         response.setCharacterEncoding("UTF-8");
         PrintWriter out = response.getWriter();
         try {
             String contentType = request.getContentType();
-            if (contentType == null || !contentType.toLowerCase().contains("application/xml")) {
+            boolean jsonInput = JsonSupport.isJson(contentType);
+            if (!jsonInput && (contentType == null || !contentType.toLowerCase().contains("application/xml"))) {
                 response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
-                writeXmlError(out, "Only application/xml input is supported");
+                writeError(out, json, "Only application/xml or application/json input is supported");
                 return;
             }
-            javax.xml.parsers.DocumentBuilderFactory dbFactory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
-            javax.xml.parsers.DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            org.w3c.dom.Document doc = dBuilder.parse(request.getInputStream());
-            doc.getDocumentElement().normalize();
-            org.w3c.dom.Element root = doc.getDocumentElement();
-            String rewardId = getXmlTagValue(root, "rewardId");
-            String rewardName = getXmlTagValue(root, "rewardName");
-            String pointsRequiredStr = getXmlTagValue(root, "pointsRequired");
-            String rewardType = getXmlTagValue(root, "rewardType");
-            String rewardValue = getXmlTagValue(root, "rewardValue");
-            String category = getXmlTagValue(root, "category");
-            String description = getXmlTagValue(root, "description");
-            String isActiveStr = getXmlTagValue(root, "isActive");
-            String availabilityCountStr = getXmlTagValue(root, "availabilityCount");
+            Map<String, String> fields = jsonInput
+                    ? JsonRequestDecoder.readFields(request, maxRequestBytes, REWARD_FIELDS)
+                    : XmlRequestDecoder.readFields(request, maxRequestBytes, REWARD_FIELDS);
+            String rewardId = fields.get("rewardId");
+            String rewardName = fields.get("rewardName");
+            String pointsRequiredStr = fields.get("pointsRequired");
+            String rewardType = fields.get("rewardType");
+            String rewardValue = fields.get("rewardValue");
+            String category = fields.get("category");
+            String description = fields.get("description");
+            String isActiveStr = fields.get("isActive");
+            String availabilityCountStr = fields.get("availabilityCount");
             if (rewardId == null || rewardName == null || pointsRequiredStr == null) {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                writeXmlError(out, "Missing required fields: rewardId, rewardName, pointsRequired");
+                writeError(out, json, "Missing required fields: rewardId, rewardName, pointsRequired");
                 return;
             }
             int pointsRequired = Integer.parseInt(pointsRequiredStr);
@@ -99,33 +148,133 @@ public class RewardServiceServlet extends HttpServlet {
             reward.setActive(isActive);
             reward.setAvailabilityCount(availabilityCount);
             dataService.saveReward(reward);
-            out.println(generateRewardXml(reward));
+            writeReward(out, json, reward);
+        } catch (RequestTooLargeException e) {
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            writeError(out, json, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // Includes NumberFormatException for pointsRequired / availabilityCount
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            writeError(out, json, e.getMessage());
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            writeXmlError(out, "Error creating reward: " + e.getMessage());
+            writeError(out, json, "Error creating reward: " + e.getMessage());
         }
     }
 
-    // Helper to extract XML tag value
-    private String getXmlTagValue(org.w3c.dom.Element element, String tagName) {
-        org.w3c.dom.NodeList nodeList = element.getElementsByTagName(tagName);
-        if (nodeList != null && nodeList.getLength() > 0) {
-            org.w3c.dom.Node node = nodeList.item(0);
-            if (node != null && node.getTextContent() != null) {
-                return node.getTextContent();
+    // POST /service/rewards/redeem with customerId and rewardId as XML, JSON or form fields.
+    // Refusals are answered 404 (unknown customer or reward) or 409 with the refusal status.
+    private void handleRedeem(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        boolean json = JsonSupport.wantsJson(request);
+        response.setContentType(json ? JsonSupport.CONTENT_TYPE : "application/xml");
+        response.setCharacterEncoding("UTF-8");
+        PrintWriter out = response.getWriter();
+        try {
+            String contentType = request.getContentType() != null ? request.getContentType().toLowerCase(Locale.ROOT) : "";
+            Map<String, String> fields;
+            if (contentType.startsWith("application/x-www-form-urlencoded")) {
+                fields = new HashMap<>();
+                for (String name : REDEEM_FIELDS) {
+                    fields.put(name, request.getParameter(name));
+                }
+            } else if (JsonSupport.isJson(contentType)) {
+                fields = JsonRequestDecoder.readFields(request, maxRequestBytes, REDEEM_FIELDS);
+            } else if (contentType.contains("application/xml")) {
+                fields = XmlRequestDecoder.readFields(request, maxRequestBytes, REDEEM_FIELDS);
+            } else {
+                response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+                writeError(out, json, "Only application/xml, application/json or form input is supported");
+                return;
+            }
+            String customerId = fields.get("customerId");
+            String rewardId = fields.get("rewardId");
+            if (customerId == null || customerId.trim().isEmpty() || rewardId == null || rewardId.trim().isEmpty()) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                writeError(out, json, "Missing required fields: customerId, rewardId");
+                return;
             }
+            RedemptionResult result = dataService.redeemReward(customerId.trim(), rewardId.trim());
+            if (!result.isRedeemed()) {
+                boolean notFound = result.getStatus() == RedemptionResult.Status.CUSTOMER_NOT_FOUND
+                        || result.getStatus() == RedemptionResult.Status.REWARD_NOT_FOUND;
+                response.setStatus(notFound ? HttpServletResponse.SC_NOT_FOUND : HttpServletResponse.SC_CONFLICT);
+            }
+            writeRedemption(out, json, rewardId.trim(), result);
+        } catch (RequestTooLargeException e) {
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            writeError(out, json, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            writeError(out, json, e.getMessage());
+        } catch (Exception e) {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            writeError(out, json, "Error redeeming reward: " + e.getMessage());
         }
-        return null;
     }
 
-    // Helper to write XML error
-    private void writeXmlError(PrintWriter out, String message) {
+    private void writeRedemption(PrintWriter out, boolean json, String rewardId, RedemptionResult result) throws IOException {
+        PointsTransaction txn = result.getTransaction();
+        if (json) {
+            try (JsonGenerator generator = JsonSupport.createGenerator(out)) {
+                generator.writeStartObject();
+                generator.writeStringField("status", result.getStatus().name());
+                generator.writeStringField("rewardId", rewardId);
+                if (txn != null) {
+                    generator.writeStringField("customerId", txn.getCustomerId());
+                    generator.writeStringField("transactionId", txn.getTransactionId());
+                    generator.writeNumberField("pointsRedeemed", txn.getPointsAmount());
+                } else {
+                    generator.writeStringField("error", result.getError());
+                }
+                generator.writeEndObject();
+            }
+            return;
+        }
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<redemption>\n");
+        xml.append("  <status>").append(result.getStatus().name()).append("</status>\n");
+        xml.append("  <rewardId>").append(escapeXml(rewardId)).append("</rewardId>\n");
+        if (txn != null) {
+            xml.append("  <customerId>").append(escapeXml(txn.getCustomerId())).append("</customerId>\n");
+            xml.append("  <transactionId>").append(escapeXml(txn.getTransactionId())).append("</transactionId>\n");
+            xml.append("  <pointsRedeemed>").append(txn.getPointsAmount()).append("</pointsRedeemed>\n");
+        } else {
+            xml.append("  <error>").append(escapeXml(result.getError())).append("</error>\n");
+        }
+        xml.append("</redemption>");
+        out.println(xml);
+    }
+
+    private void writeReward(PrintWriter out, boolean json, Reward r) throws IOException {
+        if (json) {
+            JsonSupport.writeObject(out, r, JsonSupport::writeReward);
+        } else {
+            out.println(generateRewardXml(r));
+        }
+    }
+
+    private void writeRewardList(PrintWriter out, boolean json, Collection<Reward> rewards, String nextCursor)
+            throws IOException {
+        if (json) {
+            JsonSupport.writeList(out, "rewards", rewards, nextCursor, JsonSupport::writeReward);
+        } else {
+            out.println(generateRewardsListXml(rewards, nextCursor));
+        }
+    }
+
+    // Helper to write an error in the response format
+    private void writeError(PrintWriter out, boolean json, String message) throws IOException {
+        if (json) {
+            JsonSupport.writeError(out, message);
+            return;
+        }
         out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
         out.println("<error>" + escapeXml(message) + "</error>");
     }
 
     // Escape XML special characters
-    private String escapeXml(String input) {
+    String escapeXml(String input) {
         if (input == null) return "";
         return input.replace("&", "&amp;")
                     .replace("<", "&lt;")
@@ -152,26 +301,49 @@ public class RewardServiceServlet extends HttpServlet {
         return xml.toString();
     }
 
-    // XML serialization for a list of Rewards
-    private String generateRewardsListXml(Collection<Reward> rewards) {
+    // XML serialization for a list of Rewards; nextCursor is only written when another page exists
+    private String generateRewardsListXml(Collection<Reward> rewards, String nextCursor) {
         StringBuilder xml = new StringBuilder();
         xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
         xml.append("<rewards>\n");
         xml.append("  <count>").append(rewards.size()).append("</count>\n");
         for (Reward r : rewards) {
-            xml.append("  <reward>\n");
-            xml.append("    <rewardId>").append(escapeXml(r.getRewardId())).append("</rewardId>\n");
-            xml.append("    <rewardName>").append(escapeXml(r.getRewardName())).append("</rewardName>\n");
-            xml.append("    <pointsRequired>").append(r.getPointsRequired()).append("</pointsRequired>\n");
-            xml.append("    <rewardType>").append(escapeXml(r.getRewardType())).append("</rewardType>\n");
-            xml.append("    <rewardValue>").append(escapeXml(r.getRewardValue())).append("</rewardValue>\n");
-            xml.append("    <availabilityCount>").append(r.getAvailabilityCount()).append("</availabilityCount>\n");
-            xml.append("    <category>").append(escapeXml(r.getCategory())).append("</category>\n");
-            xml.append("    <description>").append(escapeXml(r.getDescription())).append("</description>\n");
-            xml.append("    <isActive>").append(r.isActive()).append("</isActive>\n");
-            xml.append("  </reward>\n");
+            appendRewardElement(xml, r);
+        }
+        if (nextCursor != null) {
+            xml.append("  <nextCursor>").append(nextCursor).append("</nextCursor>\n");
         }
         xml.append("</rewards>");
         return xml.toString();
     }
+
+    // Streams the full list straight from the data service cursor to the response writer.
+    // The row count is only known at the end, so <count> follows the reward elements.
+    private void streamRewardsListXml(final PrintWriter out) throws IOException {
+        out.print("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.print("<rewards>\n");
+        final StringBuilder xml = new StringBuilder(512);
+        int count = dataService.streamAllRewards(r -> {
+            xml.setLength(0);
+            appendRewardElement(xml, r);
+            out.append(xml);
+        });
+        out.print("  <count>" + count + "</count>\n");
+        out.println("</rewards>");
+    }
+
+    // XML element for one Reward inside a list document
+    private void appendRewardElement(StringBuilder xml, Reward r) {
+        xml.append("  <reward>\n");
+        xml.append("    <rewardId>").append(escapeXml(r.getRewardId())).append("</rewardId>\n");
+        xml.append("    <rewardName>").append(escapeXml(r.getRewardName())).append("</rewardName>\n");
+        xml.append("    <pointsRequired>").append(r.getPointsRequired()).append("</pointsRequired>\n");
+        xml.append("    <rewardType>").append(escapeXml(r.getRewardType())).append("</rewardType>\n");
+        xml.append("    <rewardValue>").append(escapeXml(r.getRewardValue())).append("</rewardValue>\n");
+        xml.append("    <availabilityCount>").append(r.getAvailabilityCount()).append("</availabilityCount>\n");
+        xml.append("    <category>").append(escapeXml(r.getCategory())).append("</category>\n");
+        xml.append("    <description>").append(escapeXml(r.getDescription())).append("</description>\n");
+        xml.append("    <isActive>").append(r.isActive()).append("</isActive>\n");
+        xml.append("  </reward>\n");
+    }
 }
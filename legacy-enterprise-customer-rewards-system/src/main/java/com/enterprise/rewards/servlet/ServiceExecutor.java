@@ -0,0 +1,114 @@
+package com.enterprise.rewards.servlet;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.ServletContext;
+
+import com.enterprise.rewards.service.ContextParams;
+
+/**
+ * Bounded worker pool that runs the data-service work of async service requests, so
+ * Tomcat's connector threads are released while JDBC calls block.
+ * Sized from web.xml: service.executor.threads and service.executor.queueSize.
+ * One instance per web application, created on first use and shut down by
+ * ServiceExecutorListener.
+ */
+public class ServiceExecutor {
+
+    /** ServletContext attribute under which the shared executor is published. */
+    public static final String CONTEXT_ATTRIBUTE = "com.enterprise.rewards.serviceExecutor";
+
+    private final ThreadPoolExecutor executor;
+    private final int queueSize;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    ServiceExecutor(int threads, int queueSize) {
+        this.queueSize = queueSize;
+        final AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), r -> {
+                    Thread t = new Thread(r, "rewards-service-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the application's executor, creating it on first use.
+     */
+    static ServiceExecutor get(ServletContext context) {
+        synchronized (context) {
+            ServiceExecutor executor = (ServiceExecutor) context.getAttribute(CONTEXT_ATTRIBUTE);
+            if (executor == null) {
+                executor = new ServiceExecutor(
+                        ContextParams.getInt(context, "service.executor.threads", 32),
+                        ContextParams.getInt(context, "service.executor.queueSize", 256));
+                context.setAttribute(CONTEXT_ATTRIBUTE, executor);
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * Queues a task; throws RejectedExecutionException when all threads are busy and the queue is full.
+     */
+    void execute(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    void recordTimeout() {
+        timeouts.incrementAndGet();
+    }
+
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    public int getMaxThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public long getCompleted() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.enterprise.rewards.servlet;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+/**
+ * Stops the async service executor when the web application is undeployed or Tomcat stops.
+ */
+@WebListener
+public class ServiceExecutorListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // The executor is created lazily by the first async service request
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        ServiceExecutor executor = (ServiceExecutor) sce.getServletContext().getAttribute(ServiceExecutor.CONTEXT_ATTRIBUTE);
+        if (executor != null) {
+            executor.shutdown();
+            System.out.println("ServiceExecutorListener - service executor shut down");
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.enterprise.rewards.servlet;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a streamed list fails after part of it has been sent. The document cannot be
+ * turned into an error any more, so the exception is left to the container, which closes the
+ * connection without ending the response: the client sees a failed transfer instead of a
+ * complete-looking, truncated list.
+ */
+class StreamAbortedException extends IOException {
+    StreamAbortedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
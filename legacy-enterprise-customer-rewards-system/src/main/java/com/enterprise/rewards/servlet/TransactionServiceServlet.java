@@ -1,30 +1,62 @@
 package com.enterprise.rewards.servlet;
 
 import javax.servlet.ServletException;
-import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.enterprise.rewards.model.PointsTransaction;
+import com.enterprise.rewards.service.BatchItemResult;
+import com.enterprise.rewards.service.ContextParams;
 import com.enterprise.rewards.service.DataServiceFactory;
 import com.enterprise.rewards.service.DataServiceInterface;
+import com.enterprise.rewards.service.Page;
+import com.enterprise.rewards.service.TransactionQueueFullException;
+import com.enterprise.rewards.service.TransactionRequest;
+import com.fasterxml.jackson.core.JsonGenerator;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+
+public class TransactionServiceServlet extends AsyncServiceServlet {
+    // Elements read from a <transaction>; amount is accepted as an alias of pointsAmount
+    private static final String[] TRANSACTION_FIELDS = {"customerId", "transactionType", "pointsAmount", "amount", "description"};
 
-public class TransactionServiceServlet extends HttpServlet {
     private DataServiceInterface dataService;
+    // Write full lists row by row as they are read (context-param service.streamLists)
+    private boolean streamLists;
+    // Largest number of <transaction> elements accepted by POST /batch (context-param service.batch.maxItems)
+    private int batchMaxItems;
+    // Largest accepted POST bodies (context-params service.request.maxBytes, service.batch.maxBytes)
+    private int maxRequestBytes;
+    private int batchMaxBytes;
+    // Responses of POSTs with an Idempotency-Key, shared with the other service servlets
+    private IdempotencyCache idempotency;
 
     @Override
     public void init() throws ServletException {
+        super.init();
         dataService = DataServiceFactory.getInstance(getServletContext());
+        streamLists = "true".equalsIgnoreCase(getServletContext().getInitParameter("service.streamLists"));
+        batchMaxItems = ContextParams.getInt(getServletContext(), "service.batch.maxItems", 10000);
+        maxRequestBytes = ContextParams.getInt(getServletContext(), "service.request.maxBytes", XmlRequestDecoder.DEFAULT_MAX_BYTES);
+        batchMaxBytes = ContextParams.getInt(getServletContext(), "service.batch.maxBytes", 16 * 1024 * 1024);
+        idempotency = IdempotencyCache.get(getServletContext());
+    }
+
+    @Override
+    protected boolean isStreamedList(HttpServletRequest request) {
+        return streamLists && isFullListRequest(request, "transactionId");
     }
 
     @Override
-    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+    protected void handleGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        response.setContentType("application/xml");
+        boolean json = JsonSupport.wantsJson(request);
+        response.setContentType(json ? JsonSupport.CONTENT_TYPE : "application/xml");
         response.setCharacterEncoding("UTF-8");
         PrintWriter out = response.getWriter();
         try {
@@ -39,83 +71,216 @@ public class TransactionServiceServlet extends HttpServlet {
             if (txnId != null && !txnId.trim().isEmpty()) {
                 PointsTransaction txn = dataService.getTransaction(txnId);
                 if (txn != null) {
-                    out.println(generateTransactionXml(txn));
+                    writeTransaction(out, json, txn);
                 } else {
                     response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-                    out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                    out.println("<error>Transaction not found: " + txnId + "</error>");
+                    writeError(out, json, "Transaction not found: " + txnId);
+                }
+            } else if (PageParameters.isPaged(request)) {
+                String after = PageParameters.after(request);
+                Page<PointsTransaction> page = dataService.getTransactionsPage(after, PageParameters.limit(request));
+                writeTransactionList(out, json, page.getItems(), PageParameters.encodeCursor(page.getNextKey()));
+            } else if (streamLists) {
+                try {
+                    if (json) {
+                        JsonSupport.streamList(out, "transactions", dataService::streamAllTransactions, JsonSupport::writeTransaction);
+                    } else {
+                        streamTransactionsListXml(out);
+                    }
+                } catch (RuntimeException e) {
+                    // Reset for the error document below, or abort if rows have already been sent
+                    resetFailedStream(response, json, e);
+                    throw e;
                 }
             } else {
                 List<PointsTransaction> txns = dataService.getAllTransactions();
-                out.println(generateTransactionsListXml(txns));
+                writeTransactionList(out, json, txns, null);
             }
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            writeError(out, json, e.getMessage());
+        } catch (StreamAbortedException e) {
+            throw e;
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            out.println("<error>Internal server error: " + e.getMessage() + "</error>");
+            writeError(out, json, "Internal server error: " + e.getMessage());
         }
     }
 
 
     @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+    protected void handlePost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        response.setContentType("application/xml");
+        boolean json = JsonSupport.wantsJson(request);
+        response.setContentType(json ? JsonSupport.CONTENT_TYPE : "application/xml");
         response.setCharacterEncoding("UTF-8");
         PrintWriter out = response.getWriter();
         try {
             String contentType = request.getContentType();
-            if (contentType == null || !contentType.toLowerCase().contains("application/xml")) {
+            boolean jsonInput = JsonSupport.isJson(contentType);
+            if (!jsonInput && (contentType == null || !contentType.toLowerCase().contains("application/xml"))) {
                 response.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
-                out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                out.println("<error>Only application/xml input is supported</error>");
+                writeError(out, json, "Only application/xml or application/json input is supported");
                 return;
             }
-            // Read and print raw XML input for debugging
-            StringBuilder rawXml = new StringBuilder();
-            java.io.BufferedReader reader = request.getReader();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                rawXml.append(line).append("\n");
+            if ("/batch".equals(request.getPathInfo())) {
+                doPostBatch(request, out, json, jsonInput);
+                return;
             }
-            // Parse XML from string
-            javax.xml.parsers.DocumentBuilderFactory dbFactory = javax.xml.parsers.DocumentBuilderFactory.newInstance();
-            javax.xml.parsers.DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            java.io.ByteArrayInputStream xmlInput = new java.io.ByteArrayInputStream(rawXml.toString().getBytes("UTF-8"));
-            org.w3c.dom.Document doc = dBuilder.parse(xmlInput);
-            doc.getDocumentElement().normalize();
-            org.w3c.dom.Element root = doc.getDocumentElement();
-            String customerId = getXmlTagValue(root, "customerId");
-            String transactionType = getXmlTagValue(root, "transactionType");
-            String pointsAmountStr = getXmlTagValue(root, "pointsAmount");
-            if (pointsAmountStr == null) pointsAmountStr = getXmlTagValue(root, "amount");
-            String description = getXmlTagValue(root, "description");
+            Map<String, String> fields = jsonInput
+                    ? JsonRequestDecoder.readFields(request, maxRequestBytes, TRANSACTION_FIELDS)
+                    : XmlRequestDecoder.readFields(request, maxRequestBytes, TRANSACTION_FIELDS);
+            String customerId = fields.get("customerId");
+            String transactionType = fields.get("transactionType");
+            String pointsAmountStr = fields.get("pointsAmount");
+            if (pointsAmountStr == null) pointsAmountStr = fields.get("amount");
+            String description = fields.get("description");
             if (customerId == null || transactionType == null || pointsAmountStr == null) {
                 response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-                out.println("<error>Missing required fields: customerId, transactionType, pointsAmount</error>");
+                writeError(out, json, "Missing required fields: customerId, transactionType, pointsAmount");
                 return;
             }
             int pointsAmount = Integer.parseInt(pointsAmountStr);
-            PointsTransaction txn = dataService.createTransaction(customerId, transactionType, pointsAmount, description);
-            out.println(generateTransactionXml(txn));
+            String idempotencyKey = IdempotencyCache.keyOf(request);
+            if (idempotencyKey == null) {
+                PointsTransaction txn = dataService.createTransaction(customerId, transactionType, pointsAmount, description, null);
+                writeTransaction(out, json, txn);
+                return;
+            }
+            String fingerprint = customerId + '\n' + transactionType + '\n' + pointsAmount + '\n' + description;
+            idempotency.execute("transactions", idempotencyKey, fingerprint, () -> {
+                PointsTransaction txn = dataService.createTransaction(customerId, transactionType, pointsAmount, description, idempotencyKey);
+                // Possibly stored by an earlier request this node's cache has not seen
+                if (!customerId.equals(txn.getCustomerId()) || !transactionType.equalsIgnoreCase(txn.getTransactionType())
+                        || pointsAmount != txn.getPointsAmount()) {
+                    throw new IdempotencyConflictException(IdempotencyCache.HEADER + " was already used for a different transaction");
+                }
+                StringWriter body = new StringWriter();
+                writeTransaction(new PrintWriter(body), json, txn);
+                return new IdempotencyCache.StoredResponse(HttpServletResponse.SC_OK, response.getContentType(), body.toString());
+            }).writeTo(response, out);
+        } catch (IdempotencyConflictException e) {
+            response.setStatus(HttpServletResponse.SC_CONFLICT);
+            writeError(out, json, e.getMessage());
+        } catch (TransactionQueueFullException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "1");
+            writeError(out, json, "Too many pending transactions, retry later");
+        } catch (RequestTooLargeException e) {
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            writeError(out, json, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // Malformed body or a non-numeric pointsAmount
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            writeError(out, json, e.getMessage());
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-            out.println("<error>Error creating transaction: " + e.getMessage() + "</error>");
+            writeError(out, json, "Error creating transaction: " + e.getMessage());
         }
     }
 
-    // Helper to extract XML tag value
-    private String getXmlTagValue(org.w3c.dom.Element element, String tagName) {
-        org.w3c.dom.NodeList nodeList = element.getElementsByTagName(tagName);
-        if (nodeList != null && nodeList.getLength() > 0) {
-            org.w3c.dom.Node node = nodeList.item(0);
-            if (node != null && node.getTextContent() != null) {
-                return node.getTextContent();
+    // POST /batch: <transactions><transaction>...</transaction>...</transactions>
+    // Each element has the same fields as a single POST. Items are numbered from 0 in document
+    // order; the response reports every item as CREATED, REJECTED or FAILED.
+    private void doPostBatch(HttpServletRequest request, PrintWriter out, boolean json, boolean jsonInput) throws IOException {
+        final List<BatchItemResult> results = new ArrayList<>();
+        final List<TransactionRequest> requests = new ArrayList<>();
+        // Document position of each entry in requests
+        final List<Integer> positions = new ArrayList<>();
+        RecordHandler handler = (i, fields) -> {
+            String customerId = fields.get("customerId");
+            String transactionType = fields.get("transactionType");
+            String pointsAmountStr = fields.get("pointsAmount");
+            if (pointsAmountStr == null) pointsAmountStr = fields.get("amount");
+            if (customerId == null || transactionType == null || pointsAmountStr == null) {
+                results.add(BatchItemResult.rejected(i, "Missing required fields: customerId, transactionType, pointsAmount"));
+                return;
             }
+            int pointsAmount;
+            try {
+                pointsAmount = Integer.parseInt(pointsAmountStr.trim());
+            } catch (NumberFormatException e) {
+                results.add(BatchItemResult.rejected(i, "Invalid pointsAmount: " + pointsAmountStr));
+                return;
+            }
+            results.add(null);
+            positions.add(i);
+            requests.add(new TransactionRequest(customerId.trim(), transactionType.trim(), pointsAmount, fields.get("description")));
+        };
+        if (jsonInput) {
+            JsonRequestDecoder.readRecords(request, batchMaxBytes, "transactions", batchMaxItems, handler, TRANSACTION_FIELDS);
+        } else {
+            XmlRequestDecoder.readRecords(request, batchMaxBytes, "transaction", batchMaxItems, handler, TRANSACTION_FIELDS);
+        }
+        if (!requests.isEmpty()) {
+            List<BatchItemResult> stored = dataService.createTransactions(requests);
+            for (int n = 0; n < stored.size(); n++) {
+                results.set(positions.get(n), stored.get(n));
+            }
+        }
+        if (json) {
+            writeBatchResultJson(out, results);
+        } else {
+            out.println(generateBatchResultXml(results));
+        }
+    }
+
+    private void writeTransaction(PrintWriter out, boolean json, PointsTransaction txn) throws IOException {
+        if (json) {
+            JsonSupport.writeObject(out, txn, JsonSupport::writeTransaction);
+        } else {
+            out.println(generateTransactionXml(txn));
+        }
+    }
+
+    private void writeTransactionList(PrintWriter out, boolean json, List<PointsTransaction> txns, String nextCursor)
+            throws IOException {
+        if (json) {
+            JsonSupport.writeList(out, "transactions", txns, nextCursor, JsonSupport::writeTransaction);
+        } else {
+            out.println(generateTransactionsListXml(txns, nextCursor));
+        }
+    }
+
+    // Helper to write an error in the response format
+    private void writeError(PrintWriter out, boolean json, String message) throws IOException {
+        if (json) {
+            JsonSupport.writeError(out, message);
+            return;
+        }
+        out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+        out.println("<error>" + escapeXml(message) + "</error>");
+    }
+
+    // JSON form of the batch outcome: {"count", "created", "items": [{"index", "status", "transactionId"|"error"}]}
+    private void writeBatchResultJson(PrintWriter out, List<BatchItemResult> results) throws IOException {
+        int created = 0;
+        for (BatchItemResult result : results) {
+            if (result.getTransaction() != null) {
+                created++;
+            }
+        }
+        try (JsonGenerator gen = JsonSupport.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeNumberField("count", results.size());
+            gen.writeNumberField("created", created);
+            gen.writeArrayFieldStart("items");
+            for (int i = 0; i < results.size(); i++) {
+                BatchItemResult result = results.get(i);
+                gen.writeStartObject();
+                gen.writeNumberField("index", i);
+                gen.writeStringField("status", result.getStatus().name());
+                if (result.getTransaction() != null) {
+                    gen.writeStringField("transactionId", result.getTransaction().getTransactionId());
+                }
+                if (result.getError() != null) {
+                    gen.writeStringField("error", result.getError());
+                }
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
         }
-        return null;
     }
 
     // XML serialization for PointsTransaction
@@ -137,27 +302,83 @@ public class TransactionServiceServlet extends HttpServlet {
         return xml.toString();
     }
 
-    // XML serialization for a list of PointsTransaction
-    private String generateTransactionsListXml(List<PointsTransaction> txns) {
+    // XML serialization for a list of PointsTransaction; nextCursor is only written when another page exists
+    private String generateTransactionsListXml(List<PointsTransaction> txns, String nextCursor) {
         StringBuilder xml = new StringBuilder();
         xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
         xml.append("<transactions>\n");
         xml.append("  <count>").append(txns.size()).append("</count>\n");
         for (PointsTransaction txn : txns) {
-            xml.append("  <transaction>\n");
-            xml.append("    <transactionId>").append(txn.getTransactionId()).append("</transactionId>\n");
-            xml.append("    <customerId>").append(txn.getCustomerId()).append("</customerId>\n");
-            xml.append("    <transactionType>").append(txn.getTransactionType()).append("</transactionType>\n");
-            xml.append("    <pointsAmount>").append(txn.getPointsAmount()).append("</pointsAmount>\n");
-            xml.append("    <transactionDate>").append(txn.getTransactionDate()).append("</transactionDate>\n");
-            xml.append("    <expirationDate>").append(txn.getExpirationDate()).append("</expirationDate>\n");
-            xml.append("    <relatedOrderId>").append(txn.getRelatedOrderId() != null ? txn.getRelatedOrderId() : "").append("</relatedOrderId>\n");
-            xml.append("    <description>").append(txn.getDescription() != null ? txn.getDescription() : "").append("</description>\n");
-            xml.append("    <createdBy>").append(txn.getCreatedBy() != null ? txn.getCreatedBy() : "").append("</createdBy>\n");
-            xml.append("    <status>").append(txn.getStatus() != null ? txn.getStatus() : "").append("</status>\n");
-            xml.append("  </transaction>\n");
+            appendPointsTransactionElement(xml, txn);
+        }
+        if (nextCursor != null) {
+            xml.append("  <nextCursor>").append(nextCursor).append("</nextCursor>\n");
         }
         xml.append("</transactions>");
         return xml.toString();
     }
+
+    // Streams the full list straight from the data service cursor to the response writer.
+    // The row count is only known at the end, so <count> follows the transaction elements.
+    private void streamTransactionsListXml(final PrintWriter out) throws IOException {
+        out.print("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.print("<transactions>\n");
+        final StringBuilder xml = new StringBuilder(512);
+        int count = dataService.streamAllTransactions(txn -> {
+            xml.setLength(0);
+            appendPointsTransactionElement(xml, txn);
+            out.append(xml);
+        });
+        out.print("  <count>" + count + "</count>\n");
+        out.println("</transactions>");
+    }
+
+    // XML serialization for the outcome of a batch; <index> is the item's position in the request
+    private String generateBatchResultXml(List<BatchItemResult> results) {
+        int created = 0;
+        StringBuilder items = new StringBuilder(results.size() * 128);
+        for (int i = 0; i < results.size(); i++) {
+            BatchItemResult result = results.get(i);
+            items.append("  <item>\n");
+            items.append("    <index>").append(i).append("</index>\n");
+            items.append("    <status>").append(result.getStatus()).append("</status>\n");
+            if (result.getTransaction() != null) {
+                created++;
+                items.append("    <transactionId>").append(result.getTransaction().getTransactionId()).append("</transactionId>\n");
+            }
+            if (result.getError() != null) {
+                items.append("    <error>").append(escapeXml(result.getError())).append("</error>\n");
+            }
+            items.append("  </item>\n");
+        }
+        StringBuilder xml = new StringBuilder(items.length() + 200);
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<batchResult>\n");
+        xml.append("  <count>").append(results.size()).append("</count>\n");
+        xml.append("  <created>").append(created).append("</created>\n");
+        xml.append(items);
+        xml.append("</batchResult>");
+        return xml.toString();
+    }
+
+    // Error texts can echo request input back, so they are escaped
+    private static String escapeXml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    // XML element for one PointsTransaction inside a list document
+    private void appendPointsTransactionElement(StringBuilder xml, PointsTransaction txn) {
+        xml.append("  <transaction>\n");
+        xml.append("    <transactionId>").append(txn.getTransactionId()).append("</transactionId>\n");
+        xml.append("    <customerId>").append(txn.getCustomerId()).append("</customerId>\n");
+        xml.append("    <transactionType>").append(txn.getTransactionType()).append("</transactionType>\n");
+        xml.append("    <pointsAmount>").append(txn.getPointsAmount()).append("</pointsAmount>\n");
+        xml.append("    <transactionDate>").append(txn.getTransactionDate()).append("</transactionDate>\n");
+        xml.append("    <expirationDate>").append(txn.getExpirationDate()).append("</expirationDate>\n");
+        xml.append("    <relatedOrderId>").append(txn.getRelatedOrderId() != null ? txn.getRelatedOrderId() : "").append("</relatedOrderId>\n");
+        xml.append("    <description>").append(txn.getDescription() != null ? txn.getDescription() : "").append("</description>\n");
+        xml.append("    <createdBy>").append(txn.getCreatedBy() != null ? txn.getCreatedBy() : "").append("</createdBy>\n");
+        xml.append("    <status>").append(txn.getStatus() != null ? txn.getStatus() : "").append("</status>\n");
+        xml.append("  </transaction>\n");
+    }
 }
@@ -0,0 +1,123 @@
+package com.enterprise.rewards.servlet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads XML request bodies in a single pass with a StAX pull parser instead of building a DOM.
+ * Only the requested field elements are kept, as name to text; everything else is skipped.
+ * DTDs and external entities are disabled, and body size and nesting depth are capped.
+ * Malformed input is reported as IllegalArgumentException, which the servlets answer with 400;
+ * a body over its limit is reported as RequestTooLargeException (413). JsonRequestDecoder is
+ * the JSON counterpart.
+ */
+final class XmlRequestDecoder {
+
+    /** Default cap for a single-object request body. */
+    static final int DEFAULT_MAX_BYTES = 64 * 1024;
+
+    private static final int MAX_DEPTH = 32;
+
+    // Configured once; creating readers from a configured factory is thread-safe
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    }
+
+    private XmlRequestDecoder() {}
+
+    /**
+     * Returns the text of the first element with each of the given names, anywhere in the document.
+     * Fields that are absent are missing from the map.
+     */
+    static Map<String, String> readFields(HttpServletRequest request, int maxBytes, String... fieldNames)
+            throws IOException {
+        final Map<String, String> result = new HashMap<>();
+        parse(request, maxBytes, null, 1, new HashSet<>(Arrays.asList(fieldNames)), (index, fields) -> {
+            result.putAll(fields);
+        });
+        return result;
+    }
+
+    /**
+     * Hands the fields of every recordElement element to the handler as soon as the element ends.
+     * Returns the number of records read.
+     */
+    static int readRecords(HttpServletRequest request, int maxBytes, String recordElement, int maxRecords,
+                           RecordHandler handler, String... fieldNames) throws IOException {
+        return parse(request, maxBytes, recordElement, maxRecords, new HashSet<>(Arrays.asList(fieldNames)), handler);
+    }
+
+    // With recordElement null the whole document is a single record
+    private static int parse(HttpServletRequest request, int maxBytes, String recordElement, int maxRecords,
+                             Set<String> fieldNames, RecordHandler handler) throws IOException {
+        if (request.getContentLengthLong() > maxBytes) {
+            throw new RequestTooLargeException("Request body exceeds " + maxBytes + " bytes");
+        }
+        LimitedInputStream in = new LimitedInputStream(request.getInputStream(), maxBytes);
+        XMLStreamReader reader = null;
+        int records = 0;
+        try {
+            reader = FACTORY.createXMLStreamReader(in);
+            Map<String, String> fields = recordElement == null ? new HashMap<String, String>() : null;
+            int depth = 0;
+            int recordDepth = -1;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (++depth > MAX_DEPTH) {
+                        throw new IllegalArgumentException("XML nesting is deeper than " + MAX_DEPTH + " levels");
+                    }
+                    String name = reader.getLocalName();
+                    if (fields == null && name.equals(recordElement)) {
+                        if (records >= maxRecords) {
+                            throw new RequestTooLargeException("Request has more than " + maxRecords + " " + recordElement + " elements");
+                        }
+                        fields = new HashMap<>();
+                        recordDepth = depth;
+                    } else if (fields != null && fieldNames.contains(name) && !fields.containsKey(name)) {
+                        // getElementText consumes the END_ELEMENT too
+                        fields.put(name, reader.getElementText());
+                        depth--;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == recordDepth) {
+                        handler.onRecord(records++, fields);
+                        fields = null;
+                        recordDepth = -1;
+                    }
+                    depth--;
+                }
+            }
+            if (recordElement == null) {
+                handler.onRecord(records++, fields);
+            }
+            return records;
+        } catch (XMLStreamException e) {
+            if (in.isExceeded()) {
+                throw new RequestTooLargeException("Request body exceeds " + maxBytes + " bytes");
+            }
+            throw new IllegalArgumentException("Malformed XML: " + e.getMessage());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ignore) {
+                }
+            }
+        }
+    }
+}
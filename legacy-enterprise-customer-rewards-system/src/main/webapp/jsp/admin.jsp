@@ -1,4 +1,16 @@
 <%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ page import="com.enterprise.rewards.jdbc.ConnectionPool" %>
+<%@ page import="com.enterprise.rewards.jdbc.PoolStatistics" %>
+<%@ page import="com.enterprise.rewards.jdbc.StatementProfiler" %>
+<%@ page import="com.enterprise.rewards.jdbc.StatementStatistics" %>
+<%@ page import="com.enterprise.rewards.service.CachingDataService" %>
+<%@ page import="com.enterprise.rewards.service.PointsExpirationEngine" %>
+<%@ page import="com.enterprise.rewards.service.RewardStockReservations" %>
+<%@ page import="com.enterprise.rewards.service.TierEngine" %>
+<%@ page import="com.enterprise.rewards.cache.CacheStatistics" %>
+<%@ page import="com.enterprise.rewards.servlet.IdempotencyCache" %>
+<%@ page import="com.enterprise.rewards.servlet.ServiceExecutor" %>
+<%@ page import="com.enterprise.rewards.filter.CredentialCache" %>
 <%
     request.setAttribute("pageTitle", "Administration - Enterprise Customer Rewards System");
 %>
@@ -23,7 +35,7 @@
                 <li><strong>GET</strong> /service/customers - List all customers</li>
                 <li><strong>GET</strong> /service/customers?customerId=CUST001234 - Get specific customer</li>
                 <li><strong>POST</strong> /service/customers - Create new customer (form data)</li>
-                <li><strong>POST</strong> /service/rewards/redeem - Redeem reward (form data)</li>
+                <li><strong>POST</strong> /service/rewards/redeem - Redeem reward (customerId, rewardId as form data, XML or JSON)</li>
             </ul>
         </div>
 
@@ -54,6 +66,189 @@
             </form>
         </div>
 
+        <div class="admin-section">
+            <h3>Database Connection Pool</h3>
+            <%
+                ConnectionPool pool = (ConnectionPool) application.getAttribute(ConnectionPool.CONTEXT_ATTRIBUTE);
+                if (pool != null) {
+                    PoolStatistics stats = pool.getStatistics();
+            %>
+            <ul>
+                <li>Active: <%= stats.getActive() %> / Max: <%= stats.getMaxSize() %></li>
+                <li>Idle: <%= stats.getIdle() %></li>
+                <li>Waiting threads: <%= stats.getWaiters() %></li>
+                <li>Connections created / closed: <%= stats.getCreated() %> / <%= stats.getDestroyed() %></li>
+                <li>Acquire timeouts: <%= stats.getTimeouts() %></li>
+                <li>Acquire time p50 / p99 / max (&micro;s): <%= stats.getAcquireTimes().getPercentileNanos(50) / 1000 %>
+                    / <%= stats.getAcquireTimes().getPercentileNanos(99) / 1000 %>
+                    / <%= stats.getAcquireTimes().getMaxNanos() / 1000 %></li>
+            </ul>
+            <% } else { %>
+            <p>Connection pool not initialized yet.</p>
+            <% } %>
+        </div>
+
+        <div class="admin-section">
+            <h3>SQL Statements (top 10 by total time)</h3>
+            <%
+                StatementProfiler profiler = (StatementProfiler) application.getAttribute(StatementProfiler.CONTEXT_ATTRIBUTE);
+                if (profiler != null) {
+            %>
+            <p>Slow queries (&ge; <%= profiler.getConfig().getSlowQueryMs() %> ms): <%= profiler.getSlowQueries() %>,
+                leaked statements / result sets: <%= profiler.getStatementLeaks() %> / <%= profiler.getResultSetLeaks() %></p>
+            <table>
+                <tr><th>Statement</th><th>Executions</th><th>Errors</th><th>Rows</th><th>Total (ms)</th>
+                    <th>Execute / fetch (ms)</th><th>p50 / p99 / max (ms)</th><th>Slow</th></tr>
+                <% for (StatementStatistics sql : profiler.getTopStatements(10)) { %>
+                <tr>
+                    <td><code><%= sql.getSql().replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;") %></code></td>
+                    <td><%= sql.getExecutions() %></td>
+                    <td><%= sql.getErrors() %></td>
+                    <td><%= sql.getRows() %></td>
+                    <td><%= sql.getTotalNanos() / 1000000 %></td>
+                    <td><%= sql.getExecuteNanos() / 1000000 %> / <%= sql.getFetchNanos() / 1000000 %></td>
+                    <td><%= String.format("%.1f / %.1f / %.1f", sql.getLatency().getPercentileNanos(50) / 1e6,
+                            sql.getLatency().getPercentileNanos(99) / 1e6, sql.getLatency().getMaxNanos() / 1e6) %></td>
+                    <td><%= sql.getSlow() %></td>
+                </tr>
+                <% } %>
+            </table>
+            <% } else { %>
+            <p>Statement profiling is disabled (db.profile.enabled) or no database is in use.</p>
+            <% } %>
+        </div>
+
+        <div class="admin-section">
+            <h3>Service Request Executor</h3>
+            <%
+                ServiceExecutor serviceExecutor = (ServiceExecutor) application.getAttribute(ServiceExecutor.CONTEXT_ATTRIBUTE);
+                if (serviceExecutor != null) {
+            %>
+            <ul>
+                <li>Busy threads: <%= serviceExecutor.getActiveThreads() %> / <%= serviceExecutor.getMaxThreads() %></li>
+                <li>Queued requests: <%= serviceExecutor.getQueued() %> / <%= serviceExecutor.getQueueSize() %></li>
+                <li>Completed: <%= serviceExecutor.getCompleted() %></li>
+                <li>Rejected (queue full) / timed out: <%= serviceExecutor.getRejected() %> / <%= serviceExecutor.getTimeouts() %></li>
+            </ul>
+            <% } else { %>
+            <p>No async service requests yet (service.async.enabled).</p>
+            <% } %>
+        </div>
+
+        <div class="admin-section">
+            <h3>Data Caches</h3>
+            <%
+                CachingDataService cachingService = (CachingDataService) application.getAttribute(CachingDataService.CONTEXT_ATTRIBUTE);
+                if (cachingService != null) {
+            %>
+            <ul>
+                <% for (CacheStatistics cacheStats : cachingService.getCacheStatistics()) { %>
+                <li><%= cacheStats.getName() %>: <%= cacheStats.getSize() %> entries<%= cacheStats.getMaxBytes() > 0
+                        ? " (~" + cacheStats.getEstimatedBytes() / 1024 + " of " + cacheStats.getMaxBytes() / 1024 + " KB)" : "" %>,
+                    hits <%= cacheStats.getHits() %>, misses <%= cacheStats.getMisses() %>,
+                    evictions <%= cacheStats.getEvictions() %>,
+                    hit ratio <%= String.format("%.1f%%", cacheStats.getHitRatio() * 100) %></li>
+                <% } %>
+            </ul>
+            <% } else { %>
+            <p>Caching is disabled (dataService.cache.enabled).</p>
+            <% } %>
+        </div>
+
+        <div class="admin-section">
+            <h3>Points Expiration</h3>
+            <%
+                PointsExpirationEngine expiration = (PointsExpirationEngine) application.getAttribute(PointsExpirationEngine.CONTEXT_ATTRIBUTE);
+                if (expiration != null) {
+            %>
+            <ul>
+                <li>Daily at <%= expiration.getRunAt() %> for up to <%= expiration.getWindowMillis() / 60000 %> minutes<%= expiration.isRunning() ? " (running now)" : "" %></li>
+                <li>Last run: <%= expiration.getLastRunStart() != null
+                        ? expiration.getLastRunStart() + ", " + expiration.getLastRunOutcome() + " after " + expiration.getLastRunMillis() + " ms" : "none yet" %></li>
+                <li>Expired since startup: <%= expiration.getPointsExpired() %> points from <%= expiration.getLotsExpired() %> lots
+                    in <%= expiration.getChunks() %> chunks (<%= expiration.getRuns() %> runs)</li>
+                <li>Waits for a busy connection pool: <%= expiration.getBusyWaits() %></li>
+            </ul>
+            <% } else { %>
+            <p>Points expiration is disabled (db.expiration.enabled) or no database is in use.</p>
+            <% } %>
+        </div>
+
+        <div class="admin-section">
+            <h3>Loyalty Tiers</h3>
+            <%
+                TierEngine tierEngine = (TierEngine) application.getAttribute(TierEngine.CONTEXT_ATTRIBUTE);
+                if (tierEngine != null) {
+            %>
+            <ul>
+                <li>Rules: <%= tierEngine.getPolicy() %></li>
+                <li>Changed by transactions since startup: <%= tierEngine.getIncrementalChanges() %></li>
+                <li>Daily pass: <%= tierEngine.getRescoreAt() != null ? "at " + tierEngine.getRescoreAt() : "disabled" %><%= tierEngine.isRunning() ? " (running now)" : "" %>;
+                    full rescores use <%= tierEngine.getThreads() %> threads, <%= tierEngine.getChunkSize() %> customers per chunk</li>
+                <li>Last pass: <%= tierEngine.getLastRunStart() != null
+                        ? tierEngine.getLastRunStart() + ", " + tierEngine.getLastRunOutcome() + " after " + tierEngine.getLastRunMillis() + " ms" : "none yet" %></li>
+                <li>Background passes since startup: <%= tierEngine.getRescoreChanges() %> of <%= tierEngine.getCustomersScored() %> customers changed
+                    in <%= tierEngine.getChunks() %> chunks (<%= tierEngine.getFailedChunks() %> failed, <%= tierEngine.getRuns() %> passes,
+                    <%= tierEngine.getBusyWaits() %> waits for a busy connection pool)</li>
+            </ul>
+            <% } else { %>
+            <p>Tier maintenance is disabled (tiers.enabled) or no database is in use.</p>
+            <% } %>
+        </div>
+
+        <div class="admin-section">
+            <h3>Reward Redemptions</h3>
+            <%
+                RewardStockReservations reservations = (RewardStockReservations) application.getAttribute(RewardStockReservations.CONTEXT_ATTRIBUTE);
+                if (reservations != null) {
+            %>
+            <ul>
+                <li>Stock counters: <%= reservations.getTrackedRewards() %> rewards, <%= reservations.getStripes() %> stripes each</li>
+                <li>Admitted to the database: <%= reservations.getAdmitted() %>,
+                    turned away as sold out: <%= reservations.getSoldOut() %>,
+                    admitted but out of stock in the database: <%= reservations.getConflicts() %></li>
+            </ul>
+            <% } else { %>
+            <p>Redemption reservations are disabled (db.redemption.reservations.enabled) or no database is in use.</p>
+            <% } %>
+        </div>
+
+        <div class="admin-section">
+            <h3>Idempotency Keys</h3>
+            <%
+                IdempotencyCache idempotency = (IdempotencyCache) application.getAttribute(IdempotencyCache.CONTEXT_ATTRIBUTE);
+                if (idempotency != null) {
+                    CacheStatistics idempotencyStats = idempotency.getStatistics();
+            %>
+            <ul>
+                <li>Stored responses: <%= idempotencyStats.getSize() %> / <%= idempotencyStats.getMaxEntries() %>
+                    (<%= idempotencyStats.getEvictions() %> evicted)</li>
+                <li>Replayed <%= idempotency.getReplays() %>, waited for an in-flight duplicate <%= idempotency.getWaits() %>,
+                    refused <%= idempotency.getConflicts() %></li>
+            </ul>
+            <% } else { %>
+            <p>No request with an Idempotency-Key yet.</p>
+            <% } %>
+        </div>
+
+        <div class="admin-section">
+            <h3>Service Credential Cache</h3>
+            <%
+                CredentialCache credentialCache = (CredentialCache) application.getAttribute(CredentialCache.CONTEXT_ATTRIBUTE);
+                if (credentialCache != null) {
+                    CacheStatistics authStats = credentialCache.getStatistics();
+            %>
+            <ul>
+                <li>Cached logins: <%= authStats.getSize() %> / <%= authStats.getMaxEntries() %></li>
+                <li>Hits <%= authStats.getHits() %>, misses <%= authStats.getMisses() %>,
+                    evictions <%= authStats.getEvictions() %>,
+                    hit ratio <%= String.format("%.1f%%", authStats.getHitRatio() * 100) %></li>
+            </ul>
+            <% } else { %>
+            <p>Credential caching is disabled (auth.cache.enabled).</p>
+            <% } %>
+        </div>
+
         <div class="admin-section">
             <h3>System Configuration</h3>
             <h4>Points Earning Rules (Hardcoded)</h4>